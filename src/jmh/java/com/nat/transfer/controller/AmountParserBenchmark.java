@@ -0,0 +1,51 @@
+package com.nat.transfer.controller;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.exception.EntityCreationException;
+
+/**
+ * Request amount parsing: the former new BigDecimal + Money.toCents path against AmountParser, for valid and
+ * malformed input.<br>
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=AmountParserBenchmark
+ *
+ * @author jyotirmani
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmountParserBenchmark {
+
+	@Param({"100", "1234.56", "99999999.99", "12.345", "12a"})
+	public String amount;
+
+	@Benchmark
+	public long bigDecimal() {
+		try {
+			return Money.toCents(new BigDecimal(this.amount));
+		} catch (NumberFormatException | EntityCreationException e) {
+			return -1L;
+		}
+	}
+
+	@Benchmark
+	public long amountParser() {
+		return AmountParser.parseCents(this.amount);
+	}
+}
@@ -0,0 +1,75 @@
+package com.nat.transfer.ledger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Startup recovery cost: opening a journal of records transfers and replaying all of them.<br>
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=TransferJournalReplayBenchmark
+ *
+ * @author jyotirmani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TransferJournalReplayBenchmark {
+
+	@Param({"10000000"})
+	public int records;
+
+	@Param({"1048576"})
+	public int segmentRecords;
+
+	private Path directory;
+
+	@Setup
+	public void writeJournal() throws IOException {
+		this.directory = Files.createTempDirectory("journal-benchmark");
+
+		try (TransferJournal journal = new TransferJournal(this.directory, this.segmentRecords)) {
+			journal.open(0L);
+			for (int i = 0; i < this.records; i++) {
+				journal.append(i % 1000, 1000 + i % 1000, 1234L, 1500000000000L + i);
+			}
+		}
+	}
+
+	@TearDown
+	public void deleteJournal() throws IOException {
+		try (Stream<Path> files = Files.walk(this.directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public long replay(Blackhole blackhole) throws IOException {
+		try (TransferJournal journal = new TransferJournal(this.directory, this.segmentRecords)) {
+			journal.open(0L);
+			return journal.replay(0L, (sequence, sourceAccountId, destinationAccountId, amountCents, timestamp, key) -> {
+				blackhole.consume(sourceAccountId);
+				blackhole.consume(amountCents);
+			});
+		}
+	}
+}
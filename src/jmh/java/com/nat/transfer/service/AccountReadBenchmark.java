@@ -0,0 +1,158 @@
+package com.nat.transfer.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nat.transfer.AppTransferService;
+import com.nat.transfer.configuration.RepositoryConfiguration;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.repositories.IAccountRepository;
+
+/**
+ * Account reads by id and by name on H2, with and without the Hibernate second-level cache
+ * (RepositoryConfiguration.SECOND_LEVEL_CACHE_PROFILE). Accounts are drawn from a Zipfian distribution, so popular
+ * accounts are read again and again. transferPercent of the operations are transfers between accounts of the same
+ * distribution instead of reads: every transfer writes Account with bulk UPDATEs, each of which drops the whole
+ * Account region. Besides the throughput, the statements and operations counters give the JDBC statements issued per
+ * operation.<br>
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=AccountReadBenchmark
+ *
+ * @author jyotirmani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class AccountReadBenchmark {
+	/**
+	 * Balance of every account, large enough for transfers of one cent never to run out
+	 */
+	private static final long INITIAL_BALANCE_CENTS = 1_000_000_000_000L;
+
+	@Param({"false", "true"})
+	public boolean secondLevelCache;
+
+	@Param({"1000"})
+	public int accounts;
+
+	@Param({"0.99"})
+	public double skew;
+
+	@Param({"0", "10"})
+	public int transferPercent;
+
+	@Param({"LOCKING", "CONDITIONAL_UPDATE"})
+	public TransferMode mode;
+
+	/**
+	 * Per thread totals of one iteration
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class StatementCounters {
+		public long statements;
+		public long operations;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.statements = 0L;
+			this.operations = 0L;
+		}
+	}
+
+	private ConfigurableApplicationContext context;
+	private IAccountRepository accountRepository;
+	private TransferService transferService;
+	private Statistics statistics;
+	private long[] accountIds;
+	private ZipfianGenerator reads;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SpringApplicationBuilder builder = new SpringApplicationBuilder(AppTransferService.class).web(false);
+		if (this.secondLevelCache) {
+			builder.profiles(RepositoryConfiguration.SECOND_LEVEL_CACHE_PROFILE);
+		}
+		this.context = builder.run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+				"--spring.jpa.hibernate.ddl-auto=create-drop",
+				"--spring.jpa.properties.hibernate.generate_statistics=true",
+				"--logging.level.root=WARN",
+				"--transfer.mode=" + this.mode);
+
+		this.accountRepository = this.context.getBean(IAccountRepository.class);
+		this.transferService = this.context.getBean(TransferService.class);
+		this.statistics = this.context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+		this.accountIds = new long[this.accounts];
+		for (int i = 0; i < this.accounts; i++) {
+			this.accountIds[i] = this.accountRepository.save(new Account(name(i), INITIAL_BALANCE_CENTS)).getId();
+		}
+		this.reads = new ZipfianGenerator(this.accounts, this.skew);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.context.close();
+	}
+
+	@Benchmark
+	public Object findOne(StatementCounters counters) {
+		long statements = this.statistics.getPrepareStatementCount();
+		Object result = this.isTransfer() ? this.transfer()
+				: this.accountRepository.findOne(this.accountIds[this.reads.next()]);
+		counters.statements += this.statistics.getPrepareStatementCount() - statements;
+		counters.operations++;
+		return result;
+	}
+
+	@Benchmark
+	public Object findByName(StatementCounters counters) {
+		long statements = this.statistics.getPrepareStatementCount();
+		Object result = this.isTransfer() ? this.transfer() : this.accountRepository.findByName(name(this.reads.next()));
+		counters.statements += this.statistics.getPrepareStatementCount() - statements;
+		counters.operations++;
+		return result;
+	}
+
+	private boolean isTransfer() {
+		return this.transferPercent > 0 && ThreadLocalRandom.current().nextInt(100) < this.transferPercent;
+	}
+
+	private Transfer transfer() {
+		int source = this.reads.next();
+		int destination = this.reads.next();
+		if (destination == source) {
+			destination = (source + 1) % this.accounts;
+		}
+
+		return this.transferService.transfer(this.accountIds[source], this.accountIds[destination], 1L);
+	}
+
+	private static String name(int index) {
+		return "account-" + index;
+	}
+}
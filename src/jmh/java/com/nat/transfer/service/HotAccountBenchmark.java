@@ -0,0 +1,83 @@
+package com.nat.transfer.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nat.transfer.AppTransferService;
+import com.nat.transfer.domain.Transfer;
+
+/**
+ * Transfers from many accounts into one merchant account on H2, with the merchant account plain (slots=0) or hot.
+ * Run it with several thread counts (-t) to see whether credits to the merchant scale with cores.<br>
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=HotAccountBenchmark -Djmh.args="-t 8"
+ *
+ * @author jyotirmani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class HotAccountBenchmark {
+
+	@Param({"LOCKING", "CONDITIONAL_UPDATE"})
+	public TransferMode mode;
+
+	@Param({"0", "16"})
+	public int slots;
+
+	@Param({"1000"})
+	public int sources;
+
+	private ConfigurableApplicationContext context;
+	private TransferService transferService;
+	private long[] sourceIds;
+	private long merchantId;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.context = new SpringApplicationBuilder(AppTransferService.class).web(false).run(
+				"--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+				"--spring.jpa.hibernate.ddl-auto=create-drop",
+				"--transfer.mode=" + this.mode,
+				"--logging.level.root=WARN");
+		this.transferService = this.context.getBean(TransferService.class);
+
+		this.sourceIds = new long[this.sources];
+		for (int i = 0; i < this.sources; i++) {
+			this.sourceIds[i] = this.transferService.createNewAccount("source-" + i, Long.MAX_VALUE / this.sources).getId();
+		}
+		this.merchantId = this.transferService.createNewAccount("merchant", 0L).getId();
+		if (this.slots > 0) {
+			this.transferService.makeHotAccount(this.merchantId, this.slots);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.context.close();
+	}
+
+	@Benchmark
+	public Transfer creditMerchant() {
+		long sourceId = this.sourceIds[ThreadLocalRandom.current().nextInt(this.sources)];
+		return this.transferService.transfer(sourceId, this.merchantId, 1L);
+	}
+}
@@ -0,0 +1,141 @@
+package com.nat.transfer.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nat.transfer.AppTransferService;
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.ledger.LedgerEngine;
+import com.nat.transfer.ledger.LedgerPersister;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.LedgerCheckpointMockRepository;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.testutils.MockTransactionManager;
+import com.nat.transfer.testutils.MockTransferService;
+
+/**
+ * TransferService throughput and latency percentiles (SampleTime reports p0.99 and p0.999) under contention.<br>
+ * The backend is either the mock repositories or the whole application context on an in-memory H2 database.
+ * Transfers pick their source account from a Zipfian distribution of the given skew, so a skew close to 1 makes
+ * a few hot accounts take most of the traffic. The thread count is the JMH -t option.<br>
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=TransferServiceBenchmark -Djmh.args="-t 8"
+ *
+ * @author jyotirmani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TransferServiceBenchmark {
+	/**
+	 * Balance of every account, large enough for transfers of one cent never to run out
+	 */
+	private static final long INITIAL_BALANCE_CENTS = 1_000_000_000_000L;
+
+	@Param({"MOCK", "H2"})
+	public String backend;
+
+	@Param({"LOCKING"})
+	public TransferMode mode;
+
+	@Param({"16", "10000"})
+	public int accounts;
+
+	@Param({"0", "0.99"})
+	public double skew;
+
+	private final AtomicLong accountNames = new AtomicLong();
+
+	private ConfigurableApplicationContext context;
+	private LedgerEngine mockLedgerEngine;
+	private TransferService transferService;
+	private long[] accountIds;
+	private ZipfianGenerator sources;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if ("H2".equals(this.backend)) {
+			this.context = new SpringApplicationBuilder(AppTransferService.class)
+					.web(false)
+					// arguments, unlike default properties, override application.properties
+					.run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+							"--spring.jpa.hibernate.ddl-auto=create-drop",
+							"--logging.level.root=WARN",
+							"--transfer.mode=" + this.mode);
+			this.transferService = this.context.getBean(TransferService.class);
+		} else {
+			IAccountRepository accountRepository = new AccountMockRepository();
+			ITransferRepository transferRepository = new TransferMockRepository();
+
+			this.transferService = new MockTransferService(accountRepository, transferRepository);
+			if (this.mode == TransferMode.LEDGER) {
+				this.mockLedgerEngine = new LedgerEngine(accountRepository, new LedgerPersister(accountRepository,
+						transferRepository, new LedgerCheckpointMockRepository(), new MockTransactionManager()), 65536, 1000);
+				this.mockLedgerEngine.setAccountCache(new AccountCache(accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+				this.mockLedgerEngine.start();
+				this.transferService.setLedgerEngine(this.mockLedgerEngine);
+			}
+		}
+		this.transferService.setMode(this.mode);
+
+		this.accountIds = new long[this.accounts];
+		for (int i = 0; i < this.accounts; i++) {
+			this.accountIds[i] = this.createAccount().getId();
+		}
+		this.sources = new ZipfianGenerator(this.accounts, this.skew);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		if (this.mockLedgerEngine != null) {
+			this.mockLedgerEngine.stop();
+		}
+		this.transferService.stopGroupCommitter();
+		if (this.context != null) {
+			this.context.close();
+		}
+	}
+
+	@Benchmark
+	public Transfer transfer() {
+		int source = this.sources.next();
+		int destination = this.sources.next();
+		if (destination == source) {
+			destination = (source + 1) % this.accounts;
+		}
+
+		return this.transferService.transfer(this.accountIds[source], this.accountIds[destination], 1L);
+	}
+
+	@Benchmark
+	public Account createNewAccount() {
+		return this.createAccount();
+	}
+
+	private Account createAccount() {
+		return this.transferService.createNewAccount("account-" + this.accountNames.incrementAndGet(),
+				INITIAL_BALANCE_CENTS);
+	}
+}
@@ -0,0 +1,33 @@
+package com.nat.transfer.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws indexes in [0, size) where index k is picked with a probability proportional to 1 / (k + 1)^skew.<br>
+ * A skew of 0 is uniform, around 1 a few hot indexes take most of the draws.
+ *
+ * @author jyotirmani
+ */
+final class ZipfianGenerator {
+	private final double[] cumulative;
+
+	ZipfianGenerator(int size, double skew) {
+		this.cumulative = new double[size];
+
+		double sum = 0.0;
+		for (int k = 0; k < size; k++) {
+			sum += 1.0 / Math.pow(k + 1, skew);
+			this.cumulative[k] = sum;
+		}
+		for (int k = 0; k < size; k++) {
+			this.cumulative[k] /= sum;
+		}
+	}
+
+	int next() {
+		int index = Arrays.binarySearch(this.cumulative, ThreadLocalRandom.current().nextDouble());
+		// a missed search returns -(insertion point) - 1, the insertion point is the drawn index
+		return Math.min(index < 0 ? -index - 1 : index, this.cumulative.length - 1);
+	}
+}
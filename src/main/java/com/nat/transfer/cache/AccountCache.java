@@ -0,0 +1,157 @@
+package com.nat.transfer.cache;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.dto.CacheStatistics;
+import com.nat.transfer.repositories.IAccountRepository;
+
+/**
+ * Bounded read-through cache of Accounts by id, with a name to id index for findByName.<br>
+ * Entries are detached copies and every read returns a new copy, so callers may change what they get. Writers
+ * publish their committed state with {@link #putAfterCommit(Collection)}, which never replaces an entry by one of a
+ * lower @Version, or drop it with {@link #evictAfterCommit(long...)} when the new version is unknown (single
+ * statement updates). Both evict the accounts before the surrounding transaction commits, then put or evict them
+ * again once it has committed. Between the commit and that second step, a read may still return the previous state,
+ * if it was loaded just before the commit; once the writer's transactional call has returned, a read never returns
+ * a balance older than its commit. Loads and evictions of one id are serialized by Caffeine, an eviction can't be
+ * overtaken by the load of the previous state.<br>
+ * Eviction is size based (Caffeine W-TinyLFU).
+ *
+ * @author jyotirmani
+ */
+@Component
+public class AccountCache {
+	/**
+	 * Default number of cached accounts
+	 */
+	public static final long DEFAULT_MAX_SIZE = 10000L;
+
+	private final IAccountRepository accountRepository;
+	private final Cache<Long, Account> accounts;
+	private final Cache<String, Long> accountIdsByName;
+
+	@Autowired
+	public AccountCache(IAccountRepository accountRepository,
+			@Value("${transfer.cache.accounts.max-size:" + DEFAULT_MAX_SIZE + "}") long maxSize) {
+		super();
+		this.accountRepository = accountRepository;
+		this.accounts = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+		this.accountIdsByName = Caffeine.newBuilder().maximumSize(maxSize).build();
+	}
+
+	/**
+	 * @return a copy of the account, null when it does not exist
+	 */
+	public Account findOne(long id) {
+		return copyOf(this.accounts.get(id, key -> copyOf(this.accountRepository.findOne(key))));
+	}
+
+	/**
+	 * @return a copy of the account, null when it does not exist
+	 */
+	public Account findByName(String name) {
+		Long id = this.accountIdsByName.getIfPresent(name);
+		if (id != null) {
+			Account account = this.findOne(id);
+			// the indexed account may have been renamed or deleted since
+			if (account != null && account.getName().equals(name)) {
+				return account;
+			}
+			this.accountIdsByName.invalidate(name);
+		}
+
+		Account account = this.accountRepository.findByName(name);
+		if (account == null) {
+			return null;
+		}
+		this.accountIdsByName.put(name, account.getId());
+		return copyOf(account);
+	}
+
+	/**
+	 * Caches the state of the accounts as it is once the current transaction has committed, immediately without
+	 * transaction. An entry is only replaced by an account of the same or a higher version.
+	 */
+	public void putAfterCommit(Collection<Account> committedAccounts) {
+		onCommit(committedAccounts, this::evict, this::put);
+	}
+
+	/**
+	 * Drops the accounts before and once the current transaction has committed, immediately without transaction
+	 */
+	public void evictAfterCommit(long... accountIds) {
+		onCommit(accountIds, this::evict, this::evict);
+	}
+
+	public void evict(long... accountIds) {
+		for (long accountId : accountIds) {
+			this.accounts.invalidate(accountId);
+		}
+	}
+
+	public CacheStatistics getStatistics() {
+		CacheStats stats = this.accounts.stats();
+		return new CacheStatistics(this.accounts.estimatedSize(), stats.hitCount(), stats.missCount(),
+				stats.evictionCount(), stats.hitRate());
+	}
+
+	private void put(Collection<Account> committedAccounts) {
+		for (Account account : committedAccounts) {
+			this.accounts.asMap().merge(account.getId(), copyOf(account),
+					(cached, committed) -> committed.getVersion() >= cached.getVersion() ? committed : cached);
+		}
+	}
+
+	private void evict(Collection<Account> accounts) {
+		for (Account account : accounts) {
+			this.accounts.invalidate(account.getId());
+		}
+	}
+
+	/**
+	 * Helper method running beforeCommit when the current transaction is about to commit (whether it then commits or
+	 * not) and afterCommit once it has, only afterCommit without transaction
+	 */
+	private static <T> void onCommit(T value, Consumer<T> beforeCommit, Consumer<T> afterCommit) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			afterCommit.accept(value);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void beforeCommit(boolean readOnly) {
+				beforeCommit.accept(value);
+			}
+
+			@Override
+			public void afterCommit() {
+				afterCommit.accept(value);
+			}
+		});
+	}
+
+	private static Account copyOf(Account account) {
+		if (account == null) {
+			return null;
+		}
+
+		Account copy = new Account(account.getName(), account.getBalanceCents());
+		copy.setId(Objects.requireNonNull(account.getId()));
+		copy.setVersion(account.getVersion());
+		copy.setHeldCents(account.getHeldCents());
+		return copy;
+	}
+}
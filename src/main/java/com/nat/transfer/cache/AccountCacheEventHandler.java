@@ -0,0 +1,35 @@
+package com.nat.transfer.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.domain.Account;
+
+/**
+ * Evicts the Accounts changed through the Spring Data REST endpoints of IAccountRepository, which bypass the services
+ *
+ * @author jyotirmani
+ */
+@Component
+@RepositoryEventHandler(Account.class)
+public class AccountCacheEventHandler {
+	private final AccountCache accountCache;
+
+	@Autowired
+	public AccountCacheEventHandler(AccountCache accountCache) {
+		this.accountCache = accountCache;
+	}
+
+	@HandleAfterSave
+	public void afterSave(Account account) {
+		this.accountCache.evict(account.getId());
+	}
+
+	@HandleAfterDelete
+	public void afterDelete(Account account) {
+		this.accountCache.evict(account.getId());
+	}
+}
@@ -0,0 +1,132 @@
+package com.nat.transfer.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.ITransferRepository;
+
+/**
+ * Bounded, time expiring, dedupe store of the idempotency keys of recent transfer requests.<br>
+ * A key maps to the future of the Transfer it executed. The first request of a key executes the transfer, a retry
+ * (concurrent or later) waits for that future and gets the same Transfer back without executing anything. Keys are
+ * looked up in a Caffeine cache, a concurrent hash table, so lookups are O(1) and requests with different keys never
+ * wait for each other. The index is backed by the unique idempotency_key column of Transfer: a key that has left the
+ * cache (expired, evicted, restart) or was executed by another instance is found there.<br>
+ * A refused transfer is not remembered, its retry executes again.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class IdempotencyStore {
+	/**
+	 * Default number of remembered keys
+	 */
+	public static final long DEFAULT_MAX_KEYS = 100000L;
+
+	/**
+	 * Default time a key is remembered in memory
+	 */
+	public static final long DEFAULT_TTL_SECONDS = 3600L;
+
+	private final ITransferRepository transferRepository;
+	private final ConcurrentMap<String, CompletableFuture<Transfer>> transfers;
+	private final LongAdder replays = new LongAdder();
+
+	@Autowired
+	public IdempotencyStore(ITransferRepository transferRepository,
+			@Value("${transfer.idempotency.max-keys:" + DEFAULT_MAX_KEYS + "}") long maxKeys,
+			@Value("${transfer.idempotency.ttl-seconds:" + DEFAULT_TTL_SECONDS + "}") long ttlSeconds) {
+		super();
+		this.transferRepository = transferRepository;
+		this.transfers = Caffeine.newBuilder().maximumSize(maxKeys).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.<String, CompletableFuture<Transfer>>build().asMap();
+	}
+
+	/**
+	 * Executes a transfer at most once per idempotency key
+	 * @param transfer executes the transfer, storing the key with it
+	 * @return the Transfer executed for the key, now or by an earlier request
+	 * @throws TransferServiceException when the key is malformed, was used for another transfer, or the transfer is
+	 * refused
+	 */
+	public Transfer execute(String idempotencyKey, long sourceAccountId, long destinationAccountId, long amountCents,
+			Supplier<Transfer> transfer) throws TransferServiceException {
+		if (idempotencyKey.isEmpty() || idempotencyKey.length() > Transfer.IDEMPOTENCY_KEY_MAX_LENGTH) {
+			throw new TransferServiceException(
+					"Idempotency key must have between 1 and " + Transfer.IDEMPOTENCY_KEY_MAX_LENGTH + " characters");
+		}
+
+		CompletableFuture<Transfer> future = new CompletableFuture<>();
+		CompletableFuture<Transfer> executed = this.transfers.putIfAbsent(idempotencyKey, future);
+		if (executed != null) {
+			this.replays.increment();
+			return checkSameTransfer(join(executed), sourceAccountId, destinationAccountId, amountCents);
+		}
+
+		try {
+			Transfer stored = this.transferRepository.findByIdempotencyKey(idempotencyKey);
+			if (stored != null) {
+				this.replays.increment();
+			}
+			future.complete(stored != null ? stored : transfer.get());
+		} catch (RuntimeException e) {
+			// the unique key may have been taken by another instance in the meantime
+			Transfer stored = this.findQuietly(idempotencyKey);
+			if (stored == null) {
+				this.transfers.remove(idempotencyKey, future);
+				future.completeExceptionally(e);
+				throw e;
+			}
+			this.replays.increment();
+			future.complete(stored);
+		}
+
+		return checkSameTransfer(future.join(), sourceAccountId, destinationAccountId, amountCents);
+	}
+
+	/**
+	 * @return number of requests answered with the Transfer of an earlier request
+	 */
+	public long getReplays() {
+		return this.replays.sum();
+	}
+
+	private Transfer findQuietly(String idempotencyKey) {
+		try {
+			return this.transferRepository.findByIdempotencyKey(idempotencyKey);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static Transfer join(CompletableFuture<Transfer> executed) {
+		try {
+			return executed.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof TransferServiceException) {
+				throw (TransferServiceException) e.getCause();
+			}
+			throw new TransferServiceException(e.getCause());
+		}
+	}
+
+	private static Transfer checkSameTransfer(Transfer transfer, long sourceAccountId, long destinationAccountId,
+			long amountCents) throws TransferServiceException {
+		if (transfer.getSourceAccountId() != sourceAccountId || transfer.getDestinationAccountId() != destinationAccountId
+				|| transfer.getAmountCents() != amountCents) {
+			throw new TransferServiceException("Idempotency key was already used for another transfer");
+		}
+		return transfer;
+	}
+}
@@ -0,0 +1,22 @@
+package com.nat.transfer.configuration;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.nat.transfer.metrics.RequestLatencyFilter;
+import com.nat.transfer.metrics.TransferMetrics;
+
+@Configuration // Registers the request latency filter of the REST API
+public class MetricsConfiguration {
+	public MetricsConfiguration() {
+		super();
+	}
+
+	@Bean
+	public FilterRegistrationBean requestLatencyFilter(TransferMetrics metrics) {
+		FilterRegistrationBean registration = new FilterRegistrationBean(new RequestLatencyFilter(metrics));
+		registration.addUrlPatterns("/api/*");
+		return registration;
+	}
+}
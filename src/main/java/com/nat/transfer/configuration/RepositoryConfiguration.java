@@ -12,6 +12,12 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 @EnableJpaRepositories(basePackages = {"com.nat.transfer.repositories"}) // Locate our repositories
 @EnableTransactionManagement // Enables Spring Boot annotated transaction management
 public class RepositoryConfiguration {
+	/**
+	 * Spring profile enabling the Hibernate second-level cache of Account and the findByName query cache, see
+	 * application-second-level-cache.properties
+	 */
+	public static final String SECOND_LEVEL_CACHE_PROFILE = "second-level-cache";
+
 	public RepositoryConfiguration() {
 		super();
 	}
@@ -0,0 +1,129 @@
+package com.nat.transfer.controller;
+
+import org.springframework.http.ResponseEntity;
+
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.dto.ApiError;
+
+/**
+ * Parser of the decimal amounts received as request parameters.<br>
+ * One pass over the characters checks the sign, the number of fraction digits and the range, and accumulates the
+ * amount in cents (see Money). Nothing is allocated: malformed input is reported with a negative error code, whose
+ * 400 response is built once, instead of a NumberFormatException.
+ *
+ * @author jyotirmani
+ */
+public final class AmountParser {
+	/**
+	 * Empty input, or input that is not a plain decimal number
+	 */
+	public static final long INVALID_FORMAT = -1L;
+	/**
+	 * More fraction digits than Money.SCALE
+	 */
+	public static final long TOO_MANY_DECIMALS = -2L;
+	/**
+	 * Amount in cents does not fit a long
+	 */
+	public static final long OUT_OF_RANGE = -3L;
+	/**
+	 * Amount with a minus sign
+	 */
+	public static final long NEGATIVE = -4L;
+
+	private static final ResponseEntity<Object>[] ERROR_RESPONSES = errorResponses(
+			"Amount is not a valid decimal number",
+			"Amount cannot have more than " + Money.SCALE + " decimal places",
+			"Amount is out of range",
+			"Amount cannot be negative");
+
+	private AmountParser() {
+		super();
+	}
+
+	/**
+	 * Parses an amount in euros such as "100", "+12.5" or "0.99". Exponents, grouping separators and blanks are
+	 * rejected.
+	 * @return the amount in cents, or one of the negative error codes of this class
+	 */
+	public static long parseCents(CharSequence text) {
+		if (text == null || text.length() == 0) {
+			return INVALID_FORMAT;
+		}
+
+		int length = text.length();
+		int index = 0;
+		char first = text.charAt(0);
+		boolean negative = first == '-';
+		if (negative || first == '+') {
+			index++;
+		}
+
+		long cents = 0L;
+		int digits = 0;
+		// -1 until the decimal point has been read
+		int fractionDigits = -1;
+		for (; index < length; index++) {
+			char c = text.charAt(index);
+			if (c == '.') {
+				if (fractionDigits >= 0) {
+					return INVALID_FORMAT;
+				}
+				fractionDigits = 0;
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				return INVALID_FORMAT;
+			}
+			if (fractionDigits >= Money.SCALE) {
+				// trailing zeros are accepted, as Money.toCents does for "12.500"
+				if (c != '0') {
+					return TOO_MANY_DECIMALS;
+				}
+				continue;
+			}
+			if (fractionDigits >= 0) {
+				fractionDigits++;
+			}
+
+			int digit = c - '0';
+			if (cents > (Long.MAX_VALUE - digit) / 10L) {
+				return OUT_OF_RANGE;
+			}
+			cents = cents * 10L + digit;
+			digits++;
+		}
+
+		if (digits == 0) {
+			return INVALID_FORMAT;
+		}
+		if (negative) {
+			return NEGATIVE;
+		}
+
+		// scale up the missing fraction digits: "12" and "12.5" are 1200 and 1250 cents
+		for (int scale = Math.max(fractionDigits, 0); scale < Money.SCALE; scale++) {
+			if (cents > Long.MAX_VALUE / 10L) {
+				return OUT_OF_RANGE;
+			}
+			cents *= 10L;
+		}
+		return cents;
+	}
+
+	/**
+	 * @return the preallocated 400 response of an error code returned by {@link #parseCents(CharSequence)}
+	 */
+	public static ResponseEntity<Object> errorResponse(long errorCode) {
+		return ERROR_RESPONSES[(int) -errorCode - 1];
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ResponseEntity<Object>[] errorResponses(String... messages) {
+		ResponseEntity<Object>[] responses = new ResponseEntity[messages.length];
+		for (int i = 0; i < messages.length; i++) {
+			responses[i] = ResponseEntity.badRequest().body(new ApiError(messages[i]));
+		}
+		return responses;
+	}
+}
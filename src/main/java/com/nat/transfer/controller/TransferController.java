@@ -1,48 +1,388 @@
 package com.nat.transfer.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nat.transfer.reconciliation.ReconciliationEngine;
+import com.nat.transfer.service.AdmissionLimiter;
+import com.nat.transfer.service.BalanceSnapshotter;
+import com.nat.transfer.service.BatchMode;
+import com.nat.transfer.service.HoldService;
+import com.nat.transfer.service.TransferExecutor;
+import com.nat.transfer.service.TransferScheduler;
 import com.nat.transfer.service.TransferService;
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.nat.transfer.cache.AccountCache;
 import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Hold;
+import com.nat.transfer.domain.ScheduledTransfer;
 import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.dto.TransferLeg;
+import com.nat.transfer.dto.TransferRequest;
+import com.nat.transfer.dto.AccountBalance;
+import com.nat.transfer.dto.AdmissionStatistics;
+import com.nat.transfer.dto.ApiError;
+import com.nat.transfer.dto.CacheStatistics;
+import com.nat.transfer.dto.ExecutorStatistics;
+import com.nat.transfer.dto.MetricsSnapshot;
+import com.nat.transfer.dto.ReconciliationReport;
+import com.nat.transfer.dto.TransferResult;
+import com.nat.transfer.exception.OverloadedException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
 
 @RestController
 @RequestMapping("/api")
 public class TransferController {
+	/**
+	 * Media type of the ledger export, one JSON Transfer per line
+	 */
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+	/**
+	 * Optional request header making a transfer request safe to retry
+	 */
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
 	private final TransferService transferService;
+	private final HoldService holdService;
+	private final TransferMetrics metrics;
+	private final AccountCache accountCache;
+	private final TransferExecutor transferExecutor;
+	private final AdmissionLimiter admissionLimiter;
+	private final TransferScheduler transferScheduler;
+	private final BalanceSnapshotter balanceSnapshotter;
+	private final ReconciliationEngine reconciliationEngine;
+	private final ObjectMapper objectMapper;
 
 	@Autowired
-	public TransferController(TransferService transferService) {
+	public TransferController(TransferService transferService, HoldService holdService, TransferMetrics metrics,
+			AccountCache accountCache, TransferExecutor transferExecutor, AdmissionLimiter admissionLimiter,
+			TransferScheduler transferScheduler, BalanceSnapshotter balanceSnapshotter,
+			ReconciliationEngine reconciliationEngine, ObjectMapper objectMapper) {
 		this.transferService = transferService;
+		this.holdService = holdService;
+		this.metrics = metrics;
+		this.accountCache = accountCache;
+		this.transferExecutor = transferExecutor;
+		this.admissionLimiter = admissionLimiter;
+		this.transferScheduler = transferScheduler;
+		this.balanceSnapshotter = balanceSnapshotter;
+		this.reconciliationEngine = reconciliationEngine;
+		this.objectMapper = objectMapper;
 	}
 
 	@RequestMapping(value = "/accounts", method = RequestMethod.GET)
-	public Iterable<Account>accounts() {
-		return this.transferService.findAllAccounts();
+	public List<Account> accounts(@RequestParam(defaultValue = "0") long after, @RequestParam(required = false) Integer limit) {
+		return this.transferService.findAccounts(after, limit);
+	}
+
+	@RequestMapping(value = "/accounts/{id}", method = RequestMethod.GET)
+	public ResponseEntity<Account> account(@PathVariable long id) {
+		Account account = this.transferService.findAccount(id);
+		return account == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(account);
+	}
+
+	@RequestMapping(value = "/accounts/search", method = RequestMethod.GET)
+	public ResponseEntity<Account> accountByName(@RequestParam String name) {
+		Account account = this.transferService.findAccountByName(name);
+		return account == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(account);
+	}
+
+	/**
+	 * Spreads the credits of a much used account over slot sub-balances
+	 */
+	@RequestMapping(value = "/accounts/{id}/hot", method = RequestMethod.PUT)
+	public ResponseEntity<Account> makeHotAccount(@PathVariable long id, @RequestParam int slots) {
+		this.transferService.makeHotAccount(id, slots);
+		return ResponseEntity.ok(this.transferService.findAccount(id));
+	}
+
+	/**
+	 * Balance of the account at a time, an ISO-8601 date and time with offset (now when absent)
+	 */
+	@RequestMapping(value = "/accounts/{id}/balance", method = RequestMethod.GET)
+	public ResponseEntity<Object> balanceAt(@PathVariable long id, @RequestParam(required = false) String at) {
+		long atMillis;
+		try {
+			atMillis = at == null ? System.currentTimeMillis() : epochMillis(at);
+		} catch (DateTimeParseException | ArithmeticException e) {
+			return invalidDateTime("at");
+		}
+
+		if (this.transferService.findAccount(id) == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(new AccountBalance(id, atMillis, this.balanceSnapshotter.balanceCentsAt(id, atMillis)));
+	}
+
+	/**
+	 * Keyset page of the transfers debiting or crediting the account, in execution time order.<br>
+	 * from (inclusive) and to (exclusive) are ISO-8601 dates and times with offset, such as 2024-01-31T09:00:00Z.
+	 * after is the id of the last transfer of the previous page.
+	 */
+	@RequestMapping(value = "/accounts/{id}/transfers", method = RequestMethod.GET)
+	public ResponseEntity<Object> accountTransfers(@PathVariable long id, @RequestParam(required = false) String from,
+			@RequestParam(required = false) String to, @RequestParam(defaultValue = "0") long after,
+			@RequestParam(required = false) Integer limit) {
+		long fromMillis;
+		long toMillis;
+		try {
+			fromMillis = from == null ? Long.MIN_VALUE : epochMillis(from);
+			toMillis = to == null ? Long.MAX_VALUE : epochMillis(to);
+		} catch (DateTimeParseException | ArithmeticException e) {
+			return invalidDateTime("from or to");
+		}
+
+		if (this.transferService.findAccount(id) == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(this.transferService.findAccountTransfers(id, fromMillis, toMillis, after, limit));
 	}
 
 	@RequestMapping(value = "/transfers", method = RequestMethod.GET)
-	public Iterable<Transfer>transfers() {
-		return this.transferService.findAllTransfers();
+	public List<Transfer> transfers(@RequestParam(defaultValue = "0") long after, @RequestParam(required = false) Integer limit) {
+		return this.transferService.findTransfers(after, limit);
 	}
 
+	/**
+	 * Streams the whole Transfer ledger as newline delimited JSON, straight from a database cursor to the socket
+	 */
+	@RequestMapping(value = "/transfers/export", method = RequestMethod.GET, produces = NDJSON_MEDIA_TYPE)
+	public void exportTransfers(HttpServletResponse response) throws IOException {
+		response.setContentType(NDJSON_MEDIA_TYPE);
+
+		try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			// lines are separated by the newline written after each transfer only
+			generator.setRootValueSeparator(null);
+			this.transferService.exportTransfers(transfer -> {
+				try {
+					generator.writeObject(transfer);
+					generator.writeRaw('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Asynchronous: the request thread is released once the account creation is queued on the TransferExecutor.
+	 * Refused with 429 Too Many Requests and a Retry-After header when the AdmissionLimiter is saturated.
+	 */
 	@RequestMapping(value = "/accounts/new", method = RequestMethod.PUT)
-	public Account newAccount(@RequestParam String name, @RequestParam String initialBalance) {
-		BigDecimal value = new BigDecimal(initialBalance);
-		
-		return this.transferService.createNewAccount(name, value);
+	public CompletableFuture<ResponseEntity<Object>> newAccount(@RequestParam String name, @RequestParam String initialBalance) {
+		long initialBalanceCents = AmountParser.parseCents(initialBalance);
+		if (initialBalanceCents < 0L) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			return CompletableFuture.completedFuture(AmountParser.errorResponse(initialBalanceCents));
+		}
+
+		return ok(this.admissionLimiter.submit(() -> this.transferService.createNewAccountAsync(name, initialBalanceCents)));
 	}
 
+	/**
+	 * Asynchronous: the request thread is released once the transfer is queued, the response is written when it has
+	 * been executed. Refused with 429 Too Many Requests and a Retry-After header when the AdmissionLimiter is
+	 * saturated.<br>
+	 * A request retried with the Idempotency-Key of an executed transfer gets that transfer back, nothing is executed
+	 */
 	@RequestMapping(value = "/accounts/transfer", method = RequestMethod.PUT)
-	public Transfer newAccount(@RequestParam Long sourceId, @RequestParam Long destId, @RequestParam String amount) {
-		BigDecimal value = new BigDecimal(amount);
-		
-		return this.transferService.transfer(sourceId,  destId,  value);
+	public CompletableFuture<ResponseEntity<Object>> newAccount(@RequestParam Long sourceId, @RequestParam Long destId,
+			@RequestParam String amount, @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		long amountCents = AmountParser.parseCents(amount);
+		if (amountCents < 0L) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			return CompletableFuture.completedFuture(AmountParser.errorResponse(amountCents));
+		}
+
+		return ok(this.admissionLimiter
+				.submit(() -> this.transferService.transferAsync(sourceId, destId, amountCents, idempotencyKey)));
+	}
+
+	/**
+	 * Report of the last ledger reconciliation
+	 */
+	@RequestMapping(value = "/reconciliation", method = RequestMethod.GET)
+	public ResponseEntity<ReconciliationReport> reconciliation() {
+		ReconciliationReport report = this.reconciliationEngine.getLastReport();
+		return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+	}
+
+	/**
+	 * Reconciles the ledger now, from the last checkpoint, and returns the report
+	 */
+	@RequestMapping(value = "/reconciliation", method = RequestMethod.POST)
+	public ReconciliationReport reconcile() {
+		return this.reconciliationEngine.reconcile();
+	}
+
+	/**
+	 * Latencies recorded since the previous call, and rejection totals
+	 */
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET)
+	public MetricsSnapshot metrics() {
+		return this.metrics.snapshot();
+	}
+
+	@RequestMapping(value = "/metrics/account-cache", method = RequestMethod.GET)
+	public CacheStatistics accountCacheMetrics() {
+		return this.accountCache.getStatistics();
+	}
+
+	@RequestMapping(value = "/metrics/admission", method = RequestMethod.GET)
+	public AdmissionStatistics admissionMetrics() {
+		return this.admissionLimiter.getStatistics();
+	}
+
+	@RequestMapping(value = "/metrics/transfer-executor", method = RequestMethod.GET)
+	public ExecutorStatistics transferExecutorMetrics() {
+		return this.transferExecutor.getStatistics();
+	}
+
+	/**
+	 * One debit of the source Account fanned out to several credits, in one transaction: every leg or none is executed
+	 */
+	@RequestMapping(value = "/transfers/multi", method = RequestMethod.POST)
+	public List<Transfer> multiTransfer(@RequestParam long sourceId, @RequestBody List<TransferLeg> legs) {
+		return this.transferService.multiTransfer(sourceId, legs);
+	}
+
+	/**
+	 * Schedules a transfer executed by the TransferScheduler at executionTime, an ISO-8601 date and time with offset
+	 * such as 2024-01-31T09:00:00Z. A past execution time is executed at once.
+	 */
+	@RequestMapping(value = "/transfers/scheduled", method = RequestMethod.POST)
+	public ResponseEntity<Object> scheduleTransfer(@RequestParam long sourceId, @RequestParam long destId,
+			@RequestParam String amount, @RequestParam String executionTime) {
+		long amountCents = AmountParser.parseCents(amount);
+		if (amountCents < 0L) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			return AmountParser.errorResponse(amountCents);
+		}
+
+		long executionTimeMillis;
+		try {
+			executionTimeMillis = epochMillis(executionTime);
+		} catch (DateTimeParseException | ArithmeticException e) {
+			return invalidDateTime("Execution time");
+		}
+
+		return ResponseEntity.ok(this.transferScheduler.schedule(sourceId, destId, amountCents, executionTimeMillis));
+	}
+
+	@RequestMapping(value = "/transfers/scheduled/{id}", method = RequestMethod.GET)
+	public ResponseEntity<ScheduledTransfer> scheduledTransfer(@PathVariable long id) {
+		ScheduledTransfer transfer = this.transferScheduler.findScheduledTransfer(id);
+		return transfer == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(transfer);
+	}
+
+	/**
+	 * Reserves funds of the account until they are captured or released, or until ttlSeconds have passed
+	 */
+	@RequestMapping(value = "/accounts/{id}/holds", method = RequestMethod.POST)
+	public ResponseEntity<Object> reserve(@PathVariable long id, @RequestParam String amount,
+			@RequestParam(required = false) Long ttlSeconds) {
+		long amountCents = AmountParser.parseCents(amount);
+		if (amountCents < 0L) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			return AmountParser.errorResponse(amountCents);
+		}
+
+		return ResponseEntity.ok(this.holdService.reserve(id, amountCents, ttlSeconds));
+	}
+
+	@RequestMapping(value = "/holds/{id}", method = RequestMethod.GET)
+	public ResponseEntity<Hold> hold(@PathVariable long id) {
+		Hold hold = this.holdService.findHold(id);
+		return hold == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(hold);
+	}
+
+	/**
+	 * Transfers the held funds, or part of them (amount), to the destination account, and releases the rest
+	 */
+	@RequestMapping(value = "/holds/{id}/capture", method = RequestMethod.POST)
+	public ResponseEntity<Object> captureHold(@PathVariable long id, @RequestParam long destId,
+			@RequestParam(required = false) String amount) {
+		Long amountCents = null;
+		if (amount != null) {
+			amountCents = AmountParser.parseCents(amount);
+			if (amountCents < 0L) {
+				this.metrics.reject(Rejection.INVALID_AMOUNT);
+				return AmountParser.errorResponse(amountCents);
+			}
+		}
+
+		return ResponseEntity.ok(this.holdService.captureHold(id, destId, amountCents));
+	}
+
+	@RequestMapping(value = "/holds/{id}/release", method = RequestMethod.POST)
+	public Hold releaseHold(@PathVariable long id) {
+		return this.holdService.releaseHold(id);
+	}
+
+	@RequestMapping(value = "/transfers/batch", method = RequestMethod.POST)
+	public List<TransferResult> batchTransfer(@RequestBody List<TransferRequest> transfers,
+			@RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode) {
+		return this.transferService.batchTransfer(transfers, mode);
+	}
+
+	/**
+	 * Helper method answering the result of a future with 200 OK, or 429 Too Many Requests when it was refused as
+	 * overloaded. Any other failure fails the response with the exception that failed the future, as a synchronous
+	 * call would have thrown it.
+	 */
+	private static <T> CompletableFuture<ResponseEntity<Object>> ok(CompletableFuture<T> future) {
+		CompletableFuture<ResponseEntity<Object>> response = new CompletableFuture<>();
+		future.whenComplete((body, failure) -> {
+			Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+					: failure;
+			if (cause == null) {
+				response.complete(ResponseEntity.ok(body));
+			} else if (cause instanceof OverloadedException) {
+				response.complete(tooManyRequests((OverloadedException) cause));
+			} else {
+				response.completeExceptionally(cause);
+			}
+		});
+		return response;
+	}
+
+	/**
+	 * @return the epoch milliseconds of an ISO-8601 date and time with offset
+	 */
+	private static long epochMillis(String dateTime) throws DateTimeParseException, ArithmeticException {
+		return OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+	}
+
+	private static ResponseEntity<Object> invalidDateTime(String parameter) {
+		return ResponseEntity.badRequest().body(new ApiError(parameter + " is not an ISO-8601 date and time with offset"));
+	}
+
+	private static ResponseEntity<Object> tooManyRequests(OverloadedException e) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds())).body(new ApiError(e.getMessage()));
 	}
 }
@@ -3,6 +3,7 @@ package com.nat.transfer.domain;
 import java.math.BigDecimal;
 import java.util.Optional;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -12,14 +13,24 @@ import javax.persistence.Version;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.nat.transfer.exception.EntityCreationException;
 
 /**
- * This class represents the Account entity of this application Domain Model
+ * This class represents the Account entity of this application Domain Model.<br>
+ * The balance is kept in cents (see Money), the BigDecimal accessors are the API representation.<br>
+ * The balance includes the funds reserved by the active Holds, whose running total is kept in heldCents: only the
+ * available balance (balance - held) can be transferred or reserved, and checking it costs no Hold read.<br>
+ * Accounts are second-level cacheable, the cache itself is only enabled by the second-level-cache profile.
  * 
  * @author jyotirmani
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Account {
     @Id @GeneratedValue(strategy = GenerationType.AUTO) // primary key
     private Long id;
@@ -31,10 +42,13 @@ public class Account {
     @NotNull // validation constraint
     private String name;
     
-    @Column(nullable=false)
-    @NotNull // validation constraint
+    @Column(name="balance_cents", nullable=false)
     @Min (value=0L, message="Account balance cannot be negative")
-	private BigDecimal balance;
+	private long balanceCents;
+
+	@Column(name="held_cents", nullable=false, columnDefinition="bigint default 0")
+	@Min (value=0L, message="Account held balance cannot be negative")
+	private long heldCents;
 
 	/**
 	 * Account default constructor - JPA usage
@@ -50,13 +64,23 @@ public class Account {
 	 * @throws EntityCreationException 
 	 */
 	public Account(String name, BigDecimal initialBalance) throws EntityCreationException {
+		this(name, Money.toCents(initialBalance));
+	}
+
+	/**
+	 * Account utility constructor with an initial balance in cents
+	 * @param name
+	 * @param initialBalanceCents
+	 * @throws EntityCreationException 
+	 */
+	public Account(String name, long initialBalanceCents) throws EntityCreationException {
 		// class' default constructor
 		this();
 		
-		this.validateBeforeCreation(name, initialBalance);
+		this.validateBeforeCreation(name, initialBalanceCents);
 		
 		this.name = name;
-		this.balance = initialBalance;
+		this.balanceCents = initialBalanceCents;
 	}
 
 	public Long getId() {
@@ -84,11 +108,48 @@ public class Account {
 	}
 
 	public BigDecimal getBalance() {
-		return this.balance;
+		return Money.toBigDecimal(this.balanceCents);
 	}
 
 	public void setBalance(BigDecimal balance) {
-		this.balance = balance;
+		this.balanceCents = Money.toCents(balance);
+	}
+
+	@JsonIgnore
+	public long getBalanceCents() {
+		return this.balanceCents;
+	}
+
+	public void setBalanceCents(long balanceCents) {
+		this.balanceCents = balanceCents;
+	}
+
+	/**
+	 * @return the total of the active Holds, included in the balance
+	 */
+	public BigDecimal getHeldBalance() {
+		return Money.toBigDecimal(this.heldCents);
+	}
+
+	/**
+	 * @return the balance that can be transferred or reserved
+	 */
+	public BigDecimal getAvailableBalance() {
+		return Money.toBigDecimal(this.getAvailableCents());
+	}
+
+	@JsonIgnore
+	public long getHeldCents() {
+		return this.heldCents;
+	}
+
+	public void setHeldCents(long heldCents) {
+		this.heldCents = heldCents;
+	}
+
+	@JsonIgnore
+	public long getAvailableCents() {
+		return this.balanceCents - this.heldCents;
 	}
 
 	@Override
@@ -123,12 +184,23 @@ public class Account {
 	}
 
 	public boolean hasEnoughBalanceForTransfer(BigDecimal transferAmount) {
-		return this.balance.subtract(transferAmount).compareTo(BigDecimal.ZERO) >= 0;
+		return this.hasEnoughBalanceForTransfer(Money.toCents(transferAmount));
+	}
+
+	/**
+	 * @return true when the available balance covers the amount
+	 */
+	public boolean hasEnoughBalanceForTransfer(long transferAmountCents) {
+		return this.getAvailableCents() >= transferAmountCents;
 	}
 
 	public boolean subtract(BigDecimal transferAmount) {
-		if (this.hasEnoughBalanceForTransfer(transferAmount)) {
-			this.balance = this.balance.subtract(transferAmount);
+		return this.subtract(Money.toCents(transferAmount));
+	}
+
+	public boolean subtract(long transferAmountCents) {
+		if (this.hasEnoughBalanceForTransfer(transferAmountCents)) {
+			this.balanceCents = Money.subtract(this.balanceCents, transferAmountCents);
 			return true;
 		}
 		
@@ -136,7 +208,37 @@ public class Account {
 	}
 
 	public void add(BigDecimal transferAmount) {
-		this.balance = this.balance.add(transferAmount);
+		this.add(Money.toCents(transferAmount));
+	}
+
+	/**
+	 * @throws ArithmeticException when the balance would overflow, the balance is then unchanged
+	 */
+	public void add(long transferAmountCents) {
+		this.balanceCents = Money.add(this.balanceCents, transferAmountCents);
+	}
+
+	/**
+	 * Reserves an amount of the available balance, the balance itself is unchanged
+	 * @return false when the available balance does not cover it, nothing is then reserved
+	 */
+	public boolean hold(long amountCents) {
+		if (this.hasEnoughBalanceForTransfer(amountCents)) {
+			this.heldCents += amountCents;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Makes a reserved amount available again
+	 */
+	public void release(long amountCents) {
+		if (amountCents > this.heldCents) {
+			throw new IllegalStateException("Account cannot release more than its held balance");
+		}
+		this.heldCents -= amountCents;
 	}
 
 	/**
@@ -144,15 +246,14 @@ public class Account {
 	 * @param name the account name
 	 * @param initialBalance the account initial balance
 	 */
-	private void validateBeforeCreation(String name, BigDecimal initialBalance) throws EntityCreationException {
+	private void validateBeforeCreation(String name, long initialBalanceCents) throws EntityCreationException {
 		try {
 			name = Optional.of(name).get().trim();
 			if (name.length() < 1) {
 				throw new EntityCreationException("Account name must be provided");
 			}
 			
-			initialBalance = Optional.of(initialBalance).get();
-			if (initialBalance.compareTo(BigDecimal.ZERO) < 0) {
+			if (initialBalanceCents < 0L) {
 				throw new EntityCreationException("Account initial balance cannot be negative");
 			}
 		} catch (NullPointerException e) {
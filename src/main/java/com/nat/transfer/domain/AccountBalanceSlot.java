@@ -0,0 +1,73 @@
+package com.nat.transfer.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * This class represents one sub-balance of a hot Account, in cents.<br>
+ * Credits to a hot account are spread over its slots so that concurrent credits do not update the same row. The
+ * balance of the account is its own balance plus the balances of its slots, the slots are folded back into the
+ * account balance by consolidation (see HotAccountManager).
+ *
+ * @author jyotirmani
+ */
+@Entity
+@Table(name = "account_balance_slot", uniqueConstraints = @UniqueConstraint(columnNames = {"account_id", "slot"}))
+public class AccountBalanceSlot {
+	@Id @GeneratedValue(strategy = GenerationType.AUTO) // primary key
+	private Long id;
+
+	@Column(name = "account_id", nullable = false)
+	private long accountId;
+
+	@Column(nullable = false)
+	private int slot;
+
+	@Column(name = "balance_cents", nullable = false)
+	private long balanceCents;
+
+	/**
+	 * AccountBalanceSlot default constructor - JPA usage
+	 */
+	protected AccountBalanceSlot() {
+		super();
+	}
+
+	/**
+	 * Creates an empty slot
+	 */
+	public AccountBalanceSlot(long accountId, int slot) {
+		this();
+		this.accountId = accountId;
+		this.slot = slot;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public long getAccountId() {
+		return this.accountId;
+	}
+
+	public int getSlot() {
+		return this.slot;
+	}
+
+	public long getBalanceCents() {
+		return this.balanceCents;
+	}
+
+	public void setBalanceCents(long balanceCents) {
+		this.balanceCents = balanceCents;
+	}
+}
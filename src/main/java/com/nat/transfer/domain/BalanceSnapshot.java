@@ -0,0 +1,91 @@
+package com.nat.transfer.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * This class represents the balance of an Account at a point in time.<br>
+ * Written when the account is opened, then periodically by the BalanceSnapshotter for the accounts changed by
+ * transfers. Its balance includes every Transfer executed up to its time (executed_at &lt;= taken_at). The
+ * (account_id, taken_at) index finds the snapshot nearest to a time with one index lookup.
+ *
+ * @author jyotirmani
+ */
+@Entity
+@Table(name = "balance_snapshot", indexes = @Index(name = "balance_snapshot_time", columnList = "account_id, taken_at"))
+public class BalanceSnapshot {
+	@Id @GeneratedValue(strategy = GenerationType.AUTO) // primary key
+	private Long id;
+
+	@Column(name = "account_id", nullable = false)
+	private long accountId;
+
+	/**
+	 * Epoch milliseconds
+	 */
+	@Column(name = "taken_at", nullable = false)
+	private long takenAt;
+
+	@Column(name = "balance_cents", nullable = false)
+	private long balanceCents;
+
+	/**
+	 * BalanceSnapshot default constructor - JPA usage
+	 */
+	protected BalanceSnapshot() {
+		super();
+	}
+
+	/**
+	 * @param takenAt epoch milliseconds
+	 */
+	public BalanceSnapshot(long accountId, long takenAt, long balanceCents) {
+		this();
+		this.accountId = accountId;
+		this.takenAt = takenAt;
+		this.balanceCents = balanceCents;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public long getAccountId() {
+		return this.accountId;
+	}
+
+	/**
+	 * @return the snapshot time in ISO-8601 UTC format, e.g. 2024-01-31T09:00:00Z
+	 */
+	public String getTakenAt() {
+		return Instant.ofEpochMilli(this.takenAt).toString();
+	}
+
+	@JsonIgnore
+	public long getTakenAtMillis() {
+		return this.takenAt;
+	}
+
+	public BigDecimal getBalance() {
+		return Money.toBigDecimal(this.balanceCents);
+	}
+
+	@JsonIgnore
+	public long getBalanceCents() {
+		return this.balanceCents;
+	}
+}
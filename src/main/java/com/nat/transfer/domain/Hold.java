@@ -0,0 +1,140 @@
+package com.nat.transfer.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * This class represents funds of an Account reserved until they are captured by a transfer or released.<br>
+ * An ACTIVE hold counts in the held balance of its Account. It ends CAPTURED, with the id of the Transfer that took
+ * the funds, RELEASED, or EXPIRED once its expiry time has passed. The (status, expires_at) index lets the active
+ * holds be loaded in expiry order at startup.
+ *
+ * @author jyotirmani
+ */
+@Entity
+@Table(name = "funds_hold", indexes = @Index(name = "funds_hold_expiry", columnList = "status, expires_at"))
+public class Hold {
+	public enum Status {
+		ACTIVE,
+		CAPTURED,
+		RELEASED,
+		EXPIRED
+	}
+
+	@Id @GeneratedValue(strategy = GenerationType.AUTO) // primary key
+	private Long id;
+
+	@Column(name = "account_id", nullable = false)
+	private long accountId;
+
+	@Column(name = "amount_cents", nullable = false)
+	private long amountCents;
+
+	/**
+	 * Epoch milliseconds
+	 */
+	@Column(name = "expires_at", nullable = false)
+	private long expiresAt;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 8)
+	private Status status;
+
+	@Column(name = "transfer_id")
+	private Long transferId;
+
+	/**
+	 * Hold default constructor - JPA usage
+	 */
+	protected Hold() {
+		super();
+	}
+
+	/**
+	 * Creates an ACTIVE hold
+	 * @param expiresAt epoch milliseconds
+	 */
+	public Hold(long accountId, long amountCents, long expiresAt) {
+		this();
+		this.accountId = accountId;
+		this.amountCents = amountCents;
+		this.expiresAt = expiresAt;
+		this.status = Status.ACTIVE;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public long getAccountId() {
+		return this.accountId;
+	}
+
+	public BigDecimal getAmount() {
+		return Money.toBigDecimal(this.amountCents);
+	}
+
+	@JsonIgnore
+	public long getAmountCents() {
+		return this.amountCents;
+	}
+
+	/**
+	 * @return the expiry time in ISO-8601 UTC format, e.g. 2024-01-31T09:00:00Z
+	 */
+	public String getExpiresAt() {
+		return Instant.ofEpochMilli(this.expiresAt).toString();
+	}
+
+	@JsonIgnore
+	public long getExpiresAtMillis() {
+		return this.expiresAt;
+	}
+
+	public Status getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return the id of the capturing Transfer, null unless CAPTURED
+	 */
+	public Long getTransferId() {
+		return this.transferId;
+	}
+
+	/**
+	 * @return true when the hold is ACTIVE and its expiry time has not passed
+	 */
+	public boolean isActive(long nowMillis) {
+		return this.status == Status.ACTIVE && nowMillis < this.expiresAt;
+	}
+
+	public void captured(long transferId) {
+		this.status = Status.CAPTURED;
+		this.transferId = transferId;
+	}
+
+	public void released() {
+		this.status = Status.RELEASED;
+	}
+
+	public void expired() {
+		this.status = Status.EXPIRED;
+	}
+}
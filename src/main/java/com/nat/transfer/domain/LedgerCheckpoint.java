@@ -0,0 +1,50 @@
+package com.nat.transfer.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * This class records the last journal sequence written to the database by the ledger engine persister.<br>
+ * It is updated in the same transaction as the transfers it covers, so journal records up to it never need a replay.
+ *
+ * @author jyotirmani
+ */
+@Entity
+public class LedgerCheckpoint {
+	/**
+	 * The ledger has a single checkpoint row
+	 */
+	public static final long LEDGER_ID = 1L;
+
+	@Id
+	private Long id;
+
+	@Column(nullable = false)
+	private long sequence;
+
+	/**
+	 * LedgerCheckpoint default constructor - JPA usage
+	 */
+	protected LedgerCheckpoint() {
+		super();
+	}
+
+	public LedgerCheckpoint(long sequence) {
+		this();
+		this.id = LEDGER_ID;
+		this.sequence = sequence;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+}
@@ -0,0 +1,67 @@
+package com.nat.transfer.domain;
+
+import java.math.BigDecimal;
+
+import com.nat.transfer.exception.EntityCreationException;
+
+/**
+ * Helper class for the money representation of this application Domain Model.<br>
+ * Amounts and balances are stored as a long count of euro cents: arithmetic on them allocates nothing and is
+ * overflow-checked. BigDecimal is only used at the API boundary, see {@link #toCents(BigDecimal)} and
+ * {@link #toBigDecimal(long)}.
+ *
+ * @author jyotirmani
+ */
+public final class Money {
+	/**
+	 * Number of fraction digits of an amount in euros
+	 */
+	public static final int SCALE = 2;
+
+	private static final long CENTS_PER_UNIT = 100L;
+
+	private Money() {
+		super();
+	}
+
+	/**
+	 * @return the amount in cents
+	 * @throws EntityCreationException when the amount has more than two fraction digits or does not fit a long
+	 */
+	public static long toCents(BigDecimal amount) throws EntityCreationException {
+		try {
+			return amount.movePointRight(SCALE).longValueExact();
+		} catch (ArithmeticException e) {
+			if (amount.stripTrailingZeros().scale() > SCALE) {
+				throw new EntityCreationException("Amount cannot have more than " + SCALE + " decimal places");
+			}
+			throw new EntityCreationException("Amount is out of range");
+		} catch (NullPointerException e) {
+			throw new EntityCreationException(e);
+		}
+	}
+
+	/**
+	 * @return the amount in euros, without trailing fraction zeros (100 rather than 100.00, 12.5 rather than 12.50)
+	 */
+	public static BigDecimal toBigDecimal(long cents) {
+		if (cents % CENTS_PER_UNIT == 0L) {
+			return BigDecimal.valueOf(cents / CENTS_PER_UNIT);
+		}
+		return cents % 10L == 0L ? BigDecimal.valueOf(cents / 10L, 1) : BigDecimal.valueOf(cents, SCALE);
+	}
+
+	/**
+	 * @throws ArithmeticException when the sum does not fit a long
+	 */
+	public static long add(long cents, long otherCents) {
+		return Math.addExact(cents, otherCents);
+	}
+
+	/**
+	 * @throws ArithmeticException when the difference does not fit a long
+	 */
+	public static long subtract(long cents, long otherCents) {
+		return Math.subtractExact(cents, otherCents);
+	}
+}
@@ -0,0 +1,55 @@
+package com.nat.transfer.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * This class records how far the ReconciliationEngine has reconciled the ledger.<br>
+ * Every account changed by the transfers executed up to reconciledUntil has a BalanceSnapshot at its last change
+ * time or later, so the next reconciliation only reads the transfers executed after it.
+ *
+ * @author jyotirmani
+ */
+@Entity
+@Table(name = "reconciliation_checkpoint")
+public class ReconciliationCheckpoint {
+	/**
+	 * The ledger has a single reconciliation checkpoint row
+	 */
+	public static final long LEDGER_ID = 1L;
+
+	@Id
+	private Long id;
+
+	/**
+	 * Epoch milliseconds
+	 */
+	@Column(name = "reconciled_until", nullable = false)
+	private long reconciledUntil;
+
+	/**
+	 * ReconciliationCheckpoint default constructor - JPA usage
+	 */
+	protected ReconciliationCheckpoint() {
+		super();
+	}
+
+	/**
+	 * @param reconciledUntil epoch milliseconds
+	 */
+	public ReconciliationCheckpoint(long reconciledUntil) {
+		this();
+		this.id = LEDGER_ID;
+		this.reconciledUntil = reconciledUntil;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public long getReconciledUntil() {
+		return this.reconciledUntil;
+	}
+}
@@ -0,0 +1,154 @@
+package com.nat.transfer.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * This class represents a transfer to be executed at a future time.<br>
+ * It stays PENDING until the TransferScheduler executes it at its execution time, then it is EXECUTED, with the id
+ * of the resulting Transfer, or FAILED, with the reason. The (status, execution_time) index lets the scheduler load
+ * the pending transfers of a time range with one range scan.
+ *
+ * @author jyotirmani
+ */
+@Entity
+@Table(name = "scheduled_transfer", indexes = @Index(name = "scheduled_transfer_due", columnList = "status, execution_time"))
+public class ScheduledTransfer {
+	/**
+	 * Longest stored failure reason
+	 */
+	public static final int ERROR_MAX_LENGTH = 255;
+
+	public enum Status {
+		PENDING,
+		EXECUTED,
+		FAILED
+	}
+
+	@Id @GeneratedValue(strategy = GenerationType.AUTO) // primary key
+	private Long id;
+
+	@Column(name = "source_account_id", nullable = false)
+	private long sourceAccountId;
+
+	@Column(name = "destination_account_id", nullable = false)
+	private long destinationAccountId;
+
+	@Column(name = "amount_cents", nullable = false)
+	private long amountCents;
+
+	/**
+	 * Epoch milliseconds
+	 */
+	@Column(name = "execution_time", nullable = false)
+	private long executionTime;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 8)
+	private Status status;
+
+	@Column(name = "transfer_id")
+	private Long transferId;
+
+	@Column(length = ERROR_MAX_LENGTH)
+	private String error;
+
+	/**
+	 * ScheduledTransfer default constructor - JPA usage
+	 */
+	protected ScheduledTransfer() {
+		super();
+	}
+
+	/**
+	 * Creates a PENDING transfer
+	 * @param executionTime epoch milliseconds
+	 */
+	public ScheduledTransfer(long sourceAccountId, long destinationAccountId, long amountCents, long executionTime) {
+		this();
+		this.sourceAccountId = sourceAccountId;
+		this.destinationAccountId = destinationAccountId;
+		this.amountCents = amountCents;
+		this.executionTime = executionTime;
+		this.status = Status.PENDING;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public long getSourceAccountId() {
+		return this.sourceAccountId;
+	}
+
+	public long getDestinationAccountId() {
+		return this.destinationAccountId;
+	}
+
+	public BigDecimal getAmount() {
+		return Money.toBigDecimal(this.amountCents);
+	}
+
+	@JsonIgnore
+	public long getAmountCents() {
+		return this.amountCents;
+	}
+
+	/**
+	 * @return the execution time in ISO-8601 UTC format, e.g. 2024-01-31T09:00:00Z
+	 */
+	public String getExecutionTime() {
+		return Instant.ofEpochMilli(this.executionTime).toString();
+	}
+
+	@JsonIgnore
+	public long getExecutionTimeMillis() {
+		return this.executionTime;
+	}
+
+	public Status getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return the id of the executed Transfer, null unless EXECUTED (and in the LEDGER mode, where transfers are
+	 * answered before they are persisted: the Transfer has the idempotency key scheduled-{id})
+	 */
+	public Long getTransferId() {
+		return this.transferId;
+	}
+
+	/**
+	 * @return the failure reason, null unless FAILED
+	 */
+	public String getError() {
+		return this.error;
+	}
+
+	public void executed(Long transferId) {
+		this.status = Status.EXECUTED;
+		this.transferId = transferId;
+		this.error = null;
+	}
+
+	public void failed(String error) {
+		this.status = Status.FAILED;
+		this.error = error == null || error.length() <= ERROR_MAX_LENGTH ? error : error.substring(0, ERROR_MAX_LENGTH);
+	}
+}
@@ -1,58 +1,106 @@
 package com.nat.transfer.domain;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SecondaryTable;
+import javax.persistence.Table;
 import javax.persistence.Version;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.nat.transfer.exception.EntityCreationException;
 
+/**
+ * This class represents the Transfer entity of this application Domain Model.<br>
+ * The idempotency key is kept in an optional secondary table, which only has rows for the transfers executed with
+ * a key: a unique index over a mostly NULL column of the Transfer table would be checked against every NULL row
+ * by H2 on each insert.<br>
+ * The execution time is stored in epoch milliseconds (executed_at), and the (source_account_id, executed_at, id) and
+ * (destination_account_id, executed_at, id) indexes serve the time range history of an account with range scans,
+ * the executed_at index the accounts changed in a time range.
+ *
+ * @author jyotirmani
+ */
 @Entity
+@Table(indexes = {
+		@Index(name = "transfer_source_time", columnList = "source_account_id, executed_at, id"),
+		@Index(name = "transfer_destination_time", columnList = "destination_account_id, executed_at, id"),
+		@Index(name = "transfer_time", columnList = "executed_at") })
+@SecondaryTable(name = Transfer.IDEMPOTENCY_KEY_TABLE)
+@org.hibernate.annotations.Table(appliesTo = Transfer.IDEMPOTENCY_KEY_TABLE, optional = true)
 public class Transfer {
 	/**
 	 * Timestamp formatter for a transfer Date and Time using yyyyMMdd-HHmmss pattern 
 	 */
 	public static final DateTimeFormatter TRANSFER_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
+	/**
+	 * Longest accepted idempotency key
+	 */
+	public static final int IDEMPOTENCY_KEY_MAX_LENGTH = 64;
+
+	/**
+	 * Secondary table of the idempotency keys
+	 */
+	public static final String IDEMPOTENCY_KEY_TABLE = "transfer_idempotency_key";
+
 	@Id @GeneratedValue(strategy = GenerationType.AUTO) // primary key
     private Long id;
     
     @Version
     private long version;
 
-    @Column(nullable=false)
+    @Column(name="source_account_id", nullable=false)
 	private long sourceAccountId;
 
-    @Column(nullable=false)
+    @Column(name="destination_account_id", nullable=false)
 	private long destinationAccountId;
 
-    @Column(nullable=false)
-	private BigDecimal amount;
+    @Column(name="amount_cents", nullable=false)
+	private long amountCents;
     
     @Column(nullable=false)
     private String isoTimestamp; 
 
+    /**
+     * Epoch milliseconds, the range scannable form of isoTimestamp (zero for transfers persisted before it existed)
+     */
+    @Column(name="executed_at", nullable=false, columnDefinition="bigint default 0")
+    private long executedAt;
+
+    /**
+     * Client chosen key of the request that executed this transfer, unique so that a retried request never executes twice
+     */
+    @Column(name="idempotency_key", table=IDEMPOTENCY_KEY_TABLE, unique=true, length=IDEMPOTENCY_KEY_MAX_LENGTH)
+    private String idempotencyKey;
+
     protected Transfer() {
     	super();
 	}
 
 	public Transfer(long sourceAccountId, long destinationAccountId, BigDecimal transferAmount) {
-		this.validateBeforeCreation(sourceAccountId, destinationAccountId, transferAmount);
+		this(sourceAccountId, destinationAccountId, Money.toCents(transferAmount));
+	}
+
+	public Transfer(long sourceAccountId, long destinationAccountId, long transferAmountCents) {
+		this.validateBeforeCreation(sourceAccountId, destinationAccountId, transferAmountCents);
 		
 		this.sourceAccountId = sourceAccountId;
 		
 		this.destinationAccountId = destinationAccountId;
 		
-		this.amount = transferAmount;
+		this.amountCents = transferAmountCents;
 		
-		this.isoTimestamp = LocalDateTime.now().format(TRANSFER_TIMESTAMP_FORMATTER);
+		this.setExecutedAtMillis(System.currentTimeMillis());
 	}
 
 	public Long getId() {
@@ -88,11 +136,20 @@ public class Transfer {
 	}
 
 	public BigDecimal getAmount() {
-		return this.amount;
+		return Money.toBigDecimal(this.amountCents);
 	}
 
 	public void setAmount(BigDecimal amount) {
-		this.amount = amount;
+		this.amountCents = Money.toCents(amount);
+	}
+
+	@JsonIgnore
+	public long getAmountCents() {
+		return this.amountCents;
+	}
+
+	public void setAmountCents(long amountCents) {
+		this.amountCents = amountCents;
 	}
 
 	public String getTimestamp() {
@@ -103,6 +160,37 @@ public class Transfer {
 		this.isoTimestamp = timestamp;
 	}
 
+	/**
+	 * @return the execution time in ISO-8601 UTC format, e.g. 2024-01-31T09:00:00.123Z
+	 */
+	public String getExecutedAt() {
+		return Instant.ofEpochMilli(this.executedAt).toString();
+	}
+
+	@JsonIgnore
+	public long getExecutedAtMillis() {
+		return this.executedAt;
+	}
+
+	/**
+	 * Sets the execution time, and the timestamp in the local time zone
+	 * @param executedAt epoch milliseconds
+	 */
+	public void setExecutedAtMillis(long executedAt) {
+		this.executedAt = executedAt;
+		this.isoTimestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(executedAt), ZoneId.systemDefault())
+				.format(TRANSFER_TIMESTAMP_FORMATTER);
+	}
+
+	@JsonIgnore
+	public String getIdempotencyKey() {
+		return this.idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -131,18 +219,13 @@ public class Transfer {
 	/**
 	 * Helper method to validate business data before entity creation 
 	 */
-	private void validateBeforeCreation(long sourceAccountId, long destinationAccountId, BigDecimal transferAmount) throws EntityCreationException {
-		try {
-			if (sourceAccountId == destinationAccountId) {
-				throw new EntityCreationException("Source and Destination account cannot be the same");
-			}
-			
-			transferAmount = Optional.of(transferAmount).get();
-			if (transferAmount.compareTo(BigDecimal.ZERO) <= 0) {
-				throw new EntityCreationException("Transfer amount must be greater than zero");
-			}
-		} catch (NullPointerException e) {
-			throw new EntityCreationException(e);
+	private void validateBeforeCreation(long sourceAccountId, long destinationAccountId, long transferAmountCents) throws EntityCreationException {
+		if (sourceAccountId == destinationAccountId) {
+			throw new EntityCreationException("Source and Destination account cannot be the same");
+		}
+		
+		if (transferAmountCents <= 0L) {
+			throw new EntityCreationException("Transfer amount must be greater than zero");
 		}
 	}
 }
@@ -0,0 +1,39 @@
+package com.nat.transfer.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.nat.transfer.domain.Money;
+
+/**
+ * Balance of an account at a point in time
+ *
+ * @author jyotirmani
+ */
+public class AccountBalance {
+	private final long accountId;
+	private final long atMillis;
+	private final long balanceCents;
+
+	public AccountBalance(long accountId, long atMillis, long balanceCents) {
+		super();
+		this.accountId = accountId;
+		this.atMillis = atMillis;
+		this.balanceCents = balanceCents;
+	}
+
+	public long getAccountId() {
+		return this.accountId;
+	}
+
+	/**
+	 * @return the time of the balance in ISO-8601 UTC format, e.g. 2024-01-31T09:00:00Z
+	 */
+	public String getAt() {
+		return Instant.ofEpochMilli(this.atMillis).toString();
+	}
+
+	public BigDecimal getBalance() {
+		return Money.toBigDecimal(this.balanceCents);
+	}
+}
@@ -0,0 +1,41 @@
+package com.nat.transfer.dto;
+
+import java.math.BigDecimal;
+
+import com.nat.transfer.domain.Money;
+
+/**
+ * Account whose stored balance does not match its Transfer history
+ *
+ * @author jyotirmani
+ */
+public class AccountMismatch {
+	private final long accountId;
+	private final long expectedCents;
+	private final long actualCents;
+
+	public AccountMismatch(long accountId, long expectedCents, long actualCents) {
+		super();
+		this.accountId = accountId;
+		this.expectedCents = expectedCents;
+		this.actualCents = actualCents;
+	}
+
+	public long getAccountId() {
+		return this.accountId;
+	}
+
+	/**
+	 * @return the balance given by the opening balance and the transfers of the account
+	 */
+	public BigDecimal getExpectedBalance() {
+		return Money.toBigDecimal(this.expectedCents);
+	}
+
+	/**
+	 * @return the stored balance, including the hot account slots
+	 */
+	public BigDecimal getActualBalance() {
+		return Money.toBigDecimal(this.actualCents);
+	}
+}
@@ -0,0 +1,68 @@
+package com.nat.transfer.dto;
+
+/**
+ * Current state and counters since start of the AdmissionLimiter
+ *
+ * @author jyotirmani
+ */
+public class AdmissionStatistics {
+	private final int limit;
+	private final int inFlight;
+	private final int queued;
+	private final int queueCapacity;
+	private final long admitted;
+	private final long rejected;
+	private final double smoothedLatency;
+
+	public AdmissionStatistics(int limit, int inFlight, int queued, int queueCapacity, long admitted, long rejected,
+			double smoothedLatency) {
+		super();
+		this.limit = limit;
+		this.inFlight = inFlight;
+		this.queued = queued;
+		this.queueCapacity = queueCapacity;
+		this.admitted = admitted;
+		this.rejected = rejected;
+		this.smoothedLatency = smoothedLatency;
+	}
+
+	/**
+	 * @return the current concurrency limit
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	public int getInFlight() {
+		return this.inFlight;
+	}
+
+	/**
+	 * @return the calls waiting for a permit
+	 */
+	public int getQueued() {
+		return this.queued;
+	}
+
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	public long getAdmitted() {
+		return this.admitted;
+	}
+
+	/**
+	 * @return the calls refused with 429 Too Many Requests
+	 */
+	public long getRejected() {
+		return this.rejected;
+	}
+
+	/**
+	 * @return the smoothed latency of the admitted calls, in microseconds
+	 */
+	public double getSmoothedLatency() {
+		return this.smoothedLatency;
+	}
+}
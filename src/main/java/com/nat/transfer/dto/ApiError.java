@@ -0,0 +1,19 @@
+package com.nat.transfer.dto;
+
+/**
+ * Body of an error response of the REST API
+ *
+ * @author jyotirmani
+ */
+public class ApiError {
+	private final String error;
+
+	public ApiError(String error) {
+		super();
+		this.error = error;
+	}
+
+	public String getError() {
+		return this.error;
+	}
+}
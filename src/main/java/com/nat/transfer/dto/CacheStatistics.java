@@ -0,0 +1,49 @@
+package com.nat.transfer.dto;
+
+/**
+ * Counters of a cache since start
+ *
+ * @author jyotirmani
+ */
+public class CacheStatistics {
+	private final long size;
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final double hitRate;
+
+	public CacheStatistics(long size, long hits, long misses, long evictions, double hitRate) {
+		super();
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.hitRate = hitRate;
+	}
+
+	/**
+	 * @return the approximate number of entries
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * @return the entries evicted by the size bound, invalidations are not counted
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	public double getHitRate() {
+		return this.hitRate;
+	}
+}
@@ -0,0 +1,62 @@
+package com.nat.transfer.dto;
+
+/**
+ * Current state and counters since start of a bounded executor
+ *
+ * @author jyotirmani
+ */
+public class ExecutorStatistics {
+	private final int threads;
+	private final int activeThreads;
+	private final int queued;
+	private final int queueCapacity;
+	private final long completed;
+	private final long rejected;
+
+	public ExecutorStatistics(int threads, int activeThreads, int queued, int queueCapacity, long completed,
+			long rejected) {
+		super();
+		this.threads = threads;
+		this.activeThreads = activeThreads;
+		this.queued = queued;
+		this.queueCapacity = queueCapacity;
+		this.completed = completed;
+		this.rejected = rejected;
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * @return the approximate number of threads running a call
+	 */
+	public int getActiveThreads() {
+		return this.activeThreads;
+	}
+
+	/**
+	 * @return the calls waiting for a thread
+	 */
+	public int getQueued() {
+		return this.queued;
+	}
+
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	/**
+	 * @return the approximate number of completed calls
+	 */
+	public long getCompleted() {
+		return this.completed;
+	}
+
+	/**
+	 * @return the calls refused because the queue was full
+	 */
+	public long getRejected() {
+		return this.rejected;
+	}
+}
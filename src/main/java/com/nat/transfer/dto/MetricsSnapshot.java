@@ -0,0 +1,116 @@
+package com.nat.transfer.dto;
+
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Interval report of TransferMetrics: latencies in microseconds per stage, rejection totals per reason
+ *
+ * @author jyotirmani
+ */
+public class MetricsSnapshot {
+
+	/**
+	 * Latency distribution of one stage over the interval
+	 */
+	public static class Latency {
+		private static final double NANOS_PER_MICRO = 1000.0;
+
+		private final long count;
+		private final double mean;
+		private final double p50;
+		private final double p90;
+		private final double p99;
+		private final double p999;
+		private final double max;
+
+		private Latency(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+			super();
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+
+		/**
+		 * @param histogram values in nanoseconds
+		 */
+		public static Latency of(Histogram histogram) {
+			return new Latency(histogram.getTotalCount(),
+					histogram.getMean() / NANOS_PER_MICRO,
+					histogram.getValueAtPercentile(50.0) / NANOS_PER_MICRO,
+					histogram.getValueAtPercentile(90.0) / NANOS_PER_MICRO,
+					histogram.getValueAtPercentile(99.0) / NANOS_PER_MICRO,
+					histogram.getValueAtPercentile(99.9) / NANOS_PER_MICRO,
+					histogram.getMaxValue() / NANOS_PER_MICRO);
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public double getMean() {
+			return this.mean;
+		}
+
+		public double getP50() {
+			return this.p50;
+		}
+
+		public double getP90() {
+			return this.p90;
+		}
+
+		public double getP99() {
+			return this.p99;
+		}
+
+		public double getP999() {
+			return this.p999;
+		}
+
+		public double getMax() {
+			return this.max;
+		}
+	}
+
+	private final long intervalStart;
+	private final long intervalEnd;
+	private final Map<String, Latency> latencies;
+	private final Map<String, Long> rejections;
+
+	public MetricsSnapshot(long intervalStart, long intervalEnd, Map<String, Latency> latencies,
+			Map<String, Long> rejections) {
+		super();
+		this.intervalStart = intervalStart;
+		this.intervalEnd = intervalEnd;
+		this.latencies = latencies;
+		this.rejections = rejections;
+	}
+
+	/**
+	 * @return start of the interval, in epoch milliseconds
+	 */
+	public long getIntervalStart() {
+		return this.intervalStart;
+	}
+
+	/**
+	 * @return end of the interval, in epoch milliseconds
+	 */
+	public long getIntervalEnd() {
+		return this.intervalEnd;
+	}
+
+	public Map<String, Latency> getLatencies() {
+		return this.latencies;
+	}
+
+	public Map<String, Long> getRejections() {
+		return this.rejections;
+	}
+}
@@ -0,0 +1,120 @@
+package com.nat.transfer.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import com.nat.transfer.domain.Money;
+
+/**
+ * Outcome of a ledger reconciliation
+ *
+ * @author jyotirmani
+ */
+public class ReconciliationReport {
+	private final boolean full;
+	private final long reconciledUntil;
+	private final int partitions;
+	private final long accounts;
+	private final long unverifiedAccounts;
+	private final long transfers;
+	private final long openingCents;
+	private final long netTransferCents;
+	private final long balanceCents;
+	private final List<AccountMismatch> mismatches;
+	private final long elapsedMillis;
+
+	public ReconciliationReport(boolean full, long reconciledUntil, int partitions, long accounts,
+			long unverifiedAccounts, long transfers, long openingCents, long netTransferCents, long balanceCents,
+			List<AccountMismatch> mismatches, long elapsedMillis) {
+		super();
+		this.full = full;
+		this.reconciledUntil = reconciledUntil;
+		this.partitions = partitions;
+		this.accounts = accounts;
+		this.unverifiedAccounts = unverifiedAccounts;
+		this.transfers = transfers;
+		this.openingCents = openingCents;
+		this.netTransferCents = netTransferCents;
+		this.balanceCents = balanceCents;
+		this.mismatches = mismatches;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return true when the whole history was read, false when only the transfers since the previous checkpoint were
+	 */
+	public boolean isFull() {
+		return this.full;
+	}
+
+	/**
+	 * @return the new checkpoint in ISO-8601 UTC format, the transfers executed up to it are reconciled
+	 */
+	public String getReconciledUntil() {
+		return Instant.ofEpochMilli(this.reconciledUntil).toString();
+	}
+
+	public int getPartitions() {
+		return this.partitions;
+	}
+
+	/**
+	 * @return the accounts checked against their transfers
+	 */
+	public long getAccounts() {
+		return this.accounts;
+	}
+
+	/**
+	 * @return the accounts without any balance snapshot to start from, not checked
+	 */
+	public long getUnverifiedAccounts() {
+		return this.unverifiedAccounts;
+	}
+
+	/**
+	 * @return the debit and credit rows read
+	 */
+	public long getTransfers() {
+		return this.transfers;
+	}
+
+	/**
+	 * @return the sum of the balances the checked accounts started from (their opening balances in a full run)
+	 */
+	public BigDecimal getOpeningBalance() {
+		return Money.toBigDecimal(this.openingCents);
+	}
+
+	/**
+	 * @return the credits minus the debits of the checked accounts since then, zero when no money was created or lost
+	 */
+	public BigDecimal getNetTransfers() {
+		return Money.toBigDecimal(this.netTransferCents);
+	}
+
+	/**
+	 * @return the sum of the stored balances of the checked accounts
+	 */
+	public BigDecimal getBalance() {
+		return Money.toBigDecimal(this.balanceCents);
+	}
+
+	/**
+	 * @return true when the stored balances add up to the opening balances plus the net transfers, the net transfers
+	 * are zero and every account matches its own transfers
+	 */
+	public boolean isConserved() {
+		return this.balanceCents == this.openingCents + this.netTransferCents && this.netTransferCents == 0L
+				&& this.mismatches.isEmpty();
+	}
+
+	public List<AccountMismatch> getMismatches() {
+		return this.mismatches;
+	}
+
+	public long getElapsedMillis() {
+		return this.elapsedMillis;
+	}
+}
@@ -0,0 +1,39 @@
+package com.nat.transfer.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * One credit of a multi-leg transfer, whose source is shared by all the legs
+ *
+ * @author jyotirmani
+ */
+public class TransferLeg {
+	private long destinationAccountId;
+	private BigDecimal amount;
+
+	public TransferLeg() {
+		super();
+	}
+
+	public TransferLeg(long destinationAccountId, BigDecimal amount) {
+		this();
+		this.destinationAccountId = destinationAccountId;
+		this.amount = amount;
+	}
+
+	public long getDestinationAccountId() {
+		return this.destinationAccountId;
+	}
+
+	public void setDestinationAccountId(long destinationAccountId) {
+		this.destinationAccountId = destinationAccountId;
+	}
+
+	public BigDecimal getAmount() {
+		return this.amount;
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = amount;
+	}
+}
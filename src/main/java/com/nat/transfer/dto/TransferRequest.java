@@ -0,0 +1,61 @@
+package com.nat.transfer.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * One transfer of a request body, e.g. an item of a batch transfer
+ *
+ * @author jyotirmani
+ */
+public class TransferRequest {
+	private long sourceAccountId;
+	private long destinationAccountId;
+	private BigDecimal amount;
+	private String idempotencyKey;
+
+	public TransferRequest() {
+		super();
+	}
+
+	public TransferRequest(long sourceAccountId, long destinationAccountId, BigDecimal amount) {
+		this();
+		this.sourceAccountId = sourceAccountId;
+		this.destinationAccountId = destinationAccountId;
+		this.amount = amount;
+	}
+
+	public long getSourceAccountId() {
+		return this.sourceAccountId;
+	}
+
+	public void setSourceAccountId(long sourceAccountId) {
+		this.sourceAccountId = sourceAccountId;
+	}
+
+	public long getDestinationAccountId() {
+		return this.destinationAccountId;
+	}
+
+	public void setDestinationAccountId(long destinationAccountId) {
+		this.destinationAccountId = destinationAccountId;
+	}
+
+	public BigDecimal getAmount() {
+		return this.amount;
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = amount;
+	}
+
+	/**
+	 * @return the key stored with the executed Transfer, optional
+	 */
+	public String getIdempotencyKey() {
+		return this.idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+}
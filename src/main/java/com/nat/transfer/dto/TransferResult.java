@@ -0,0 +1,66 @@
+package com.nat.transfer.dto;
+
+import com.nat.transfer.domain.Transfer;
+
+/**
+ * Outcome of one item of a batch transfer, in the same position as its request
+ *
+ * @author jyotirmani
+ */
+public class TransferResult {
+	public enum Status {
+		/**
+		 * The transfer has been committed
+		 */
+		COMPLETED,
+		/**
+		 * The transfer itself broke a business rule or could not be stored
+		 */
+		FAILED,
+		/**
+		 * The transfer was valid but has been rolled back with the rest of an ALL_OR_NOTHING batch
+		 */
+		ROLLED_BACK
+	}
+
+	private final int index;
+	private final Status status;
+	private final Transfer transfer;
+	private final String error;
+
+	private TransferResult(int index, Status status, Transfer transfer, String error) {
+		super();
+		this.index = index;
+		this.status = status;
+		this.transfer = transfer;
+		this.error = error;
+	}
+
+	public static TransferResult completed(int index, Transfer transfer) {
+		return new TransferResult(index, Status.COMPLETED, transfer, null);
+	}
+
+	public static TransferResult failed(int index, String error) {
+		return new TransferResult(index, Status.FAILED, null, error);
+	}
+
+	public static TransferResult rolledBack(int index, String error) {
+		return new TransferResult(index, Status.ROLLED_BACK, null, error);
+	}
+
+	public int getIndex() {
+		return this.index;
+	}
+
+	public Status getStatus() {
+		return this.status;
+	}
+
+	public Transfer getTransfer() {
+		return this.transfer;
+	}
+
+	public String getError() {
+		return this.error;
+	}
+}
@@ -0,0 +1,24 @@
+package com.nat.transfer.exception;
+
+/**
+ * Thrown when a request is refused because the service is saturated, answered with 429 Too Many Requests.<br>
+ * It is thrown on every request beyond the capacity, so it carries no stack trace.
+ */
+public class OverloadedException extends TransferServiceException {
+
+	private static final long serialVersionUID = -3017395532619745718L;
+
+	private final long retryAfterSeconds;
+
+	public OverloadedException(String message, long retryAfterSeconds) {
+		super(message, null, false, false);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * @return the delay suggested to the client before it retries
+	 */
+	public long getRetryAfterSeconds() {
+		return this.retryAfterSeconds;
+	}
+}
@@ -0,0 +1,35 @@
+package com.nat.transfer.ledger;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.nat.transfer.domain.Transfer;
+
+/**
+ * Preallocated RingBuffer slot holding one transfer request for the LedgerEngine writer thread
+ *
+ * @author jyotirmani
+ */
+final class LedgerCommand {
+	long sourceAccountId;
+	long destinationAccountId;
+	long amountCents;
+	String idempotencyKey;
+	CompletableFuture<Transfer> future;
+
+	void set(long sourceAccountId, long destinationAccountId, long amountCents, String idempotencyKey,
+			CompletableFuture<Transfer> future) {
+		this.sourceAccountId = sourceAccountId;
+		this.destinationAccountId = destinationAccountId;
+		this.amountCents = amountCents;
+		this.idempotencyKey = idempotencyKey;
+		this.future = future;
+	}
+
+	/**
+	 * Drops the key and future of a handled command, so a reused slot does not keep them alive
+	 */
+	void clear() {
+		this.idempotencyKey = null;
+		this.future = null;
+	}
+}
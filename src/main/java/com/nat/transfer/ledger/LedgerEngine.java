@@ -0,0 +1,629 @@
+package com.nat.transfer.ledger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.EntityCreationException;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.ILedgerCheckpointRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+
+/**
+ * In-memory ledger used by the LEDGER transfer mode.<br>
+ * Transfer commands are published to a RingBuffer by any number of threads and applied, one at a time and without
+ * locks, by a single writer thread which owns an in-memory copy of every Account it has seen. The business rules are
+ * still the ones of Transfer and Account.subtract. Applied transfers are handed to a persister thread which writes
+ * them to the database in batches (LedgerPersister), so the database lags behind the engine by at most one batch.<br>
+ * When a journal directory is configured, every accepted transfer is first appended to a TransferJournal and its
+ * future only completes after the journal has been forced to disk. One force covers all the transfers accepted during
+ * fsyncIntervalMillis (group commit). At start, the journal records past the database LedgerCheckpoint are replayed.
+ * When a force fails, the unforced records are rewound before their transfers are refused; when even the rewind fails
+ * the engine stops for good, the journal alone decides at the next start which of these transfers happened.<br>
+ * The engine must be the only writer of account balances while it runs.
+ *
+ * @author jyotirmani
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.mode", havingValue = "LEDGER")
+public class LedgerEngine {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LedgerEngine.class);
+
+	private static final int WRITER_BATCH = 1024;
+	private static final long MAX_PERSIST_BACKOFF_MILLIS = 1000L;
+
+	/**
+	 * An accepted transfer on its way to the database
+	 */
+	private static final class LedgerEntry {
+		final long sequence;
+		final Transfer transfer;
+		CompletableFuture<Transfer> future;
+
+		LedgerEntry(long sequence, Transfer transfer, CompletableFuture<Transfer> future) {
+			this.sequence = sequence;
+			this.transfer = transfer;
+			this.future = future;
+		}
+	}
+
+	private final IAccountRepository accountRepository;
+	private final LedgerPersister persister;
+	private final RingBuffer<LedgerCommand> ringBuffer;
+	private final BlockingQueue<LedgerEntry> persistQueue;
+	private final int persistBatchSize;
+
+	private String journalDirectory = "";
+	private int journalSegmentRecords = 1 << 20;
+	private long fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(2L);
+
+	// owned by the writer thread
+	private final Map<Long, Account> accounts = new HashMap<>();
+	private final List<LedgerEntry> unforced = new ArrayList<>();
+	private TransferJournal journal;
+	private TransferMetrics metrics = new TransferMetrics();
+	private AccountCache accountCache;
+	private long lastForceNanos;
+
+	private final AtomicInteger producers = new AtomicInteger();
+	private final LongAdder applied = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder persisted = new LongAdder();
+	private volatile long checkpointSequence;
+	private volatile boolean running;
+	private volatile boolean failed;
+	private volatile boolean writerDone;
+	private Thread writerThread;
+	private Thread persisterThread;
+
+	@Autowired
+	public LedgerEngine(IAccountRepository accountRepository, ITransferRepository transferRepository,
+			ILedgerCheckpointRepository checkpointRepository, PlatformTransactionManager transactionManager,
+			@Value("${transfer.ledger.ring-size:65536}") int ringSize,
+			@Value("${transfer.ledger.persist-batch-size:1000}") int persistBatchSize) {
+		this(accountRepository, new LedgerPersister(accountRepository, transferRepository, checkpointRepository,
+				transactionManager), ringSize, persistBatchSize);
+	}
+
+	public LedgerEngine(IAccountRepository accountRepository, LedgerPersister persister, int ringSize, int persistBatchSize) {
+		super();
+		this.accountRepository = accountRepository;
+		this.persister = persister;
+		this.ringBuffer = new RingBuffer<>(ringSize, LedgerCommand::new);
+		// bounded, a persister that falls behind slows the writer down instead of filling the heap
+		this.persistQueue = new ArrayBlockingQueue<>(Math.max(ringSize, persistBatchSize));
+		this.persistBatchSize = persistBatchSize;
+	}
+
+	@Autowired
+	public void setMetrics(TransferMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Cached accounts are evicted once their persisted balance has changed
+	 */
+	@Autowired
+	public void setAccountCache(AccountCache accountCache) {
+		this.accountCache = accountCache;
+	}
+
+	/**
+	 * @param journalDirectory where the TransferJournal segments are written, no journal when empty
+	 */
+	@Value("${transfer.journal.directory:}")
+	public void setJournalDirectory(String journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	/**
+	 * @param journalSegmentRecords number of records of one journal segment file
+	 */
+	@Value("${transfer.journal.segment-records:1048576}")
+	public void setJournalSegmentRecords(int journalSegmentRecords) {
+		this.journalSegmentRecords = journalSegmentRecords;
+	}
+
+	/**
+	 * @param fsyncIntervalMillis group commit window, zero forces the journal after every drained batch of commands
+	 */
+	@Value("${transfer.journal.fsync-interval-millis:2}")
+	public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+		this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+	}
+
+	@PostConstruct
+	public synchronized void start() {
+		if (this.running) {
+			return;
+		}
+
+		this.writerDone = false;
+		this.failed = false;
+		this.persisterThread = new Thread(this::persisterLoop, "ledger-persister");
+		this.persisterThread.start();
+
+		if (this.journalDirectory != null && !this.journalDirectory.isEmpty()) {
+			this.journal = this.newJournal(Paths.get(this.journalDirectory), this.journalSegmentRecords);
+			this.recover();
+		}
+
+		this.running = true;
+		this.writerThread = new Thread(this::writerLoop, "ledger-writer");
+		this.writerThread.start();
+	}
+
+	/**
+	 * Stops accepting commands, then waits until every accepted command is applied and persisted
+	 */
+	@PreDestroy
+	public synchronized void stop() throws InterruptedException {
+		if (this.writerThread == null) {
+			return;
+		}
+
+		this.running = false;
+		this.writerThread.join();
+		this.persisterThread.join();
+		this.writerThread = null;
+
+		if (this.journal != null) {
+			try {
+				this.journal.close();
+			} catch (IOException e) {
+				LOGGER.error("Could not close the transfer journal", e);
+			}
+			this.journal = null;
+		}
+		this.accounts.clear();
+	}
+
+	/**
+	 * Publishes a transfer to the writer thread.<br>
+	 * The future completes as soon as the transfer is applied in memory (and journaled, with a journal), it fails with
+	 * a TransferServiceException when the transfer is refused. The returned Transfer is a copy of the one the
+	 * persister writes later, so it never gets an id.
+	 */
+	public CompletableFuture<Transfer> submitTransfer(long sourceAccountId, long destinationAccountId, BigDecimal amount) {
+		long amountCents;
+		try {
+			amountCents = Money.toCents(amount);
+		} catch (EntityCreationException e) {
+			CompletableFuture<Transfer> future = new CompletableFuture<>();
+			future.completeExceptionally(new TransferServiceException(e.getMessage(), e));
+			return future;
+		}
+
+		return this.submitTransfer(sourceAccountId, destinationAccountId, amountCents);
+	}
+
+	/**
+	 * Same as {@link #submitTransfer(long, long, BigDecimal)} with an amount in cents
+	 */
+	public CompletableFuture<Transfer> submitTransfer(long sourceAccountId, long destinationAccountId, long amountCents) {
+		return this.submitTransfer(sourceAccountId, destinationAccountId, amountCents, null);
+	}
+
+	/**
+	 * Same as {@link #submitTransfer(long, long, long)}, the Transfer being persisted with an idempotency key.<br>
+	 * The key is journaled with the transfer, so a transfer replayed after a crash is persisted with it too.
+	 */
+	public CompletableFuture<Transfer> submitTransfer(long sourceAccountId, long destinationAccountId, long amountCents,
+			String idempotencyKey) {
+		CompletableFuture<Transfer> future = new CompletableFuture<>();
+
+		this.producers.incrementAndGet();
+		try {
+			if (!this.running) {
+				future.completeExceptionally(new TransferServiceException("Ledger engine is not running"));
+				return future;
+			}
+
+			long sequence = this.ringBuffer.next();
+			this.ringBuffer.get(sequence).set(sourceAccountId, destinationAccountId, amountCents, idempotencyKey, future);
+			this.ringBuffer.publish(sequence);
+		} finally {
+			this.producers.decrementAndGet();
+		}
+
+		return future;
+	}
+
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * @return number of transfers applied by the writer thread
+	 */
+	public long getApplied() {
+		return this.applied.sum();
+	}
+
+	/**
+	 * @return number of transfers refused by the writer thread
+	 */
+	public long getRejected() {
+		return this.rejected.sum();
+	}
+
+	/**
+	 * @return number of applied transfers written to the database
+	 */
+	public long getPersisted() {
+		return this.persisted.sum();
+	}
+
+	/**
+	 * Creates the journal of the engine, overridden by the tests which need a failing one
+	 */
+	TransferJournal newJournal(Path directory, int segmentRecords) {
+		return new TransferJournal(directory, segmentRecords);
+	}
+
+	/**
+	 * Replays the journal records the database has not seen yet, before any new command is accepted
+	 */
+	private void recover() {
+		this.checkpointSequence = this.persister.loadCheckpoint();
+		this.journal.open(this.checkpointSequence);
+
+		long persistedBefore = this.persisted.sum();
+		LongAdder enqueued = new LongAdder();
+		long replayed = this.journal.replay(this.checkpointSequence, (sequence, sourceAccountId, destinationAccountId,
+				amountCents, timestamp, idempotencyKey) -> {
+			Transfer transfer = new Transfer(sourceAccountId, destinationAccountId, amountCents);
+			transfer.setExecutedAtMillis(timestamp);
+			transfer.setIdempotencyKey(idempotencyKey);
+
+			Account sourceAccount = this.account(sourceAccountId);
+			Account destinationAccount = this.account(destinationAccountId);
+			if (sourceAccount == null || destinationAccount == null || !sourceAccount.subtract(amountCents)) {
+				// only possible when the accounts were changed outside of the engine
+				LOGGER.error("Journaled transfer {} does not apply to the persisted accounts, skipped", sequence);
+				return;
+			}
+			destinationAccount.add(amountCents);
+
+			this.enqueue(new LedgerEntry(sequence, transfer, null));
+			enqueued.increment();
+		});
+
+		if (replayed > 0L) {
+			LOGGER.info("Replayed {} journaled transfers after checkpoint {}", replayed, this.checkpointSequence);
+			this.awaitPersisted(persistedBefore + enqueued.sum());
+		}
+	}
+
+	/**
+	 * Waits until the replayed transfers are in the database: until then, a retried request would not find its
+	 * idempotency key there and would be executed a second time
+	 */
+	private void awaitPersisted(long persisted) {
+		while (this.persisted.sum() < persisted) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(1L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TransferServiceException("Interrupted while persisting the replayed transfers", e);
+			}
+		}
+	}
+
+	private void writerLoop() {
+		while (true) {
+			int drained = this.ringBuffer.drain(this::apply, WRITER_BATCH);
+
+			if (!this.unforced.isEmpty() && System.nanoTime() - this.lastForceNanos >= this.fsyncIntervalNanos) {
+				this.commit();
+			}
+
+			if (drained > 0) {
+				continue;
+			}
+
+			// once stopped and no producer is still publishing, whatever is left in the ring is drained for the last time
+			if (!this.running && this.producers.get() == 0) {
+				while (this.ringBuffer.drain(this::apply, WRITER_BATCH) > 0) {
+					// drain remaining commands
+				}
+				this.commit();
+				break;
+			}
+
+			this.ringBuffer.awaitPublished(1L, TimeUnit.MILLISECONDS);
+		}
+
+		this.writerDone = true;
+	}
+
+	private void apply(LedgerCommand command) {
+		CompletableFuture<Transfer> future = command.future;
+		try {
+			if (this.failed) {
+				throw new TransferServiceException("Ledger engine stopped after a journal failure");
+			}
+
+			Transfer transfer = new Transfer(command.sourceAccountId, command.destinationAccountId, command.amountCents);
+			transfer.setIdempotencyKey(command.idempotencyKey);
+
+			Account sourceAccount = this.account(command.sourceAccountId);
+			if (sourceAccount == null) {
+				this.metrics.reject(Rejection.ACCOUNT_NOT_FOUND);
+				throw new TransferServiceException("Source account not found: " + command.sourceAccountId);
+			}
+
+			Account destinationAccount = this.account(command.destinationAccountId);
+			if (destinationAccount == null) {
+				this.metrics.reject(Rejection.ACCOUNT_NOT_FOUND);
+				throw new TransferServiceException("Destination account not found: " + command.destinationAccountId);
+			}
+
+			if (!sourceAccount.subtract(command.amountCents)) {
+				this.metrics.reject(Rejection.INSUFFICIENT_FUNDS);
+				throw new TransferServiceException("Source account hasn't enough balance for transfer.");
+			}
+
+			try {
+				destinationAccount.add(command.amountCents);
+			} catch (ArithmeticException e) {
+				sourceAccount.add(command.amountCents);
+				throw new TransferServiceException("Destination account balance would overflow", e);
+			}
+
+			long sequence = 0L;
+			if (this.journal != null) {
+				try {
+					// replayed with the same execution time
+					sequence = this.journal.append(command.sourceAccountId, command.destinationAccountId, command.amountCents,
+							transfer.getExecutedAtMillis(), command.idempotencyKey);
+				} catch (RuntimeException e) {
+					// not journaled, so not accepted
+					destinationAccount.subtract(command.amountCents);
+					sourceAccount.add(command.amountCents);
+					throw new TransferServiceException("Transfer could not be journaled: " + e.getMessage(), e);
+				}
+			}
+
+			this.applied.increment();
+
+			LedgerEntry entry = new LedgerEntry(sequence, transfer, future);
+			if (this.journal == null) {
+				this.enqueue(entry);
+				future.complete(answer(transfer));
+			} else {
+				// completed by the next commit, once the record is on disk
+				this.unforced.add(entry);
+			}
+		} catch (EntityCreationException e) {
+			this.reject(future, new TransferServiceException(e.getMessage(), e));
+		} catch (TransferServiceException e) {
+			this.reject(future, e);
+		} catch (RuntimeException e) {
+			// e.g. the database is not reachable while loading an account
+			this.reject(future, new TransferServiceException(e));
+		} finally {
+			command.clear();
+		}
+	}
+
+	/**
+	 * Group commit: one journal force for all the transfers accepted since the previous one
+	 */
+	private void commit() {
+		if (this.unforced.isEmpty()) {
+			return;
+		}
+
+		try {
+			this.journal.force();
+		} catch (RuntimeException e) {
+			LOGGER.error("Could not force the transfer journal, {} transfers are refused", this.unforced.size(), e);
+			this.rollBack(e);
+			return;
+		}
+
+		for (LedgerEntry entry : this.unforced) {
+			this.complete(entry);
+		}
+		this.unforced.clear();
+		this.lastForceNanos = System.nanoTime();
+
+		this.journal.truncate(this.checkpointSequence);
+	}
+
+	/**
+	 * Refuses the transfers whose records were not forced. Their records may be partly on disk already, so they are
+	 * rewound first: a restart must not replay a transfer its client was told had failed.
+	 */
+	private void rollBack(RuntimeException cause) {
+		long forcedSequence;
+		try {
+			forcedSequence = this.journal.rewind();
+		} catch (RuntimeException e) {
+			LOGGER.error("Could not rewind the transfer journal, the ledger engine stops", e);
+			// fail-stop: whether these transfers happened is only known once the journal is replayed
+			this.failed = true;
+			this.running = false;
+			for (LedgerEntry entry : this.unforced) {
+				this.reject(entry.future, new TransferServiceException(
+						"Ledger journal failed, the transfer is settled when the engine restarts", e));
+			}
+			this.unforced.clear();
+			return;
+		}
+
+		// the transfers journaled before a segment roll were forced by it
+		List<LedgerEntry> refused = new ArrayList<>();
+		for (LedgerEntry entry : this.unforced) {
+			if (entry.sequence <= forcedSequence) {
+				this.complete(entry);
+			} else {
+				refused.add(entry);
+			}
+		}
+		this.unforced.clear();
+
+		// undone in memory in reverse order
+		for (int i = refused.size() - 1; i >= 0; i--) {
+			Transfer transfer = refused.get(i).transfer;
+			this.accounts.get(transfer.getDestinationAccountId()).subtract(transfer.getAmountCents());
+			this.accounts.get(transfer.getSourceAccountId()).add(transfer.getAmountCents());
+			this.reject(refused.get(i).future, new TransferServiceException("Transfer could not be journaled", cause));
+		}
+	}
+
+	/**
+	 * Hands a journaled transfer to the persister and completes its future
+	 */
+	private void complete(LedgerEntry entry) {
+		CompletableFuture<Transfer> future = entry.future;
+		entry.future = null;
+		this.enqueue(entry);
+		future.complete(answer(entry.transfer));
+	}
+
+	/**
+	 * Helper method copying an accepted transfer for its caller: the persister thread saves, and sets the id of, the
+	 * instance it was handed, which the caller must never see
+	 */
+	private static Transfer answer(Transfer transfer) {
+		Transfer answer = new Transfer(transfer.getSourceAccountId(), transfer.getDestinationAccountId(),
+				transfer.getAmountCents());
+		answer.setExecutedAtMillis(transfer.getExecutedAtMillis());
+		answer.setIdempotencyKey(transfer.getIdempotencyKey());
+		return answer;
+	}
+
+	private void enqueue(LedgerEntry entry) {
+		try {
+			this.persistQueue.put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransferServiceException("Interrupted while queueing transfer for persistence", e);
+		}
+	}
+
+	private void reject(CompletableFuture<Transfer> future, TransferServiceException e) {
+		this.rejected.increment();
+		future.completeExceptionally(e);
+	}
+
+	/**
+	 * Helper method returning the in-memory copy of an account, loaded from the database on first use
+	 */
+	private Account account(long accountId) throws EntityCreationException {
+		Account account = this.accounts.get(accountId);
+		if (account != null) {
+			return account;
+		}
+
+		Account persistent = this.accountRepository.findOne(accountId);
+		if (persistent == null) {
+			return null;
+		}
+
+		// a detached copy, the persister only writes balance changes
+		account = new Account(persistent.getName(), BigDecimal.ZERO);
+		account.setBalanceCents(persistent.getBalanceCents());
+		account.setId(accountId);
+		account.setVersion(persistent.getVersion());
+		// holds do not change in this mode, their funds stay reserved
+		account.setHeldCents(persistent.getHeldCents());
+		this.accounts.put(accountId, account);
+		return account;
+	}
+
+	private void persisterLoop() {
+		List<LedgerEntry> entries = new ArrayList<>(this.persistBatchSize);
+		List<Transfer> batch = new ArrayList<>(this.persistBatchSize);
+
+		while (true) {
+			LedgerEntry first;
+			try {
+				first = this.persistQueue.poll(10L, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			if (first == null) {
+				if (this.writerDone && this.persistQueue.isEmpty()) {
+					return;
+				}
+				continue;
+			}
+
+			entries.add(first);
+			this.persistQueue.drainTo(entries, this.persistBatchSize - 1);
+			for (LedgerEntry entry : entries) {
+				batch.add(entry.transfer);
+			}
+
+			long lastSequence = entries.get(entries.size() - 1).sequence;
+			if (this.persistWithRetry(batch, lastSequence) && lastSequence > 0L) {
+				this.checkpointSequence = lastSequence;
+			}
+			entries.clear();
+			batch.clear();
+		}
+	}
+
+	private void evictPersistedAccounts(List<Transfer> batch) {
+		for (Transfer transfer : batch) {
+			this.accountCache.evict(transfer.getSourceAccountId(), transfer.getDestinationAccountId());
+		}
+	}
+
+	/**
+	 * Applied transfers are never dropped: a failed batch is retried, in order, until the database takes it
+	 */
+	private boolean persistWithRetry(List<Transfer> batch, long lastSequence) {
+		for (long backoff = 10L; ; backoff = Math.min(backoff * 2, MAX_PERSIST_BACKOFF_MILLIS)) {
+			try {
+				this.persister.persist(batch, lastSequence);
+				this.persisted.add(batch.size());
+				this.evictPersistedAccounts(batch);
+				return true;
+			} catch (RuntimeException e) {
+				LOGGER.error("Could not persist {} ledger transfers, retrying in {} ms", batch.size(), backoff, e);
+			}
+
+			try {
+				TimeUnit.MILLISECONDS.sleep(backoff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+}
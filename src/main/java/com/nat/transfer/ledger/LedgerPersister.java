@@ -0,0 +1,78 @@
+package com.nat.transfer.ledger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nat.transfer.domain.LedgerCheckpoint;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.ILedgerCheckpointRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+
+/**
+ * Writes the transfers applied by the LedgerEngine to the database, one transaction per batch.<br>
+ * The Transfer rows are inserted in JDBC batches and each touched account gets a single UPDATE with its net
+ * balance change over the batch, however many transfers it took part in.
+ *
+ * @author jyotirmani
+ */
+public class LedgerPersister {
+
+	private final IAccountRepository accountRepository;
+	private final ITransferRepository transferRepository;
+	private final ILedgerCheckpointRepository checkpointRepository;
+	private final TransactionTemplate transactionTemplate;
+
+	public LedgerPersister(IAccountRepository accountRepository, ITransferRepository transferRepository,
+			ILedgerCheckpointRepository checkpointRepository, PlatformTransactionManager transactionManager) {
+		super();
+		this.accountRepository = accountRepository;
+		this.transferRepository = transferRepository;
+		this.checkpointRepository = checkpointRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * @param lastSequence journal sequence of the last transfer of the batch, zero when the engine has no journal
+	 */
+	public void persist(List<Transfer> transfers, long lastSequence) {
+		this.transactionTemplate.execute(status -> {
+			this.doPersist(transfers, lastSequence);
+			return null;
+		});
+	}
+
+	/**
+	 * @return the last journal sequence already in the database, zero when nothing was journaled yet
+	 */
+	public long loadCheckpoint() {
+		LedgerCheckpoint checkpoint = this.checkpointRepository.findOne(LedgerCheckpoint.LEDGER_ID);
+		return checkpoint == null ? 0L : checkpoint.getSequence();
+	}
+
+	private void doPersist(List<Transfer> transfers, long lastSequence) {
+		this.transferRepository.save(transfers);
+
+		// accounts are updated in ascending id order, like the CONDITIONAL_UPDATE transfers
+		Map<Long, Long> deltas = new TreeMap<>();
+		for (Transfer transfer : transfers) {
+			deltas.merge(transfer.getSourceAccountId(), -transfer.getAmountCents(), Long::sum);
+			deltas.merge(transfer.getDestinationAccountId(), transfer.getAmountCents(), Long::sum);
+		}
+
+		// the engine already checked every balance, the net change cannot take a persisted balance below zero
+		for (Map.Entry<Long, Long> delta : deltas.entrySet()) {
+			if (delta.getValue() != 0L) {
+				this.accountRepository.credit(delta.getKey(), delta.getValue());
+			}
+		}
+
+		if (lastSequence > 0L) {
+			this.checkpointRepository.save(new LedgerCheckpoint(lastSequence));
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.nat.transfer.ledger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi producer / single consumer ring buffer in the style of the LMAX disruptor<br>
+ * Slots are preallocated and reused: a producer claims a sequence, fills the slot returned by {@link #get(long)}
+ * and publishes the sequence. The consumer handles the published slots in sequence order, without locks.
+ *
+ * @param <E> the slot type, mutated in place by producers
+ * @author jyotirmani
+ */
+public final class RingBuffer<E> {
+	private static final int SPIN_TRIES = 100;
+
+	private final E[] slots;
+	private final int mask;
+	private final AtomicLongArray published;
+	private final AtomicLong claimed = new AtomicLong(-1L);
+	private volatile long consumed = -1L;
+	private long nextToConsume;
+
+	private volatile Thread consumer;
+	private volatile boolean consumerWaiting;
+
+	@SuppressWarnings("unchecked")
+	public RingBuffer(int capacity, Supplier<E> slotFactory) {
+		super();
+
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Ring buffer capacity must be a power of two");
+		}
+
+		this.slots = (E[]) new Object[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.slots[i] = slotFactory.get();
+			this.published.set(i, -1L);
+		}
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Claims the next sequence, waiting while the ring is full
+	 */
+	public long next() {
+		long sequence = this.claimed.incrementAndGet();
+
+		// the slot is free once the consumer went past the sequence that used it one lap ago
+		while (sequence - this.slots.length > this.consumed) {
+			LockSupport.parkNanos(1000L);
+		}
+
+		return sequence;
+	}
+
+	/**
+	 * @return the slot of a claimed sequence
+	 */
+	public E get(long sequence) {
+		return this.slots[(int) sequence & this.mask];
+	}
+
+	/**
+	 * Makes a filled slot visible to the consumer
+	 */
+	public void publish(long sequence) {
+		this.published.set((int) sequence & this.mask, sequence);
+
+		if (this.consumerWaiting) {
+			LockSupport.unpark(this.consumer);
+		}
+	}
+
+	/**
+	 * Consumer side: handles the published slots in sequence order.<br>
+	 * The slot may be overwritten once the handler returns, so it must not be kept.
+	 * @return the number of handled slots
+	 */
+	public int drain(Consumer<E> handler, int maxBatch) {
+		long sequence = this.nextToConsume;
+		int count = 0;
+
+		while (count < maxBatch && this.published.get((int) sequence & this.mask) == sequence) {
+			handler.accept(this.slots[(int) sequence & this.mask]);
+			sequence++;
+			count++;
+		}
+
+		if (count > 0) {
+			this.nextToConsume = sequence;
+			// releases the whole batch of slots to the producers at once
+			this.consumed = sequence - 1L;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Consumer side: waits until a slot is published, spinning briefly before parking
+	 */
+	public void awaitPublished(long timeout, TimeUnit unit) {
+		for (int i = 0; i < SPIN_TRIES; i++) {
+			if (this.hasPublished()) {
+				return;
+			}
+			Thread.yield();
+		}
+
+		this.consumer = Thread.currentThread();
+		this.consumerWaiting = true;
+		try {
+			// checked again after raising the flag, a publish in between would otherwise be missed
+			if (!this.hasPublished()) {
+				LockSupport.parkNanos(this, unit.toNanos(timeout));
+			}
+		} finally {
+			this.consumerWaiting = false;
+		}
+	}
+
+	/**
+	 * @return number of claimed sequences not yet handled by the consumer
+	 */
+	public long size() {
+		return this.claimed.get() - this.consumed;
+	}
+
+	public int capacity() {
+		return this.slots.length;
+	}
+
+	private boolean hasPublished() {
+		long sequence = this.nextToConsume;
+		return this.published.get((int) sequence & this.mask) == sequence;
+	}
+}
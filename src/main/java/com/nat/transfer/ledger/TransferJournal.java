@@ -0,0 +1,352 @@
+package com.nat.transfer.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.nat.transfer.domain.Transfer;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of the transfers accepted by the LedgerEngine.<br>
+ * Every transfer is one binary record (sequence, source, destination, amount, timestamp, idempotency key and a CRC32)
+ * written into segment files of segmentRecords record slots each. A transfer without idempotency key fills one slot,
+ * the UTF-8 bytes of a key take the next slots. A record becomes durable once {@link #force()} returns, so the caller
+ * decides how many records share one fsync (group commit).<br>
+ * Records are numbered from 1. A zero sequence or a CRC mismatch marks the end of the journal, so a record torn by
+ * a crash is ignored and overwritten. The records appended after a failed force are dropped by {@link #rewind()}.<br>
+ * Not thread safe: only the LedgerEngine writer thread appends, replays and forces.
+ *
+ * @author jyotirmani
+ */
+public class TransferJournal implements Closeable {
+
+	/**
+	 * Record slot layout: sequence, source, destination, amount in cents, timestamp (epoch millis), idempotency key
+	 * length, CRC32 of the first 44 bytes and of the key
+	 */
+	public static final int RECORD_SIZE = 48;
+
+	private static final int KEY_LENGTH_OFFSET = 40;
+	private static final int CRC_OFFSET = 44;
+	private static final int MAX_KEY_BYTES = Transfer.IDEMPOTENCY_KEY_MAX_LENGTH * 3;
+	private static final byte[] NO_KEY = new byte[0];
+	private static final String SEGMENT_PREFIX = "transfers-";
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/**
+	 * Receives the records read back by {@link TransferJournal#replay(long, RecordHandler)}
+	 */
+	@FunctionalInterface
+	public interface RecordHandler {
+		/**
+		 * @param idempotencyKey null for a transfer without
+		 */
+		void onRecord(long sequence, long sourceAccountId, long destinationAccountId, long amountCents, long timestamp,
+				String idempotencyKey);
+	}
+
+	private final Path directory;
+	private final int segmentRecords;
+	private final List<Long> segmentFirstSequences = new ArrayList<>();
+
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final CRC32 crc = new CRC32();
+
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long lastSequence;
+	private long forcedSequence;
+	private int forcedPosition;
+	private boolean dirty;
+
+	public TransferJournal(Path directory, int segmentRecords) {
+		super();
+		this.directory = directory;
+		this.segmentRecords = segmentRecords;
+	}
+
+	/**
+	 * Maps the last segment and finds the last valid record
+	 * @param checkpointSequence last sequence known to the database, numbering continues after it if the journal is empty
+	 * @return the sequence of the last journaled transfer
+	 */
+	public long open(long checkpointSequence) {
+		try {
+			Files.createDirectories(this.directory);
+
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+				for (Path file : files) {
+					this.segmentFirstSequences.add(firstSequenceOf(file));
+				}
+			}
+			this.segmentFirstSequences.sort(null);
+
+			if (this.segmentFirstSequences.isEmpty()) {
+				this.lastSequence = checkpointSequence;
+				this.forcedSequence = checkpointSequence;
+				return this.lastSequence;
+			}
+
+			long firstSequence = this.segmentFirstSequences.get(this.segmentFirstSequences.size() - 1);
+			this.map(firstSequence);
+
+			// older segments are full, only the last one has to be scanned
+			long sequence = firstSequence;
+			int offset = 0;
+			for (int size; (size = this.recordSize(this.segment, offset, sequence)) > 0; offset += size) {
+				sequence++;
+			}
+			this.segment.position(offset);
+			this.lastSequence = sequence - 1L;
+			this.forcedSequence = this.lastSequence;
+			this.forcedPosition = offset;
+
+			return this.lastSequence;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends one transfer without idempotency key to the journal, it is durable after the next {@link #force()}
+	 * @return the sequence of the new record
+	 */
+	public long append(long sourceAccountId, long destinationAccountId, long amountCents, long timestamp) {
+		return this.append(sourceAccountId, destinationAccountId, amountCents, timestamp, null);
+	}
+
+	/**
+	 * Same as {@link #append(long, long, long, long)}, the transfer being replayed with its idempotency key
+	 * @param idempotencyKey null for none
+	 */
+	public long append(long sourceAccountId, long destinationAccountId, long amountCents, long timestamp,
+			String idempotencyKey) {
+		byte[] key = idempotencyKey == null ? NO_KEY : idempotencyKey.getBytes(StandardCharsets.UTF_8);
+		int size = recordBytes(key.length);
+		if (key.length > MAX_KEY_BYTES) {
+			throw new IllegalArgumentException("Idempotency key is too long to be journaled");
+		}
+		if (size > this.segmentRecords * RECORD_SIZE) {
+			throw new IllegalArgumentException("Journal segments are too small for a record of " + size + " bytes");
+		}
+
+		long sequence = this.lastSequence + 1L;
+		if (this.segment == null || this.segment.remaining() < size) {
+			this.roll(sequence);
+		}
+
+		this.record.clear();
+		this.record.putLong(sequence).putLong(sourceAccountId).putLong(destinationAccountId)
+				.putLong(amountCents).putLong(timestamp).putInt(key.length);
+		this.crc.reset();
+		this.crc.update(this.record.array(), 0, CRC_OFFSET);
+		this.crc.update(key);
+		this.record.putInt((int) this.crc.getValue());
+		this.record.flip();
+
+		int offset = this.segment.position();
+		this.segment.put(this.record);
+		this.segment.put(key);
+		this.segment.position(offset + size);
+
+		this.lastSequence = sequence;
+		this.dirty = true;
+		return sequence;
+	}
+
+	/**
+	 * Flushes the appended records of the current segment to the storage device
+	 */
+	public void force() {
+		if (this.dirty) {
+			this.segment.force();
+			this.dirty = false;
+		}
+		this.forcedSequence = this.lastSequence;
+		this.forcedPosition = this.segment == null ? 0 : this.segment.position();
+	}
+
+	/**
+	 * Drops the records appended since the last successful {@link #force()}: a failed force may still have written
+	 * some of them, so they are zeroed and forced, and the numbering continues after the last forced record
+	 * @return the sequence of the last record kept
+	 */
+	public long rewind() {
+		if (this.lastSequence == this.forcedSequence) {
+			return this.lastSequence;
+		}
+
+		// a roll forces the previous segment, the unforced records are all in the current one
+		for (int offset = this.forcedPosition; offset < this.segment.position(); offset += Long.BYTES) {
+			this.segment.putLong(offset, 0L);
+		}
+		this.segment.position(this.forcedPosition);
+		this.lastSequence = this.forcedSequence;
+
+		this.dirty = true;
+		this.force();
+		return this.lastSequence;
+	}
+
+	/**
+	 * Reads, in order, every record with a sequence greater than afterSequence
+	 * @return the number of records handed to the handler
+	 */
+	public long replay(long afterSequence, RecordHandler handler) {
+		long count = 0L;
+
+		for (int i = 0; i < this.segmentFirstSequences.size(); i++) {
+			long firstSequence = this.segmentFirstSequences.get(i);
+			boolean lastSegment = i == this.segmentFirstSequences.size() - 1;
+
+			// skips the segments which only hold records older than afterSequence
+			if (!lastSegment && this.segmentFirstSequences.get(i + 1) - 1L <= afterSequence) {
+				continue;
+			}
+
+			try (FileChannel segmentChannel = FileChannel.open(this.segmentPath(firstSequence), StandardOpenOption.READ)) {
+				ByteBuffer buffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0L, segmentChannel.size())
+						.order(ByteOrder.LITTLE_ENDIAN);
+
+				long sequence = firstSequence;
+				for (int offset = 0, size; sequence <= this.lastSequence
+						&& (size = this.recordSize(buffer, offset, sequence)) > 0; offset += size, sequence++) {
+					if (sequence > afterSequence) {
+						handler.onRecord(sequence, buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+								buffer.getLong(offset + 24), buffer.getLong(offset + 32), key(buffer, offset));
+						count++;
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Deletes the full segments whose records are all covered by a database checkpoint
+	 */
+	public void truncate(long checkpointSequence) {
+		// the last segment is never deleted, it is the one being written
+		while (this.segmentFirstSequences.size() > 1 && this.segmentFirstSequences.get(1) - 1L <= checkpointSequence) {
+			try {
+				Files.deleteIfExists(this.segmentPath(this.segmentFirstSequences.remove(0)));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	public long getLastSequence() {
+		return this.lastSequence;
+	}
+
+	/**
+	 * @return the sequence of the last record known to be on disk
+	 */
+	public long getForcedSequence() {
+		return this.forcedSequence;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.segment != null) {
+			this.force();
+			this.segment = null;
+		}
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+	private void roll(long firstSequence) {
+		try {
+			this.force();
+			if (this.channel != null) {
+				this.channel.close();
+			}
+
+			this.segmentFirstSequences.add(firstSequence);
+			this.map(firstSequence);
+			this.forcedPosition = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void map(long firstSequence) throws IOException {
+		this.channel = FileChannel.open(this.segmentPath(firstSequence), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		// a new segment is a sparse, zero filled file: a zero sequence ends the journal
+		this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0L, (long) this.segmentRecords * RECORD_SIZE);
+		this.segment.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Helper method returning the size in bytes of the record of a sequence at an offset, or zero when there is none:
+	 * another sequence, a record running past the end of the segment or a CRC mismatch (torn write)
+	 */
+	private int recordSize(ByteBuffer buffer, int offset, long sequence) {
+		if (offset + RECORD_SIZE > buffer.limit() || buffer.getLong(offset) != sequence) {
+			return 0;
+		}
+
+		int keyLength = buffer.getInt(offset + KEY_LENGTH_OFFSET);
+		int size = recordBytes(keyLength);
+		if (keyLength < 0 || keyLength > MAX_KEY_BYTES || offset + size > buffer.limit()) {
+			return 0;
+		}
+
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(offset + CRC_OFFSET).position(offset);
+		this.crc.reset();
+		this.crc.update(bytes);
+		bytes.limit(offset + RECORD_SIZE + keyLength).position(offset + RECORD_SIZE);
+		this.crc.update(bytes);
+		return (int) this.crc.getValue() == buffer.getInt(offset + CRC_OFFSET) ? size : 0;
+	}
+
+	/**
+	 * @return the number of bytes of a record, rounded up to whole slots
+	 */
+	private static int recordBytes(int keyLength) {
+		return (1 + (keyLength + RECORD_SIZE - 1) / RECORD_SIZE) * RECORD_SIZE;
+	}
+
+	private static String key(ByteBuffer buffer, int offset) {
+		int keyLength = buffer.getInt(offset + KEY_LENGTH_OFFSET);
+		if (keyLength == 0) {
+			return null;
+		}
+
+		byte[] key = new byte[keyLength];
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.position(offset + RECORD_SIZE);
+		bytes.get(key);
+		return new String(key, StandardCharsets.UTF_8);
+	}
+
+	private Path segmentPath(long firstSequence) {
+		return this.directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+	}
+
+	private static long firstSequenceOf(Path file) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+}
@@ -0,0 +1,74 @@
+package com.nat.transfer.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Records the end-to-end latency of the requests it is mapped to, up to the completion of asynchronous requests, see
+ * MetricsConfiguration
+ *
+ * @author jyotirmani
+ */
+public class RequestLatencyFilter extends OncePerRequestFilter {
+	private final TransferMetrics metrics;
+
+	public RequestLatencyFilter(TransferMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		long start = System.nanoTime();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			if (request.isAsyncStarted()) {
+				// the response of an asynchronous request is written later, by another thread
+				request.getAsyncContext().addListener(new RecordingListener(start));
+			} else {
+				this.metrics.recordSince(TransferMetrics.Stage.REQUEST, start);
+			}
+		}
+	}
+
+	/**
+	 * Records the latency of an asynchronous request once it has completed, failed or timed out
+	 */
+	private final class RecordingListener implements AsyncListener {
+		private final long start;
+
+		RecordingListener(long start) {
+			this.start = start;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			RequestLatencyFilter.this.metrics.recordSince(TransferMetrics.Stage.REQUEST, this.start);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			// onComplete follows
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			// onComplete follows
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// not restarted by this application
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.nat.transfer.metrics;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.dto.MetricsSnapshot;
+
+/**
+ * Latency histograms of the transfer hot path and rejection counters.<br>
+ * Each Stage is recorded, in nanoseconds, into an HdrHistogram Recorder: recording is wait-free and allocates
+ * nothing, so the metrics can stay on in production. Every {@link #snapshot()} swaps the recorders and reports the
+ * interval since the previous snapshot, while the rejection counters are totals since start.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class TransferMetrics {
+	/**
+	 * Recorded durations above this value are recorded as this value
+	 */
+	private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1L);
+	/**
+	 * 1% value precision keeps each histogram at a few tens of KB
+	 */
+	private static final int SIGNIFICANT_DIGITS = 2;
+
+	public enum Stage {
+		/**
+		 * Waiting in the queue of the TransferExecutor, asynchronous calls only
+		 */
+		QUEUE_WAIT,
+		/**
+		 * Waiting for the account locks of a transfer
+		 */
+		LOCK_WAIT,
+		/**
+		 * Loading the accounts of a transfer
+		 */
+		REPOSITORY_READ,
+		/**
+		 * Writing the accounts and the Transfer (entity saves or conditional update statements)
+		 */
+		SAVE,
+		/**
+		 * Committing a transaction, the pending changes are flushed first
+		 */
+		COMMIT,
+		/**
+		 * Whole /api request, from the first filter to the written response
+		 */
+		REQUEST
+	}
+
+	public enum Rejection {
+		INSUFFICIENT_FUNDS,
+		SAME_ACCOUNT,
+		INVALID_AMOUNT,
+		ACCOUNT_NOT_FOUND,
+		/**
+		 * Refused by the admission control or by a full TransferExecutor queue
+		 */
+		OVERLOADED
+	}
+
+	private final Map<Stage, Recorder> recorders = new EnumMap<>(Stage.class);
+	private final Map<Stage, Histogram> intervals = new EnumMap<>(Stage.class);
+	private final Map<Rejection, LongAdder> rejections = new EnumMap<>(Rejection.class);
+	private long intervalStartMillis = System.currentTimeMillis();
+
+	public TransferMetrics() {
+		super();
+
+		for (Stage stage : Stage.values()) {
+			this.recorders.put(stage, new Recorder(1L, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+		}
+		for (Rejection rejection : Rejection.values()) {
+			this.rejections.put(rejection, new LongAdder());
+		}
+	}
+
+	/**
+	 * Records the time elapsed since startNanos, a System.nanoTime() value
+	 */
+	public void recordSince(Stage stage, long startNanos) {
+		this.record(stage, System.nanoTime() - startNanos);
+	}
+
+	public void record(Stage stage, long nanos) {
+		this.recorders.get(stage).recordValue(Math.max(0L, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+	}
+
+	public void reject(Rejection rejection) {
+		this.rejections.get(rejection).increment();
+	}
+
+	public long getRejections(Rejection rejection) {
+		return this.rejections.get(rejection).sum();
+	}
+
+	/**
+	 * @return the latencies recorded since the previous snapshot, and the rejection totals
+	 */
+	public synchronized MetricsSnapshot snapshot() {
+		long endMillis = System.currentTimeMillis();
+
+		Map<String, MetricsSnapshot.Latency> latencies = new LinkedHashMap<>();
+		for (Stage stage : Stage.values()) {
+			// the previous interval histogram is recycled by the recorder
+			Histogram interval = this.recorders.get(stage).getIntervalHistogram(this.intervals.get(stage));
+			this.intervals.put(stage, interval);
+			latencies.put(stage.name(), MetricsSnapshot.Latency.of(interval));
+		}
+
+		Map<String, Long> rejectionTotals = new LinkedHashMap<>();
+		for (Rejection rejection : Rejection.values()) {
+			rejectionTotals.put(rejection.name(), this.getRejections(rejection));
+		}
+
+		MetricsSnapshot snapshot = new MetricsSnapshot(this.intervalStartMillis, endMillis, latencies, rejectionTotals);
+		this.intervalStartMillis = endMillis;
+		return snapshot;
+	}
+}
@@ -0,0 +1,157 @@
+package com.nat.transfer.reconciliation;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map of long keys to long values, for the per account sums of the ReconciliationEngine.<br>
+ * Keys and values are held in two primitive arrays probed linearly: no boxed Long, no entry object, so a partition of
+ * a million accounts costs a few tens of megabytes and no garbage per transfer. Not thread safe, a map is owned by
+ * one partition task.
+ *
+ * @author jyotirmani
+ */
+final class LongLongHashMap {
+	/**
+	 * Receives the entries of a map
+	 */
+	@FunctionalInterface
+	interface EntryConsumer {
+		void accept(long key, long value);
+	}
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private long[] values;
+	private boolean[] used;
+	private int mask;
+	private int size;
+
+	LongLongHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize number of keys held without resizing
+	 */
+	LongLongHashMap(int expectedSize) {
+		super();
+		this.allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	boolean containsKey(long key) {
+		return this.used[this.slot(key)];
+	}
+
+	/**
+	 * @return the value of the key, absent when there is none
+	 */
+	long get(long key, long absent) {
+		int slot = this.slot(key);
+		return this.used[slot] ? this.values[slot] : absent;
+	}
+
+	void put(long key, long value) {
+		int slot = this.slot(key);
+		if (!this.used[slot]) {
+			slot = this.insert(slot, key);
+		}
+		this.values[slot] = value;
+	}
+
+	/**
+	 * Adds delta to the value of the key, zero when there is none
+	 */
+	void addTo(long key, long delta) {
+		int slot = this.slot(key);
+		if (!this.used[slot]) {
+			slot = this.insert(slot, key);
+		}
+		this.values[slot] += delta;
+	}
+
+	void forEach(EntryConsumer consumer) {
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.used[slot]) {
+				consumer.accept(this.keys[slot], this.values[slot]);
+			}
+		}
+	}
+
+	/**
+	 * @return the keys in ascending order
+	 */
+	long[] sortedKeys() {
+		long[] sorted = new long[this.size];
+		int i = 0;
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.used[slot]) {
+				sorted[i++] = this.keys[slot];
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @return the slot of the key, or the free slot where it goes
+	 */
+	private int slot(long key) {
+		int slot = hash(key) & this.mask;
+		while (this.used[slot] && this.keys[slot] != key) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the slot of the inserted key, moved when the table had to grow
+	 */
+	private int insert(int slot, long key) {
+		// at most half full, so that probe sequences stay short
+		if ((this.size + 1) * 2 > this.keys.length) {
+			this.resize();
+			slot = this.slot(key);
+		}
+
+		this.used[slot] = true;
+		this.keys[slot] = key;
+		this.values[slot] = 0L;
+		this.size++;
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldKeys = this.keys;
+		long[] oldValues = this.values;
+		boolean[] oldUsed = this.used;
+		this.allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int slot = this.slot(oldKeys[i]);
+				this.used[slot] = true;
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new long[capacity];
+		this.used = new boolean[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Fibonacci hashing, consecutive account ids are spread over the whole table
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,122 @@
+package com.nat.transfer.reconciliation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nat.transfer.domain.BalanceSnapshot;
+
+/**
+ * In memory reconciliation of the accounts of one id range.<br>
+ * Fed, in this order, with the balance each account starts from, the signed amounts of its transfers and its stored
+ * balance, it sums the transfers of each account in primitive maps and checks that the stored balance is the
+ * starting balance plus these sums. Transfers executed after untilMillis are counted in the check but not in the
+ * snapshots of the checkpoint.<br>
+ * The conservation totals leave out the legs whose counter-party is outside the reconciled ids (opened during the
+ * run), as its own leg is never summed. An account without a snapshot is not checked, its start is taken as its
+ * balance less its transfers so that these still net out the legs of its counter-parties.
+ *
+ * @author jyotirmani
+ */
+final class Partition {
+	private final long untilMillis;
+	private final long firstId;
+	private final long lastId;
+	private final LongLongHashMap startCents = new LongLongHashMap();
+	private final LongLongHashMap startTimes = new LongLongHashMap();
+	private final LongLongHashMap settledCents = new LongLongHashMap();
+	private final LongLongHashMap recentCents = new LongLongHashMap();
+	private final LongLongHashMap outsideCents = new LongLongHashMap();
+	private final LongLongHashMap slotCents = new LongLongHashMap();
+	private final PartitionResult result = new PartitionResult();
+
+	/**
+	 * @param untilMillis checkpoint of the reconciliation, epoch milliseconds
+	 * @param firstId first account id of the whole reconciliation, not only of this partition
+	 * @param lastId last account id of the whole reconciliation
+	 */
+	Partition(long untilMillis, long firstId, long lastId) {
+		super();
+		this.untilMillis = untilMillis;
+		this.firstId = firstId;
+		this.lastId = lastId;
+	}
+
+	/**
+	 * An account starts from a snapshot: its balance includes the transfers executed up to takenAt
+	 */
+	void start(long accountId, long balanceCents, long takenAt) {
+		this.startCents.put(accountId, balanceCents);
+		this.startTimes.put(accountId, takenAt);
+	}
+
+	/**
+	 * @param amountCents negative for a debit
+	 * @param counterPartyId the other account of the transfer
+	 */
+	void transfer(long accountId, long amountCents, long executedAt, long counterPartyId) {
+		this.result.transfers++;
+		// already in its starting balance
+		if (executedAt <= this.startTimes.get(accountId, Long.MIN_VALUE)) {
+			return;
+		}
+
+		if (counterPartyId < this.firstId || counterPartyId > this.lastId) {
+			this.outsideCents.addTo(accountId, amountCents);
+		}
+		if (executedAt <= this.untilMillis) {
+			this.settledCents.addTo(accountId, amountCents);
+		} else {
+			this.recentCents.addTo(accountId, amountCents);
+		}
+	}
+
+	/**
+	 * Credits of a hot account waiting in its slots, part of its stored balance
+	 */
+	void slots(long accountId, long balanceCents) {
+		this.slotCents.addTo(accountId, balanceCents);
+	}
+
+	/**
+	 * Checks the stored balance of an account, once every transfer and slot of the partition has been added
+	 */
+	void account(long accountId, long balanceCents) {
+		long netCents = this.settledCents.get(accountId, 0L) + this.recentCents.get(accountId, 0L);
+		long outsideCents = this.outsideCents.get(accountId, 0L);
+		long actualCents = balanceCents + this.slotCents.get(accountId, 0L);
+		this.result.netTransferCents += netCents - outsideCents;
+		this.result.balanceCents += actualCents - outsideCents;
+		if (!this.startCents.containsKey(accountId)) {
+			this.result.unverifiedAccounts++;
+			this.result.startCents += actualCents - netCents;
+			return;
+		}
+
+		long startCents = this.startCents.get(accountId, 0L);
+		this.result.accounts++;
+		this.result.startCents += startCents;
+		if (actualCents != startCents + netCents) {
+			this.result.suspect(accountId, startCents + netCents, actualCents);
+		}
+	}
+
+	PartitionResult result() {
+		return this.result;
+	}
+
+	/**
+	 * @return the snapshots at untilMillis of the accounts changed by the transfers executed up to it, in id order
+	 */
+	List<BalanceSnapshot> snapshots() {
+		long[] accountIds = this.settledCents.sortedKeys();
+		List<BalanceSnapshot> snapshots = new ArrayList<>(accountIds.length);
+		for (long accountId : accountIds) {
+			if (!this.startCents.containsKey(accountId)) {
+				continue;
+			}
+			snapshots.add(new BalanceSnapshot(accountId, this.untilMillis,
+					this.startCents.get(accountId, 0L) + this.settledCents.get(accountId, 0L)));
+		}
+		return snapshots;
+	}
+}
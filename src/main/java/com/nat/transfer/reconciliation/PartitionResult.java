@@ -0,0 +1,43 @@
+package com.nat.transfer.reconciliation;
+
+/**
+ * Counters and suspect accounts of one or more reconciled Partitions, merged up the fork/join tree.
+ *
+ * @author jyotirmani
+ */
+final class PartitionResult {
+	int partitions = 1;
+	long accounts;
+	long unverifiedAccounts;
+	long transfers;
+	long startCents;
+	long netTransferCents;
+	long balanceCents;
+	/**
+	 * Expected and stored balances of the accounts that did not match
+	 */
+	final LongLongHashMap suspectExpectedCents = new LongLongHashMap();
+	final LongLongHashMap suspectActualCents = new LongLongHashMap();
+
+	void suspect(long accountId, long expectedCents, long actualCents) {
+		this.suspectExpectedCents.put(accountId, expectedCents);
+		this.suspectActualCents.put(accountId, actualCents);
+	}
+
+	/**
+	 * Adds the counters and suspects of another result to this one
+	 * @return this
+	 */
+	PartitionResult merge(PartitionResult other) {
+		this.partitions += other.partitions;
+		this.accounts += other.accounts;
+		this.unverifiedAccounts += other.unverifiedAccounts;
+		this.transfers += other.transfers;
+		this.startCents += other.startCents;
+		this.netTransferCents += other.netTransferCents;
+		this.balanceCents += other.balanceCents;
+		other.suspectExpectedCents.forEach(this.suspectExpectedCents::put);
+		other.suspectActualCents.forEach(this.suspectActualCents::put);
+		return this;
+	}
+}
@@ -0,0 +1,311 @@
+package com.nat.transfer.reconciliation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.ReconciliationCheckpoint;
+import com.nat.transfer.dto.AccountMismatch;
+import com.nat.transfer.dto.ReconciliationReport;
+import com.nat.transfer.repositories.IAccountBalanceSlotRepository;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IBalanceSnapshotRepository;
+import com.nat.transfer.repositories.IReconciliationCheckpointRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.service.BalanceSnapshotter;
+
+/**
+ * Verifies that every Account balance matches its Transfer history, and that no money is created or lost.<br>
+ * The account ids are split into ranges of partitionSize ids, reconciled in parallel by a fork/join pool. A partition
+ * reads, through forward only cursors of (id, amount, time) rows in a read only transaction, the balance each account
+ * starts from (a BalanceSnapshot), the debits and credits of its accounts and their stored balances, and sums them in
+ * primitive long maps (see Partition). Nothing is locked, writers go on while it runs: an account that does not match
+ * is checked again on its own before being reported, so that a transfer committed during the partition read is not
+ * reported as a mismatch.<br>
+ * The first run reads the whole history from the opening balance snapshots. It then writes a snapshot at its
+ * checkpoint (settleMillis in the past) of every account changed before it, and records the checkpoint: the next
+ * runs start from the latest snapshots at the checkpoint and only read the transfers executed after it, through the
+ * (account, executed_at, id) indexes.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class ReconciliationEngine {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReconciliationEngine.class);
+
+	/**
+	 * Most mismatches listed in a report, all of them are logged
+	 */
+	private static final int REPORTED_MISMATCHES = 100;
+
+	private IAccountRepository accountRepository;
+	private ITransferRepository transferRepository;
+	private IBalanceSnapshotRepository snapshotRepository;
+	private IAccountBalanceSlotRepository slotRepository;
+	private IReconciliationCheckpointRepository checkpointRepository;
+	private BalanceSnapshotter balanceSnapshotter;
+	private TransactionTemplate transactionTemplate;
+	private TransactionTemplate readOnlyTransactionTemplate;
+
+	private long partitionSize = 100000L;
+	private int parallelism = 4;
+	private long settleMillis = 60000L;
+
+	private volatile ReconciliationReport lastReport;
+
+	@Autowired
+	public void setAccountRepository(IAccountRepository accountRepository) {
+		this.accountRepository = accountRepository;
+	}
+
+	@Autowired
+	public void setTransferRepository(ITransferRepository transferRepository) {
+		this.transferRepository = transferRepository;
+	}
+
+	@Autowired
+	public void setSnapshotRepository(IBalanceSnapshotRepository snapshotRepository) {
+		this.snapshotRepository = snapshotRepository;
+	}
+
+	@Autowired
+	public void setSlotRepository(IAccountBalanceSlotRepository slotRepository) {
+		this.slotRepository = slotRepository;
+	}
+
+	@Autowired
+	public void setCheckpointRepository(IReconciliationCheckpointRepository checkpointRepository) {
+		this.checkpointRepository = checkpointRepository;
+	}
+
+	@Autowired
+	public void setBalanceSnapshotter(BalanceSnapshotter balanceSnapshotter) {
+		this.balanceSnapshotter = balanceSnapshotter;
+	}
+
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+		this.readOnlyTransactionTemplate.setReadOnly(true);
+	}
+
+	/**
+	 * @param partitionSize account ids reconciled by one fork/join task
+	 */
+	@Value("${transfer.reconciliation.partition-size:100000}")
+	public void setPartitionSize(long partitionSize) {
+		this.partitionSize = Math.max(1L, partitionSize);
+	}
+
+	@Value("${transfer.reconciliation.parallelism:4}")
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * @param settleMillis age of the checkpoint at each run, longer than any transfer takes to commit
+	 */
+	@Value("${transfer.reconciliation.settle-millis:60000}")
+	public void setSettleMillis(long settleMillis) {
+		this.settleMillis = settleMillis;
+	}
+
+	@Scheduled(initialDelayString = "${transfer.reconciliation.interval-millis:3600000}",
+			fixedDelayString = "${transfer.reconciliation.interval-millis:3600000}")
+	public void reconcileLedger() {
+		this.reconcile();
+	}
+
+	/**
+	 * Reconciles the ledger up to settleMillis ago
+	 */
+	public ReconciliationReport reconcile() {
+		return this.reconcile(System.currentTimeMillis() - this.settleMillis);
+	}
+
+	/**
+	 * Reconciles every account, from the previous checkpoint (the whole history on the first run), and moves the
+	 * checkpoint to untilMillis
+	 * @param untilMillis epoch milliseconds, no transfer executed up to it may still be committing
+	 */
+	public synchronized ReconciliationReport reconcile(long untilMillis) {
+		long start = System.currentTimeMillis();
+		ReconciliationCheckpoint checkpoint = this.checkpointRepository.findOne(ReconciliationCheckpoint.LEDGER_ID);
+		boolean full = checkpoint == null;
+		long afterMillis = full ? Long.MIN_VALUE : checkpoint.getReconciledUntil();
+		long reconciledUntil = Math.max(untilMillis, afterMillis);
+
+		PartitionResult result;
+		Account first = this.accountRepository.findFirstByOrderByIdAsc();
+		if (first == null) {
+			result = new PartitionResult();
+			result.partitions = 0;
+		} else {
+			long lastId = this.accountRepository.findFirstByOrderByIdDesc().getId();
+			ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+			try {
+				result = pool.invoke(new PartitionTask(first.getId(), lastId, first.getId(), lastId, full, afterMillis,
+						reconciledUntil));
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		List<AccountMismatch> mismatches = this.confirmSuspects(result);
+		this.checkpointRepository.save(new ReconciliationCheckpoint(reconciledUntil));
+
+		ReconciliationReport report = new ReconciliationReport(full, reconciledUntil, result.partitions,
+				result.accounts, result.unverifiedAccounts, result.transfers, result.startCents,
+				result.netTransferCents, result.balanceCents,
+				mismatches.subList(0, Math.min(mismatches.size(), REPORTED_MISMATCHES)),
+				System.currentTimeMillis() - start);
+		if (report.isConserved()) {
+			LOGGER.info("Ledger reconciled until {}: {} accounts, {} transfers in {} ms", report.getReconciledUntil(),
+					report.getAccounts(), report.getTransfers(), report.getElapsedMillis());
+		} else {
+			LOGGER.error("Ledger reconciliation until {} failed: balance {}, opening balance {}, net transfers {}, {}"
+					+ " mismatching accounts", report.getReconciledUntil(), report.getBalance(),
+					report.getOpeningBalance(), report.getNetTransfers(), mismatches.size());
+			mismatches.forEach(m -> LOGGER.error("Account {} balance is {}, its transfers give {}", m.getAccountId(),
+					m.getActualBalance(), m.getExpectedBalance()));
+		}
+		this.lastReport = report;
+		return report;
+	}
+
+	/**
+	 * @return the report of the last reconciliation, null until one has run
+	 */
+	public ReconciliationReport getLastReport() {
+		return this.lastReport;
+	}
+
+	/**
+	 * Fork/join task splitting an account id range in halves down to partitionSize ids
+	 */
+	private final class PartitionTask extends RecursiveTask<PartitionResult> {
+		private static final long serialVersionUID = 1L;
+
+		private final long fromId;
+		private final long toId;
+		private final long firstId;
+		private final long lastId;
+		private final boolean full;
+		private final long afterMillis;
+		private final long untilMillis;
+
+		/**
+		 * @param firstId first account id of the whole reconciliation
+		 * @param lastId last account id of the whole reconciliation
+		 */
+		PartitionTask(long fromId, long toId, long firstId, long lastId, boolean full, long afterMillis,
+				long untilMillis) {
+			super();
+			this.fromId = fromId;
+			this.toId = toId;
+			this.firstId = firstId;
+			this.lastId = lastId;
+			this.full = full;
+			this.afterMillis = afterMillis;
+			this.untilMillis = untilMillis;
+		}
+
+		@Override
+		protected PartitionResult compute() {
+			if (this.toId - this.fromId < ReconciliationEngine.this.partitionSize) {
+				return ReconciliationEngine.this.reconcilePartition(this.fromId, this.toId, this.firstId, this.lastId,
+						this.full, this.afterMillis, this.untilMillis);
+			}
+
+			long middle = this.fromId + (this.toId - this.fromId) / 2L;
+			PartitionTask low = new PartitionTask(this.fromId, middle, this.firstId, this.lastId, this.full,
+					this.afterMillis, this.untilMillis);
+			low.fork();
+			PartitionResult high = new PartitionTask(middle + 1L, this.toId, this.firstId, this.lastId, this.full,
+					this.afterMillis, this.untilMillis).compute();
+			return low.join().merge(high);
+		}
+	}
+
+	/**
+	 * Helper method reconciling the accounts of an id range, then writing their snapshots at untilMillis. An
+	 * incremental run starts the accounts opened after the previous checkpoint from their opening snapshot.
+	 */
+	private PartitionResult reconcilePartition(long fromId, long toId, long firstId, long lastId, boolean full,
+			long afterMillis, long untilMillis) {
+		Partition partition = this.inTransaction(this.readOnlyTransactionTemplate, () -> {
+			Partition read = new Partition(untilMillis, firstId, lastId);
+			try (Stream<Object[]> starts = full ? this.snapshotRepository.streamFirstSnapshots(fromId, toId)
+					: this.snapshotRepository.streamLatestSnapshots(fromId, toId, afterMillis)) {
+				starts.forEach(row -> read.start(longValue(row[0]), longValue(row[1]), longValue(row[2])));
+			}
+			if (!full) {
+				try (Stream<Object[]> openings = this.snapshotRepository.streamFirstSnapshotsAfter(fromId, toId,
+						afterMillis)) {
+					openings.forEach(row -> read.start(longValue(row[0]), longValue(row[1]), longValue(row[2])));
+				}
+			}
+			try (Stream<Object[]> debits = this.transferRepository.streamDebits(fromId, toId, afterMillis)) {
+				debits.forEach(row -> read.transfer(longValue(row[0]), -longValue(row[1]), longValue(row[2]),
+						longValue(row[3])));
+			}
+			try (Stream<Object[]> credits = this.transferRepository.streamCredits(fromId, toId, afterMillis)) {
+				credits.forEach(row -> read.transfer(longValue(row[0]), longValue(row[1]), longValue(row[2]),
+						longValue(row[3])));
+			}
+			this.slotRepository.sumBalanceCentsByAccount(fromId, toId)
+					.forEach(row -> read.slots(longValue(row[0]), longValue(row[1])));
+			try (Stream<Object[]> balances = this.accountRepository.streamBalances(fromId, toId)) {
+				balances.forEach(row -> read.account(longValue(row[0]), longValue(row[1])));
+			}
+			return read;
+		});
+
+		this.inTransaction(this.transactionTemplate, () -> this.snapshotRepository.save(partition.snapshots()));
+		return partition.result();
+	}
+
+	/**
+	 * Helper method checking the suspect accounts again, one by one, and correcting the totals with their current
+	 * balances
+	 * @return the accounts that still do not match
+	 */
+	private List<AccountMismatch> confirmSuspects(PartitionResult result) {
+		List<AccountMismatch> mismatches = new ArrayList<>();
+		for (long accountId : result.suspectExpectedCents.sortedKeys()) {
+			Account account = this.accountRepository.findOne(accountId);
+			long actualCents = (account == null ? 0L : account.getBalanceCents())
+					+ this.slotRepository.sumBalanceCents(accountId);
+			long expectedCents = this.balanceSnapshotter.balanceCentsAt(accountId, Long.MAX_VALUE);
+
+			result.balanceCents += actualCents - result.suspectActualCents.get(accountId, 0L);
+			result.netTransferCents += expectedCents - result.suspectExpectedCents.get(accountId, 0L);
+			if (actualCents != expectedCents) {
+				mismatches.add(new AccountMismatch(accountId, expectedCents, actualCents));
+			}
+		}
+		return mismatches;
+	}
+
+	private <T> T inTransaction(TransactionTemplate template, Supplier<T> work) {
+		return template.execute(status -> work.get());
+	}
+
+	private static long longValue(Object value) {
+		return ((Number) value).longValue();
+	}
+}
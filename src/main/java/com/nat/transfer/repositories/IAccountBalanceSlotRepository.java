@@ -0,0 +1,63 @@
+package com.nat.transfer.repositories;
+
+import java.util.List;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import com.nat.transfer.domain.AccountBalanceSlot;
+
+@RepositoryRestResource(exported = false)
+public interface IAccountBalanceSlotRepository extends CrudRepository<AccountBalanceSlot, Long> {
+
+	/**
+	 * Reads the slots of a hot Account with a write lock, so that no credit lands in them until the transaction ends
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	List<AccountBalanceSlot> findByAccountIdOrderBySlotAsc(long accountId);
+
+	/**
+	 * Adds an amount in cents to one slot of a hot Account in a single statement, unless its balance would overflow
+	 * @param maxBalanceCents largest slot balance the amount can be added to, Long.MAX_VALUE - amountCents
+	 * @return the number of updated rows, zero when the slot does not exist or its balance would overflow
+	 */
+	@Modifying
+	@Query("update AccountBalanceSlot s set s.balanceCents = s.balanceCents + :amountCents where s.accountId = :accountId and s.slot = :slot and s.balanceCents <= :maxBalanceCents")
+	int credit(@Param("accountId") long accountId, @Param("slot") int slot, @Param("amountCents") long amountCents,
+			@Param("maxBalanceCents") long maxBalanceCents);
+
+	long countByAccountIdAndSlot(long accountId, int slot);
+
+	/**
+	 * Empties every slot of a hot Account, once their balances have been read with {@link #findByAccountIdOrderBySlotAsc(long)}
+	 * @return the number of updated rows
+	 */
+	@Modifying
+	@Query("update AccountBalanceSlot s set s.balanceCents = 0 where s.accountId = :accountId")
+	int clear(@Param("accountId") long accountId);
+
+	/**
+	 * @return the sum of the slot balances of an Account, zero when it has none
+	 */
+	@Query("select coalesce(sum(s.balanceCents), 0) from AccountBalanceSlot s where s.accountId = :accountId")
+	long sumBalanceCents(@Param("accountId") long accountId);
+
+	/**
+	 * @return the (account id, number of slots) of every hot Account, read from the (account_id, slot) index
+	 */
+	@Query("select s.accountId, count(s) from AccountBalanceSlot s group by s.accountId")
+	List<Object[]> countSlotsByAccount();
+
+	/**
+	 * @return the (account id, sum of the slot balances) of the hot Accounts in an id range
+	 */
+	@Query("select s.accountId, sum(s.balanceCents) from AccountBalanceSlot s where s.accountId between :fromId and :toId"
+			+ " group by s.accountId")
+	List<Object[]> sumBalanceCentsByAccount(@Param("fromId") long fromId, @Param("toId") long toId);
+}
@@ -1,10 +1,86 @@
 package com.nat.transfer.repositories;
 
-import org.springframework.data.repository.CrudRepository;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 import com.nat.transfer.domain.Account;
 
-public interface IAccountRepository extends CrudRepository<Account, Long> {
+public interface IAccountRepository extends PagingAndSortingRepository<Account, Long> {
 
+	/**
+	 * Cacheable in the Hibernate query cache, when the second-level-cache profile enables it
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	Account findByName(String name);
+
+	/**
+	 * Keyset page: the accounts following a given id, in id order
+	 */
+	@RestResource(exported = false)
+	List<Account> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+	/**
+	 * @return the account with the lowest id, null when there is none
+	 */
+	@RestResource(exported = false)
+	Account findFirstByOrderByIdAsc();
+
+	/**
+	 * @return the account with the highest id, null when there is none
+	 */
+	@RestResource(exported = false)
+	Account findFirstByOrderByIdDesc();
+
+	/**
+	 * Forward only cursor over the (id, balance_cents) of the accounts in an id range, without loading the
+	 * entities. Must be consumed and closed inside a transaction.
+	 */
+	@Query("select a.id, a.balanceCents from Account a where a.id between :fromId and :toId")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	@RestResource(exported = false)
+	Stream<Object[]> streamBalances(@Param("fromId") long fromId, @Param("toId") long toId);
+
+	/**
+	 * Writes the balance of an Account read earlier, only if its version is still the one that was read.<br>
+	 * Used with the AccountCache, the entity does not have to be loaded again to be updated.
+	 * @return the number of updated rows, zero when the account does not exist or has been changed since
+	 */
+	@Modifying
+	@Query("update Account a set a.balanceCents = :balanceCents, a.version = a.version + 1 where a.id = :id and a.version = :version")
+	@RestResource(exported = false)
+	int updateBalance(@Param("id") long id, @Param("balanceCents") long balanceCents, @Param("version") long version);
+
+	/**
+	 * Subtracts an amount in cents from the Account balance in a single statement, only if the available balance
+	 * (balance - held) covers it.<br>
+	 * The version is bumped so that concurrent entity based (OPTIMISTIC) updates still detect the change.
+	 * @return the number of updated rows, zero when the account does not exist or hasn't enough available balance
+	 */
+	@Modifying
+	@Query("update Account a set a.balanceCents = a.balanceCents - :amountCents, a.version = a.version + 1 where a.id = :id and a.balanceCents - a.heldCents >= :amountCents")
+	@RestResource(exported = false)
+	int debitIfSufficient(@Param("id") long id, @Param("amountCents") long amountCents);
+
+	/**
+	 * Adds an amount in cents to the Account balance in a single statement.<br>
+	 * The amount may be negative when the LedgerEngine persists the net change of an already checked batch.
+	 * @return the number of updated rows, zero when the account does not exist
+	 */
+	@Modifying
+	@Query("update Account a set a.balanceCents = a.balanceCents + :amountCents, a.version = a.version + 1 where a.id = :id")
+	@RestResource(exported = false)
+	int credit(@Param("id") long id, @Param("amountCents") long amountCents);
 }
@@ -0,0 +1,73 @@
+package com.nat.transfer.repositories;
+
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import com.nat.transfer.domain.BalanceSnapshot;
+
+@RepositoryRestResource(exported = false)
+public interface IBalanceSnapshotRepository extends CrudRepository<BalanceSnapshot, Long> {
+
+	/**
+	 * @return the latest snapshot of an account taken at or before a time, null when there is none. One lookup of
+	 * the (account_id, taken_at) index.
+	 */
+	BalanceSnapshot findFirstByAccountIdAndTakenAtLessThanEqualOrderByTakenAtDesc(long accountId, long takenAt);
+
+	/**
+	 * @return the earliest snapshot of an account taken after a time, null when there is none
+	 */
+	BalanceSnapshot findFirstByAccountIdAndTakenAtGreaterThanOrderByTakenAtAsc(long accountId, long takenAt);
+
+	/**
+	 * @return the latest snapshot of any account, null when there is none
+	 */
+	BalanceSnapshot findFirstByOrderByTakenAtDesc();
+
+	/**
+	 * Forward only cursor over the (account id, balance cents, taken_at) of the first snapshot (the opening balance)
+	 * of each account of an id range. Must be consumed and closed inside a transaction.
+	 */
+	@Query("select s.accountId, s.balanceCents, s.takenAt from BalanceSnapshot s"
+			+ " where s.accountId between :fromAccountId and :toAccountId"
+			+ " and s.takenAt = (select min(f.takenAt) from BalanceSnapshot f where f.accountId = s.accountId)")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	Stream<Object[]> streamFirstSnapshots(@Param("fromAccountId") long fromAccountId,
+			@Param("toAccountId") long toAccountId);
+
+	/**
+	 * Same as streamFirstSnapshots, for the accounts whose first snapshot was taken after a time (opened after it)
+	 */
+	@Query("select s.accountId, s.balanceCents, s.takenAt from BalanceSnapshot s"
+			+ " where s.accountId between :fromAccountId and :toAccountId and s.takenAt > :takenAt"
+			+ " and s.takenAt = (select min(f.takenAt) from BalanceSnapshot f where f.accountId = s.accountId)")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	Stream<Object[]> streamFirstSnapshotsAfter(@Param("fromAccountId") long fromAccountId,
+			@Param("toAccountId") long toAccountId, @Param("takenAt") long takenAt);
+
+	/**
+	 * Same as streamFirstSnapshots, for the latest snapshot of each account taken at or before a time
+	 */
+	@Query("select s.accountId, s.balanceCents, s.takenAt from BalanceSnapshot s"
+			+ " where s.accountId between :fromAccountId and :toAccountId and s.takenAt = (select max(l.takenAt)"
+			+ " from BalanceSnapshot l where l.accountId = s.accountId and l.takenAt <= :takenAt)")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	Stream<Object[]> streamLatestSnapshots(@Param("fromAccountId") long fromAccountId,
+			@Param("toAccountId") long toAccountId, @Param("takenAt") long takenAt);
+}
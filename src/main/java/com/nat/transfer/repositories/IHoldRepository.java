@@ -0,0 +1,26 @@
+package com.nat.transfer.repositories;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import com.nat.transfer.domain.Hold;
+
+@RepositoryRestResource(exported = false)
+public interface IHoldRepository extends CrudRepository<Hold, Long> {
+
+	/**
+	 * Keyset page of the holds in a status, in (expiry time, id) order. A range scan of the (status, expires_at) index.
+	 * @param afterExpiresAt expiry time of the last hold of the previous page
+	 * @param afterId id of the last hold of the previous page, zero for every hold at afterExpiresAt
+	 */
+	@Query("select h from Hold h where h.status = :status"
+			+ " and (h.expiresAt > :afterExpiresAt or (h.expiresAt = :afterExpiresAt and h.id > :afterId))"
+			+ " order by h.expiresAt, h.id")
+	List<Hold> findPage(@Param("status") Hold.Status status, @Param("afterExpiresAt") long afterExpiresAt,
+			@Param("afterId") long afterId, Pageable pageable);
+}
@@ -0,0 +1,10 @@
+package com.nat.transfer.repositories;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import com.nat.transfer.domain.ReconciliationCheckpoint;
+
+@RepositoryRestResource(exported = false)
+public interface IReconciliationCheckpointRepository extends CrudRepository<ReconciliationCheckpoint, Long> {
+}
@@ -0,0 +1,29 @@
+package com.nat.transfer.repositories;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import com.nat.transfer.domain.ScheduledTransfer;
+
+@RepositoryRestResource(exported = false)
+public interface IScheduledTransferRepository extends CrudRepository<ScheduledTransfer, Long> {
+
+	/**
+	 * Keyset page of the transfers in a status whose execution time is before a bound, in (execution time, id) order.
+	 * A range scan of the (status, execution_time) index.
+	 * @param afterExecutionTime execution time of the last transfer of the previous page
+	 * @param afterId id of the last transfer of the previous page, zero for every transfer at afterExecutionTime
+	 * @param beforeExecutionTime exclusive bound
+	 */
+	@Query("select s from ScheduledTransfer s where s.status = :status and s.executionTime < :beforeExecutionTime"
+			+ " and (s.executionTime > :afterExecutionTime or (s.executionTime = :afterExecutionTime and s.id > :afterId))"
+			+ " order by s.executionTime, s.id")
+	List<ScheduledTransfer> findPage(@Param("status") ScheduledTransfer.Status status,
+			@Param("afterExecutionTime") long afterExecutionTime, @Param("afterId") long afterId,
+			@Param("beforeExecutionTime") long beforeExecutionTime, Pageable pageable);
+}
@@ -1,8 +1,134 @@
 package com.nat.transfer.repositories;
 
-import org.springframework.data.repository.CrudRepository;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 import com.nat.transfer.domain.Transfer;
 
-public interface ITransferRepository extends CrudRepository<Transfer, Long> {
+public interface ITransferRepository extends PagingAndSortingRepository<Transfer, Long> {
+
+	/**
+	 * Keyset page: the transfers following a given id, in id order
+	 */
+	@RestResource(exported = false)
+	List<Transfer> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+	/**
+	 * Keyset page of the transfers debiting an account, in (execution time, id) order, executed before a bound.
+	 * A range scan of the (source_account_id, executed_at, id) index.
+	 * @param afterExecutedAt execution time of the last transfer of the previous page
+	 * @param afterId id of the last transfer of the previous page, zero for every transfer at afterExecutedAt
+	 * @param beforeExecutedAt exclusive bound
+	 */
+	@Query("select t from Transfer t where t.sourceAccountId = :accountId and t.executedAt < :beforeExecutedAt"
+			+ " and (t.executedAt > :afterExecutedAt or (t.executedAt = :afterExecutedAt and t.id > :afterId))"
+			+ " order by t.executedAt, t.id")
+	@RestResource(exported = false)
+	List<Transfer> findDebitPage(@Param("accountId") long accountId, @Param("afterExecutedAt") long afterExecutedAt,
+			@Param("afterId") long afterId, @Param("beforeExecutedAt") long beforeExecutedAt, Pageable pageable);
+
+	/**
+	 * Same as findDebitPage, for the transfers crediting an account, over the (destination_account_id, executed_at,
+	 * id) index
+	 */
+	@Query("select t from Transfer t where t.destinationAccountId = :accountId and t.executedAt < :beforeExecutedAt"
+			+ " and (t.executedAt > :afterExecutedAt or (t.executedAt = :afterExecutedAt and t.id > :afterId))"
+			+ " order by t.executedAt, t.id")
+	@RestResource(exported = false)
+	List<Transfer> findCreditPage(@Param("accountId") long accountId, @Param("afterExecutedAt") long afterExecutedAt,
+			@Param("afterId") long afterId, @Param("beforeExecutedAt") long beforeExecutedAt, Pageable pageable);
+
+	/**
+	 * @return the sum in cents of the transfers debiting an account executed in (afterExecutedAt, untilExecutedAt].
+	 * A range scan of the (source_account_id, executed_at, id) index.
+	 */
+	@Query("select coalesce(sum(t.amountCents), 0) from Transfer t where t.sourceAccountId = :accountId"
+			+ " and t.executedAt > :afterExecutedAt and t.executedAt <= :untilExecutedAt")
+	@RestResource(exported = false)
+	long sumDebits(@Param("accountId") long accountId, @Param("afterExecutedAt") long afterExecutedAt,
+			@Param("untilExecutedAt") long untilExecutedAt);
+
+	/**
+	 * Same as sumDebits, for the transfers crediting an account, over the (destination_account_id, executed_at, id)
+	 * index
+	 */
+	@Query("select coalesce(sum(t.amountCents), 0) from Transfer t where t.destinationAccountId = :accountId"
+			+ " and t.executedAt > :afterExecutedAt and t.executedAt <= :untilExecutedAt")
+	@RestResource(exported = false)
+	long sumCredits(@Param("accountId") long accountId, @Param("afterExecutedAt") long afterExecutedAt,
+			@Param("untilExecutedAt") long untilExecutedAt);
+
+	/**
+	 * @return the accounts debited by the transfers executed in (afterExecutedAt, untilExecutedAt]. A range scan of
+	 * the executed_at index.
+	 */
+	@Query("select distinct t.sourceAccountId from Transfer t"
+			+ " where t.executedAt > :afterExecutedAt and t.executedAt <= :untilExecutedAt")
+	@RestResource(exported = false)
+	List<Long> findDebitedAccountIds(@Param("afterExecutedAt") long afterExecutedAt,
+			@Param("untilExecutedAt") long untilExecutedAt);
+
+	/**
+	 * Same as findDebitedAccountIds, for the credited accounts
+	 */
+	@Query("select distinct t.destinationAccountId from Transfer t"
+			+ " where t.executedAt > :afterExecutedAt and t.executedAt <= :untilExecutedAt")
+	@RestResource(exported = false)
+	List<Long> findCreditedAccountIds(@Param("afterExecutedAt") long afterExecutedAt,
+			@Param("untilExecutedAt") long untilExecutedAt);
+
+	/**
+	 * Forward only cursor over the (source account id, amount cents, executed_at, destination account id) of the
+	 * transfers debiting the accounts of an id range, executed after a time. Must be consumed and closed inside a
+	 * transaction.
+	 */
+	@Query("select t.sourceAccountId, t.amountCents, t.executedAt, t.destinationAccountId from Transfer t"
+			+ " where t.sourceAccountId between :fromAccountId and :toAccountId and t.executedAt > :afterExecutedAt")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	@RestResource(exported = false)
+	Stream<Object[]> streamDebits(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId,
+			@Param("afterExecutedAt") long afterExecutedAt);
+
+	/**
+	 * Same as streamDebits, for the (destination account id, amount cents, executed_at, source account id) of the
+	 * transfers crediting the accounts of an id range
+	 */
+	@Query("select t.destinationAccountId, t.amountCents, t.executedAt, t.sourceAccountId from Transfer t"
+			+ " where t.destinationAccountId between :fromAccountId and :toAccountId and t.executedAt > :afterExecutedAt")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	@RestResource(exported = false)
+	Stream<Object[]> streamCredits(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId,
+			@Param("afterExecutedAt") long afterExecutedAt);
+
+	/**
+	 * @return the transfer executed for an idempotency key, null when there is none
+	 */
+	@RestResource(exported = false)
+	Transfer findByIdempotencyKey(String idempotencyKey);
+
+	/**
+	 * Forward only cursor over all the transfers in id order, must be consumed and closed inside a transaction
+	 */
+	@Query("select t from Transfer t order by t.id")
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+		@QueryHint(name = "org.hibernate.readOnly", value = "true")
+	})
+	@RestResource(exported = false)
+	Stream<Transfer> streamAllByOrderByIdAsc();
 }
@@ -0,0 +1,133 @@
+package com.nat.transfer.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Striped lock manager keyed by Account id<br>
+ * Each account id is hashed into a fixed array of locks, so transfers that share no stripe run in parallel.<br>
+ * All the stripes of a request are taken in ascending stripe order (ascending account id order while ids are
+ * below the stripe count), which makes lock acquisition deadlock free even when two accounts share a stripe.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class AccountLockManager {
+	/**
+	 * Default number of lock stripes
+	 */
+	public static final int DEFAULT_STRIPES = 1024;
+
+	private final ReentrantLock[] stripes;
+	private final int mask;
+
+	public AccountLockManager() {
+		this(DEFAULT_STRIPES);
+	}
+
+	@Autowired
+	public AccountLockManager(@Value("${transfer.lock.stripes:" + DEFAULT_STRIPES + "}") int stripeCount) {
+		super();
+
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("Lock stripe count must be greater than zero");
+		}
+
+		// round up to a power of two so the stripe index is a simple mask
+		int size = Integer.highestOneBit(stripeCount);
+		if (size < stripeCount) {
+			size <<= 1;
+		}
+
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Locks the stripes of all the given accounts, blocking until every stripe is held
+	 * @param accountIds the account ids to lock, in any order and possibly repeated
+	 * @return a guard that releases the stripes when closed
+	 */
+	public Guard lock(long... accountIds) {
+		int[] indexes = this.stripeIndexes(accountIds);
+
+		int locked = 0;
+		try {
+			for (; locked < indexes.length; locked++) {
+				this.stripes[indexes[locked]].lock();
+			}
+		} catch (RuntimeException | Error e) {
+			this.unlock(indexes, locked);
+			throw e;
+		}
+
+		return new Guard(indexes);
+	}
+
+	/**
+	 * @return the number of lock stripes
+	 */
+	public int getStripeCount() {
+		return this.stripes.length;
+	}
+
+	/**
+	 * Helper method to map account ids to their sorted and distinct stripe indexes
+	 */
+	private int[] stripeIndexes(long[] accountIds) {
+		int[] indexes = new int[accountIds.length];
+		for (int i = 0; i < accountIds.length; i++) {
+			indexes[i] = this.stripeOf(accountIds[i]);
+		}
+
+		Arrays.sort(indexes);
+
+		int distinct = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			if (i == 0 || indexes[i] != indexes[distinct - 1]) {
+				indexes[distinct++] = indexes[i];
+			}
+		}
+
+		return distinct == indexes.length ? indexes : Arrays.copyOf(indexes, distinct);
+	}
+
+	private int stripeOf(long accountId) {
+		// sequential ids land on consecutive stripes, the high bits are folded in for very large ids
+		return (int) (accountId ^ (accountId >>> 32)) & this.mask;
+	}
+
+	private void unlock(int[] indexes, int count) {
+		for (int i = count - 1; i >= 0; i--) {
+			this.stripes[indexes[i]].unlock();
+		}
+	}
+
+	/**
+	 * Holds the stripes locked by a {@link AccountLockManager#lock(long...)} call.<br>
+	 * Must be closed by the same thread that acquired it.
+	 */
+	public final class Guard implements AutoCloseable {
+		private final int[] indexes;
+		private boolean released;
+
+		private Guard(int[] indexes) {
+			this.indexes = indexes;
+		}
+
+		@Override
+		public void close() {
+			if (!this.released) {
+				this.released = true;
+				AccountLockManager.this.unlock(this.indexes, this.indexes.length);
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.nat.transfer.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.metrics.TransferMetrics.Stage;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+
+/**
+ * Units of work over locked Accounts, shared by the TransferService, the HoldService and the HotAccountConsolidator.
+ * <br>
+ * A unit of work locks the stripes of its accounts (see AccountLockManager), runs in its own transaction so that the
+ * stripes are only released after commit, loads its accounts with one query, changes them in memory and saves them
+ * with its Transfers. The lock waits and the commits are timed, the refused transfers counted by reason.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class AccountStore {
+	private static final TransactionDefinition TRANSACTION_DEFINITION = new DefaultTransactionDefinition();
+
+	private IAccountRepository accountRepository;
+	private ITransferRepository transferRepository;
+	private AccountLockManager lockManager = new AccountLockManager();
+	private PlatformTransactionManager transactionManager;
+	private AccountCache accountCache;
+	private HotAccountManager hotAccounts;
+	private TransferMetrics metrics = new TransferMetrics();
+
+	@Autowired
+	public void setAccountRepository(IAccountRepository accountRepository) {
+		this.accountRepository = accountRepository;
+	}
+
+	@Autowired
+	public void setTransferRepository(ITransferRepository transferRepository) {
+		this.transferRepository = transferRepository;
+	}
+
+	@Autowired
+	public void setLockManager(AccountLockManager lockManager) {
+		this.lockManager = lockManager;
+	}
+
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	@Autowired
+	public void setAccountCache(AccountCache accountCache) {
+		this.accountCache = accountCache;
+	}
+
+	@Autowired
+	public void setHotAccountManager(HotAccountManager hotAccounts) {
+		this.hotAccounts = hotAccounts;
+	}
+
+	@Autowired
+	public void setMetrics(TransferMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Locks the stripes of accounts (see AccountLockManager), the wait is recorded as LOCK_WAIT
+	 */
+	public AccountLockManager.Guard lock(long... accountIds) {
+		long lockStart = System.nanoTime();
+		AccountLockManager.Guard guard = this.lockManager.lock(accountIds);
+		this.metrics.recordSince(Stage.LOCK_WAIT, lockStart);
+		return guard;
+	}
+
+	/**
+	 * Runs a unit of work inside a new transaction.<br>
+	 * Same as TransactionTemplate.execute, with the commit timed on its own.
+	 */
+	public <T> T inTransaction(TransactionCallback<T> callback) {
+		TransactionStatus status = this.transactionManager.getTransaction(TRANSACTION_DEFINITION);
+		T result;
+		try {
+			result = callback.doInTransaction(status);
+		} catch (RuntimeException | Error e) {
+			this.transactionManager.rollback(status);
+			throw e;
+		}
+
+		long commitStart = System.nanoTime();
+		this.transactionManager.commit(status);
+		this.metrics.recordSince(Stage.COMMIT, commitStart);
+		return result;
+	}
+
+	/**
+	 * Loads the accounts of a unit of work, within the current transaction.<br>
+	 * The accounts are the instances of the repository, which a rollback does not restore: a unit of work failing after
+	 * changing them undoes the changes in memory before throwing.
+	 * @return the existing accounts by id
+	 */
+	public Map<Long, Account> loadAccounts(long[] accountIds) {
+		List<Long> ids = new ArrayList<>(accountIds.length);
+		for (long id : accountIds) {
+			ids.add(id);
+		}
+
+		// units of work change the entities, hot accounts are consolidated (in id order) before being read
+		ids.stream().filter(this.hotAccounts::isHot).sorted().forEach(this::consolidate);
+
+		// one query for all the accounts of the unit of work
+		Map<Long, Account> accounts = new HashMap<>();
+		for (Account account : this.accountRepository.findAll(ids)) {
+			accounts.put(account.getId(), account);
+		}
+		return accounts;
+	}
+
+	/**
+	 * Saves the loaded accounts, cached once committed
+	 */
+	public void saveAccounts(Map<Long, Account> accounts) {
+		this.accountRepository.save(accounts.values());
+		// the versions are bumped by the flush of the commit
+		this.accountCache.putAfterCommit(accounts.values());
+	}
+
+	/**
+	 * @return the saved transfers, in the same order
+	 */
+	public List<Transfer> saveTransfers(List<Transfer> transfers) {
+		// a single save call lets Hibernate group the inserts in JDBC batches
+		List<Transfer> saved = new ArrayList<>(transfers.size());
+		for (Transfer transfer : this.transferRepository.save(transfers)) {
+			saved.add(transfer);
+		}
+		return saved;
+	}
+
+	/**
+	 * Credits a loaded destination account, the source is refunded when the balance would overflow
+	 */
+	public void credit(Account sourceAccount, Account destinationAccount, long amountCents)
+			throws TransferServiceException {
+		try {
+			destinationAccount.add(amountCents);
+		} catch (ArithmeticException e) {
+			sourceAccount.add(amountCents);
+			throw new TransferServiceException("Destination account balance would overflow", e);
+		}
+	}
+
+	/**
+	 * Moves the slot balances of a hot account into the account balance, within the current transaction
+	 */
+	public void consolidate(long accountId) throws TransferServiceException {
+		if (this.hotAccounts.consolidate(accountId) != 0L) {
+			this.accountCache.evictAfterCommit(accountId);
+		}
+	}
+
+	/**
+	 * Same as consolidate, with the stripe of the account and in its own transaction (see HotAccountConsolidator)
+	 */
+	public void consolidateHotAccount(long accountId) throws TransferServiceException {
+		// a LOCKING transfer debiting the account holds its stripe for the whole transaction
+		try (AccountLockManager.Guard guard = this.lock(accountId)) {
+			this.inTransaction(status -> {
+				this.consolidate(accountId);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Checks the Transfer rules, once for every mode so that rejections are counted by reason
+	 */
+	public void checkTransfer(long sourceAccountId, long destinationAccountId, long amountCents)
+			throws TransferServiceException {
+		if (sourceAccountId == destinationAccountId) {
+			this.metrics.reject(Rejection.SAME_ACCOUNT);
+			throw new TransferServiceException("Source and Destination account cannot be the same");
+		}
+		if (amountCents <= 0L) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			throw new TransferServiceException("Transfer amount must be greater than zero");
+		}
+	}
+
+	public TransferServiceException insufficientBalance() {
+		this.metrics.reject(Rejection.INSUFFICIENT_FUNDS);
+		return new TransferServiceException("Source account hasn't enough balance for transfer.");
+	}
+
+	/**
+	 * @param role Source or Destination
+	 */
+	public TransferServiceException accountNotFound(String role, long accountId) {
+		this.metrics.reject(Rejection.ACCOUNT_NOT_FOUND);
+		return new TransferServiceException(role + " account not found: " + accountId);
+	}
+}
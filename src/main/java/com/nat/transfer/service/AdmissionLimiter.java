@@ -0,0 +1,274 @@
+package com.nat.transfer.service;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.dto.AdmissionStatistics;
+import com.nat.transfer.exception.OverloadedException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+
+/**
+ * Admission control in front of the asynchronous TransferService calls.<br>
+ * At most limit calls are in flight, the next queueSize calls wait, and any other call is refused at once with an
+ * OverloadedException (429 Too Many Requests) instead of making every call slower. A waiting call is refused too
+ * when it has waited longer than maxWaitMillis.<br>
+ * The limit adapts to the observed latency (AIMD): a call completing within latencyTolerance times the smoothed
+ * latency, while the limit is at least half used, adds 1/limit to it (about one per round of limit calls). A slower
+ * call, or a call refused downstream as overloaded, multiplies it by backoffRatio, at most once per smoothed latency
+ * so that the calls of one slow round only count once.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class AdmissionLimiter {
+	/**
+	 * Weight of a new latency sample in the smoothed latency
+	 */
+	private static final double SMOOTHING = 0.01;
+
+	/**
+	 * A call waiting for a permit
+	 */
+	private static final class Waiting {
+		final Runnable start;
+		final CompletableFuture<?> result;
+		final long queuedAt = System.nanoTime();
+
+		Waiting(Runnable start, CompletableFuture<?> result) {
+			this.start = start;
+			this.result = result;
+		}
+	}
+
+	private TransferExecutor executor;
+	private TransferMetrics metrics;
+
+	private int minLimit = 4;
+	private int maxLimit = 1024;
+	private int queueSize = 256;
+	private long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(500L);
+	private double latencyTolerance = 2.0;
+	private double backoffRatio = 0.9;
+	private long retryAfterSeconds = 1L;
+
+	private volatile double limit = 32.0;
+	private double smoothedNanos;
+	private long nextDecreaseNanos;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final Queue<Waiting> queue = new ConcurrentLinkedQueue<>();
+	private final LongAdder admitted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param executor starts the calls that have waited for a permit, never the thread completing another call
+	 */
+	@Autowired
+	public void setExecutor(TransferExecutor executor) {
+		this.executor = executor;
+	}
+
+	@Autowired
+	public void setMetrics(TransferMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Value("${transfer.admission.initial-limit:32}")
+	public void setInitialLimit(int initialLimit) {
+		this.limit = initialLimit;
+	}
+
+	@Value("${transfer.admission.min-limit:4}")
+	public void setMinLimit(int minLimit) {
+		this.minLimit = Math.max(1, minLimit);
+	}
+
+	@Value("${transfer.admission.max-limit:1024}")
+	public void setMaxLimit(int maxLimit) {
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * @param queueSize calls waiting for a permit, calls beyond it are refused at once
+	 */
+	@Value("${transfer.admission.queue-size:256}")
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	@Value("${transfer.admission.max-wait-millis:500}")
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+	}
+
+	/**
+	 * @param latencyTolerance a call slower than this multiple of the smoothed latency decreases the limit
+	 */
+	@Value("${transfer.admission.latency-tolerance:2.0}")
+	public void setLatencyTolerance(double latencyTolerance) {
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	@Value("${transfer.admission.backoff-ratio:0.9}")
+	public void setBackoffRatio(double backoffRatio) {
+		this.backoffRatio = backoffRatio;
+	}
+
+	/**
+	 * @param retryAfterSeconds Retry-After of the refused calls
+	 */
+	@Value("${transfer.admission.retry-after-seconds:1}")
+	public void setRetryAfterSeconds(long retryAfterSeconds) {
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Runs an asynchronous call once it is admitted
+	 * @param call starts the call, only invoked once a permit is held
+	 * @return a future completed like the future of the call, or failed with an OverloadedException when the call is
+	 * refused
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		if (this.tryAcquire()) {
+			this.start(call, result);
+			return result;
+		}
+
+		if (this.queued.incrementAndGet() > this.queueSize) {
+			this.queued.decrementAndGet();
+			result.completeExceptionally(this.overloaded());
+			return result;
+		}
+
+		this.queue.add(new Waiting(() -> this.start(call, result), result));
+		// permits released since tryAcquire would otherwise be missed
+		this.drain();
+		return result;
+	}
+
+	public AdmissionStatistics getStatistics() {
+		double smoothedMicros;
+		synchronized (this) {
+			smoothedMicros = this.smoothedNanos / 1000.0;
+		}
+		return new AdmissionStatistics(this.currentLimit(), this.inFlight.get(), this.queued.get(), this.queueSize,
+				this.admitted.sum(), this.rejected.sum(), smoothedMicros);
+	}
+
+	private int currentLimit() {
+		return Math.max(1, (int) this.limit);
+	}
+
+	private boolean tryAcquire() {
+		while (true) {
+			int current = this.inFlight.get();
+			if (current >= this.currentLimit()) {
+				return false;
+			}
+			if (this.inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private <T> void start(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+		this.admitted.increment();
+		long start = System.nanoTime();
+
+		CompletableFuture<T> future;
+		try {
+			future = call.get();
+		} catch (RuntimeException e) {
+			future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+		}
+
+		future.whenComplete((value, failure) -> {
+			this.release(System.nanoTime() - start, failure instanceof OverloadedException);
+			if (failure == null) {
+				result.complete(value);
+			} else {
+				result.completeExceptionally(failure);
+			}
+		});
+	}
+
+	private void release(long nanos, boolean overloaded) {
+		int inFlightCalls = this.inFlight.getAndDecrement();
+		this.adapt(nanos, overloaded, inFlightCalls);
+		this.drain();
+	}
+
+	/**
+	 * Helper method updating the smoothed latency and the limit with one completed call
+	 */
+	private synchronized void adapt(long nanos, boolean overloaded, int inFlightCalls) {
+		if (this.smoothedNanos == 0.0) {
+			this.smoothedNanos = nanos;
+		}
+		boolean slow = overloaded || nanos > this.smoothedNanos * this.latencyTolerance;
+		this.smoothedNanos += (nanos - this.smoothedNanos) * SMOOTHING;
+
+		double current = this.limit;
+		if (slow) {
+			long now = System.nanoTime();
+			if (now - this.nextDecreaseNanos >= 0L) {
+				this.limit = Math.max(this.minLimit, current * this.backoffRatio);
+				this.nextDecreaseNanos = now + (long) this.smoothedNanos;
+			}
+		} else if (inFlightCalls * 2 >= current) {
+			// an unused limit is not proof of capacity
+			this.limit = Math.min(this.maxLimit, current + 1.0 / current);
+		}
+	}
+
+	/**
+	 * Helper method starting the waiting calls while permits are available
+	 */
+	private void drain() {
+		while (!this.queue.isEmpty() && this.tryAcquire()) {
+			Waiting waiting = this.queue.poll();
+			if (waiting == null) {
+				// taken by another thread, which will find this permit free
+				this.inFlight.decrementAndGet();
+				return;
+			}
+			this.queued.decrementAndGet();
+
+			if (System.nanoTime() - waiting.queuedAt > this.maxWaitNanos) {
+				this.inFlight.decrementAndGet();
+				waiting.result.completeExceptionally(this.overloaded());
+				continue;
+			}
+
+			this.executor.submit(() -> {
+				waiting.start.run();
+				return null;
+			}).whenComplete((ignored, failure) -> {
+				if (failure != null) {
+					// the call was not started
+					this.inFlight.decrementAndGet();
+					waiting.result.completeExceptionally(failure);
+				}
+			});
+		}
+	}
+
+	private OverloadedException overloaded() {
+		this.rejected.increment();
+		this.metrics.reject(Rejection.OVERLOADED);
+		return new OverloadedException("Too many concurrent requests, retry later", this.retryAfterSeconds);
+	}
+}
@@ -0,0 +1,136 @@
+package com.nat.transfer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.BalanceSnapshot;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IBalanceSnapshotRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+
+/**
+ * Point in time balances of the Accounts.<br>
+ * An account has a BalanceSnapshot of its initial balance when it is opened (see TransferService), then every
+ * intervalMillis the accounts changed by transfers since the previous run get a new one. The balance at a time is
+ * the nearest snapshot taken at or before it, plus the transfers executed in between, summed by two range scans of
+ * the (account, executed_at, id) indexes of Transfer: the replayed transfers are bounded by the snapshot interval,
+ * not by the history of the account.<br>
+ * Snapshots are taken settleMillis in the past, so that the transfers created before a snapshot time but not yet
+ * committed are not missed. A time before the first snapshot of an account is replayed backwards from it, and an
+ * account without any snapshot (opened before them) backwards from its stored balance.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class BalanceSnapshotter {
+	private IAccountRepository accountRepository;
+	private ITransferRepository transferRepository;
+	private IBalanceSnapshotRepository snapshotRepository;
+
+	private long settleMillis = 60000L;
+
+	/**
+	 * Transfers executed up to this time are in the snapshots, Long.MIN_VALUE until known
+	 */
+	private long snapshotUntil = Long.MIN_VALUE;
+
+	@Autowired
+	public void setAccountRepository(IAccountRepository accountRepository) {
+		this.accountRepository = accountRepository;
+	}
+
+	@Autowired
+	public void setTransferRepository(ITransferRepository transferRepository) {
+		this.transferRepository = transferRepository;
+	}
+
+	@Autowired
+	public void setSnapshotRepository(IBalanceSnapshotRepository snapshotRepository) {
+		this.snapshotRepository = snapshotRepository;
+	}
+
+	/**
+	 * @param settleMillis age of the snapshot time at each run, longer than any transfer takes to commit
+	 */
+	@Value("${transfer.snapshots.settle-millis:60000}")
+	public void setSettleMillis(long settleMillis) {
+		this.settleMillis = settleMillis;
+	}
+
+	@Scheduled(initialDelayString = "${transfer.snapshots.interval-millis:900000}",
+			fixedDelayString = "${transfer.snapshots.interval-millis:900000}")
+	public void snapshotBalances() {
+		this.takeSnapshots(System.currentTimeMillis() - this.settleMillis);
+	}
+
+	/**
+	 * Writes, in one transaction, a snapshot at atMillis of every account changed by the transfers executed since
+	 * the previous snapshots
+	 * @param atMillis epoch milliseconds
+	 * @return the number of written snapshots
+	 */
+	public synchronized int takeSnapshots(long atMillis) {
+		if (this.snapshotUntil == Long.MIN_VALUE) {
+			BalanceSnapshot latest = this.snapshotRepository.findFirstByOrderByTakenAtDesc();
+			if (latest != null) {
+				this.snapshotUntil = latest.getTakenAtMillis();
+			}
+		}
+		if (atMillis <= this.snapshotUntil) {
+			return 0;
+		}
+
+		Set<Long> changed = new TreeSet<>(this.transferRepository.findDebitedAccountIds(this.snapshotUntil, atMillis));
+		changed.addAll(this.transferRepository.findCreditedAccountIds(this.snapshotUntil, atMillis));
+
+		List<BalanceSnapshot> snapshots = new ArrayList<>(changed.size());
+		for (long accountId : changed) {
+			snapshots.add(new BalanceSnapshot(accountId, atMillis, this.balanceCentsAt(accountId, atMillis)));
+		}
+		this.snapshotRepository.save(snapshots);
+		this.snapshotUntil = atMillis;
+		return snapshots.size();
+	}
+
+	/**
+	 * @param atMillis epoch milliseconds, the transfers executed at this time are included
+	 * @return the balance in cents of an account at a time
+	 * @throws TransferServiceException when the account does not exist
+	 */
+	public long balanceCentsAt(long accountId, long atMillis) throws TransferServiceException {
+		BalanceSnapshot before = this.snapshotRepository
+				.findFirstByAccountIdAndTakenAtLessThanEqualOrderByTakenAtDesc(accountId, atMillis);
+		if (before != null) {
+			return before.getBalanceCents() + this.netCents(accountId, before.getTakenAtMillis(), atMillis);
+		}
+
+		BalanceSnapshot after = this.snapshotRepository
+				.findFirstByAccountIdAndTakenAtGreaterThanOrderByTakenAtAsc(accountId, atMillis);
+		if (after != null) {
+			return after.getBalanceCents() - this.netCents(accountId, atMillis, after.getTakenAtMillis());
+		}
+
+		Account account = this.accountRepository.findOne(accountId);
+		if (account == null) {
+			throw new TransferServiceException("Account not found: " + accountId);
+		}
+		return account.getBalanceCents() - this.netCents(accountId, atMillis, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Helper method summing the credits minus the debits of an account executed in (afterMillis, untilMillis]
+	 */
+	private long netCents(long accountId, long afterMillis, long untilMillis) {
+		return this.transferRepository.sumCredits(accountId, afterMillis, untilMillis)
+				- this.transferRepository.sumDebits(accountId, afterMillis, untilMillis);
+	}
+}
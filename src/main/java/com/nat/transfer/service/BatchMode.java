@@ -0,0 +1,18 @@
+package com.nat.transfer.service;
+
+/**
+ * Failure semantics of a batch transfer
+ *
+ * @author jyotirmani
+ */
+public enum BatchMode {
+	/**
+	 * The whole batch runs in one transaction, a single failing item rolls every item back
+	 */
+	ALL_OR_NOTHING,
+
+	/**
+	 * The batch is committed in chunks, failing items are reported and skipped while the others are committed
+	 */
+	BEST_EFFORT
+}
@@ -0,0 +1,201 @@
+package com.nat.transfer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.dto.TransferRequest;
+import com.nat.transfer.dto.TransferResult;
+import com.nat.transfer.exception.TransferServiceException;
+
+/**
+ * Group commit of the GROUP_COMMIT transfer mode.<br>
+ * Callers enqueue their transfer and wait for its future. A single committer thread takes the first waiting
+ * transfer, keeps collecting for at most maxDelayNanos or until maxItems are collected, and hands the whole group to
+ * the commit function, which applies it in one database transaction. Every future of the group completes once that
+ * transaction has committed: one commit, and one log flush, covers the whole group. A transfer that breaks a rule
+ * only fails its own future.
+ *
+ * @author jyotirmani
+ */
+final class GroupCommitter {
+	private static final long IDLE_POLL_MILLIS = 100L;
+
+	/**
+	 * A transfer waiting for its group
+	 */
+	private static final class Pending {
+		final TransferRequest request;
+		final CompletableFuture<Transfer> future = new CompletableFuture<>();
+
+		Pending(TransferRequest request) {
+			this.request = request;
+		}
+	}
+
+	private final Function<List<TransferRequest>, List<TransferResult>> commitGroup;
+	private final int maxItems;
+	private final long maxDelayNanos;
+	private final BlockingQueue<Pending> queue;
+
+	/**
+	 * Held by submit from its running check until its transfer is queued, and by stop while it clears running: a
+	 * transfer is either refused or queued before the committer loop can end
+	 */
+	private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+	private volatile boolean running;
+	private Thread committerThread;
+
+	/**
+	 * @param commitGroup applies a group in one transaction, and returns one result per request in request order
+	 * @param maxItems largest group
+	 * @param maxDelayNanos longest time a group is kept open after its first transfer
+	 * @param queueCapacity waiting transfers, callers block beyond it
+	 */
+	GroupCommitter(Function<List<TransferRequest>, List<TransferResult>> commitGroup, int maxItems, long maxDelayNanos,
+			int queueCapacity) {
+		super();
+		if (maxItems < 1) {
+			throw new IllegalArgumentException("Group commit max items must be greater than zero");
+		}
+
+		this.commitGroup = commitGroup;
+		this.maxItems = maxItems;
+		this.maxDelayNanos = maxDelayNanos;
+		this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, maxItems));
+	}
+
+	synchronized void start() {
+		if (this.running) {
+			return;
+		}
+
+		this.running = true;
+		this.committerThread = new Thread(this::committerLoop, "group-committer");
+		this.committerThread.setDaemon(true);
+		this.committerThread.start();
+	}
+
+	/**
+	 * Stops accepting transfers, then waits until every accepted transfer is committed
+	 */
+	synchronized void stop() throws InterruptedException {
+		if (this.committerThread == null) {
+			return;
+		}
+
+		this.stateLock.writeLock().lock();
+		try {
+			this.running = false;
+		} finally {
+			this.stateLock.writeLock().unlock();
+		}
+		this.committerThread.join();
+		this.committerThread = null;
+	}
+
+	/**
+	 * @return a future completed once the transfer is committed, or failed with the TransferServiceException that
+	 * refused it
+	 */
+	CompletableFuture<Transfer> submit(long sourceAccountId, long destinationAccountId, long amountCents,
+			String idempotencyKey) throws TransferServiceException {
+		TransferRequest request = new TransferRequest(sourceAccountId, destinationAccountId, Money.toBigDecimal(amountCents));
+		request.setIdempotencyKey(idempotencyKey);
+		Pending pending = new Pending(request);
+
+		this.stateLock.readLock().lock();
+		try {
+			if (!this.running) {
+				throw new TransferServiceException("Group committer is not running");
+			}
+			// a full queue blocks stop too, until the committer, still running, makes room
+			this.queue.put(pending);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransferServiceException("Interrupted while waiting for the group commit queue", e);
+		} finally {
+			this.stateLock.readLock().unlock();
+		}
+		return pending.future;
+	}
+
+	private void committerLoop() {
+		List<Pending> group = new ArrayList<>(this.maxItems);
+		List<TransferRequest> requests = new ArrayList<>(this.maxItems);
+
+		while (this.running || !this.queue.isEmpty()) {
+			try {
+				this.collect(group);
+			} catch (InterruptedException e) {
+				// only stop() ends the loop, after the queue has been drained
+				Thread.interrupted();
+			}
+
+			if (group.isEmpty()) {
+				continue;
+			}
+
+			for (Pending pending : group) {
+				requests.add(pending.request);
+			}
+			this.commit(group, requests);
+			group.clear();
+			requests.clear();
+		}
+	}
+
+	/**
+	 * Helper method waiting for a first transfer, then collecting more until the group is full or its delay is over
+	 */
+	private void collect(List<Pending> group) throws InterruptedException {
+		Pending first = this.queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+		if (first == null) {
+			return;
+		}
+		group.add(first);
+
+		long deadline = System.nanoTime() + this.maxDelayNanos;
+		while (group.size() < this.maxItems) {
+			this.queue.drainTo(group, this.maxItems - group.size());
+			long remaining = deadline - System.nanoTime();
+			if (group.size() >= this.maxItems || remaining <= 0L) {
+				return;
+			}
+
+			Pending next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				return;
+			}
+			group.add(next);
+		}
+	}
+
+	private void commit(List<Pending> group, List<TransferRequest> requests) {
+		List<TransferResult> results;
+		try {
+			results = this.commitGroup.apply(requests);
+		} catch (RuntimeException e) {
+			TransferServiceException failure = new TransferServiceException("Group commit failed: " + e.getMessage(), e);
+			group.forEach(pending -> pending.future.completeExceptionally(failure));
+			return;
+		}
+
+		for (int i = 0; i < group.size(); i++) {
+			TransferResult result = results.get(i);
+			if (result.getStatus() == TransferResult.Status.COMPLETED) {
+				group.get(i).future.complete(result.getTransfer());
+			} else {
+				group.get(i).future.completeExceptionally(new TransferServiceException(result.getError()));
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.nat.transfer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.domain.Hold;
+
+/**
+ * Expiry times of the active Holds of HoldService.<br>
+ * The holds are tracked in a TimingWheel, so finding the expired holds costs neither a query nor a scan of the
+ * active holds: each tick only touches the holds expiring in it. A hold is tracked by any thread when it is
+ * reserved, and handed out once by due after its expiry time. Holds captured or released in the meantime are
+ * handed out too, expiring them is then a no-op.
+ *
+ * @author jyotirmani
+ */
+@Component
+final class HoldExpiry {
+	/**
+	 * Wheel buckets per level: 64 ticks at level 0, about 4096 and 262144 ticks at levels 1 and 2
+	 */
+	private static final int WHEEL_SIZE = 64;
+
+	private final Queue<Hold> tracked = new ConcurrentLinkedQueue<>();
+	private final TimingWheel<Hold> wheel;
+
+	/**
+	 * @param tickMillis tick of the wheel, expired holds are handed out at most this late
+	 */
+	@Autowired
+	HoldExpiry(@Value("${transfer.holds.expiry-interval-millis:100}") long tickMillis) {
+		this(tickMillis, System.currentTimeMillis());
+	}
+
+	HoldExpiry(long tickMillis, long startMillis) {
+		super();
+		this.wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, startMillis);
+	}
+
+	void track(Hold hold) {
+		this.tracked.add(hold);
+	}
+
+	/**
+	 * @return the tracked holds whose expiry time has passed at nowMillis
+	 */
+	synchronized List<Hold> due(long nowMillis) {
+		List<Hold> due = new ArrayList<>();
+		for (Hold hold = this.tracked.poll(); hold != null; hold = this.tracked.poll()) {
+			if (!this.wheel.add(hold, hold.getExpiresAtMillis())) {
+				due.add(hold);
+			}
+		}
+
+		this.wheel.advance(nowMillis, due::add);
+		return due;
+	}
+
+	/**
+	 * @return the number of holds waiting for their expiry time
+	 */
+	synchronized int size() {
+		return this.wheel.size() + this.tracked.size();
+	}
+}
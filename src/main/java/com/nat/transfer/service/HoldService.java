@@ -0,0 +1,317 @@
+package com.nat.transfer.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Hold;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.repositories.IHoldRepository;
+
+/**
+ * Funds holds: reserved on an account, then captured by a transfer, released, or expired.<br>
+ * A hold adds its amount to the held balance of its account, which every transfer checks through the available
+ * balance: no transfer reads a Hold. The accounts are locked, loaded and saved by the AccountStore, like the
+ * transfers of the TransferService. The ACTIVE holds are tracked by the HoldExpiry wheel, loaded at start from the
+ * (status, expires_at) index, so that the expiry job only touches the holds expiring in a tick.<br>
+ * Not in the LEDGER mode, where the engine is the only writer of the accounts: held funds stay reserved.
+ *
+ * @author jyotirmani
+ */
+@Service
+public class HoldService {
+	private TransferService transferService;
+	private AccountStore accountStore;
+	private IHoldRepository holdRepository;
+	private HoldExpiry holdExpiry;
+	private TransferMetrics metrics = new TransferMetrics();
+
+	private long defaultTtlSeconds = 600L;
+	private long maxTtlSeconds = TimeUnit.DAYS.toSeconds(7L);
+	private int loadBatchSize = 1000;
+
+	@Autowired
+	public void setTransferService(TransferService transferService) {
+		this.transferService = transferService;
+	}
+
+	@Autowired
+	public void setAccountStore(AccountStore accountStore) {
+		this.accountStore = accountStore;
+	}
+
+	@Autowired
+	public void setHoldRepository(IHoldRepository holdRepository) {
+		this.holdRepository = holdRepository;
+	}
+
+	@Autowired
+	public void setHoldExpiry(HoldExpiry holdExpiry) {
+		this.holdExpiry = holdExpiry;
+	}
+
+	@Autowired
+	public void setMetrics(TransferMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param defaultTtlSeconds life time of the holds reserved without one
+	 */
+	@Value("${transfer.holds.default-ttl-seconds:600}")
+	public void setDefaultTtlSeconds(long defaultTtlSeconds) {
+		this.defaultTtlSeconds = defaultTtlSeconds;
+	}
+
+	@Value("${transfer.holds.max-ttl-seconds:604800}")
+	public void setMaxTtlSeconds(long maxTtlSeconds) {
+		this.maxTtlSeconds = maxTtlSeconds;
+	}
+
+	/**
+	 * @param loadBatchSize ACTIVE holds read per query at start
+	 */
+	@Value("${transfer.holds.load-batch-size:1000}")
+	public void setLoadBatchSize(int loadBatchSize) {
+		this.loadBatchSize = loadBatchSize;
+	}
+
+	/**
+	 * Tracks every ACTIVE hold, reserved before a restart, read in keyset pages of the (status, expires_at) index
+	 */
+	@PostConstruct
+	public void loadActiveHolds() {
+		if (this.transferService.getMode() == TransferMode.LEDGER) {
+			return;
+		}
+
+		long afterExpiresAt = Long.MIN_VALUE;
+		long afterId = 0L;
+		PageRequest page = new PageRequest(0, this.loadBatchSize);
+		while (true) {
+			List<Hold> holds = this.holdRepository.findPage(Hold.Status.ACTIVE, afterExpiresAt, afterId, page);
+			holds.forEach(this.holdExpiry::track);
+			if (holds.size() < page.getPageSize()) {
+				return;
+			}
+
+			Hold last = holds.get(holds.size() - 1);
+			afterExpiresAt = last.getExpiresAtMillis();
+			afterId = last.getId();
+		}
+	}
+
+	/**
+	 * Reserves funds of an account until they are captured, released, or expire.<br>
+	 * The available balance must cover the amount, which is then added to the held balance of the account: the
+	 * balance itself is unchanged until the hold is captured.
+	 * @param ttlSeconds life time of the hold, null for transfer.holds.default-ttl-seconds, at most
+	 * transfer.holds.max-ttl-seconds
+	 * @return the ACTIVE Hold
+	 */
+	public Hold reserve(long accountId, long amountCents, Long ttlSeconds) throws TransferServiceException {
+		this.checkMode();
+		if (amountCents <= 0L) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			throw new TransferServiceException("Hold amount must be greater than zero");
+		}
+		long ttl = ttlSeconds == null ? this.defaultTtlSeconds : ttlSeconds;
+		if (ttl < 1L || ttl > this.maxTtlSeconds) {
+			throw new TransferServiceException("Hold time to live must be between 1 and " + this.maxTtlSeconds + " seconds");
+		}
+		long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+
+		try (AccountLockManager.Guard guard = this.accountStore.lock(accountId)) {
+			Hold hold = this.accountStore.inTransaction(status -> {
+				Map<Long, Account> accounts = this.accountStore.loadAccounts(new long[] {accountId});
+				Account account = accounts.get(accountId);
+				if (account == null) {
+					throw this.accountStore.accountNotFound("Source", accountId);
+				}
+				if (!account.hold(amountCents)) {
+					throw this.accountStore.insufficientBalance();
+				}
+
+				this.accountStore.saveAccounts(accounts);
+				return this.holdRepository.save(new Hold(accountId, amountCents, expiresAt));
+			});
+			this.holdExpiry.track(hold);
+			return hold;
+		}
+	}
+
+	/**
+	 * Transfers held funds: the hold is CAPTURED by a Transfer from its account to the destination, and the held
+	 * amount is released, including the part that is not captured.
+	 * @param amountCents captured amount, at most the held amount, null for the whole held amount
+	 * @return the Transfer
+	 * @throws TransferServiceException when the hold is not ACTIVE or has expired
+	 */
+	public Transfer captureHold(long holdId, long destinationAccountId, Long amountCents) throws TransferServiceException {
+		this.checkMode();
+		Hold hold = this.holdRepository.findOne(holdId);
+		if (hold == null) {
+			throw this.holdNotFound(holdId);
+		}
+		long sourceAccountId = hold.getAccountId();
+		long captureCents = amountCents == null ? hold.getAmountCents() : amountCents;
+		this.accountStore.checkTransfer(sourceAccountId, destinationAccountId, captureCents);
+		if (captureCents > hold.getAmountCents()) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			throw new TransferServiceException("Captured amount cannot exceed the held amount");
+		}
+
+		try (AccountLockManager.Guard guard = this.accountStore.lock(sourceAccountId, destinationAccountId)) {
+			return this.accountStore.inTransaction(
+					status -> this.doCaptureHold(holdId, destinationAccountId, captureCents));
+		}
+	}
+
+	/**
+	 * Makes the funds of an ACTIVE hold available again, the hold is RELEASED
+	 * @return the Hold
+	 */
+	public Hold releaseHold(long holdId) throws TransferServiceException {
+		this.checkMode();
+		Hold hold = this.endHold(holdId, Hold.Status.RELEASED);
+		if (hold == null) {
+			throw this.holdNotFound(holdId);
+		}
+		return hold;
+	}
+
+	/**
+	 * @return the hold, null when it does not exist
+	 */
+	public Hold findHold(long id) {
+		return this.holdRepository.findOne(id);
+	}
+
+	/**
+	 * Releases the expired holds, one transaction each.<br>
+	 * The HoldExpiry wheel hands out the holds whose expiry time has passed, nothing else is read.
+	 */
+	@Scheduled(fixedDelayString = "${transfer.holds.expiry-interval-millis:100}")
+	public void expireHolds() {
+		if (this.transferService.getMode() == TransferMode.LEDGER) {
+			return;
+		}
+
+		for (Hold hold : this.holdExpiry.due(System.currentTimeMillis())) {
+			try {
+				this.endHold(hold.getId(), Hold.Status.EXPIRED);
+			} catch (RuntimeException e) {
+				// e.g. a concurrent update of the account, tried again at the next tick
+				this.holdExpiry.track(hold);
+			}
+		}
+	}
+
+	/**
+	 * Helper method capturing a hold within the current transaction, its accounts being locked
+	 */
+	private Transfer doCaptureHold(long holdId, long destinationAccountId, long captureCents)
+			throws TransferServiceException {
+		Hold hold = this.holdRepository.findOne(holdId);
+		if (!hold.isActive(System.currentTimeMillis())) {
+			throw this.holdNotActive(hold);
+		}
+
+		long sourceAccountId = hold.getAccountId();
+		Map<Long, Account> accounts = this.accountStore.loadAccounts(new long[] {sourceAccountId, destinationAccountId});
+		Account sourceAccount = accounts.get(sourceAccountId);
+		if (sourceAccount == null) {
+			throw this.accountStore.accountNotFound("Source", sourceAccountId);
+		}
+		Account destinationAccount = accounts.get(destinationAccountId);
+		if (destinationAccount == null) {
+			throw this.accountStore.accountNotFound("Destination", destinationAccountId);
+		}
+
+		// the held funds are part of the balance, so the released amount always covers the captured one
+		sourceAccount.release(hold.getAmountCents());
+		sourceAccount.subtract(captureCents);
+		try {
+			this.accountStore.credit(sourceAccount, destinationAccount, captureCents);
+		} catch (TransferServiceException e) {
+			sourceAccount.hold(hold.getAmountCents());
+			throw e;
+		}
+
+		this.accountStore.saveAccounts(accounts);
+		Transfer transfer = this.accountStore
+				.saveTransfers(Arrays.asList(new Transfer(sourceAccountId, destinationAccountId, captureCents))).get(0);
+		hold.captured(transfer.getId());
+		this.holdRepository.save(hold);
+		return transfer;
+	}
+
+	/**
+	 * Helper method releasing the funds of a hold in its own transaction, with the lock of its account
+	 * @param ending RELEASED, refused when the hold is not ACTIVE, or EXPIRED, skipped unless the hold is ACTIVE and
+	 * its expiry time has passed
+	 * @return the hold, null when it does not exist
+	 */
+	private Hold endHold(long holdId, Hold.Status ending) throws TransferServiceException {
+		Hold hold = this.holdRepository.findOne(holdId);
+		if (hold == null) {
+			return null;
+		}
+
+		long accountId = hold.getAccountId();
+		try (AccountLockManager.Guard guard = this.accountStore.lock(accountId)) {
+			return this.accountStore.inTransaction(status -> {
+				Hold current = this.holdRepository.findOne(holdId);
+				if (ending == Hold.Status.EXPIRED) {
+					if (current.getStatus() != Hold.Status.ACTIVE || current.isActive(System.currentTimeMillis())) {
+						return current;
+					}
+				} else if (current.getStatus() != Hold.Status.ACTIVE) {
+					throw this.holdNotActive(current);
+				}
+
+				Map<Long, Account> accounts = this.accountStore.loadAccounts(new long[] {accountId});
+				Account account = accounts.get(accountId);
+				if (account != null) {
+					account.release(current.getAmountCents());
+					this.accountStore.saveAccounts(accounts);
+				}
+
+				if (ending == Hold.Status.EXPIRED) {
+					current.expired();
+				} else {
+					current.released();
+				}
+				return this.holdRepository.save(current);
+			});
+		}
+	}
+
+	private void checkMode() throws TransferServiceException {
+		if (this.transferService.getMode() == TransferMode.LEDGER) {
+			throw new TransferServiceException("Holds are not supported in the LEDGER transfer mode");
+		}
+	}
+
+	private TransferServiceException holdNotFound(long holdId) {
+		return new TransferServiceException("Hold not found: " + holdId);
+	}
+
+	private TransferServiceException holdNotActive(Hold hold) {
+		return new TransferServiceException("Hold " + hold.getId() + " is not active: "
+				+ (hold.getStatus() == Hold.Status.ACTIVE ? "expired" : hold.getStatus()));
+	}
+}
@@ -0,0 +1,50 @@
+package com.nat.transfer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodic consolidation of the hot Accounts (see HotAccountManager).<br>
+ * Debits consolidate their hot account anyway, this keeps the slots small and the reads cheap. Not in the LEDGER
+ * mode, which has no hot accounts.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class HotAccountConsolidator {
+	private TransferService transferService;
+	private AccountStore accountStore;
+	private HotAccountManager hotAccounts;
+
+	@Autowired
+	public void setTransferService(TransferService transferService) {
+		this.transferService = transferService;
+	}
+
+	@Autowired
+	public void setAccountStore(AccountStore accountStore) {
+		this.accountStore = accountStore;
+	}
+
+	@Autowired
+	public void setHotAccountManager(HotAccountManager hotAccounts) {
+		this.hotAccounts = hotAccounts;
+	}
+
+	/**
+	 * Moves the slot balances of every hot account into the account balance, one transaction per account. The hot
+	 * accounts are reloaded first, so that the accounts made hot by another instance are consolidated too.
+	 */
+	@Scheduled(fixedDelayString = "${transfer.hot-accounts.consolidate-interval-millis:1000}")
+	public void consolidateHotAccounts() {
+		if (this.transferService.getMode() == TransferMode.LEDGER) {
+			return;
+		}
+
+		this.hotAccounts.refresh();
+		for (long accountId : this.hotAccounts.getAccountIds()) {
+			this.accountStore.consolidateHotAccount(accountId);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.nat.transfer.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.nat.transfer.domain.AccountBalanceSlot;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.IAccountBalanceSlotRepository;
+import com.nat.transfer.repositories.IAccountRepository;
+
+/**
+ * Sub-balance slots of the hot Accounts, the few accounts that receive a large share of all the transfers.<br>
+ * A credit to a hot account updates one of its AccountBalanceSlot rows, picked by the calling thread, instead of the
+ * Account row: concurrent credits to the same account no longer wait for each other's row lock. Consolidation
+ * locks the slots of an account, moves their balances into the Account balance and empties them. It runs before
+ * every debit and periodically (see HotAccountConsolidator).<br>
+ * The callers own the transaction, and lock slot rows before Account rows.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class HotAccountManager {
+	/**
+	 * Default largest number of slots of one account
+	 */
+	public static final int DEFAULT_MAX_SLOTS = 64;
+
+	private IAccountBalanceSlotRepository slotRepository;
+	private IAccountRepository accountRepository;
+
+	private int maxSlots = DEFAULT_MAX_SLOTS;
+	private final ConcurrentMap<Long, Integer> slotCounts = new ConcurrentHashMap<>();
+
+	@Autowired
+	public void setSlotRepository(IAccountBalanceSlotRepository slotRepository) {
+		this.slotRepository = slotRepository;
+	}
+
+	@Autowired
+	public void setAccountRepository(IAccountRepository accountRepository) {
+		this.accountRepository = accountRepository;
+	}
+
+	/**
+	 * @param maxSlots largest number of slots of one account
+	 */
+	@Value("${transfer.hot-accounts.max-slots:" + DEFAULT_MAX_SLOTS + "}")
+	public void setMaxSlots(int maxSlots) {
+		this.maxSlots = maxSlots;
+	}
+
+	/**
+	 * Reloads the hot accounts and their slot counts from the database, so that accounts made hot by another
+	 * instance are picked up
+	 */
+	@PostConstruct
+	public void refresh() {
+		// slots are never removed, so counts only grow
+		for (Object[] row : this.slotRepository.countSlotsByAccount()) {
+			this.slotCounts.merge(((Number) row[0]).longValue(), ((Number) row[1]).intValue(), Math::max);
+		}
+	}
+
+	public boolean isHot(long accountId) {
+		return this.slotCounts.containsKey(accountId);
+	}
+
+	/**
+	 * @return the ids of the hot accounts
+	 */
+	public Set<Long> getAccountIds() {
+		return this.slotCounts.keySet();
+	}
+
+	/**
+	 * Creates the missing slots of an account, which becomes hot once the current transaction has committed
+	 * @param slots number of slots, between one and maxSlots. An account never loses slots.
+	 */
+	public void addSlots(long accountId, int slots) throws TransferServiceException {
+		if (slots < 1 || slots > this.maxSlots) {
+			throw new TransferServiceException("Hot account slots must be between 1 and " + this.maxSlots);
+		}
+
+		int existing = this.slotCounts.getOrDefault(accountId, 0);
+		for (int slot = existing; slot < slots; slot++) {
+			this.slotRepository.save(new AccountBalanceSlot(accountId, slot));
+		}
+
+		// credits must not be routed to slots that are not committed yet
+		Runnable register = () -> this.slotCounts.merge(accountId, Math.max(existing, slots), Math::max);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			register.run();
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				register.run();
+			}
+		});
+	}
+
+	/**
+	 * Credits one slot of a hot account, chosen from the current thread so that a thread keeps writing the same row
+	 * @return false when the account is not hot, or its slots do not exist anymore
+	 * @throws TransferServiceException when the slot balance would overflow, the slot is then unchanged
+	 */
+	public boolean credit(long accountId, long amountCents) throws TransferServiceException {
+		Integer slots = this.slotCounts.get(accountId);
+		if (slots == null) {
+			return false;
+		}
+
+		int slot = (int) Math.floorMod(Thread.currentThread().getId(), (long) slots);
+		if (this.slotRepository.credit(accountId, slot, amountCents, Long.MAX_VALUE - amountCents) == 1) {
+			return true;
+		}
+		// only the failure path pays for telling the two causes apart
+		if (this.slotRepository.countByAccountIdAndSlot(accountId, slot) == 0L) {
+			return false;
+		}
+		throw new TransferServiceException("Destination account balance would overflow");
+	}
+
+	/**
+	 * @return the sum of the slot balances of an account, zero when it is not hot
+	 */
+	public long slotBalanceCents(long accountId) {
+		return this.isHot(accountId) ? this.slotRepository.sumBalanceCents(accountId) : 0L;
+	}
+
+	/**
+	 * Moves the slot balances of a hot account into its Account balance. The slots stay locked until the end of the
+	 * current transaction.
+	 * @return the consolidated amount in cents, zero when there was nothing to move
+	 */
+	public long consolidate(long accountId) throws TransferServiceException {
+		long totalCents = 0L;
+		for (AccountBalanceSlot slot : this.slotRepository.findByAccountIdOrderBySlotAsc(accountId)) {
+			totalCents = Math.addExact(totalCents, slot.getBalanceCents());
+		}
+
+		if (totalCents == 0L) {
+			return 0L;
+		}
+
+		this.slotRepository.clear(accountId);
+		if (this.accountRepository.credit(accountId, totalCents) == 0) {
+			throw new TransferServiceException("Hot account not found: " + accountId);
+		}
+		return totalCents;
+	}
+}
@@ -0,0 +1,147 @@
+package com.nat.transfer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed hierarchical timing wheel, handing out items once their deadline has passed (used by the TransferScheduler
+ * and the HoldExpiry).<br>
+ * Level 0 has wheelSize buckets of one tick each, and each level above has wheelSize buckets covering a whole turn
+ * of the level below (levels are added as far deadlines require). An item is hashed into the bucket of the lowest
+ * level whose turn reaches its deadline, so adding is O(1) whatever the number of items. Every tick empties one level
+ * 0 bucket, whose items are due, and every turn of a level cascades the next bucket of the level above into the
+ * lower levels. Deadlines are rounded up to the next tick: an item is never due before its deadline.<br>
+ * Not thread safe, a wheel is owned by one thread.
+ *
+ * @author jyotirmani
+ */
+final class TimingWheel<T> {
+	/**
+	 * An item with its deadline, in ticks
+	 */
+	private static final class Entry<T> {
+		final T item;
+		final long deadlineTick;
+
+		Entry(T item, long deadlineTick) {
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	private final long tickMillis;
+	private final int wheelSize;
+	/**
+	 * buckets of each level, level L buckets span wheelSize^L ticks
+	 */
+	private final List<List<List<Entry<T>>>> levels = new ArrayList<>();
+	private final List<Long> levelSpans = new ArrayList<>();
+	private long currentTick;
+	private int size;
+
+	/**
+	 * @param startMillis epoch milliseconds of the first tick, deadlines up to it are due on add
+	 */
+	TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+		super();
+		if (tickMillis < 1L || wheelSize < 2) {
+			throw new IllegalArgumentException("Timing wheel tick must be positive and its size at least 2");
+		}
+
+		this.tickMillis = tickMillis;
+		this.wheelSize = wheelSize;
+		this.currentTick = Math.floorDiv(startMillis, tickMillis);
+		this.addLevel();
+	}
+
+	/**
+	 * @param deadlineMillis epoch milliseconds
+	 * @return false when the item is already due, it is then not added
+	 */
+	boolean add(T item, long deadlineMillis) {
+		long deadlineTick = -Math.floorDiv(-deadlineMillis, this.tickMillis);
+		if (deadlineTick <= this.currentTick) {
+			return false;
+		}
+
+		this.place(new Entry<>(item, deadlineTick));
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Moves the wheel to a time, handing every item whose deadline has been reached to due, in deadline tick order
+	 */
+	void advance(long nowMillis, Consumer<T> due) {
+		long targetTick = Math.floorDiv(nowMillis, this.tickMillis);
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+
+			// highest level first, the cascaded items may land in a bucket that is emptied next
+			for (int level = this.levels.size() - 1; level > 0; level--) {
+				long span = this.levelSpans.get(level);
+				if (this.currentTick % span == 0L) {
+					for (Entry<T> entry : this.take(level, this.currentTick / span)) {
+						if (entry.deadlineTick <= this.currentTick) {
+							this.size--;
+							due.accept(entry.item);
+						} else {
+							this.place(entry);
+						}
+					}
+				}
+			}
+
+			for (Entry<T> entry : this.take(0, this.currentTick)) {
+				this.size--;
+				due.accept(entry.item);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of items waiting for their deadline
+	 */
+	int size() {
+		return this.size;
+	}
+
+	private void place(Entry<T> entry) {
+		for (int level = 0; ; level++) {
+			if (level == this.levels.size()) {
+				this.addLevel();
+			}
+
+			long span = this.levelSpans.get(level);
+			long bucket = entry.deadlineTick / span;
+			// within one turn of this level, so a bucket never holds the items of two turns
+			if (bucket - this.currentTick / span < this.wheelSize) {
+				this.levels.get(level).get((int) (bucket % this.wheelSize)).add(entry);
+				return;
+			}
+		}
+	}
+
+	private List<Entry<T>> take(int level, long bucket) {
+		List<List<Entry<T>>> buckets = this.levels.get(level);
+		int index = (int) (bucket % this.wheelSize);
+		List<Entry<T>> entries = buckets.get(index);
+		if (entries.isEmpty()) {
+			return entries;
+		}
+		buckets.set(index, new ArrayList<>());
+		return entries;
+	}
+
+	private void addLevel() {
+		List<List<Entry<T>>> buckets = new ArrayList<>(this.wheelSize);
+		for (int i = 0; i < this.wheelSize; i++) {
+			buckets.add(new ArrayList<>());
+		}
+
+		int level = this.levels.size();
+		this.levelSpans.add(level == 0 ? 1L : Math.multiplyExact(this.levelSpans.get(level - 1), (long) this.wheelSize));
+		this.levels.add(buckets);
+	}
+}
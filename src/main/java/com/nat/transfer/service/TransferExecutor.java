@@ -0,0 +1,116 @@
+package com.nat.transfer.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.dto.ExecutorStatistics;
+import com.nat.transfer.exception.OverloadedException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.metrics.TransferMetrics.Stage;
+
+/**
+ * Bounded executor of the asynchronous TransferService calls.<br>
+ * A fixed number of threads takes the work from a bounded queue, so the request threads are released as soon as the
+ * work is queued and the number of transfers waiting on locks and on the database stays under control whatever the
+ * number of requests. Work submitted while the queue is full is refused at once (its future fails with an
+ * OverloadedException) instead of waiting. The time spent in the queue is recorded as the QUEUE_WAIT stage of
+ * TransferMetrics.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class TransferExecutor {
+	/**
+	 * Default number of threads
+	 */
+	public static final int DEFAULT_THREADS = 16;
+
+	/**
+	 * Default number of queued calls
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	private final ThreadPoolExecutor executor;
+	private final int queueCapacity;
+	private final TransferMetrics metrics;
+	private final LongAdder rejected = new LongAdder();
+
+	@Autowired
+	public TransferExecutor(TransferMetrics metrics,
+			@Value("${transfer.async.threads:" + DEFAULT_THREADS + "}") int threads,
+			@Value("${transfer.async.queue-size:" + DEFAULT_QUEUE_SIZE + "}") int queueSize) {
+		super();
+
+		if (threads < 1 || queueSize < 1) {
+			throw new IllegalArgumentException("Transfer executor threads and queue size must be greater than zero");
+		}
+
+		this.metrics = metrics;
+		this.queueCapacity = queueSize;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), threadFactory(), new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Runs a call on the executor
+	 * @return a future completed with the result of the call, or failed with the exception it threw. It fails with an
+	 * OverloadedException when the queue is full or the executor is shut down.
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		long queuedAt = System.nanoTime();
+		try {
+			this.executor.execute(() -> {
+				this.metrics.recordSince(Stage.QUEUE_WAIT, queuedAt);
+				try {
+					future.complete(call.get());
+				} catch (RuntimeException | Error e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.rejected.increment();
+			this.metrics.reject(Rejection.OVERLOADED);
+			future.completeExceptionally(new OverloadedException("Transfer executor is saturated, retry later", 1L));
+		}
+		return future;
+	}
+
+	/**
+	 * Stops taking new calls, then waits for the queued calls to complete
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		this.executor.shutdown();
+		this.executor.awaitTermination(1L, TimeUnit.MINUTES);
+	}
+
+	public ExecutorStatistics getStatistics() {
+		return new ExecutorStatistics(this.executor.getMaximumPoolSize(), this.executor.getActiveCount(),
+				this.executor.getQueue().size(), this.queueCapacity, this.executor.getCompletedTaskCount(),
+				this.rejected.sum());
+	}
+
+	private static ThreadFactory threadFactory() {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "transfer-executor-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,38 @@
+package com.nat.transfer.service;
+
+/**
+ * Concurrency strategies available to TransferService, selected by the transfer.mode property
+ *
+ * @author jyotirmani
+ */
+public enum TransferMode {
+	/**
+	 * Source and destination accounts are locked in this JVM (AccountLockManager) until commit
+	 */
+	LOCKING,
+
+	/**
+	 * No JVM lock is taken, concurrent updates are detected by the Account version column and the whole
+	 * transfer is retried with a jittered backoff. Safe with several service instances sharing a database.
+	 */
+	OPTIMISTIC,
+
+	/**
+	 * No entity is loaded, the source is debited by a single conditional UPDATE (balance covers the amount) and the
+	 * destination credited by another one. Rows are updated in ascending id order to avoid database deadlocks.
+	 */
+	CONDITIONAL_UPDATE,
+
+	/**
+	 * Transfers are queued and applied in groups, one database transaction per group of up to
+	 * transfer.group-commit.max-items transfers collected during transfer.group-commit.max-delay-micros. Callers are
+	 * released together once their group has committed, a transfer breaking a rule only fails itself.
+	 */
+	GROUP_COMMIT,
+
+	/**
+	 * Balances are kept in memory by the single writer thread of the LedgerEngine, transfers are persisted
+	 * asynchronously in batches. The engine must be the only writer of the accounts, so a single service instance.
+	 */
+	LEDGER
+}
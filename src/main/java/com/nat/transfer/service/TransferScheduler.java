@@ -0,0 +1,351 @@
+package com.nat.transfer.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.nat.transfer.domain.ScheduledTransfer;
+import com.nat.transfer.domain.ScheduledTransfer.Status;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.OverloadedException;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.IScheduledTransferRepository;
+
+/**
+ * Executes the ScheduledTransfers at their execution time.<br>
+ * The pending transfers due within loadHorizonSeconds are loaded in pages of loadBatchSize, by a range scan of the
+ * execution time index, into a hierarchical TimingWheel: the table is read once per half horizon, never polled per
+ * transfer, and a transfer scheduled within the loaded horizon goes straight to the wheel. At every tick, the due
+ * transfers are executed through TransferService in parallel batches on the TransferExecutor, the transfers of one
+ * source account in the same batch (by execution time), so that the batches do not wait for each other's source
+ * account. The statuses of a batch are then written at once.<br>
+ * Every execution carries the idempotency key "scheduled-{id}", so a transfer loaded twice, or executed before a
+ * crash that lost its status, is never executed twice (in the LEDGER mode too, where the key is journaled). Only a
+ * transfer refused by its own rules fails; an overload or a database error leaves the batch PENDING for the next tick.
+ *
+ * @author jyotirmani
+ */
+@Component
+public class TransferScheduler {
+	/**
+	 * Idempotency key prefix of the executed ScheduledTransfers, followed by their id
+	 */
+	public static final String IDEMPOTENCY_KEY_PREFIX = "scheduled-";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TransferScheduler.class);
+
+	private IScheduledTransferRepository repository;
+	private TransferService transferService;
+	private TransferExecutor executor;
+
+	private long tickMillis = 50L;
+	private int wheelSize = 64;
+	private long loadHorizonMillis = TimeUnit.SECONDS.toMillis(60L);
+	private int loadBatchSize = 1000;
+	private int parallelism = 4;
+
+	private final Queue<ScheduledTransfer> scheduled = new ConcurrentLinkedQueue<>();
+	private final Object loadLock = new Object();
+	/**
+	 * Transfers due before this time are in the wheel, or scheduled straight to it. Guarded by loadLock.
+	 */
+	private long loadedUntil = Long.MIN_VALUE;
+	private TimingWheel<ScheduledTransfer> wheel;
+	private long nextLoadMillis;
+
+	private volatile boolean running;
+	private Thread schedulerThread;
+	private final LongAdder executed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	@Autowired
+	public void setRepository(IScheduledTransferRepository repository) {
+		this.repository = repository;
+	}
+
+	@Autowired
+	public void setTransferService(TransferService transferService) {
+		this.transferService = transferService;
+	}
+
+	/**
+	 * @param executor runs the batches of due transfers
+	 */
+	@Autowired
+	public void setExecutor(TransferExecutor executor) {
+		this.executor = executor;
+	}
+
+	@Value("${transfer.scheduler.tick-millis:50}")
+	public void setTickMillis(long tickMillis) {
+		this.tickMillis = tickMillis;
+	}
+
+	@Value("${transfer.scheduler.wheel-size:64}")
+	public void setWheelSize(int wheelSize) {
+		this.wheelSize = wheelSize;
+	}
+
+	@Value("${transfer.scheduler.load-horizon-seconds:60}")
+	public void setLoadHorizonSeconds(long loadHorizonSeconds) {
+		this.loadHorizonMillis = TimeUnit.SECONDS.toMillis(loadHorizonSeconds);
+	}
+
+	@Value("${transfer.scheduler.load-batch-size:1000}")
+	public void setLoadBatchSize(int loadBatchSize) {
+		this.loadBatchSize = loadBatchSize;
+	}
+
+	/**
+	 * @param parallelism number of batches the due transfers of a tick are split into
+	 */
+	@Value("${transfer.scheduler.parallelism:4}")
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	@PostConstruct
+	public synchronized void start() {
+		if (this.running) {
+			return;
+		}
+
+		this.running = true;
+		this.schedulerThread = new Thread(this::schedulerLoop, "transfer-scheduler");
+		this.schedulerThread.setDaemon(true);
+		this.schedulerThread.start();
+	}
+
+	@PreDestroy
+	public synchronized void stop() throws InterruptedException {
+		if (this.schedulerThread == null) {
+			return;
+		}
+
+		this.running = false;
+		this.schedulerThread.interrupt();
+		this.schedulerThread.join();
+		this.schedulerThread = null;
+	}
+
+	/**
+	 * Schedules a transfer, executed once its execution time has come (at once when it has passed)
+	 * @param executionTime epoch milliseconds
+	 * @return the PENDING ScheduledTransfer
+	 */
+	public ScheduledTransfer schedule(long sourceAccountId, long destinationAccountId, long amountCents, long executionTime)
+			throws TransferServiceException {
+		if (sourceAccountId == destinationAccountId) {
+			throw new TransferServiceException("Source and Destination account cannot be the same");
+		}
+		if (amountCents <= 0L) {
+			throw new TransferServiceException("Transfer amount must be greater than zero");
+		}
+
+		ScheduledTransfer transfer = this.repository
+				.save(new ScheduledTransfer(sourceAccountId, destinationAccountId, amountCents, executionTime));
+
+		synchronized (this.loadLock) {
+			// the load of its time range may have missed it
+			if (executionTime < this.loadedUntil) {
+				this.scheduled.add(transfer);
+			}
+		}
+		return transfer;
+	}
+
+	public ScheduledTransfer findScheduledTransfer(long id) {
+		return this.repository.findOne(id);
+	}
+
+	public long getExecuted() {
+		return this.executed.sum();
+	}
+
+	public long getFailed() {
+		return this.failed.sum();
+	}
+
+	/**
+	 * One step of the scheduler thread: loads the next time range when due, then executes every transfer due at
+	 * nowMillis
+	 */
+	void tick(long nowMillis) {
+		if (this.wheel == null) {
+			this.wheel = new TimingWheel<>(this.tickMillis, this.wheelSize, nowMillis);
+		}
+
+		List<ScheduledTransfer> due = new ArrayList<>();
+		if (nowMillis >= this.nextLoadMillis) {
+			this.load(nowMillis + this.loadHorizonMillis, due);
+			this.nextLoadMillis = nowMillis + this.loadHorizonMillis / 2L;
+		}
+
+		for (ScheduledTransfer transfer = this.scheduled.poll(); transfer != null; transfer = this.scheduled.poll()) {
+			this.addToWheel(transfer, due);
+		}
+		this.wheel.advance(nowMillis, due::add);
+
+		if (!due.isEmpty()) {
+			this.execute(due);
+		}
+	}
+
+	private void schedulerLoop() {
+		while (this.running) {
+			try {
+				this.tick(System.currentTimeMillis());
+			} catch (RuntimeException e) {
+				LOGGER.error("Scheduled transfers tick failed", e);
+			}
+
+			try {
+				Thread.sleep(this.tickMillis);
+			} catch (InterruptedException e) {
+				// only stop() interrupts
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Helper method loading the pending transfers due before a time, and not loaded yet, into the wheel
+	 */
+	private void load(long untilMillis, List<ScheduledTransfer> due) {
+		long fromMillis;
+		synchronized (this.loadLock) {
+			fromMillis = this.loadedUntil;
+			this.loadedUntil = untilMillis;
+		}
+
+		long afterExecutionTime = fromMillis;
+		long afterId = 0L;
+		PageRequest page = new PageRequest(0, this.loadBatchSize);
+		while (true) {
+			List<ScheduledTransfer> transfers = this.repository.findPage(ScheduledTransfer.Status.PENDING,
+					afterExecutionTime, afterId, untilMillis, page);
+			transfers.forEach(transfer -> this.addToWheel(transfer, due));
+			if (transfers.size() < this.loadBatchSize) {
+				return;
+			}
+
+			ScheduledTransfer last = transfers.get(transfers.size() - 1);
+			afterExecutionTime = last.getExecutionTimeMillis();
+			afterId = last.getId();
+		}
+	}
+
+	private void addToWheel(ScheduledTransfer transfer, List<ScheduledTransfer> due) {
+		if (!this.wheel.add(transfer, transfer.getExecutionTimeMillis())) {
+			due.add(transfer);
+		}
+	}
+
+	/**
+	 * Helper method executing the due transfers in parallel batches, and waiting for all of them
+	 */
+	private void execute(List<ScheduledTransfer> due) {
+		List<List<ScheduledTransfer>> batches = new ArrayList<>(this.parallelism);
+		for (int i = 0; i < this.parallelism; i++) {
+			batches.add(new ArrayList<>());
+		}
+		for (ScheduledTransfer transfer : due) {
+			batches.get((int) Math.floorMod(transfer.getSourceAccountId(), (long) this.parallelism)).add(transfer);
+		}
+
+		List<List<ScheduledTransfer>> submitted = new ArrayList<>(this.parallelism);
+		List<CompletableFuture<Void>> executions = new ArrayList<>(this.parallelism);
+		for (List<ScheduledTransfer> batch : batches) {
+			if (batch.isEmpty()) {
+				continue;
+			}
+
+			batch.sort(Comparator.comparingLong(ScheduledTransfer::getSourceAccountId)
+					.thenComparingLong(ScheduledTransfer::getExecutionTimeMillis).thenComparing(ScheduledTransfer::getId));
+			executions.add(this.executor.submit(() -> {
+				this.executeBatch(batch);
+				return null;
+			}));
+			submitted.add(batch);
+		}
+
+		for (int i = 0; i < executions.size(); i++) {
+			try {
+				executions.get(i).join();
+			} catch (RuntimeException e) {
+				LOGGER.error("Could not execute a batch of scheduled transfers", e);
+				this.retry(submitted.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Helper method ending a batch stopped by a transient failure: the transfers it already executed or refused are
+	 * saved, only the PENDING ones are retried at the next tick
+	 */
+	private void retry(List<ScheduledTransfer> batch) {
+		List<ScheduledTransfer> done = new ArrayList<>(batch.size());
+		for (ScheduledTransfer transfer : batch) {
+			if (transfer.getStatus() == Status.PENDING) {
+				this.scheduled.add(transfer);
+			} else {
+				done.add(transfer);
+			}
+		}
+		if (done.isEmpty()) {
+			return;
+		}
+
+		try {
+			this.repository.save(done);
+		} catch (RuntimeException e) {
+			// still PENDING in the database: reloaded after a restart, the idempotency keys skip the executed ones
+			LOGGER.error("Could not save the status of {} scheduled transfers", done.size(), e);
+		}
+	}
+
+	private void executeBatch(List<ScheduledTransfer> batch) {
+		for (ScheduledTransfer scheduledTransfer : batch) {
+			try {
+				Transfer transfer = this.transferService.transfer(scheduledTransfer.getSourceAccountId(),
+						scheduledTransfer.getDestinationAccountId(), scheduledTransfer.getAmountCents(),
+						IDEMPOTENCY_KEY_PREFIX + scheduledTransfer.getId());
+				scheduledTransfer.executed(transfer.getId());
+				this.executed.increment();
+			} catch (TransferServiceException e) {
+				if (isTransient(e)) {
+					throw e;
+				}
+				scheduledTransfer.failed(e.getMessage());
+				this.failed.increment();
+			}
+			// any other RuntimeException (optimistic locking failure, database error) is transient too
+		}
+
+		this.repository.save(batch);
+	}
+
+	/**
+	 * @return true when the transfer was not refused by itself, the whole batch is then retried
+	 */
+	private static boolean isTransient(TransferServiceException e) {
+		// the LEDGER engine wraps the database errors of its account loads
+		return e instanceof OverloadedException || e.getCause() instanceof DataAccessException;
+	}
+}
@@ -1,28 +1,87 @@
 package com.nat.transfer.service;
 
 import java.math.BigDecimal;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.cache.IdempotencyStore;
 import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.BalanceSnapshot;
+import com.nat.transfer.domain.Money;
 import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.dto.TransferLeg;
+import com.nat.transfer.dto.TransferRequest;
+import com.nat.transfer.dto.TransferResult;
 import com.nat.transfer.exception.EntityCreationException;
+import com.nat.transfer.ledger.LedgerEngine;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.metrics.TransferMetrics.Stage;
 import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IBalanceSnapshotRepository;
 import com.nat.transfer.repositories.ITransferRepository;
 import com.nat.transfer.exception.TransferServiceException;
 
 @Service
 public class TransferService {
+	private static final Comparator<Transfer> TRANSFER_TIME_ORDER = Comparator.comparingLong(Transfer::getExecutedAtMillis)
+			.thenComparing(Transfer::getId);
 
 	private IAccountRepository accountRepository;
 	private ITransferRepository transferRepository;
+	private AccountStore accountStore;
+	private EntityManager entityManager;
+	private LedgerEngine ledgerEngine;
+	private volatile GroupCommitter groupCommitter;
+	private AccountCache accountCache;
+	private IdempotencyStore idempotencyStore;
+	private HotAccountManager hotAccounts;
+	private IBalanceSnapshotRepository snapshotRepository;
+	private TransferExecutor executor;
+	private TransferMetrics metrics;
+
+	private TransferMode mode = TransferMode.LOCKING;
+	private int optimisticMaxAttempts = 5;
+	private long optimisticBackoffMillis = 2L;
+	private final LongAdder optimisticRetries = new LongAdder();
+	private final LongAdder optimisticAborts = new LongAdder();
+	private int batchChunkSize = 500;
+	private int batchMaxSize = 10000;
+	private int pageDefaultSize = 100;
+	private int pageMaxSize = 1000;
+	private int groupCommitMaxItems = 256;
+	private long groupCommitMaxDelayMicros = 500L;
+	private int groupCommitQueueSize = 65536;
 
 	public TransferService() {
 		super();
+		this.metrics = new TransferMetrics();
 	}
 
 	@Autowired
@@ -34,12 +93,176 @@ public class TransferService {
 	public void setTransferRepository(ITransferRepository transferRepository) {
 		this.transferRepository = transferRepository;
 	}
-	
+
+	/**
+	 * Transfers run their own transaction so that the account locks are only released after commit
+	 */
+	@Autowired
+	public void setAccountStore(AccountStore accountStore) {
+		this.accountStore = accountStore;
+	}
+
+	/**
+	 * Used to detach streamed entities, so that a long export keeps the persistence context empty
+	 */
+	@PersistenceContext
+	public void setEntityManager(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	@Autowired
+	public void setAccountCache(AccountCache accountCache) {
+		this.accountCache = accountCache;
+	}
+
+	@Autowired
+	public void setIdempotencyStore(IdempotencyStore idempotencyStore) {
+		this.idempotencyStore = idempotencyStore;
+	}
+
+	@Autowired
+	public void setHotAccountManager(HotAccountManager hotAccounts) {
+		this.hotAccounts = hotAccounts;
+	}
+
+	@Autowired
+	public void setSnapshotRepository(IBalanceSnapshotRepository snapshotRepository) {
+		this.snapshotRepository = snapshotRepository;
+	}
+
+	/**
+	 * @param executor runs the asynchronous calls
+	 */
+	@Autowired
+	public void setTransferExecutor(TransferExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Only present in the LEDGER mode
+	 */
+	@Autowired(required = false)
+	public void setLedgerEngine(LedgerEngine ledgerEngine) {
+		this.ledgerEngine = ledgerEngine;
+	}
+
+	@Autowired
+	public void setMetrics(TransferMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Value("${transfer.mode:LOCKING}")
+	public void setMode(TransferMode mode) {
+		this.mode = mode;
+	}
+
+	public TransferMode getMode() {
+		return this.mode;
+	}
+
+	/**
+	 * @param optimisticMaxAttempts how many times an OPTIMISTIC transfer is tried before it is aborted
+	 */
+	@Value("${transfer.optimistic.max-attempts:5}")
+	public void setOptimisticMaxAttempts(int optimisticMaxAttempts) {
+		this.optimisticMaxAttempts = optimisticMaxAttempts;
+	}
+
+	/**
+	 * @param optimisticBackoffMillis base delay of the exponential, fully jittered, backoff between OPTIMISTIC retries
+	 */
+	@Value("${transfer.optimistic.backoff-millis:2}")
+	public void setOptimisticBackoffMillis(long optimisticBackoffMillis) {
+		this.optimisticBackoffMillis = optimisticBackoffMillis;
+	}
+
+	/**
+	 * @param batchChunkSize number of BEST_EFFORT batch items committed per transaction
+	 */
+	@Value("${transfer.batch.chunk-size:500}")
+	public void setBatchChunkSize(int batchChunkSize) {
+		this.batchChunkSize = batchChunkSize;
+	}
+
+	/**
+	 * @param batchMaxSize largest number of items accepted in one batch transfer request
+	 */
+	@Value("${transfer.batch.max-size:10000}")
+	public void setBatchMaxSize(int batchMaxSize) {
+		this.batchMaxSize = batchMaxSize;
+	}
+
+	/**
+	 * @param pageDefaultSize page size of account and transfer listings when no limit is requested
+	 */
+	@Value("${transfer.page.default-size:100}")
+	public void setPageDefaultSize(int pageDefaultSize) {
+		this.pageDefaultSize = pageDefaultSize;
+	}
+
+	/**
+	 * @param pageMaxSize hard cap of the page size of account and transfer listings
+	 */
+	@Value("${transfer.page.max-size:1000}")
+	public void setPageMaxSize(int pageMaxSize) {
+		this.pageMaxSize = pageMaxSize;
+	}
+
+	/**
+	 * @param groupCommitMaxItems largest number of GROUP_COMMIT transfers applied in one transaction
+	 */
+	@Value("${transfer.group-commit.max-items:256}")
+	public void setGroupCommitMaxItems(int groupCommitMaxItems) {
+		this.groupCommitMaxItems = groupCommitMaxItems;
+	}
+
+	/**
+	 * @param groupCommitMaxDelayMicros longest wait for more GROUP_COMMIT transfers once a group has its first one
+	 */
+	@Value("${transfer.group-commit.max-delay-micros:500}")
+	public void setGroupCommitMaxDelayMicros(long groupCommitMaxDelayMicros) {
+		this.groupCommitMaxDelayMicros = groupCommitMaxDelayMicros;
+	}
+
+	/**
+	 * @param groupCommitQueueSize GROUP_COMMIT transfers waiting for their group, callers block beyond it
+	 */
+	@Value("${transfer.group-commit.queue-size:65536}")
+	public void setGroupCommitQueueSize(int groupCommitQueueSize) {
+		this.groupCommitQueueSize = groupCommitQueueSize;
+	}
+
+	/**
+	 * Commits the GROUP_COMMIT transfers already accepted, when that mode has been used
+	 */
+	@PreDestroy
+	public void stopGroupCommitter() throws InterruptedException {
+		GroupCommitter committer = this.groupCommitter;
+		if (committer != null) {
+			committer.stop();
+		}
+	}
+
 	@Transactional
-	public synchronized Account createNewAccount(String name, BigDecimal initialBalance) throws TransferServiceException {
+	public Account createNewAccount(String name, BigDecimal initialBalance) throws TransferServiceException {
 		try {
-			Account account = new Account(name, initialBalance);
-			return this.accountRepository.save(account);
+			return this.createNewAccount(name, Money.toCents(initialBalance));
+		} catch (EntityCreationException e) {
+			throw new TransferServiceException("Invalid entity data: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Same as {@link #createNewAccount(String, BigDecimal)} with an initial balance in cents
+	 */
+	@Transactional
+	public Account createNewAccount(String name, long initialBalanceCents) throws TransferServiceException {
+		try {
+			Account account = this.accountRepository.save(new Account(name, initialBalanceCents));
+			// the base of its point in time balances, before any transfer of the account (even within this millisecond)
+			this.snapshotRepository
+					.save(new BalanceSnapshot(account.getId(), System.currentTimeMillis() - 1L, initialBalanceCents));
+			return account;
 		} catch (DataAccessException e) {
 			throw new TransferServiceException("DataAccess exception: " + e.getMessage(), e);
 		} catch (EntityCreationException e) {
@@ -47,42 +270,807 @@ public class TransferService {
 		}
 	}
 
-	@Transactional
-	public synchronized Transfer transfer(long sourceAccountId, long destinationAccountId, BigDecimal transferAmount)
+	public Transfer transfer(long sourceAccountId, long destinationAccountId, BigDecimal transferAmount)
+			throws TransferServiceException {
+		long amountCents;
+		try {
+			amountCents = Money.toCents(transferAmount);
+		} catch (EntityCreationException e) {
+			this.metrics.reject(Rejection.INVALID_AMOUNT);
+			throw new TransferServiceException(e.getMessage(), e);
+		}
+
+		return this.transfer(sourceAccountId, destinationAccountId, amountCents);
+	}
+
+	/**
+	 * Same as {@link #transfer(long, long, BigDecimal)} with an amount in cents
+	 */
+	public Transfer transfer(long sourceAccountId, long destinationAccountId, long amountCents)
+			throws TransferServiceException {
+		return this.transfer(sourceAccountId, destinationAccountId, amountCents, null);
+	}
+
+	/**
+	 * Same as {@link #transfer(long, long, long)}, executed at most once per idempotency key: a request retried with
+	 * the key of an executed transfer gets that Transfer back (see IdempotencyStore)
+	 * @param idempotencyKey client chosen key, stored with the Transfer, null for none
+	 */
+	public Transfer transfer(long sourceAccountId, long destinationAccountId, long amountCents, String idempotencyKey)
+			throws TransferServiceException {
+		this.accountStore.checkTransfer(sourceAccountId, destinationAccountId, amountCents);
+		return this.executeOnce(sourceAccountId, destinationAccountId, amountCents, idempotencyKey);
+	}
+
+	/**
+	 * Asynchronous {@link #createNewAccount(String, long)}, run on the TransferExecutor
+	 * @return a future completed with the new Account, or failed with the exception that refused it
+	 */
+	public CompletableFuture<Account> createNewAccountAsync(String name, long initialBalanceCents) {
+		return this.executor.submit(
+				() -> this.accountStore.inTransaction(status -> this.createNewAccount(name, initialBalanceCents)));
+	}
+
+	/**
+	 * Asynchronous {@link #transfer(long, long, long, String)}, the calling thread never waits for account locks or
+	 * for the database.<br>
+	 * LEDGER and GROUP_COMMIT transfers without idempotency key return the future of their engine, which takes no
+	 * thread while waiting. The other transfers run on the TransferExecutor.
+	 * @return a future completed with the executed Transfer, or failed with the exception that refused it
+	 */
+	public CompletableFuture<Transfer> transferAsync(long sourceAccountId, long destinationAccountId, long amountCents,
+			String idempotencyKey) {
+		try {
+			this.accountStore.checkTransfer(sourceAccountId, destinationAccountId, amountCents);
+
+			if (idempotencyKey == null) {
+				if (this.mode == TransferMode.LEDGER) {
+					return this.ledgerEngine().submitTransfer(sourceAccountId, destinationAccountId, amountCents, null);
+				}
+				if (this.mode == TransferMode.GROUP_COMMIT) {
+					return this.groupCommitter().submit(sourceAccountId, destinationAccountId, amountCents, null);
+				}
+			}
+		} catch (TransferServiceException e) {
+			CompletableFuture<Transfer> refused = new CompletableFuture<>();
+			refused.completeExceptionally(e);
+			return refused;
+		}
+
+		return this.executor.submit(() -> this.executeOnce(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+	}
+
+	/**
+	 * Helper method executing a checked transfer, at most once per idempotency key
+	 */
+	private Transfer executeOnce(long sourceAccountId, long destinationAccountId, long amountCents, String idempotencyKey)
+			throws TransferServiceException {
+		if (idempotencyKey == null) {
+			return this.execute(sourceAccountId, destinationAccountId, amountCents, null);
+		}
+		return this.idempotencyStore.execute(idempotencyKey, sourceAccountId, destinationAccountId, amountCents,
+				() -> this.execute(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+	}
+
+	/**
+	 * Helper method executing a checked transfer in the current mode
+	 */
+	private Transfer execute(long sourceAccountId, long destinationAccountId, long amountCents, String idempotencyKey)
+			throws TransferServiceException {
+		if (this.mode == TransferMode.LEDGER) {
+			return this.await(this.ledgerEngine().submitTransfer(sourceAccountId, destinationAccountId, amountCents,
+					idempotencyKey));
+		}
+
+		if (this.mode == TransferMode.GROUP_COMMIT) {
+			return this.await(this.groupCommitter().submit(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+		}
+
+		return this.transferNow(sourceAccountId, destinationAccountId, amountCents, idempotencyKey);
+	}
+
+	/**
+	 * Helper method running one transfer in its own transaction, GROUP_COMMIT falling back to LOCKING
+	 */
+	private Transfer transferNow(long sourceAccountId, long destinationAccountId, long amountCents, String idempotencyKey)
+			throws TransferServiceException {
+		if (this.mode == TransferMode.OPTIMISTIC) {
+			return this.optimisticTransfer(sourceAccountId, destinationAccountId, amountCents, idempotencyKey);
+		}
+
+		if (this.mode == TransferMode.CONDITIONAL_UPDATE) {
+			// the row locks taken by the UPDATE statements replace the JVM account locks
+			return this.accountStore.inTransaction(
+					status -> this.doConditionalTransfer(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+		}
+
+		// both account stripes are held until the transaction has been committed or rolled back, except the stripe
+		// of a hot destination: its credit goes to a slot row, which the database locks on its own
+		try (AccountLockManager.Guard guard = this.isHot(destinationAccountId) ? this.accountStore.lock(sourceAccountId)
+				: this.accountStore.lock(sourceAccountId, destinationAccountId)) {
+			try {
+				return this.accountStore.inTransaction(
+						status -> this.doTransfer(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+			} catch (OptimisticLockingFailureException e) {
+				// a cached account was changed by another writer, it has been evicted and is read again
+				return this.accountStore.inTransaction(
+						status -> this.doTransfer(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+			}
+		}
+	}
+
+	/**
+	 * Executes many transfers with few transactions.<br>
+	 * ALL_OR_NOTHING runs the whole batch in one transaction, BEST_EFFORT commits it in chunks of batchChunkSize items
+	 * where each failing item is skipped. The accounts of a chunk are loaded once and locked for the whole chunk.
+	 * @param requests the transfers, executed in order
+	 * @param batchMode the failure semantics
+	 * @return one result per request, in the same order
+	 */
+	public List<TransferResult> batchTransfer(List<TransferRequest> requests, BatchMode batchMode)
+			throws TransferServiceException {
+		if (requests == null || requests.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		if (requests.size() > this.batchMaxSize) {
+			throw new TransferServiceException("Batch cannot have more than " + this.batchMaxSize + " transfers");
+		}
+
+		List<TransferResult> results = new ArrayList<>(requests.size());
+		if (this.mode == TransferMode.LEDGER) {
+			this.ledgerBatch(requests, batchMode, results);
+		} else if (batchMode == BatchMode.ALL_OR_NOTHING) {
+			this.allOrNothingChunk(requests, results);
+		} else {
+			for (int from = 0; from < requests.size(); from += this.batchChunkSize) {
+				this.bestEffortChunk(requests, from, Math.min(from + this.batchChunkSize, requests.size()), results);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Executes a multi-leg transfer: one debit of the source account fanned out to several credits (splits, fee
+	 * distributions), all or nothing.<br>
+	 * All the accounts are locked at once (ascending stripe order, see AccountLockManager) and loaded with one query,
+	 * the source balance is checked once against the sum of the legs, and all the legs are written in one transaction
+	 * where the Transfer inserts are grouped in JDBC batches.
+	 * @param legs the credits, at most batchMaxSize
+	 * @return one Transfer per leg, in the same order
+	 * @throws TransferServiceException when a leg is invalid, an account does not exist or the source balance does not
+	 * cover all the legs: nothing is transferred
+	 */
+	public List<Transfer> multiTransfer(long sourceAccountId, List<TransferLeg> legs) throws TransferServiceException {
+		if (legs == null || legs.isEmpty()) {
+			throw new TransferServiceException("Multi-leg transfer must have at least one leg");
+		}
+		if (legs.size() > this.batchMaxSize) {
+			throw new TransferServiceException("Multi-leg transfer cannot have more than " + this.batchMaxSize + " legs");
+		}
+		if (this.mode == TransferMode.LEDGER) {
+			// as for ALL_OR_NOTHING batches, the engine cannot roll back the legs it has applied
+			throw new TransferServiceException("Multi-leg transfers are not supported in the LEDGER mode");
+		}
+
+		long[] amountsCents = new long[legs.size()];
+		long totalCents = 0L;
+		for (int i = 0; i < legs.size(); i++) {
+			TransferLeg leg = legs.get(i);
+			try {
+				amountsCents[i] = Money.toCents(leg.getAmount());
+				this.accountStore.checkTransfer(sourceAccountId, leg.getDestinationAccountId(), amountsCents[i]);
+				totalCents = Money.add(totalCents, amountsCents[i]);
+			} catch (EntityCreationException | ArithmeticException e) {
+				this.metrics.reject(Rejection.INVALID_AMOUNT);
+				throw new TransferServiceException("Invalid amount of leg " + i + ": " + e.getMessage(), e);
+			}
+		}
+
+		long[] accountIds = LongStream.concat(LongStream.of(sourceAccountId),
+				legs.stream().mapToLong(TransferLeg::getDestinationAccountId)).distinct().toArray();
+		long debitCents = totalCents;
+
+		try (AccountLockManager.Guard guard = this.accountStore.lock(accountIds)) {
+			return this.accountStore.inTransaction(
+					status -> this.doMultiTransfer(sourceAccountId, legs, amountsCents, debitCents, accountIds));
+		}
+	}
+
+	/**
+	 * @return the account, through the AccountCache, null when it does not exist.<br>
+	 * The balance of a hot account includes its slots.
+	 */
+	public Account findAccount(long id) {
+		return this.withSlotBalances(this.readAccount(id));
+	}
+
+	/**
+	 * @return the account, through the AccountCache, null when it does not exist.<br>
+	 * The balance of a hot account includes its slots.
+	 */
+	public Account findAccountByName(String name) {
+		return this.withSlotBalances(this.accountCache.findByName(name));
+	}
+
+	/**
+	 * Keyset pagination of the persisted Accounts
+	 * @param afterId only accounts with a greater id are returned (zero for the first page)
+	 * @param limit requested page size, defaulted when null and capped to pageMaxSize
+	 * @return at most limit accounts in id order, the last id being the cursor of the next page
+	 */
+	public List<Account> findAccounts(long afterId, Integer limit) {
+		List<Account> accounts = this.accountRepository.findByIdGreaterThanOrderByIdAsc(afterId, this.pageRequest(limit));
+		accounts.replaceAll(this::withSlotBalances);
+		return accounts;
+	}
+
+	/**
+	 * Makes an account hot: its credits are spread over slots sub-balances, so that they no longer serialize on the
+	 * Account row. Calling it again can only add slots.
+	 * @param slots number of sub-balances, at most transfer.hot-accounts.max-slots
+	 */
+	public void makeHotAccount(long accountId, int slots) throws TransferServiceException {
+		if (this.mode == TransferMode.LEDGER) {
+			throw new TransferServiceException("Hot accounts are not supported in the LEDGER transfer mode");
+		}
+
+		this.accountStore.inTransaction(status -> {
+			if (!this.accountRepository.exists(accountId)) {
+				throw new TransferServiceException("Account not found: " + accountId);
+			}
+			this.hotAccounts.addSlots(accountId, slots);
+			return null;
+		});
+	}
+
+	/**
+	 * Keyset pagination of the persisted Transfers
+	 * @param afterId only transfers with a greater id are returned (zero for the first page)
+	 * @param limit requested page size, defaulted when null and capped to pageMaxSize
+	 * @return at most limit transfers in id order, the last id being the cursor of the next page
+	 */
+	public List<Transfer> findTransfers(long afterId, Integer limit) {
+		return this.transferRepository.findByIdGreaterThanOrderByIdAsc(afterId, this.pageRequest(limit));
+	}
+
+	/**
+	 * Keyset pagination of the history of an account: the transfers debiting or crediting it in a time range, in
+	 * (execution time, id) order.<br>
+	 * The debits and the credits are read by two range scans of their (account, executed_at, id) index, of at most
+	 * one page each, and merged: the cost of a page does not depend on the length of the history.
+	 * @param fromMillis inclusive lower bound of the execution time, epoch milliseconds
+	 * @param toMillis exclusive upper bound of the execution time, epoch milliseconds
+	 * @param afterId only transfers following this one are returned (zero for the first page)
+	 * @param limit requested page size, defaulted when null and capped to pageMaxSize
+	 * @return at most limit transfers, the id of the last one being the cursor of the next page
+	 * @throws TransferServiceException when the afterId transfer does not exist
+	 */
+	public List<Transfer> findAccountTransfers(long accountId, long fromMillis, long toMillis, long afterId, Integer limit)
+			throws TransferServiceException {
+		long afterExecutedAt = fromMillis;
+		long afterTransferId = 0L;
+		if (afterId > 0L) {
+			Transfer after = this.transferRepository.findOne(afterId);
+			if (after == null) {
+				throw new TransferServiceException("Transfer not found: " + afterId);
+			}
+			// the cursor never goes back before fromMillis
+			if (after.getExecutedAtMillis() >= fromMillis) {
+				afterExecutedAt = after.getExecutedAtMillis();
+				afterTransferId = afterId;
+			}
+		}
+
+		PageRequest page = this.pageRequest(limit);
+		List<Transfer> debits = this.transferRepository.findDebitPage(accountId, afterExecutedAt, afterTransferId,
+				toMillis, page);
+		List<Transfer> credits = this.transferRepository.findCreditPage(accountId, afterExecutedAt, afterTransferId,
+				toMillis, page);
+
+		List<Transfer> transfers = new ArrayList<>(page.getPageSize());
+		int debit = 0;
+		int credit = 0;
+		while (transfers.size() < page.getPageSize() && (debit < debits.size() || credit < credits.size())) {
+			if (credit == credits.size()
+					|| (debit < debits.size() && TRANSFER_TIME_ORDER.compare(debits.get(debit), credits.get(credit)) < 0)) {
+				transfers.add(debits.get(debit++));
+			} else {
+				transfers.add(credits.get(credit++));
+			}
+		}
+		return transfers;
+	}
+
+	/**
+	 * Streams every persisted Transfer, in id order, from a forward only database cursor.<br>
+	 * Each Transfer is detached once consumed, so memory stays flat whatever the table size.
+	 * @param consumer receives the transfers one by one
+	 * @return the number of exported transfers
+	 */
+	@Transactional(readOnly = true)
+	public long exportTransfers(Consumer<Transfer> consumer) {
+		long count = 0L;
+		try (Stream<Transfer> transfers = this.transferRepository.streamAllByOrderByIdAsc()) {
+			for (Iterator<Transfer> it = transfers.iterator(); it.hasNext(); count++) {
+				Transfer transfer = it.next();
+				consumer.accept(transfer);
+				if (this.entityManager != null) {
+					this.entityManager.detach(transfer);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of OPTIMISTIC transfer attempts that hit a version conflict and were retried
+	 */
+	public long getOptimisticRetries() {
+		return this.optimisticRetries.sum();
+	}
+
+	/**
+	 * @return number of OPTIMISTIC transfers given up after optimisticMaxAttempts conflicts
+	 */
+	public long getOptimisticAborts() {
+		return this.optimisticAborts.sum();
+	}
+
+	/**
+	 * Lazily started, so that only the GROUP_COMMIT mode runs a committer thread
+	 */
+	private GroupCommitter groupCommitter() {
+		GroupCommitter committer = this.groupCommitter;
+		if (committer == null) {
+			synchronized (this) {
+				committer = this.groupCommitter;
+				if (committer == null) {
+					committer = new GroupCommitter(this::commitGroup, this.groupCommitMaxItems,
+							TimeUnit.MICROSECONDS.toNanos(this.groupCommitMaxDelayMicros), this.groupCommitQueueSize);
+					committer.start();
+					this.groupCommitter = committer;
+				}
+			}
+		}
+		return committer;
+	}
+
+	/**
+	 * Applies a group of GROUP_COMMIT transfers like a BEST_EFFORT batch chunk: every item is checked against the
+	 * loaded accounts, failing items are left out, and the rest is written in one transaction
+	 */
+	private List<TransferResult> commitGroup(List<TransferRequest> requests) {
+		List<TransferResult> results = new ArrayList<>(requests.size());
+		this.bestEffortChunk(requests, 0, requests.size(), results);
+		return results;
+	}
+
+	/**
+	 * LEDGER batches are published as a whole before the first result is awaited, so the writer applies them in a row
+	 */
+	private void ledgerBatch(List<TransferRequest> requests, BatchMode batchMode, List<TransferResult> results)
 			throws TransferServiceException {
+		if (batchMode == BatchMode.ALL_OR_NOTHING) {
+			throw new TransferServiceException("ALL_OR_NOTHING batches are not supported in the LEDGER transfer mode");
+		}
+
+		LedgerEngine engine = this.ledgerEngine();
+		List<CompletableFuture<Transfer>> futures = new ArrayList<>(requests.size());
+		for (TransferRequest request : requests) {
+			futures.add(engine.submitTransfer(request.getSourceAccountId(), request.getDestinationAccountId(), request.getAmount()));
+		}
+
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(TransferResult.completed(i, this.await(futures.get(i))));
+			} catch (TransferServiceException e) {
+				results.add(TransferResult.failed(i, e.getMessage()));
+			}
+		}
+	}
+
+	private LedgerEngine ledgerEngine() throws TransferServiceException {
+		if (this.ledgerEngine == null) {
+			throw new TransferServiceException("Ledger engine is not running");
+		}
+		return this.ledgerEngine;
+	}
+
+	/**
+	 * Helper method to wait for a ledger transfer, rethrowing the TransferServiceException that refused it
+	 */
+	private Transfer await(CompletableFuture<Transfer> future) throws TransferServiceException {
 		try {
-			// transfer amount must be greater than zero
-			if (transferAmount.compareTo(BigDecimal.ZERO) < 0) {
-				throw new TransferServiceException("Transaction amount must be greater than zero");
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof TransferServiceException) {
+				throw (TransferServiceException) e.getCause();
 			}
-			
+			throw new TransferServiceException(e.getCause());
+		}
+	}
+
+	private void allOrNothingChunk(List<TransferRequest> requests, List<TransferResult> results) {
+		int[] failedIndex = {-1};
+		String[] failure = {null};
+
+		long[] accountIds = this.accountIds(requests, 0, requests.size());
+		try (AccountLockManager.Guard guard = this.accountStore.lock(accountIds)) {
+			List<Transfer> saved = this.accountStore.inTransaction(status -> {
+				Map<Long, Account> accounts = this.accountStore.loadAccounts(accountIds);
+				List<Transfer> transfers = new ArrayList<>(requests.size());
+
+				for (int i = 0; i < requests.size(); i++) {
+					try {
+						transfers.add(this.applyInMemory(requests.get(i), accounts));
+					} catch (TransferServiceException e) {
+						for (int j = i - 1; j >= 0; j--) {
+							this.undoInMemory(requests.get(j), accounts);
+						}
+						failedIndex[0] = i;
+						failure[0] = e.getMessage();
+						throw e;
+					}
+				}
+
+				this.accountStore.saveAccounts(accounts);
+				return this.accountStore.saveTransfers(transfers);
+			});
+
+			for (int i = 0; i < saved.size(); i++) {
+				results.add(TransferResult.completed(i, saved.get(i)));
+			}
+		} catch (RuntimeException e) {
+			String cause = failedIndex[0] < 0 ? "Batch could not be committed: " + e.getMessage()
+					: "Batch rolled back, transfer " + failedIndex[0] + " failed: " + failure[0];
+			for (int i = 0; i < requests.size(); i++) {
+				results.add(i == failedIndex[0] ? TransferResult.failed(i, failure[0]) : TransferResult.rolledBack(i, cause));
+			}
+		}
+	}
+
+	private void bestEffortChunk(List<TransferRequest> requests, int from, int to, List<TransferResult> results) {
+		List<TransferResult> chunkResults = new ArrayList<>(to - from);
+
+		long[] accountIds = this.accountIds(requests, from, to);
+		try (AccountLockManager.Guard guard = this.accountStore.lock(accountIds)) {
+			this.accountStore.inTransaction(status -> {
+				Map<Long, Account> accounts = this.accountStore.loadAccounts(accountIds);
+				List<Transfer> transfers = new ArrayList<>(to - from);
+				List<Integer> transferIndexes = new ArrayList<>(to - from);
+
+				for (int i = from; i < to; i++) {
+					try {
+						transfers.add(this.applyInMemory(requests.get(i), accounts));
+						transferIndexes.add(i);
+					} catch (TransferServiceException e) {
+						chunkResults.add(TransferResult.failed(i, e.getMessage()));
+					}
+				}
+
+				this.accountStore.saveAccounts(accounts);
+				List<Transfer> saved = this.accountStore.saveTransfers(transfers);
+				for (int i = 0; i < saved.size(); i++) {
+					chunkResults.add(TransferResult.completed(transferIndexes.get(i), saved.get(i)));
+				}
+				return null;
+			});
+		} catch (RuntimeException e) {
+			// the chunk could not be committed as a whole (e.g. a concurrent update), items are retried one by one
+			chunkResults.clear();
+			for (int i = from; i < to; i++) {
+				TransferRequest request = requests.get(i);
+				try {
+					// never through the GROUP_COMMIT queue, the committer thread may be the caller
+					long amountCents = Money.toCents(request.getAmount());
+					this.accountStore.checkTransfer(request.getSourceAccountId(), request.getDestinationAccountId(),
+							amountCents);
+					chunkResults.add(TransferResult.completed(i,
+							this.transferNow(request.getSourceAccountId(), request.getDestinationAccountId(), amountCents,
+									request.getIdempotencyKey())));
+				} catch (RuntimeException itemException) {
+					chunkResults.add(TransferResult.failed(i, itemException.getMessage()));
+				}
+			}
+		}
+
+		chunkResults.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+		results.addAll(chunkResults);
+	}
+
+	/**
+	 * Helper method applying the legs of a multi-leg transfer to their locked accounts within the current transaction
+	 */
+	private List<Transfer> doMultiTransfer(long sourceAccountId, List<TransferLeg> legs, long[] amountsCents,
+			long totalCents, long[] accountIds) throws TransferServiceException {
+		Map<Long, Account> accounts = this.accountStore.loadAccounts(accountIds);
+
+		Account sourceAccount = accounts.get(sourceAccountId);
+		if (sourceAccount == null) {
+			throw this.accountStore.accountNotFound("Source", sourceAccountId);
+		}
+		for (TransferLeg leg : legs) {
+			if (!accounts.containsKey(leg.getDestinationAccountId())) {
+				throw this.accountStore.accountNotFound("Destination", leg.getDestinationAccountId());
+			}
+		}
+
+		// one balance check for all the legs
+		if (!sourceAccount.subtract(totalCents)) {
+			throw this.accountStore.insufficientBalance();
+		}
+
+		List<Transfer> transfers = new ArrayList<>(legs.size());
+		for (int i = 0; i < legs.size(); i++) {
+			long destinationAccountId = legs.get(i).getDestinationAccountId();
+			try {
+				accounts.get(destinationAccountId).add(amountsCents[i]);
+			} catch (ArithmeticException e) {
+				for (int j = i - 1; j >= 0; j--) {
+					accounts.get(legs.get(j).getDestinationAccountId()).subtract(amountsCents[j]);
+				}
+				sourceAccount.add(totalCents);
+				throw new TransferServiceException("Destination account balance would overflow", e);
+			}
+			transfers.add(new Transfer(sourceAccountId, destinationAccountId, amountsCents[i]));
+		}
+
+		this.accountStore.saveAccounts(accounts);
+		return this.accountStore.saveTransfers(transfers);
+	}
+
+	/**
+	 * Helper method to validate one transfer and apply it to already loaded accounts, without saving anything
+	 */
+	private Transfer applyInMemory(TransferRequest request, Map<Long, Account> accounts) throws TransferServiceException {
+		try {
+			Transfer transfer = new Transfer(request.getSourceAccountId(), request.getDestinationAccountId(), request.getAmount());
+			transfer.setIdempotencyKey(request.getIdempotencyKey());
+
+			Account sourceAccount = accounts.get(request.getSourceAccountId());
+			if (sourceAccount == null) {
+				throw this.accountStore.accountNotFound("Source", request.getSourceAccountId());
+			}
+
+			Account destinationAccount = accounts.get(request.getDestinationAccountId());
+			if (destinationAccount == null) {
+				throw this.accountStore.accountNotFound("Destination", request.getDestinationAccountId());
+			}
+
+			if (!sourceAccount.subtract(transfer.getAmountCents())) {
+				throw this.accountStore.insufficientBalance();
+			}
+
+			this.accountStore.credit(sourceAccount, destinationAccount, transfer.getAmountCents());
+			return transfer;
+		} catch (EntityCreationException e) {
+			throw new TransferServiceException(e.getMessage(), e);
+		}
+	}
+
+	private void undoInMemory(TransferRequest request, Map<Long, Account> accounts) {
+		long amountCents = Money.toCents(request.getAmount());
+		accounts.get(request.getDestinationAccountId()).subtract(amountCents);
+		accounts.get(request.getSourceAccountId()).add(amountCents);
+	}
+
+	private long[] accountIds(List<TransferRequest> requests, int from, int to) {
+		long[] ids = new long[(to - from) * 2];
+		for (int i = from; i < to; i++) {
+			ids[(i - from) * 2] = requests.get(i).getSourceAccountId();
+			ids[(i - from) * 2 + 1] = requests.get(i).getDestinationAccountId();
+		}
+		return Arrays.stream(ids).distinct().toArray();
+	}
+
+	private PageRequest pageRequest(Integer limit) {
+		int size = limit == null ? this.pageDefaultSize : Math.max(1, Math.min(limit, this.pageMaxSize));
+		// keyset pages always start at offset zero, the cursor is in the query
+		return new PageRequest(0, size);
+	}
+
+	/**
+	 * Runs the whole read-debit-credit cycle in a fresh transaction until it commits without a version conflict
+	 */
+	private Transfer optimisticTransfer(long sourceAccountId, long destinationAccountId, long amountCents,
+			String idempotencyKey)
+			throws TransferServiceException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return this.accountStore.inTransaction(
+						status -> this.doTransfer(sourceAccountId, destinationAccountId, amountCents, idempotencyKey));
+			} catch (OptimisticLockingFailureException e) {
+				if (attempt >= this.optimisticMaxAttempts) {
+					this.optimisticAborts.increment();
+					throw new TransferServiceException("Transfer aborted after " + attempt + " concurrent update conflicts", e);
+				}
+
+				this.optimisticRetries.increment();
+				this.backoff(attempt);
+			}
+		}
+	}
+
+	/**
+	 * Helper method to sleep a random time between zero and an exponentially growing bound (full jitter)
+	 */
+	private void backoff(int attempt) {
+		long bound = this.optimisticBackoffMillis << Math.min(attempt - 1, 16);
+		if (bound <= 0L) {
+			return;
+		}
+
+		try {
+			TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(bound + 1L));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransferServiceException("Interrupted while retrying transfer", e);
+		}
+	}
+
+	private Transfer doTransfer(long sourceAccountId, long destinationAccountId, long amountCents, String idempotencyKey)
+			throws TransferServiceException {
+		if (this.isHot(sourceAccountId) || this.isHot(destinationAccountId)) {
+			// slot balances are only ever changed by statements
+			return this.doConditionalTransfer(sourceAccountId, destinationAccountId, amountCents, idempotencyKey);
+		}
+
+		try {
+			long readStart = System.nanoTime();
+
 			// find source account
-			Account sourceAccount = Optional.of(this.accountRepository.findOne(sourceAccountId)).get();
-			
+			Account sourceAccount = this.readAccount(sourceAccountId);
+
 			// find destination account
-			Account destinationAccount = Optional.of(this.accountRepository.findOne(destinationAccountId)).get();
-			
-			if (!sourceAccount.subtract(transferAmount)) {
-				throw new TransferServiceException("Source account hasn't enough balance for transfer.");
+			Account destinationAccount = this.readAccount(destinationAccountId);
+
+			this.metrics.recordSince(Stage.REPOSITORY_READ, readStart);
+
+			if (sourceAccount == null) {
+				throw this.accountStore.accountNotFound("Source", sourceAccountId);
+			}
+			if (destinationAccount == null) {
+				throw this.accountStore.accountNotFound("Destination", destinationAccountId);
+			}
+
+			if (!sourceAccount.subtract(amountCents)) {
+				throw this.accountStore.insufficientBalance();
 			}// if
-			
-			destinationAccount.add(transferAmount);
-			
-			this.accountRepository.save(sourceAccount);
-			this.accountRepository.save(destinationAccount);
-			
-			Transfer transfer = new Transfer(sourceAccount.getId(), destinationAccount.getId(), transferAmount);
-			return this.transferRepository.save(transfer);
-		} catch (EntityCreationException | NullPointerException e) {
+
+			destinationAccount.add(amountCents);
+
+			long saveStart = System.nanoTime();
+			this.saveCachedAccounts(sourceAccount, destinationAccount);
+
+			Transfer transfer = new Transfer(sourceAccount.getId(), destinationAccount.getId(), amountCents);
+			transfer.setIdempotencyKey(idempotencyKey);
+			transfer = this.transferRepository.save(transfer);
+			this.metrics.recordSince(Stage.SAVE, saveStart);
+			return transfer;
+		} catch (EntityCreationException | ArithmeticException e) {
 			throw new TransferServiceException(e);
 		}
 	}
 
-	public Iterable<Account> findAllAccounts() {
-		return this.accountRepository.findAll();
+	/**
+	 * Writes the balances of two cached account copies with version checked statements, in ascending id order, and
+	 * caches them once committed. A version mismatch evicts both and fails like a JPA optimistic lock failure.
+	 */
+	private void saveCachedAccounts(Account sourceAccount, Account destinationAccount) {
+		boolean sourceFirst = sourceAccount.getId() < destinationAccount.getId();
+		Account first = sourceFirst ? sourceAccount : destinationAccount;
+		Account second = sourceFirst ? destinationAccount : sourceAccount;
+
+		List<Account> accounts = Arrays.asList(first, second);
+		for (Account account : accounts) {
+			if (this.accountRepository.updateBalance(account.getId(), account.getBalanceCents(), account.getVersion()) == 0) {
+				this.accountCache.evict(first.getId(), second.getId());
+				throw new ObjectOptimisticLockingFailureException(Account.class, account.getId());
+			}
+			account.setVersion(account.getVersion() + 1);
+		}
+
+		this.accountCache.putAfterCommit(accounts);
 	}
 
-	public Iterable<Transfer> findAllTransfers() {
-		return this.transferRepository.findAll();
+	/**
+	 * Transfer without entity loading: one conditional debit and one credit statement, plus the Transfer insert.<br>
+	 * The slots of hot accounts are consolidated or credited first, in account id order, then the Account rows are
+	 * updated in id order: every transfer locks rows in the same order whatever the accounts involved.
+	 */
+	private Transfer doConditionalTransfer(long sourceAccountId, long destinationAccountId, long amountCents,
+			String idempotencyKey)
+			throws TransferServiceException {
+		try {
+			// validates same account and amount rules before any row is touched
+			Transfer transfer = new Transfer(sourceAccountId, destinationAccountId, amountCents);
+			transfer.setIdempotencyKey(idempotencyKey);
+
+			long saveStart = System.nanoTime();
+			boolean hotSource = this.isHot(sourceAccountId);
+			boolean hotDestination = this.isHot(destinationAccountId);
+			if (hotSource && hotDestination && destinationAccountId < sourceAccountId) {
+				this.creditSlot(destinationAccountId, amountCents);
+				this.accountStore.consolidate(sourceAccountId);
+			} else {
+				if (hotSource) {
+					// debits see the whole balance
+					this.accountStore.consolidate(sourceAccountId);
+				}
+				if (hotDestination) {
+					this.creditSlot(destinationAccountId, amountCents);
+				}
+			}
+
+			if (hotDestination) {
+				this.debit(sourceAccountId, amountCents);
+			} else if (sourceAccountId < destinationAccountId) {
+				this.debit(sourceAccountId, amountCents);
+				this.credit(destinationAccountId, amountCents);
+			} else {
+				this.credit(destinationAccountId, amountCents);
+				this.debit(sourceAccountId, amountCents);
+			}
+
+			transfer = this.transferRepository.save(transfer);
+			this.metrics.recordSince(Stage.SAVE, saveStart);
+			this.accountCache.evictAfterCommit(sourceAccountId, destinationAccountId);
+			return transfer;
+		} catch (EntityCreationException e) {
+			throw new TransferServiceException(e);
+		}
 	}
+
+	private void debit(long accountId, long amountCents) throws TransferServiceException {
+		if (this.accountRepository.debitIfSufficient(accountId, amountCents) == 0) {
+			// only the failure path pays for telling the two causes apart
+			if (this.accountRepository.exists(accountId)) {
+				throw this.accountStore.insufficientBalance();
+			}
+			throw this.accountStore.accountNotFound("Source", accountId);
+		}
+	}
+
+	private void credit(long accountId, long amountCents) throws TransferServiceException {
+		if (this.accountRepository.credit(accountId, amountCents) == 0) {
+			throw this.accountStore.accountNotFound("Destination", accountId);
+		}
+	}
+
+	private void creditSlot(long accountId, long amountCents) throws TransferServiceException {
+		if (!this.hotAccounts.credit(accountId, amountCents)) {
+			throw this.accountStore.accountNotFound("Destination", accountId);
+		}
+	}
+
+	private boolean isHot(long accountId) {
+		return this.hotAccounts.isHot(accountId);
+	}
+
+	/**
+	 * @return the account, through the AccountCache, with its own balance only
+	 */
+	private Account readAccount(long id) {
+		return this.accountCache.findOne(id);
+	}
+
+	/**
+	 * Helper method returning a copy of a hot account whose balance includes its slots, other accounts as they are.<br>
+	 * The account itself may be a managed entity, the total must never be written back.
+	 */
+	private Account withSlotBalances(Account account) {
+		if (account == null || !this.isHot(account.getId())) {
+			return account;
+		}
+
+		Account total = new Account(account.getName(),
+				Money.add(account.getBalanceCents(), this.hotAccounts.slotBalanceCents(account.getId())));
+		total.setId(account.getId());
+		total.setVersion(account.getVersion());
+		total.setHeldCents(account.getHeldCents());
+		return total;
+	}
+
 }
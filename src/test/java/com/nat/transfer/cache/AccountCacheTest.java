@@ -0,0 +1,106 @@
+package com.nat.transfer.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+
+/**
+ * Unit Test class for AccountCache
+ *
+ * @author jyotirmani
+ */
+public class AccountCacheTest {
+	private AccountMockRepository accountRepository;
+	private AccountCache accountCache;
+	private long accountId;
+
+	@Before
+	public void setup() {
+		this.accountRepository = new AccountMockRepository();
+		this.accountCache = new AccountCache(this.accountRepository, 100L);
+		this.accountId = this.accountRepository.save(new Account("Cached", new BigDecimal("100"))).getId();
+	}
+
+	@Test
+	public void testReadsAreCachedCopies() {
+		Account first = this.accountCache.findOne(this.accountId);
+		first.subtract(1000L);
+		Account second = this.accountCache.findOne(this.accountId);
+
+		// callers can't change the cached state
+		assertNotSame(first, second);
+		assertEquals(10000L, second.getBalanceCents());
+		assertEquals(1L, this.accountCache.getStatistics().getHits());
+		assertEquals(1L, this.accountCache.getStatistics().getMisses());
+		assertNull(this.accountCache.findOne(99L));
+	}
+
+	@Test
+	public void testPutKeepsTheHighestVersion() {
+		Account cached = this.accountCache.findOne(this.accountId);
+
+		Account committed = this.accountCache.findOne(this.accountId);
+		committed.subtract(100L);
+		committed.setVersion(cached.getVersion() + 1);
+		this.accountCache.putAfterCommit(Collections.singletonList(committed));
+
+		// a late writer of the previous version does not overwrite the committed state
+		this.accountCache.putAfterCommit(Collections.singletonList(cached));
+
+		assertEquals(9900L, this.accountCache.findOne(this.accountId).getBalanceCents());
+	}
+
+	@Test
+	public void testEvictReadsTheRepositoryAgain() {
+		this.accountCache.findOne(this.accountId);
+		this.accountRepository.credit(this.accountId, 500L);
+
+		this.accountCache.evictAfterCommit(this.accountId);
+
+		assertEquals(10500L, this.accountCache.findOne(this.accountId).getBalanceCents());
+	}
+
+	@Test
+	public void testEvictRunsBeforeTheCommit() {
+		this.accountCache.findOne(this.accountId);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			this.accountRepository.credit(this.accountId, 500L);
+			this.accountCache.evictAfterCommit(this.accountId);
+			TransactionSynchronizationUtils.triggerBeforeCommit(false);
+
+			// a read between the commit and the after commit eviction already misses the previous state
+			assertEquals(10500L, this.accountCache.findOne(this.accountId).getBalanceCents());
+			assertEquals(2L, this.accountCache.getStatistics().getMisses());
+
+			TransactionSynchronizationUtils.triggerAfterCommit();
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(10500L, this.accountCache.findOne(this.accountId).getBalanceCents());
+		assertEquals(3L, this.accountCache.getStatistics().getMisses());
+	}
+
+	@Test
+	public void testFindByNameFollowsRenames() {
+		assertEquals(this.accountId, this.accountCache.findByName("Cached").getId().longValue());
+
+		this.accountRepository.findOne(this.accountId).setName("Renamed");
+		this.accountCache.evict(this.accountId);
+
+		assertNull(this.accountCache.findByName("Cached"));
+		assertEquals(this.accountId, this.accountCache.findByName("Renamed").getId().longValue());
+	}
+}
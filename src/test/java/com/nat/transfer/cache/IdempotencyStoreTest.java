@@ -0,0 +1,115 @@
+package com.nat.transfer.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+
+/**
+ * Unit Test class for IdempotencyStore
+ *
+ * @author jyotirmani
+ */
+public class IdempotencyStoreTest {
+	private TransferMockRepository transferRepository;
+	private IdempotencyStore idempotencyStore;
+	private AtomicInteger executions;
+
+	@Before
+	public void setup() {
+		this.transferRepository = new TransferMockRepository();
+		this.idempotencyStore = new IdempotencyStore(this.transferRepository, 100L, 60L);
+		this.executions = new AtomicInteger();
+	}
+
+	@Test
+	public void testRetriesGetTheFirstTransfer() {
+		Transfer first = this.idempotencyStore.execute("key-1", 1L, 2L, 500L, () -> this.execute("key-1", 1L, 2L, 500L));
+		Transfer retry = this.idempotencyStore.execute("key-1", 1L, 2L, 500L, () -> this.execute("key-1", 1L, 2L, 500L));
+
+		assertSame(first, retry);
+		assertEquals(1, this.executions.get());
+		assertEquals(1L, this.idempotencyStore.getReplays());
+
+		try {
+			this.idempotencyStore.execute("key-1", 1L, 2L, 700L, () -> this.execute("key-1", 1L, 2L, 700L));
+			fail("Expected a key reused for another transfer to be refused");
+		} catch (TransferServiceException e) {
+			assertEquals(1, this.executions.get());
+		}
+	}
+
+	@Test
+	public void testKeysAreFoundInTheRepository() {
+		// executed by another instance, or before a restart
+		Transfer stored = this.execute("key-2", 1L, 2L, 500L);
+
+		assertSame(stored, this.idempotencyStore.execute("key-2", 1L, 2L, 500L, () -> this.execute("key-2", 1L, 2L, 500L)));
+		assertEquals(1, this.executions.get());
+	}
+
+	@Test
+	public void testRefusedTransfersAreNotRemembered() {
+		try {
+			this.idempotencyStore.execute("key-3", 1L, 2L, 500L, () -> {
+				throw new TransferServiceException("Source account hasn't enough balance for transfer.");
+			});
+			fail("Expected the transfer to be refused");
+		} catch (TransferServiceException e) {
+			// the retry executes again
+		}
+
+		this.idempotencyStore.execute("key-3", 1L, 2L, 500L, () -> this.execute("key-3", 1L, 2L, 500L));
+		assertEquals(1, this.executions.get());
+	}
+
+	@Test
+	public void testConcurrentRetriesExecuteOnce() throws Exception {
+		CountDownLatch executing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		List<CompletableFuture<Transfer>> requests = new ArrayList<>();
+		requests.add(CompletableFuture.supplyAsync(() -> this.idempotencyStore.execute("key-4", 1L, 2L, 500L, () -> {
+			executing.countDown();
+			try {
+				release.await(5L, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return this.execute("key-4", 1L, 2L, 500L);
+		})));
+		executing.await(5L, TimeUnit.SECONDS);
+
+		for (int i = 0; i < 4; i++) {
+			requests.add(CompletableFuture.supplyAsync(
+					() -> this.idempotencyStore.execute("key-4", 1L, 2L, 500L, () -> this.execute("key-4", 1L, 2L, 500L))));
+		}
+		release.countDown();
+
+		Transfer first = requests.get(0).get(5L, TimeUnit.SECONDS);
+		for (CompletableFuture<Transfer> request : requests) {
+			assertSame(first, request.get(5L, TimeUnit.SECONDS));
+		}
+		assertEquals(1, this.executions.get());
+	}
+
+	private Transfer execute(String idempotencyKey, long sourceAccountId, long destinationAccountId, long amountCents) {
+		this.executions.incrementAndGet();
+		Transfer transfer = new Transfer(sourceAccountId, destinationAccountId, amountCents);
+		transfer.setIdempotencyKey(idempotencyKey);
+		return this.transferRepository.save(transfer);
+	}
+}
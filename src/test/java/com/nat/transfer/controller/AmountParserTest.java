@@ -0,0 +1,52 @@
+package com.nat.transfer.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.nat.transfer.dto.ApiError;
+
+/**
+ * Unit Test class for AmountParser
+ *
+ * @author jyotirmani
+ */
+public class AmountParserTest {
+
+	@Test
+	public void testParseCents() {
+		assertEquals(1000L, AmountParser.parseCents("10"));
+		assertEquals(1250L, AmountParser.parseCents("12.5"));
+		assertEquals(1234L, AmountParser.parseCents("+12.34"));
+		assertEquals(1250L, AmountParser.parseCents("12.500"));
+		assertEquals(50L, AmountParser.parseCents(".5"));
+		assertEquals(1000L, AmountParser.parseCents("10."));
+		assertEquals(0L, AmountParser.parseCents("0"));
+		assertEquals(Long.MAX_VALUE, AmountParser.parseCents("92233720368547758.07"));
+	}
+
+	@Test
+	public void testParseCentsRejectsMalformedInput() {
+		for (String text : new String[] {null, "", "+", ".", "1.2.3", "1e3", "1,000", " 10", "10 ", "abc", "--1", "-x"}) {
+			assertEquals(text, AmountParser.INVALID_FORMAT, AmountParser.parseCents(text));
+		}
+		assertEquals(AmountParser.TOO_MANY_DECIMALS, AmountParser.parseCents("0.001"));
+		assertEquals(AmountParser.TOO_MANY_DECIMALS, AmountParser.parseCents("12.3450"));
+		assertEquals(AmountParser.NEGATIVE, AmountParser.parseCents("-1"));
+		assertEquals(AmountParser.OUT_OF_RANGE, AmountParser.parseCents("92233720368547758.08"));
+		assertEquals(AmountParser.OUT_OF_RANGE, AmountParser.parseCents("92233720368547759"));
+		assertEquals(AmountParser.OUT_OF_RANGE, AmountParser.parseCents("100000000000000000000"));
+	}
+
+	@Test
+	public void testErrorResponsesArePreallocated() {
+		ResponseEntity<Object> response = AmountParser.errorResponse(AmountParser.TOO_MANY_DECIMALS);
+
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		assertEquals("Amount cannot have more than 2 decimal places", ((ApiError) response.getBody()).getError());
+		assertSame(response, AmountParser.errorResponse(AmountParser.TOO_MANY_DECIMALS));
+	}
+}
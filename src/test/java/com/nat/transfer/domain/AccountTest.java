@@ -123,6 +123,25 @@ public class AccountTest {
 		assertFalse(accountBalanceOne.hasEnoughBalanceForTransfer(AMOUNT_1000.add(BigDecimal.ONE)));
 	}
 
+	@Test
+	public void testHeldFundsAreNotAvailable() throws Exception {
+		// 1000 in balance
+		Account account = new Account("TestOne", AMOUNT_1000);
+
+		assertTrue(account.hold(Money.toCents(AMOUNT_100)));
+		assertFalse(account.hold(Money.toCents(AMOUNT_1000)));
+
+		assertEquals(AMOUNT_1000, account.getBalance());
+		assertEquals(AMOUNT_100, account.getHeldBalance());
+		assertTrue(account.hasEnoughBalanceForTransfer(AMOUNT_1000.subtract(AMOUNT_100)));
+		assertFalse(account.hasEnoughBalanceForTransfer(AMOUNT_1000));
+		assertFalse(account.subtract(AMOUNT_1000));
+
+		account.release(Money.toCents(AMOUNT_100));
+		assertEquals(0L, account.getHeldCents());
+		assertTrue(account.subtract(AMOUNT_1000));
+	}
+
 	private Account helperAccountCreator(Account other) {
 		Account account = new Account(other.getName(), other.getBalance());
 		account.setId(other.getId());
@@ -0,0 +1,77 @@
+package com.nat.transfer.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.nat.transfer.exception.EntityCreationException;
+
+/**
+ * Unit Test class for Money
+ *
+ * @author jyotirmani
+ */
+public class MoneyTest {
+
+	@Test
+	public void testToCents() throws Exception {
+		assertEquals(1000L, Money.toCents(new BigDecimal("10")));
+		assertEquals(1234L, Money.toCents(new BigDecimal("12.34")));
+		assertEquals(1250L, Money.toCents(new BigDecimal("12.500")));
+		assertEquals(-100L, Money.toCents(new BigDecimal("-1")));
+
+		this.assertRefused(new BigDecimal("0.001"), "Amount cannot have more than 2 decimal places");
+		this.assertRefused(new BigDecimal("1e20"), "Amount is out of range");
+	}
+
+	@Test
+	public void testToBigDecimalKeepsTheApiFormat() throws Exception {
+		// whole amounts have no fraction digits and trailing fraction zeros are dropped
+		assertEquals(new BigDecimal("100"), Money.toBigDecimal(10000L));
+		assertEquals(new BigDecimal("12.5"), Money.toBigDecimal(1250L));
+		assertEquals(new BigDecimal("12.34"), Money.toBigDecimal(1234L));
+		assertEquals(new BigDecimal("0.05"), Money.toBigDecimal(5L));
+		assertEquals(new BigDecimal("0"), Money.toBigDecimal(0L));
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testAddOverflow() throws Exception {
+		Money.add(Long.MAX_VALUE, 1L);
+	}
+
+	@Test
+	public void testAccountArithmeticInCents() throws Exception {
+		Account account = new Account("Cents", new BigDecimal("10.50"));
+		assertEquals(1050L, account.getBalanceCents());
+
+		assertFalse(account.subtract(1051L));
+		assertTrue(account.subtract(50L));
+		account.add(5L);
+		assertEquals(new BigDecimal("10.05"), account.getBalance());
+
+		try {
+			account.add(Long.MAX_VALUE);
+			fail("Expected ArithmeticException");
+		} catch (ArithmeticException e) {
+			// the balance is left untouched
+			assertEquals(1005L, account.getBalanceCents());
+		}
+	}
+
+	/*
+	 * Helper method asserting that an amount cannot be converted to cents
+	 */
+	private void assertRefused(BigDecimal amount, String message) {
+		try {
+			Money.toCents(amount);
+			fail("Expected EntityCreationException");
+		} catch (EntityCreationException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+}
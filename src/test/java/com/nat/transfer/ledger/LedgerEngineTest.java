@@ -0,0 +1,280 @@
+package com.nat.transfer.ledger;
+
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_10;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_100;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_1000;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.LedgerCheckpoint;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.LedgerCheckpointMockRepository;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.testutils.MockTransactionManager;
+
+/**
+ * Unit Test class for LedgerEngine
+ *
+ * @author jyotirmani
+ */
+public class LedgerEngineTest {
+
+	private IAccountRepository accountRepository;
+
+	private ITransferRepository transferRepository;
+
+	private LedgerCheckpointMockRepository checkpointRepository;
+
+	private LedgerEngine ledgerEngine;
+
+	@Rule
+	public TemporaryFolder journalFolder = new TemporaryFolder();
+
+	private final AtomicInteger credits = new AtomicInteger();
+
+	@Before
+	public void setup() {
+		this.accountRepository = new AccountMockRepository() {
+			@Override
+			public int credit(long id, long amountCents) {
+				credits.incrementAndGet();
+				return super.credit(id, amountCents);
+			}
+		};
+		this.transferRepository = new TransferMockRepository();
+		this.checkpointRepository = new LedgerCheckpointMockRepository();
+
+		this.accountRepository.save(new Account("Account One", AMOUNT_100));
+		this.accountRepository.save(new Account("Account Two", AMOUNT_1000));
+
+		this.ledgerEngine = this.newLedgerEngine(null);
+		this.ledgerEngine.start();
+	}
+
+	@After
+	public void teardown() throws InterruptedException {
+		this.ledgerEngine.stop();
+	}
+
+	@Test
+	public void testTransfersAreAppliedAndPersisted() throws Exception {
+		// more transfers than ring slots, producers have to wait for the writer
+		List<CompletableFuture<Transfer>> futures = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			futures.add(this.ledgerEngine.submitTransfer(2L, 1L, AMOUNT_10));
+		}
+
+		for (CompletableFuture<Transfer> future : futures) {
+			assertEquals(AMOUNT_10, future.join().getAmount());
+		}
+
+		this.ledgerEngine.stop();
+
+		assertEquals(50L, this.ledgerEngine.getApplied());
+		assertEquals(50L, this.ledgerEngine.getPersisted());
+		assertEquals(50L, this.transferRepository.count());
+		assertEquals(new BigDecimal("600"), this.accountRepository.findOne(1L).getBalance());
+		assertEquals(new BigDecimal("500"), this.accountRepository.findOne(2L).getBalance());
+
+		// the persisted transfers got their ids, the answered copies never do
+		for (Transfer transfer : this.transferRepository.findAll()) {
+			assertNotNull(transfer.getId());
+		}
+		for (CompletableFuture<Transfer> future : futures) {
+			assertNull(future.join().getId());
+		}
+
+		// one net balance update per account and batch, never more than one per transfer and account
+		assertTrue(this.credits.get() >= 2 && this.credits.get() <= 100);
+	}
+
+	@Test
+	public void testRefusedTransfers() throws Exception {
+		this.assertRefused(this.ledgerEngine.submitTransfer(1L, 2L, new BigDecimal("100.01")),
+				"Source account hasn't enough balance for transfer.");
+		this.assertRefused(this.ledgerEngine.submitTransfer(3L, 2L, AMOUNT_10), "Source account not found: 3");
+		this.assertRefused(this.ledgerEngine.submitTransfer(1L, 3L, AMOUNT_10), "Destination account not found: 3");
+		this.assertRefused(this.ledgerEngine.submitTransfer(1L, 1L, AMOUNT_10),
+				"Source and Destination account cannot be the same");
+
+		this.ledgerEngine.stop();
+
+		assertEquals(4L, this.ledgerEngine.getRejected());
+		assertEquals(0L, this.transferRepository.count());
+		assertEquals(AMOUNT_100, this.accountRepository.findOne(1L).getBalance());
+		assertEquals(AMOUNT_1000, this.accountRepository.findOne(2L).getBalance());
+	}
+
+	@Test
+	public void testSubmitAfterStop() throws Exception {
+		this.ledgerEngine.stop();
+
+		this.assertRefused(this.ledgerEngine.submitTransfer(2L, 1L, AMOUNT_10), "Ledger engine is not running");
+	}
+
+	@Test
+	public void testJournaledTransfersAreReplayed() throws Exception {
+		this.ledgerEngine.stop();
+
+		// three transfers journaled before a crash, none of them reached the database
+		try (TransferJournal journal = new TransferJournal(this.journalFolder.getRoot().toPath(), 2)) {
+			journal.open(0L);
+			for (int i = 0; i < 3; i++) {
+				journal.append(2L, 1L, 1000L, System.currentTimeMillis());
+			}
+			journal.force();
+		}
+
+		this.ledgerEngine = this.newLedgerEngine(this.journalFolder.getRoot().getPath());
+		this.ledgerEngine.start();
+		assertEquals(AMOUNT_10, this.ledgerEngine.submitTransfer(2L, 1L, AMOUNT_10).join().getAmount());
+		this.ledgerEngine.stop();
+
+		assertEquals(4L, this.transferRepository.count());
+		assertEquals(new BigDecimal("140"), this.accountRepository.findOne(1L).getBalance());
+		assertEquals(new BigDecimal("960"), this.accountRepository.findOne(2L).getBalance());
+		assertEquals(4L, this.checkpointRepository.findOne(LedgerCheckpoint.LEDGER_ID).getSequence());
+
+		// everything is checkpointed, a restart replays nothing
+		this.ledgerEngine = this.newLedgerEngine(this.journalFolder.getRoot().getPath());
+		this.ledgerEngine.start();
+		this.ledgerEngine.stop();
+
+		assertEquals(4L, this.transferRepository.count());
+		assertEquals(new BigDecimal("140"), this.accountRepository.findOne(1L).getBalance());
+	}
+
+	@Test
+	public void testReplayedTransfersKeepTheirIdempotencyKey() throws Exception {
+		this.ledgerEngine.stop();
+
+		try (TransferJournal journal = new TransferJournal(this.journalFolder.getRoot().toPath(), 4)) {
+			journal.open(0L);
+			journal.append(2L, 1L, 1000L, System.currentTimeMillis(), "retried-key");
+			journal.force();
+		}
+
+		this.ledgerEngine = this.newLedgerEngine(this.journalFolder.getRoot().getPath());
+		this.ledgerEngine.setJournalSegmentRecords(4);
+		this.ledgerEngine.start();
+
+		// in the database before any new command is accepted, where a retry finds it
+		Transfer replayed = this.transferRepository.findByIdempotencyKey("retried-key");
+		assertNotNull(replayed);
+		assertEquals(1000L, replayed.getAmountCents());
+
+		assertEquals("other-key", this.ledgerEngine.submitTransfer(2L, 1L, 500L, "other-key").join().getIdempotencyKey());
+		this.ledgerEngine.stop();
+
+		// replayed again from a lost checkpoint, both keys survive
+		this.transferRepository.deleteAll();
+		this.checkpointRepository.deleteAll();
+		this.ledgerEngine = this.newLedgerEngine(this.journalFolder.getRoot().getPath());
+		this.ledgerEngine.setJournalSegmentRecords(4);
+		this.ledgerEngine.start();
+
+		assertNotNull(this.transferRepository.findByIdempotencyKey("retried-key"));
+		assertNotNull(this.transferRepository.findByIdempotencyKey("other-key"));
+	}
+
+	@Test
+	public void testTransfersRefusedByAFailedForceAreNotReplayed() throws Exception {
+		this.ledgerEngine.stop();
+
+		AtomicBoolean failNextForce = new AtomicBoolean();
+		this.ledgerEngine = new LedgerEngine(this.accountRepository,
+				new LedgerPersister(this.accountRepository, this.transferRepository, this.checkpointRepository,
+						new MockTransactionManager()), 8, 100) {
+			@Override
+			TransferJournal newJournal(Path directory, int segmentRecords) {
+				return new TransferJournal(directory, segmentRecords) {
+					@Override
+					public void force() {
+						if (failNextForce.getAndSet(false)) {
+							throw new UncheckedIOException(new IOException("Injected force failure"));
+						}
+						super.force();
+					}
+				};
+			}
+		};
+		this.ledgerEngine.setAccountCache(new AccountCache(this.accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		this.ledgerEngine.setJournalDirectory(this.journalFolder.getRoot().getPath());
+		this.ledgerEngine.setJournalSegmentRecords(16);
+		this.ledgerEngine.setFsyncIntervalMillis(0L);
+		this.ledgerEngine.start();
+
+		this.ledgerEngine.submitTransfer(2L, 1L, 1000L).join();
+		failNextForce.set(true);
+		this.assertRefused(this.ledgerEngine.submitTransfer(2L, 1L, 500L), "Transfer could not be journaled");
+		this.ledgerEngine.submitTransfer(2L, 1L, 2000L).join();
+		this.ledgerEngine.stop();
+
+		assertEquals(2L, this.transferRepository.count());
+		assertEquals(new BigDecimal("130"), this.accountRepository.findOne(1L).getBalance());
+
+		// the refused record was dropped, the next transfer took its sequence
+		List<Long> amounts = new ArrayList<>();
+		try (TransferJournal journal = new TransferJournal(this.journalFolder.getRoot().toPath(), 16)) {
+			assertEquals(2L, journal.open(0L));
+			journal.replay(0L, (sequence, source, destination, amountCents, timestamp, key) -> amounts.add(amountCents));
+		}
+		assertEquals(Arrays.asList(1000L, 2000L), amounts);
+	}
+
+	/*
+	 * Helper method creating an engine over the mock repositories, journaled when a directory is given
+	 */
+	private LedgerEngine newLedgerEngine(String journalDirectory) {
+		LedgerEngine engine = new LedgerEngine(this.accountRepository,
+				new LedgerPersister(this.accountRepository, this.transferRepository, this.checkpointRepository,
+						new MockTransactionManager()), 8, 100);
+		engine.setAccountCache(new AccountCache(this.accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		if (journalDirectory != null) {
+			engine.setJournalDirectory(journalDirectory);
+			engine.setJournalSegmentRecords(2);
+			engine.setFsyncIntervalMillis(0L);
+		}
+		return engine;
+	}
+
+	/*
+	 * Helper method asserting that a future failed with a TransferServiceException and the given message
+	 */
+	private void assertRefused(CompletableFuture<Transfer> future, String message) {
+		try {
+			future.join();
+			fail("Expected TransferServiceException");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof TransferServiceException);
+			assertEquals(message, e.getCause().getMessage());
+		}
+	}
+}
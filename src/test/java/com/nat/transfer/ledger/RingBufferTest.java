@@ -0,0 +1,64 @@
+package com.nat.transfer.ledger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit Test class for RingBuffer
+ *
+ * @author jyotirmani
+ */
+public class RingBufferTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityMustBePowerOfTwo() {
+		new RingBuffer<long[]>(10, () -> new long[2]);
+	}
+
+	@Test
+	public void testConcurrentProducersKeepTheirOrder() throws Exception {
+		final int producers = 4;
+		final int perProducer = 20000;
+		// slots are {producer, value}, the ring is much smaller than the traffic so it wraps many times
+		RingBuffer<long[]> ringBuffer = new RingBuffer<>(16, () -> new long[2]);
+		CountDownLatch done = new CountDownLatch(producers);
+
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < perProducer; i++) {
+					long sequence = ringBuffer.next();
+					long[] slot = ringBuffer.get(sequence);
+					slot[0] = producer;
+					slot[1] = i;
+					ringBuffer.publish(sequence);
+				}
+				done.countDown();
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		long[] lastValues = {-1L, -1L, -1L, -1L};
+		int[] consumed = {0};
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (consumed[0] < producers * perProducer && System.nanoTime() < deadline) {
+			ringBuffer.drain(slot -> {
+				// every producer's values are seen in the order they were published
+				assertEquals(lastValues[(int) slot[0]] + 1, slot[1]);
+				lastValues[(int) slot[0]] = slot[1];
+				consumed[0]++;
+			}, 64);
+			ringBuffer.awaitPublished(1L, TimeUnit.MILLISECONDS);
+		}
+
+		assertTrue(done.await(1L, TimeUnit.SECONDS));
+		assertEquals(producers * perProducer, consumed[0]);
+		assertEquals(0L, ringBuffer.size());
+	}
+}
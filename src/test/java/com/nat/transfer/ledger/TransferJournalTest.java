@@ -0,0 +1,147 @@
+package com.nat.transfer.ledger;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit Test class for TransferJournal
+ *
+ * @author jyotirmani
+ */
+public class TransferJournalTest {
+
+	@Rule
+	public TemporaryFolder journalFolder = new TemporaryFolder();
+
+	@Test
+	public void testRecordsSurviveReopen() throws Exception {
+		Path directory = this.journalFolder.getRoot().toPath();
+
+		try (TransferJournal journal = new TransferJournal(directory, 4)) {
+			assertEquals(0L, journal.open(0L));
+			for (int i = 1; i <= 10; i++) {
+				assertEquals(i, journal.append(i, i + 100L, 1234L, 1000L + i));
+			}
+		}
+
+		try (TransferJournal journal = new TransferJournal(directory, 4)) {
+			assertEquals(10L, journal.open(0L));
+
+			List<long[]> records = new ArrayList<>();
+			assertEquals(3L, journal.replay(7L, (sequence, source, destination, amountCents, timestamp, key) -> {
+				assertEquals(1234L, amountCents);
+				records.add(new long[] {sequence, source, destination, timestamp});
+			}));
+			assertEquals(8L, records.get(0)[0]);
+			assertEquals(108L, records.get(0)[2]);
+			assertEquals(1010L, records.get(2)[3]);
+
+			// numbering goes on after the last record
+			assertEquals(11L, journal.append(1L, 2L, 100L, 0L));
+		}
+	}
+
+	@Test
+	public void testTornRecordEndsTheJournal() throws Exception {
+		Path directory = this.journalFolder.getRoot().toPath();
+
+		try (TransferJournal journal = new TransferJournal(directory, 8)) {
+			journal.open(0L);
+			for (int i = 0; i < 3; i++) {
+				journal.append(1L, 2L, 1000L, 0L);
+			}
+		}
+
+		// corrupts the amount of the third record, as a crash in the middle of its write would
+		try (RandomAccessFile file = new RandomAccessFile(this.segments(directory)[0].toFile(), "rw")) {
+			file.seek(2 * TransferJournal.RECORD_SIZE + 24);
+			file.writeLong(-1L);
+		}
+
+		try (TransferJournal journal = new TransferJournal(directory, 8)) {
+			assertEquals(2L, journal.open(0L));
+			assertEquals(2L, journal.replay(0L, (sequence, source, destination, amountCents, timestamp, key) -> { }));
+			assertEquals(3L, journal.append(1L, 2L, 1000L, 0L));
+		}
+	}
+
+	@Test
+	public void testIdempotencyKeysAreJournaled() throws Exception {
+		Path directory = this.journalFolder.getRoot().toPath();
+		String longKey = String.join("", Collections.nCopies(8, "retry-\u00e9\u00e9"));
+
+		try (TransferJournal journal = new TransferJournal(directory, 4)) {
+			journal.open(0L);
+			assertEquals(1L, journal.append(1L, 2L, 100L, 0L, "key-1"));
+			assertEquals(2L, journal.append(1L, 2L, 200L, 0L));
+			// three slots, they do not fit the first segment any more
+			assertEquals(3L, journal.append(1L, 2L, 300L, 0L, longKey));
+			assertEquals(2, this.segments(directory).length);
+		}
+
+		try (TransferJournal journal = new TransferJournal(directory, 4)) {
+			assertEquals(3L, journal.open(0L));
+
+			List<String> keys = new ArrayList<>();
+			assertEquals(3L, journal.replay(0L, (sequence, source, destination, amountCents, timestamp, key) -> keys.add(key)));
+			assertEquals(Arrays.asList("key-1", null, longKey), keys);
+			assertEquals(4L, journal.append(1L, 2L, 400L, 0L));
+		}
+
+		// corrupts the key of the third record, as a crash in the middle of its write would
+		try (RandomAccessFile file = new RandomAccessFile(this.segments(directory)[1].toFile(), "rw")) {
+			file.seek(TransferJournal.RECORD_SIZE);
+			file.writeByte('K');
+		}
+		try (TransferJournal journal = new TransferJournal(directory, 4)) {
+			assertEquals(2L, journal.open(0L));
+			assertEquals(2L, journal.replay(0L, (sequence, source, destination, amountCents, timestamp, key) -> { }));
+		}
+	}
+
+	@Test
+	public void testTruncateKeepsUncheckpointedSegments() throws Exception {
+		Path directory = this.journalFolder.getRoot().toPath();
+
+		try (TransferJournal journal = new TransferJournal(directory, 2)) {
+			journal.open(0L);
+			for (int i = 0; i < 7; i++) {
+				journal.append(1L, 2L, 100L, 0L);
+			}
+			assertEquals(4, this.segments(directory).length);
+
+			// records 1-4 are in the database: the first two segments go, the third holds record 5
+			journal.truncate(4L);
+			assertEquals(2, this.segments(directory).length);
+			assertEquals(3L, journal.replay(4L, (sequence, source, destination, amountCents, timestamp, key) -> { }));
+		}
+
+		// an emptied journal continues the numbering after the checkpoint
+		Path other = this.journalFolder.newFolder().toPath();
+		try (TransferJournal journal = new TransferJournal(other, 2)) {
+			assertEquals(42L, journal.open(42L));
+			assertEquals(43L, journal.append(1L, 2L, 100L, 0L));
+		}
+	}
+
+	/*
+	 * Helper method listing the segment files of a journal directory
+	 */
+	private Path[] segments(Path directory) throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toArray(Path[]::new);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.nat.transfer.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.nat.transfer.dto.MetricsSnapshot;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.metrics.TransferMetrics.Stage;
+
+/**
+ * Unit Test class for TransferMetrics
+ *
+ * @author jyotirmani
+ */
+public class TransferMetricsTest {
+
+	@Test
+	public void testSnapshotsCoverOneInterval() {
+		TransferMetrics metrics = new TransferMetrics();
+		for (int i = 1; i <= 100; i++) {
+			metrics.record(Stage.COMMIT, TimeUnit.MICROSECONDS.toNanos(i));
+		}
+		metrics.reject(Rejection.INSUFFICIENT_FUNDS);
+
+		MetricsSnapshot first = metrics.snapshot();
+		MetricsSnapshot.Latency commit = first.getLatencies().get("COMMIT");
+		assertEquals(100L, commit.getCount());
+		// 1% value precision
+		assertEquals(99.0, commit.getP99(), 1.0);
+		assertEquals(100.0, commit.getMax(), 1.0);
+		assertEquals(0L, first.getLatencies().get("LOCK_WAIT").getCount());
+		assertEquals(Long.valueOf(1L), first.getRejections().get("INSUFFICIENT_FUNDS"));
+
+		metrics.record(Stage.COMMIT, TimeUnit.MICROSECONDS.toNanos(5));
+		metrics.reject(Rejection.INSUFFICIENT_FUNDS);
+
+		// latencies restart with each interval, rejections are totals
+		MetricsSnapshot second = metrics.snapshot();
+		assertEquals(1L, second.getLatencies().get("COMMIT").getCount());
+		assertEquals(Long.valueOf(2L), second.getRejections().get("INSUFFICIENT_FUNDS"));
+		assertTrue(second.getIntervalStart() == first.getIntervalEnd());
+	}
+
+	@Test
+	public void testOutOfRangeValuesAreClamped() {
+		TransferMetrics metrics = new TransferMetrics();
+		metrics.record(Stage.REQUEST, TimeUnit.HOURS.toNanos(1L));
+		metrics.record(Stage.REQUEST, -1L);
+
+		assertEquals(2L, metrics.snapshot().getLatencies().get("REQUEST").getCount());
+	}
+}
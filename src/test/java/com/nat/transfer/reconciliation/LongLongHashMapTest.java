@@ -0,0 +1,61 @@
+package com.nat.transfer.reconciliation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit Test class for LongLongHashMap
+ *
+ * @author jyotirmani
+ */
+public class LongLongHashMapTest {
+
+	@Test
+	public void testPutGetAndAddTo() {
+		LongLongHashMap map = new LongLongHashMap();
+		map.put(7L, 100L);
+		map.addTo(7L, -30L);
+		map.addTo(0L, 5L);
+		map.addTo(-3L, 1L);
+
+		assertEquals(70L, map.get(7L, -1L));
+		assertEquals(5L, map.get(0L, -1L));
+		assertEquals(1L, map.get(-3L, -1L));
+		assertEquals(-1L, map.get(8L, -1L));
+		assertTrue(map.containsKey(0L));
+		assertFalse(map.containsKey(8L));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void testResizeKeepsEveryEntry() {
+		LongLongHashMap map = new LongLongHashMap(4);
+		for (long key = 1L; key <= 100000L; key++) {
+			map.addTo(key * 64L, key);
+		}
+		for (long key = 1L; key <= 100000L; key++) {
+			map.addTo(key * 64L, key);
+		}
+
+		assertEquals(100000, map.size());
+		assertEquals(2L, map.get(64L, 0L));
+		assertEquals(200000L, map.get(6400000L, 0L));
+		long[] sum = new long[1];
+		map.forEach((key, value) -> sum[0] += value);
+		assertEquals(100000L * 100001L, sum[0]);
+	}
+
+	@Test
+	public void testSortedKeys() {
+		LongLongHashMap map = new LongLongHashMap();
+		map.put(42L, 1L);
+		map.put(-1L, 1L);
+		map.put(7L, 1L);
+
+		assertArrayEquals(new long[] {-1L, 7L, 42L}, map.sortedKeys());
+	}
+}
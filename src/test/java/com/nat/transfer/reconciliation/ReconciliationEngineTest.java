@@ -0,0 +1,196 @@
+package com.nat.transfer.reconciliation;
+
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_10;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_100;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_1000;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.dto.AccountMismatch;
+import com.nat.transfer.dto.ReconciliationReport;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IBalanceSnapshotRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountBalanceSlotMockRepository;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.BalanceSnapshotMockRepository;
+import com.nat.transfer.repositories.impl.ReconciliationCheckpointMockRepository;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.service.BalanceSnapshotter;
+import com.nat.transfer.service.TransferService;
+import com.nat.transfer.testutils.MockTransactionManager;
+import com.nat.transfer.testutils.MockTransferService;
+
+/**
+ * Unit Test class for ReconciliationEngine, over mock repositories and one account per partition
+ *
+ * @author jyotirmani
+ */
+public class ReconciliationEngineTest {
+	private IAccountRepository accountRepository;
+	private IBalanceSnapshotRepository snapshotRepository;
+	private TransferService transferService;
+	private ReconciliationEngine engine;
+	/**
+	 * Run once by the account repository, right after the engine has read the last account id
+	 */
+	private Runnable afterLastId;
+
+	@Before
+	public void setup() throws InterruptedException {
+		this.accountRepository = new AccountMockRepository() {
+			@Override
+			public Account findFirstByOrderByIdDesc() {
+				Account last = super.findFirstByOrderByIdDesc();
+				Runnable run = ReconciliationEngineTest.this.afterLastId;
+				ReconciliationEngineTest.this.afterLastId = null;
+				if (run != null) {
+					run.run();
+				}
+				return last;
+			}
+		};
+		ITransferRepository transferRepository = new TransferMockRepository();
+		this.snapshotRepository = new BalanceSnapshotMockRepository();
+
+		this.transferService = new MockTransferService(this.accountRepository, transferRepository);
+		this.transferService.setSnapshotRepository(this.snapshotRepository);
+		this.transferService.createNewAccount("Account One", AMOUNT_100);
+		this.transferService.createNewAccount("Account Two", AMOUNT_1000);
+		this.transferService.createNewAccount("Account Three", AMOUNT_100);
+		this.transferService.transfer(1L, 2L, AMOUNT_10);
+		this.transferService.transfer(2L, 3L, AMOUNT_100);
+		this.transferService.transfer(3L, 1L, AMOUNT_10);
+
+		BalanceSnapshotter snapshotter = new BalanceSnapshotter();
+		snapshotter.setAccountRepository(this.accountRepository);
+		snapshotter.setTransferRepository(transferRepository);
+		snapshotter.setSnapshotRepository(this.snapshotRepository);
+
+		this.engine = new ReconciliationEngine();
+		this.engine.setAccountRepository(this.accountRepository);
+		this.engine.setTransferRepository(transferRepository);
+		this.engine.setSnapshotRepository(this.snapshotRepository);
+		this.engine.setSlotRepository(new AccountBalanceSlotMockRepository());
+		this.engine.setCheckpointRepository(new ReconciliationCheckpointMockRepository());
+		this.engine.setBalanceSnapshotter(snapshotter);
+		this.engine.setTransactionManager(new MockTransactionManager());
+		this.engine.setPartitionSize(1L);
+		this.engine.setParallelism(2);
+	}
+
+	@Test
+	public void testConsistentLedgerIsConserved() {
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertTrue(report.isFull());
+		assertTrue(report.isConserved());
+		assertEquals(3, report.getPartitions());
+		assertEquals(3L, report.getAccounts());
+		assertEquals(6L, report.getTransfers());
+		assertEquals(120000L, Money.toCents(report.getBalance()));
+		assertEquals(0L, Money.toCents(report.getNetTransfers()));
+		// the opening snapshots, then one at the checkpoint per changed account
+		assertEquals(6L, this.snapshotRepository.count());
+	}
+
+	@Test
+	public void testIncrementalRunReadsTheNewTransfersOnly() throws InterruptedException {
+		Thread.sleep(2L);
+		long checkpoint = System.currentTimeMillis();
+		this.engine.reconcile(checkpoint);
+		Thread.sleep(2L);
+		this.transferService.transfer(2L, 1L, AMOUNT_10);
+
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertFalse(report.isFull());
+		assertTrue(report.isConserved());
+		assertEquals(3L, report.getAccounts());
+		assertEquals(2L, report.getTransfers());
+		assertEquals(120000L, Money.toCents(report.getBalance()));
+	}
+
+	@Test
+	public void testAccountOpenedAfterTheCheckpointStartsFromItsOpeningSnapshot() throws InterruptedException {
+		Thread.sleep(2L);
+		this.engine.reconcile(System.currentTimeMillis());
+		Thread.sleep(2L);
+		this.transferService.createNewAccount("Account Four", AMOUNT_100);
+		this.transferService.transfer(1L, 4L, AMOUNT_10);
+
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertFalse(report.isFull());
+		assertTrue(report.isConserved());
+		assertEquals(4L, report.getAccounts());
+		assertEquals(0L, report.getUnverifiedAccounts());
+		assertEquals(0L, Money.toCents(report.getNetTransfers()));
+		assertTrue(report.getMismatches().isEmpty());
+	}
+
+	@Test
+	public void testAccountOpenedDuringTheRunIsLeftOut() {
+		this.afterLastId = () -> {
+			this.transferService.createNewAccount("Account Four", AMOUNT_100);
+			this.transferService.transfer(1L, 4L, AMOUNT_10);
+		};
+
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertTrue(report.isConserved());
+		assertEquals(3L, report.getAccounts());
+		assertEquals(0L, Money.toCents(report.getNetTransfers()));
+		// without the debit to the account left out
+		assertEquals(120000L, Money.toCents(report.getBalance()));
+		assertTrue(report.getMismatches().isEmpty());
+	}
+
+	@Test
+	public void testMismatchingBalanceIsReported() {
+		// a credit without its transfer
+		this.accountRepository.credit(2L, 500L);
+
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertFalse(report.isConserved());
+		assertEquals(1, report.getMismatches().size());
+		AccountMismatch mismatch = report.getMismatches().get(0);
+		assertEquals(2L, mismatch.getAccountId());
+		assertEquals(91000L, Money.toCents(mismatch.getExpectedBalance()));
+		assertEquals(91500L, Money.toCents(mismatch.getActualBalance()));
+		assertEquals(500L, Money.toCents(report.getBalance()) - Money.toCents(report.getOpeningBalance())
+				- Money.toCents(report.getNetTransfers()));
+	}
+
+	@Test
+	public void testAccountWithoutSnapshotIsUnverified() {
+		this.accountRepository.save(new Account("Account Four", AMOUNT_100));
+
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertTrue(report.isConserved());
+		assertEquals(3L, report.getAccounts());
+		assertEquals(1L, report.getUnverifiedAccounts());
+	}
+
+	@Test
+	public void testTransfersOfAnAccountWithoutSnapshotNetOut() {
+		this.accountRepository.save(new Account("Account Four", AMOUNT_100));
+		this.transferService.transfer(4L, 1L, AMOUNT_10);
+
+		ReconciliationReport report = this.engine.reconcile(System.currentTimeMillis());
+
+		assertTrue(report.isConserved());
+		assertEquals(3L, report.getAccounts());
+		assertEquals(1L, report.getUnverifiedAccounts());
+		assertEquals(0L, Money.toCents(report.getNetTransfers()));
+		assertEquals(130000L, Money.toCents(report.getBalance()));
+	}
+}
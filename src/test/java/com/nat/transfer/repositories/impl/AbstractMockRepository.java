@@ -5,22 +5,30 @@ package com.nat.transfer.repositories.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
-import org.springframework.data.repository.CrudRepository;
+import java.util.stream.StreamSupport;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.PagingAndSortingRepository;
 
 /**
  * @author jyotirmani
  *
  */
-public abstract class AbstractMockRepository<T extends Object, S extends Serializable> implements CrudRepository<T, S> {
+public abstract class AbstractMockRepository<T extends Object, S extends Serializable> implements PagingAndSortingRepository<T, S> {
 
     protected Map<S, T> mapRepository;
 
     public AbstractMockRepository() {
         super();
-        this.mapRepository = new LinkedHashMap<>();
+        // synchronized, since the service no longer serializes every call
+        this.mapRepository = Collections.synchronizedMap(new LinkedHashMap<>());
     }
 
     @Override
@@ -35,10 +43,12 @@ public abstract class AbstractMockRepository<T extends Object, S extends Seriali
 
     @Override
     public void delete(T value) {
-        for (S s : this.mapRepository.keySet()) {
-            if (this.mapRepository.get(s).equals(value)) {
-                this.mapRepository.remove(s);
-                return;
+        synchronized (this.mapRepository) {
+            for (S s : this.mapRepository.keySet()) {
+                if (this.mapRepository.get(s).equals(value)) {
+                    this.mapRepository.remove(s);
+                    return;
+                }
             }
         }
     }
@@ -62,15 +72,35 @@ public abstract class AbstractMockRepository<T extends Object, S extends Seriali
 
     @Override
     public Iterable<T> findAll() {
-        return new ArrayList<>(this.mapRepository.values());
+        synchronized (this.mapRepository) {
+            return new ArrayList<>(this.mapRepository.values());
+        }
+    }
+
+    @Override
+    public Iterable<T> findAll(Iterable<S> keys) {
+        synchronized (this.mapRepository) {
+            return StreamSupport.stream(keys.spliterator(), false)
+                    .filter(this.mapRepository::containsKey)
+                    .map(this.mapRepository::get)
+                    .collect(Collectors.toList());
+        }
     }
 
+    /**
+     * Sorting is ignored, values come in insertion (id) order
+     */
     @Override
-    public Iterable<T> findAll(Iterable<S> key) {
-        return this.mapRepository.keySet().stream()
-                .filter(key::equals)
-                .map(this.mapRepository::get)
-                .collect(Collectors.toList());
+    public Iterable<T> findAll(Sort sort) {
+        return this.findAll();
+    }
+
+    @Override
+    public Page<T> findAll(Pageable pageable) {
+        List<T> values = (List<T>) this.findAll();
+        int from = Math.min(pageable.getOffset(), values.size());
+        int to = Math.min(from + pageable.getPageSize(), values.size());
+        return new PageImpl<>(values.subList(from, to), pageable, values.size());
     }
 
     @Override
@@ -101,6 +131,19 @@ public abstract class AbstractMockRepository<T extends Object, S extends Seriali
         return values;
     }
 
+    /**
+     * Helper method for the keyset page finders, values in insertion (id) order following a given key
+     */
+    protected List<T> findAfter(S key, Pageable pageable) {
+        synchronized (this.mapRepository) {
+            return this.mapRepository.entrySet().stream()
+                    .filter(e -> ((Comparable<S>) e.getKey()).compareTo(key) > 0)
+                    .limit(pageable.getPageSize())
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toList());
+        }
+    }
+
     protected abstract <R extends T> R setValueID(R value, S key);
 
     protected abstract S createNewKey();
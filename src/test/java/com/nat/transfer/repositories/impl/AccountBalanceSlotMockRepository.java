@@ -0,0 +1,109 @@
+package com.nat.transfer.repositories.impl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.nat.transfer.domain.AccountBalanceSlot;
+import com.nat.transfer.repositories.IAccountBalanceSlotRepository;
+
+/**
+ * @author jyotirmani
+ *
+ */
+public class AccountBalanceSlotMockRepository extends AbstractMockRepository<AccountBalanceSlot, Long> implements
+		IAccountBalanceSlotRepository {
+
+	final private AtomicLong atomicId;
+
+	public AccountBalanceSlotMockRepository() {
+		super();
+		this.atomicId = new AtomicLong(1L);
+	}
+
+	@Override
+	protected <R extends AccountBalanceSlot> R setValueID(R value, Long key) {
+		value.setId(key);
+		return value;
+	}
+
+	@Override
+	protected Long createNewKey() {
+		return this.atomicId.getAndIncrement();
+	}
+
+	@Override
+	protected <R extends AccountBalanceSlot> Long getValueKey(R value) {
+		return value.getId();
+	}
+
+	@Override
+	public List<AccountBalanceSlot> findByAccountIdOrderBySlotAsc(long accountId) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream().filter(s -> s.getAccountId() == accountId)
+					.sorted((a, b) -> Integer.compare(a.getSlot(), b.getSlot())).collect(Collectors.toList());
+		}
+	}
+
+	@Override
+	public int credit(long accountId, int slot, long amountCents, long maxBalanceCents) {
+		synchronized (this.mapRepository) {
+			for (AccountBalanceSlot balanceSlot : this.mapRepository.values()) {
+				if (balanceSlot.getAccountId() == accountId && balanceSlot.getSlot() == slot) {
+					if (balanceSlot.getBalanceCents() > maxBalanceCents) {
+						return 0;
+					}
+					balanceSlot.setBalanceCents(balanceSlot.getBalanceCents() + amountCents);
+					return 1;
+				}
+			}
+			return 0;
+		}
+	}
+
+	@Override
+	public long countByAccountIdAndSlot(long accountId, int slot) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(s -> s.getAccountId() == accountId && s.getSlot() == slot).count();
+		}
+	}
+
+	@Override
+	public int clear(long accountId) {
+		synchronized (this.mapRepository) {
+			List<AccountBalanceSlot> slots = this.findByAccountIdOrderBySlotAsc(accountId);
+			slots.forEach(s -> s.setBalanceCents(0L));
+			return slots.size();
+		}
+	}
+
+	@Override
+	public long sumBalanceCents(long accountId) {
+		return this.findByAccountIdOrderBySlotAsc(accountId).stream().mapToLong(AccountBalanceSlot::getBalanceCents).sum();
+	}
+
+	@Override
+	public List<Object[]> countSlotsByAccount() {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.collect(Collectors.groupingBy(AccountBalanceSlot::getAccountId, Collectors.counting()))
+					.entrySet().stream()
+					.map(e -> new Object[] {e.getKey(), e.getValue()})
+					.collect(Collectors.toList());
+		}
+	}
+
+	@Override
+	public List<Object[]> sumBalanceCentsByAccount(long fromId, long toId) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(s -> s.getAccountId() >= fromId && s.getAccountId() <= toId)
+					.collect(Collectors.groupingBy(AccountBalanceSlot::getAccountId,
+							Collectors.summingLong(AccountBalanceSlot::getBalanceCents)))
+					.entrySet().stream()
+					.map(e -> new Object[] {e.getKey(), e.getValue()})
+					.collect(Collectors.toList());
+		}
+	}
+}
@@ -5,8 +5,13 @@ package com.nat.transfer.repositories.impl;
 
 import com.nat.transfer.domain.Account;
 import com.nat.transfer.repositories.IAccountRepository;
+import java.util.Comparator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Pageable;
 
 /**
  * @author jyotirmani
@@ -40,10 +45,79 @@ public class AccountMockRepository extends AbstractMockRepository<Account, Long>
 
     @Override
     public Account findByName(String name) {
-        try {
-            return this.mapRepository.values().stream().filter(a -> a.getName().equals(name)).findFirst().get();
-        } catch (NoSuchElementException e) {
-            return null;
+        synchronized (this.mapRepository) {
+            try {
+                return this.mapRepository.values().stream().filter(a -> a.getName().equals(name)).findFirst().get();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public List<Account> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable) {
+        return this.findAfter(id, pageable);
+    }
+
+    @Override
+    public Account findFirstByOrderByIdAsc() {
+        synchronized (this.mapRepository) {
+            return this.mapRepository.values().stream().min(Comparator.comparing(Account::getId)).orElse(null);
+        }
+    }
+
+    @Override
+    public Account findFirstByOrderByIdDesc() {
+        synchronized (this.mapRepository) {
+            return this.mapRepository.values().stream().max(Comparator.comparing(Account::getId)).orElse(null);
+        }
+    }
+
+    @Override
+    public Stream<Object[]> streamBalances(long fromId, long toId) {
+        synchronized (this.mapRepository) {
+            return this.mapRepository.values().stream()
+                    .filter(a -> a.getId() >= fromId && a.getId() <= toId)
+                    .map(a -> new Object[] {a.getId(), a.getBalanceCents()})
+                    .collect(Collectors.toList()).stream();
+        }
+    }
+
+    @Override
+    public int updateBalance(long id, long balanceCents, long version) {
+        synchronized (this.mapRepository) {
+            Account account = this.mapRepository.get(id);
+            if (account == null || account.getVersion() != version) {
+                return 0;
+            }
+            account.setBalanceCents(balanceCents);
+            account.setVersion(version + 1);
+            return 1;
+        }
+    }
+
+    @Override
+    public int debitIfSufficient(long id, long amountCents) {
+        synchronized (this.mapRepository) {
+            Account account = this.mapRepository.get(id);
+            if (account == null || !account.subtract(amountCents)) {
+                return 0;
+            }
+            account.setVersion(account.getVersion() + 1);
+            return 1;
+        }
+    }
+
+    @Override
+    public int credit(long id, long amountCents) {
+        synchronized (this.mapRepository) {
+            Account account = this.mapRepository.get(id);
+            if (account == null) {
+                return 0;
+            }
+            account.add(amountCents);
+            account.setVersion(account.getVersion() + 1);
+            return 1;
         }
     }
 }
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package com.nat.transfer.repositories.impl;
+
+import com.nat.transfer.domain.BalanceSnapshot;
+import com.nat.transfer.repositories.IBalanceSnapshotRepository;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author jyotirmani
+ *
+ */
+public class BalanceSnapshotMockRepository extends AbstractMockRepository<BalanceSnapshot, Long>
+		implements IBalanceSnapshotRepository {
+
+	final private AtomicLong atomicId;
+
+	public BalanceSnapshotMockRepository() {
+		super();
+		this.atomicId = new AtomicLong(1L);
+	}
+
+	@Override
+	protected <R extends BalanceSnapshot> R setValueID(R value, Long key) {
+		value.setId(key);
+		return value;
+	}
+
+	@Override
+	protected Long createNewKey() {
+		return this.atomicId.getAndIncrement();
+	}
+
+	@Override
+	protected <R extends BalanceSnapshot> Long getValueKey(R value) {
+		return value.getId();
+	}
+
+	@Override
+	public BalanceSnapshot findFirstByAccountIdAndTakenAtLessThanEqualOrderByTakenAtDesc(long accountId, long takenAt) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(s -> s.getAccountId() == accountId && s.getTakenAtMillis() <= takenAt)
+					.max(Comparator.comparingLong(BalanceSnapshot::getTakenAtMillis)).orElse(null);
+		}
+	}
+
+	@Override
+	public BalanceSnapshot findFirstByAccountIdAndTakenAtGreaterThanOrderByTakenAtAsc(long accountId, long takenAt) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(s -> s.getAccountId() == accountId && s.getTakenAtMillis() > takenAt)
+					.min(Comparator.comparingLong(BalanceSnapshot::getTakenAtMillis)).orElse(null);
+		}
+	}
+
+	@Override
+	public BalanceSnapshot findFirstByOrderByTakenAtDesc() {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.max(Comparator.comparingLong(BalanceSnapshot::getTakenAtMillis)).orElse(null);
+		}
+	}
+
+	@Override
+	public Stream<Object[]> streamFirstSnapshots(long fromAccountId, long toAccountId) {
+		return this.streamSnapshots(fromAccountId, toAccountId, Long.MAX_VALUE,
+				BinaryOperator.minBy(Comparator.comparingLong(BalanceSnapshot::getTakenAtMillis)));
+	}
+
+	@Override
+	public Stream<Object[]> streamFirstSnapshotsAfter(long fromAccountId, long toAccountId, long takenAt) {
+		return this.streamFirstSnapshots(fromAccountId, toAccountId).filter(row -> (long) row[2] > takenAt);
+	}
+
+	@Override
+	public Stream<Object[]> streamLatestSnapshots(long fromAccountId, long toAccountId, long takenAt) {
+		return this.streamSnapshots(fromAccountId, toAccountId, takenAt,
+				BinaryOperator.maxBy(Comparator.comparingLong(BalanceSnapshot::getTakenAtMillis)));
+	}
+
+	/**
+	 * @param choice picks one of two snapshots of an account
+	 */
+	private Stream<Object[]> streamSnapshots(long fromAccountId, long toAccountId, long takenAt,
+			BinaryOperator<BalanceSnapshot> choice) {
+		synchronized (this.mapRepository) {
+			Map<Long, Optional<BalanceSnapshot>> chosen = this.mapRepository.values().stream()
+					.filter(s -> s.getAccountId() >= fromAccountId && s.getAccountId() <= toAccountId)
+					.filter(s -> s.getTakenAtMillis() <= takenAt)
+					.collect(Collectors.groupingBy(BalanceSnapshot::getAccountId, Collectors.reducing(choice)));
+			return chosen.values().stream()
+					.map(Optional::get)
+					.map(s -> new Object[] {s.getAccountId(), s.getBalanceCents(), s.getTakenAtMillis()})
+					.collect(Collectors.toList()).stream();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package com.nat.transfer.repositories.impl;
+
+import com.nat.transfer.domain.Hold;
+import com.nat.transfer.repositories.IHoldRepository;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * @author jyotirmani
+ *
+ */
+public class HoldMockRepository extends AbstractMockRepository<Hold, Long> implements IHoldRepository {
+
+	final private AtomicLong atomicId;
+
+	public HoldMockRepository() {
+		super();
+		this.atomicId = new AtomicLong(1L);
+	}
+
+	@Override
+	protected <R extends Hold> R setValueID(R value, Long key) {
+		value.setId(key);
+		return value;
+	}
+
+	@Override
+	protected Long createNewKey() {
+		return this.atomicId.getAndIncrement();
+	}
+
+	@Override
+	protected <R extends Hold> Long getValueKey(R value) {
+		return value.getId();
+	}
+
+	@Override
+	public List<Hold> findPage(Hold.Status status, long afterExpiresAt, long afterId, Pageable pageable) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(h -> h.getStatus() == status)
+					.filter(h -> h.getExpiresAtMillis() > afterExpiresAt
+							|| (h.getExpiresAtMillis() == afterExpiresAt && h.getId() > afterId))
+					.sorted(Comparator.comparingLong(Hold::getExpiresAtMillis).thenComparing(Hold::getId))
+					.limit(pageable.getPageSize())
+					.collect(Collectors.toList());
+		}
+	}
+}
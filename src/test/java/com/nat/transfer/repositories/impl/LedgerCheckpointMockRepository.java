@@ -0,0 +1,32 @@
+package com.nat.transfer.repositories.impl;
+
+import com.nat.transfer.domain.LedgerCheckpoint;
+import com.nat.transfer.repositories.ILedgerCheckpointRepository;
+
+/**
+ * @author jyotirmani
+ *
+ */
+public class LedgerCheckpointMockRepository extends AbstractMockRepository<LedgerCheckpoint, Long> implements
+		ILedgerCheckpointRepository {
+
+	public LedgerCheckpointMockRepository() {
+		super();
+	}
+
+	@Override
+	protected <R extends LedgerCheckpoint> R setValueID(R value, Long key) {
+		// the checkpoint id is assigned, never generated
+		return value;
+	}
+
+	@Override
+	protected Long createNewKey() {
+		return LedgerCheckpoint.LEDGER_ID;
+	}
+
+	@Override
+	protected <R extends LedgerCheckpoint> Long getValueKey(R value) {
+		return value.getId();
+	}
+}
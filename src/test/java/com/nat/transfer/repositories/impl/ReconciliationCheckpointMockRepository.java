@@ -0,0 +1,32 @@
+package com.nat.transfer.repositories.impl;
+
+import com.nat.transfer.domain.ReconciliationCheckpoint;
+import com.nat.transfer.repositories.IReconciliationCheckpointRepository;
+
+/**
+ * @author jyotirmani
+ *
+ */
+public class ReconciliationCheckpointMockRepository extends AbstractMockRepository<ReconciliationCheckpoint, Long> implements
+		IReconciliationCheckpointRepository {
+
+	public ReconciliationCheckpointMockRepository() {
+		super();
+	}
+
+	@Override
+	protected <R extends ReconciliationCheckpoint> R setValueID(R value, Long key) {
+		// the checkpoint id is assigned, never generated
+		return value;
+	}
+
+	@Override
+	protected Long createNewKey() {
+		return ReconciliationCheckpoint.LEDGER_ID;
+	}
+
+	@Override
+	protected <R extends ReconciliationCheckpoint> Long getValueKey(R value) {
+		return value.getId();
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package com.nat.transfer.repositories.impl;
+
+import com.nat.transfer.domain.ScheduledTransfer;
+import com.nat.transfer.repositories.IScheduledTransferRepository;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * @author jyotirmani
+ *
+ */
+public class ScheduledTransferMockRepository extends AbstractMockRepository<ScheduledTransfer, Long> implements
+		IScheduledTransferRepository {
+
+	final private AtomicLong atomicId;
+
+	public ScheduledTransferMockRepository() {
+		super();
+		this.atomicId = new AtomicLong(1L);
+	}
+
+	@Override
+	protected <R extends ScheduledTransfer> R setValueID(R value, Long key) {
+		value.setId(key);
+		return value;
+	}
+
+	@Override
+	protected Long createNewKey() {
+		return this.atomicId.getAndIncrement();
+	}
+
+	@Override
+	protected <R extends ScheduledTransfer> Long getValueKey(R value) {
+		return value.getId();
+	}
+
+	@Override
+	public List<ScheduledTransfer> findPage(ScheduledTransfer.Status status, long afterExecutionTime, long afterId,
+			long beforeExecutionTime, Pageable pageable) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(s -> s.getStatus() == status && s.getExecutionTimeMillis() < beforeExecutionTime)
+					.filter(s -> s.getExecutionTimeMillis() > afterExecutionTime
+							|| (s.getExecutionTimeMillis() == afterExecutionTime && s.getId() > afterId))
+					.sorted(Comparator.comparingLong(ScheduledTransfer::getExecutionTimeMillis)
+							.thenComparing(ScheduledTransfer::getId))
+					.limit(pageable.getPageSize())
+					.collect(Collectors.toList());
+		}
+	}
+}
@@ -5,7 +5,14 @@ package com.nat.transfer.repositories.impl;
 
 import com.nat.transfer.domain.Transfer;
 import com.nat.transfer.repositories.ITransferRepository;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Pageable;
 
 /**
  * @author jyotirmani
@@ -36,4 +43,115 @@ public class TransferMockRepository extends AbstractMockRepository<Transfer, Lon
 	protected <R extends Transfer> Long getValueKey(R value) {
 		return value.getId();
 	}
+
+	@Override
+	public List<Transfer> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable) {
+		return this.findAfter(id, pageable);
+	}
+
+	@Override
+	public List<Transfer> findDebitPage(long accountId, long afterExecutedAt, long afterId, long beforeExecutedAt,
+			Pageable pageable) {
+		return this.findPage(t -> t.getSourceAccountId() == accountId, afterExecutedAt, afterId, beforeExecutedAt,
+				pageable);
+	}
+
+	@Override
+	public List<Transfer> findCreditPage(long accountId, long afterExecutedAt, long afterId, long beforeExecutedAt,
+			Pageable pageable) {
+		return this.findPage(t -> t.getDestinationAccountId() == accountId, afterExecutedAt, afterId,
+				beforeExecutedAt, pageable);
+	}
+
+	@Override
+	public long sumDebits(long accountId, long afterExecutedAt, long untilExecutedAt) {
+		return this.sumAmounts(t -> t.getSourceAccountId() == accountId, afterExecutedAt, untilExecutedAt);
+	}
+
+	@Override
+	public long sumCredits(long accountId, long afterExecutedAt, long untilExecutedAt) {
+		return this.sumAmounts(t -> t.getDestinationAccountId() == accountId, afterExecutedAt, untilExecutedAt);
+	}
+
+	@Override
+	public List<Long> findDebitedAccountIds(long afterExecutedAt, long untilExecutedAt) {
+		return this.findAccountIds(Transfer::getSourceAccountId, afterExecutedAt, untilExecutedAt);
+	}
+
+	@Override
+	public List<Long> findCreditedAccountIds(long afterExecutedAt, long untilExecutedAt) {
+		return this.findAccountIds(Transfer::getDestinationAccountId, afterExecutedAt, untilExecutedAt);
+	}
+
+	@Override
+	public Stream<Object[]> streamDebits(long fromAccountId, long toAccountId, long afterExecutedAt) {
+		return this.streamAmounts(Transfer::getSourceAccountId, Transfer::getDestinationAccountId, fromAccountId,
+				toAccountId, afterExecutedAt);
+	}
+
+	@Override
+	public Stream<Object[]> streamCredits(long fromAccountId, long toAccountId, long afterExecutedAt) {
+		return this.streamAmounts(Transfer::getDestinationAccountId, Transfer::getSourceAccountId, fromAccountId,
+				toAccountId, afterExecutedAt);
+	}
+
+	@Override
+	public Transfer findByIdempotencyKey(String idempotencyKey) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream().filter(t -> idempotencyKey.equals(t.getIdempotencyKey()))
+					.findFirst().orElse(null);
+		}
+	}
+
+	@Override
+	public Stream<Transfer> streamAllByOrderByIdAsc() {
+		return ((List<Transfer>) this.findAll()).stream();
+	}
+
+	private List<Transfer> findPage(Predicate<Transfer> account, long afterExecutedAt, long afterId,
+			long beforeExecutedAt, Pageable pageable) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(account)
+					.filter(t -> t.getExecutedAtMillis() < beforeExecutedAt)
+					.filter(t -> t.getExecutedAtMillis() > afterExecutedAt
+							|| (t.getExecutedAtMillis() == afterExecutedAt && t.getId() > afterId))
+					.sorted(Comparator.comparingLong(Transfer::getExecutedAtMillis).thenComparing(Transfer::getId))
+					.limit(pageable.getPageSize())
+					.collect(Collectors.toList());
+		}
+	}
+
+	private long sumAmounts(Predicate<Transfer> account, long afterExecutedAt, long untilExecutedAt) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(account)
+					.filter(t -> t.getExecutedAtMillis() > afterExecutedAt && t.getExecutedAtMillis() <= untilExecutedAt)
+					.mapToLong(Transfer::getAmountCents)
+					.sum();
+		}
+	}
+
+	private List<Long> findAccountIds(ToLongFunction<Transfer> account, long afterExecutedAt, long untilExecutedAt) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(t -> t.getExecutedAtMillis() > afterExecutedAt && t.getExecutedAtMillis() <= untilExecutedAt)
+					.mapToLong(account)
+					.distinct()
+					.boxed()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private Stream<Object[]> streamAmounts(ToLongFunction<Transfer> account, ToLongFunction<Transfer> counterParty,
+			long fromAccountId, long toAccountId, long afterExecutedAt) {
+		synchronized (this.mapRepository) {
+			return this.mapRepository.values().stream()
+					.filter(t -> account.applyAsLong(t) >= fromAccountId && account.applyAsLong(t) <= toAccountId)
+					.filter(t -> t.getExecutedAtMillis() > afterExecutedAt)
+					.map(t -> new Object[] {account.applyAsLong(t), t.getAmountCents(), t.getExecutedAtMillis(),
+							counterParty.applyAsLong(t)})
+					.collect(Collectors.toList()).stream();
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package com.nat.transfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Unit Test class for AccountLockManager
+ *
+ * @author jyotirmani
+ */
+public class AccountLockManagerTest {
+
+	@Test
+	public void testStripeCountIsPowerOfTwo() {
+		assertEquals(1024, new AccountLockManager().getStripeCount());
+		assertEquals(16, new AccountLockManager(10).getStripeCount());
+		assertEquals(1, new AccountLockManager(1).getStripeCount());
+	}
+
+	@Test
+	public void testSameStripeIsLockedOnce() throws Exception {
+		AccountLockManager lockManager = new AccountLockManager(4);
+
+		// 1 and 5 share a stripe, and repeated ids must not leave the stripe held after close
+		try (AccountLockManager.Guard guard = lockManager.lock(1L, 5L, 1L)) {
+			assertFalse(this.canLockFromOtherThread(lockManager, 5L));
+		}
+
+		assertTrue(this.canLockFromOtherThread(lockManager, 1L));
+	}
+
+	@Test
+	public void testGuardReleasesStripes() throws Exception {
+		AccountLockManager lockManager = new AccountLockManager();
+
+		try (AccountLockManager.Guard guard = lockManager.lock(1L, 2L)) {
+			assertFalse(this.canLockFromOtherThread(lockManager, 2L));
+			assertTrue(this.canLockFromOtherThread(lockManager, 3L));
+		}
+
+		assertTrue(this.canLockFromOtherThread(lockManager, 2L));
+	}
+
+	@Test
+	public void testOppositeOrderLocksDoNotDeadlock() throws Exception {
+		AccountLockManager lockManager = new AccountLockManager(8);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		CountDownLatch done = new CountDownLatch(4);
+
+		// two threads lock (1, 2) and two threads lock (2, 1), many times each
+		for (int t = 0; t < 4; t++) {
+			final boolean reversed = t % 2 == 0;
+			executor.execute(() -> {
+				for (int i = 0; i < 10000; i++) {
+					try (AccountLockManager.Guard guard = reversed ? lockManager.lock(2L, 1L) : lockManager.lock(1L, 2L)) {
+						// empty block
+					}
+				}
+				done.countDown();
+			});
+		}
+
+		assertTrue("Lock acquisition deadlocked", done.await(30, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+
+	/*
+	 * Helper method that tries to lock an account from another thread, giving up after a short wait
+	 */
+	private boolean canLockFromOtherThread(AccountLockManager lockManager, long accountId) throws InterruptedException {
+		AtomicBoolean acquired = new AtomicBoolean();
+		Thread locker = new Thread(() -> {
+			try (AccountLockManager.Guard guard = lockManager.lock(accountId)) {
+				acquired.set(true);
+			}
+		});
+		// a blocked locker must not keep the test JVM alive
+		locker.setDaemon(true);
+		locker.start();
+		locker.join(200L);
+
+		return acquired.get();
+	}
+}
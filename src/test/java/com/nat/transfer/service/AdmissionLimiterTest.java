@@ -0,0 +1,153 @@
+package com.nat.transfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nat.transfer.dto.AdmissionStatistics;
+import com.nat.transfer.exception.OverloadedException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+
+/**
+ * Unit Test class for AdmissionLimiter
+ *
+ * @author jyotirmani
+ */
+public class AdmissionLimiterTest {
+	private TransferMetrics metrics;
+	private TransferExecutor executor;
+	private AdmissionLimiter limiter;
+
+	@Before
+	public void setup() {
+		this.metrics = new TransferMetrics();
+		this.executor = new TransferExecutor(this.metrics, 2, 16);
+
+		this.limiter = new AdmissionLimiter();
+		this.limiter.setExecutor(this.executor);
+		this.limiter.setMetrics(this.metrics);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.executor.shutdown();
+	}
+
+	@Test
+	public void testExcessCallsAreRefused() throws Exception {
+		this.limiter.setMinLimit(1);
+		this.limiter.setMaxLimit(1);
+		this.limiter.setInitialLimit(1);
+		this.limiter.setQueueSize(1);
+		this.limiter.setRetryAfterSeconds(3L);
+
+		CompletableFuture<String> running = new CompletableFuture<>();
+		AtomicInteger started = new AtomicInteger();
+
+		CompletableFuture<String> admitted = this.limiter.submit(() -> {
+			started.incrementAndGet();
+			return running;
+		});
+		CompletableFuture<String> waiting = this.limiter.submit(() -> {
+			started.incrementAndGet();
+			return CompletableFuture.completedFuture("waited");
+		});
+		CompletableFuture<String> refused = this.limiter.submit(() -> {
+			started.incrementAndGet();
+			return CompletableFuture.completedFuture("refused");
+		});
+
+		assertEquals(1, started.get());
+		assertFalse(waiting.isDone());
+		try {
+			refused.get();
+			fail("Expected the call to be refused");
+		} catch (ExecutionException e) {
+			assertEquals(3L, ((OverloadedException) e.getCause()).getRetryAfterSeconds());
+		}
+
+		AdmissionStatistics statistics = this.limiter.getStatistics();
+		assertEquals(1, statistics.getInFlight());
+		assertEquals(1, statistics.getQueued());
+		assertEquals(1L, statistics.getRejected());
+		assertEquals(1L, this.metrics.getRejections(Rejection.OVERLOADED));
+
+		running.complete("admitted");
+		assertEquals("admitted", admitted.get(5L, TimeUnit.SECONDS));
+		assertEquals("waited", waiting.get(5L, TimeUnit.SECONDS));
+		assertEquals(2, started.get());
+		assertEquals(2L, this.limiter.getStatistics().getAdmitted());
+	}
+
+	@Test
+	public void testWaitingTooLongIsRefused() throws Exception {
+		this.limiter.setMinLimit(1);
+		this.limiter.setInitialLimit(1);
+		this.limiter.setMaxWaitMillis(10L);
+
+		CompletableFuture<String> running = new CompletableFuture<>();
+		this.limiter.submit(() -> running);
+		CompletableFuture<String> waiting = this.limiter.submit(() -> CompletableFuture.completedFuture("waited"));
+
+		Thread.sleep(50L);
+		running.complete("admitted");
+
+		try {
+			waiting.get(5L, TimeUnit.SECONDS);
+			fail("Expected the call to be refused");
+		} catch (ExecutionException e) {
+			assertEquals(OverloadedException.class, e.getCause().getClass());
+		}
+		assertEquals(0, this.limiter.getStatistics().getInFlight());
+	}
+
+	@Test
+	public void testLimitGrowsWhileLatencyIsSteady() throws Exception {
+		this.limiter.setInitialLimit(4);
+		// every call is fast enough
+		this.limiter.setLatencyTolerance(1000000.0);
+
+		for (int round = 0; round < 50; round++) {
+			List<CompletableFuture<String>> calls = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				calls.add(new CompletableFuture<>());
+			}
+			for (CompletableFuture<String> call : calls) {
+				this.limiter.submit(() -> call);
+			}
+			calls.forEach(call -> call.complete("done"));
+		}
+
+		assertTrue(this.limiter.getStatistics().getLimit() > 4);
+	}
+
+	@Test
+	public void testLimitDecreasesWhenLatencyRises() throws Exception {
+		this.limiter.setMinLimit(1);
+		this.limiter.setInitialLimit(20);
+
+		for (int i = 0; i < 100; i++) {
+			this.limiter.submit(() -> CompletableFuture.completedFuture("fast"));
+		}
+
+		CompletableFuture<String> slow = new CompletableFuture<>();
+		this.limiter.submit(() -> slow);
+		Thread.sleep(50L);
+		slow.complete("slow");
+
+		assertTrue(this.limiter.getStatistics().getLimit() < 20);
+	}
+}
@@ -0,0 +1,129 @@
+package com.nat.transfer.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.BalanceSnapshot;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IBalanceSnapshotRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.BalanceSnapshotMockRepository;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.testutils.MockTransferService;
+
+/**
+ * Unit Test class for BalanceSnapshotter, over transfers with made up execution times
+ *
+ * @author jyotirmani
+ */
+public class BalanceSnapshotterTest {
+	private IAccountRepository accountRepository;
+	private ITransferRepository transferRepository;
+	private IBalanceSnapshotRepository snapshotRepository;
+	private BalanceSnapshotter snapshotter;
+
+	@Before
+	public void setup() {
+		this.accountRepository = new AccountMockRepository();
+		this.transferRepository = new TransferMockRepository();
+		this.snapshotRepository = new BalanceSnapshotMockRepository();
+		this.snapshotter = this.newSnapshotter();
+
+		// current balances 93.00 and 1007.00
+		this.accountRepository.save(new Account("Account One", 9300L));
+		this.accountRepository.save(new Account("Account Two", 100700L));
+		this.saveTransfer(1L, 2L, 1000L, 2000L);
+		this.saveTransfer(2L, 1L, 500L, 3000L);
+		this.saveTransfer(1L, 2L, 200L, 5000L);
+	}
+
+	@Test
+	public void testBalanceIsReplayedFromTheNearestSnapshot() {
+		this.openAccounts();
+
+		assertEquals(10000L, this.snapshotter.balanceCentsAt(1L, 1000L));
+		assertEquals(9000L, this.snapshotter.balanceCentsAt(1L, 2500L));
+		// the transfers executed at the time are included
+		assertEquals(9500L, this.snapshotter.balanceCentsAt(1L, 3000L));
+		assertEquals(9300L, this.snapshotter.balanceCentsAt(1L, 10000L));
+		assertEquals(100700L, this.snapshotter.balanceCentsAt(2L, 10000L));
+	}
+
+	@Test
+	public void testChangedAccountsAreSnapshot() {
+		this.openAccounts();
+
+		assertEquals(2, this.snapshotter.takeSnapshots(4000L));
+		BalanceSnapshot snapshot = this.snapshotRepository.findFirstByAccountIdAndTakenAtLessThanEqualOrderByTakenAtDesc(1L,
+				Long.MAX_VALUE);
+		assertEquals(4000L, snapshot.getTakenAtMillis());
+		assertEquals(9500L, snapshot.getBalanceCents());
+		assertEquals(9300L, this.snapshotter.balanceCentsAt(1L, 10000L));
+
+		// nothing executed since
+		assertEquals(0, this.snapshotter.takeSnapshots(4000L));
+		assertEquals(0, this.newSnapshotter().takeSnapshots(4500L));
+		assertEquals(2, this.newSnapshotter().takeSnapshots(6000L));
+		assertEquals(6L, this.snapshotRepository.count());
+	}
+
+	@Test
+	public void testBalanceBeforeTheFirstSnapshotIsReplayedBackwards() {
+		this.snapshotter.takeSnapshots(4000L);
+
+		assertEquals(9500L, this.snapshotRepository
+				.findFirstByAccountIdAndTakenAtLessThanEqualOrderByTakenAtDesc(1L, Long.MAX_VALUE).getBalanceCents());
+		assertEquals(9000L, this.snapshotter.balanceCentsAt(1L, 2500L));
+		assertEquals(10000L, this.snapshotter.balanceCentsAt(1L, 1500L));
+	}
+
+	@Test
+	public void testBalanceWithoutSnapshotIsReplayedFromTheAccount() {
+		assertEquals(9300L, this.snapshotter.balanceCentsAt(1L, 5000L));
+		assertEquals(9500L, this.snapshotter.balanceCentsAt(1L, 4999L));
+		assertEquals(9000L, this.snapshotter.balanceCentsAt(1L, 2500L));
+	}
+
+	@Test
+	public void testOpenedAccountIsSnapshot() {
+		TransferService transferService = new MockTransferService(this.accountRepository, this.transferRepository);
+		transferService.setSnapshotRepository(this.snapshotRepository);
+		Account account = transferService.createNewAccount("Account Three", 4200L);
+
+		assertEquals(1L, this.snapshotRepository.count());
+		assertEquals(4200L, this.snapshotter.balanceCentsAt(account.getId(), System.currentTimeMillis()));
+	}
+
+	@Test(expected = TransferServiceException.class)
+	public void testUnknownAccount() {
+		this.snapshotter.balanceCentsAt(42L, 1000L);
+	}
+
+	private BalanceSnapshotter newSnapshotter() {
+		BalanceSnapshotter snapshotter = new BalanceSnapshotter();
+		snapshotter.setAccountRepository(this.accountRepository);
+		snapshotter.setTransferRepository(this.transferRepository);
+		snapshotter.setSnapshotRepository(this.snapshotRepository);
+		return snapshotter;
+	}
+
+	/**
+	 * Snapshots of the initial balances 100.00 and 1000.00 at 1000
+	 */
+	private void openAccounts() {
+		this.snapshotRepository.save(new BalanceSnapshot(1L, 1000L, 10000L));
+		this.snapshotRepository.save(new BalanceSnapshot(2L, 1000L, 100000L));
+	}
+
+	private void saveTransfer(long sourceAccountId, long destinationAccountId, long amountCents, long executedAtMillis) {
+		Transfer transfer = new Transfer(sourceAccountId, destinationAccountId, amountCents);
+		transfer.setExecutedAtMillis(executedAtMillis);
+		this.transferRepository.save(transfer);
+	}
+}
@@ -1,11 +1,17 @@
 package com.nat.transfer.service;
 
+import com.nat.transfer.cache.AccountCache;
 import com.nat.transfer.domain.Account;
 import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.ledger.LedgerEngine;
+import com.nat.transfer.ledger.LedgerPersister;
 import com.nat.transfer.repositories.IAccountRepository;
 import com.nat.transfer.repositories.ITransferRepository;
 import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.LedgerCheckpointMockRepository;
 import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.testutils.MockTransactionManager;
+import com.nat.transfer.testutils.MockTransferService;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_10;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_100;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_1000;
@@ -38,9 +44,7 @@ public class ConcurrentTransferServiceTest {
 		this.accountRepository = new AccountMockRepository();
 		this.transferRepository = new TransferMockRepository();
 		
-		this.transferService = new TransferService();
-		this.transferService.setAccountRepository(this.accountRepository);
-		this.transferService.setTransferRepository(this.transferRepository);
+		this.transferService = new MockTransferService(this.accountRepository, this.transferRepository);
 	}
 	
 	@Test
@@ -107,6 +111,51 @@ public class ConcurrentTransferServiceTest {
 	
 	@Test
 	public void testConcurrentTransfers() throws InterruptedException {
+		this.assertConcurrentTransfers();
+	}
+
+	@Test
+	public void testConcurrentConditionalUpdateTransfers() throws InterruptedException {
+		this.transferService.setMode(TransferMode.CONDITIONAL_UPDATE);
+
+		this.assertConcurrentTransfers();
+	}
+
+	@Test
+	public void testConcurrentGroupCommitTransfers() throws InterruptedException {
+		this.transferService.setMode(TransferMode.GROUP_COMMIT);
+
+		try {
+			this.assertConcurrentTransfers();
+		} finally {
+			this.transferService.stopGroupCommitter();
+		}
+	}
+
+	@Test
+	public void testConcurrentLedgerTransfers() throws InterruptedException {
+		LedgerEngine ledgerEngine = new LedgerEngine(this.accountRepository,
+				new LedgerPersister(this.accountRepository, this.transferRepository,
+						new LedgerCheckpointMockRepository(), new MockTransactionManager()), 16, 4);
+		ledgerEngine.setAccountCache(new AccountCache(this.accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		ledgerEngine.start();
+		this.transferService.setLedgerEngine(ledgerEngine);
+		this.transferService.setMode(TransferMode.LEDGER);
+
+		this.assertConcurrentTransfers(ledgerEngine);
+	}
+
+	/*
+	 * Helper method running three threads of transfers between A, B and C and asserting the final balances
+	 */
+	private void assertConcurrentTransfers() throws InterruptedException {
+		this.assertConcurrentTransfers(null);
+	}
+
+	/*
+	 * Same scenario, the ledger engine (when given) is stopped before the assertions so that everything is persisted
+	 */
+	private void assertConcurrentTransfers(LedgerEngine ledgerEngine) throws InterruptedException {
 		this.transferService.createNewAccount("A", AMOUNT_1000);
 		this.transferService.createNewAccount("B", AMOUNT_1000);
 		this.transferService.createNewAccount("C", AMOUNT_1000);
@@ -177,6 +226,10 @@ public class ConcurrentTransferServiceTest {
 			Thread.sleep(32L);
 		}
 
+		if (ledgerEngine != null) {
+			ledgerEngine.stop();
+		}
+
 		// now the repository must have the same amount of expected items
 		assertEquals(expectedTransfersQuantity, this.transferRepository.count());
 		
@@ -206,7 +259,7 @@ public class ConcurrentTransferServiceTest {
 class EntityCreator <T extends Object> implements Runnable {
 	final private T[] entities;
 	final private Thread thread;
-	private boolean isRunning;
+	private volatile boolean isRunning;
 	final private Consumer<T> fnCreate;
 	
 	public EntityCreator(T[] entities, Consumer<T> fnCreate) {
@@ -219,8 +272,9 @@ class EntityCreator <T extends Object> implements Runnable {
 	
 	public void batchCreate() {
 		if (!this.isRunning) {
+			// flag must be raised before start, a fast batch could otherwise finish first
+			this.isRunning = true;
 			this.thread.start();
-    		this.isRunning = true;
 		}
 	}
 
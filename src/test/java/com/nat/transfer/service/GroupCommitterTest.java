@@ -0,0 +1,103 @@
+package com.nat.transfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.dto.TransferRequest;
+import com.nat.transfer.dto.TransferResult;
+import com.nat.transfer.exception.TransferServiceException;
+
+/**
+ * Unit Test class for GroupCommitter
+ *
+ * @author jyotirmani
+ */
+public class GroupCommitterTest {
+
+	@Test
+	public void testTransferSubmittedWhileStoppingIsCommitted() throws Exception {
+		CountDownLatch committing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		GroupCommitter committer = new GroupCommitter(requests -> {
+			committing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return this.completed(requests);
+		}, 1, 0L, 1);
+		committer.start();
+
+		// the committer holds the first transfer, the second fills the queue, the third waits for room
+		CompletableFuture<Transfer> first = committer.submit(1L, 2L, 100L, null);
+		committing.await();
+		CompletableFuture<Transfer> second = committer.submit(1L, 2L, 200L, null);
+		AtomicReference<CompletableFuture<Transfer>> third = new AtomicReference<>();
+		Thread submitter = new Thread(() -> third.set(committer.submit(1L, 2L, 300L, null)));
+		submitter.start();
+		this.awaitBlocked(submitter);
+
+		Thread stopper = new Thread(() -> {
+			try {
+				committer.stop();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		stopper.start();
+		this.awaitBlocked(stopper);
+
+		release.countDown();
+		submitter.join(5000L);
+		stopper.join(5000L);
+
+		assertEquals(100L, first.get(5L, TimeUnit.SECONDS).getAmountCents());
+		assertEquals(200L, second.get(5L, TimeUnit.SECONDS).getAmountCents());
+		assertEquals(300L, third.get().get(5L, TimeUnit.SECONDS).getAmountCents());
+
+		try {
+			committer.submit(1L, 2L, 400L, null);
+			fail("Expected TransferServiceException");
+		} catch (TransferServiceException e) {
+			assertEquals("Group committer is not running", e.getMessage());
+		}
+	}
+
+	/*
+	 * Helper method completing every request of a group
+	 */
+	private List<TransferResult> completed(List<TransferRequest> requests) {
+		List<TransferResult> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			TransferRequest request = requests.get(i);
+			results.add(TransferResult.completed(i, new Transfer(request.getSourceAccountId(),
+					request.getDestinationAccountId(), Money.toCents(request.getAmount()))));
+		}
+		return results;
+	}
+
+	/*
+	 * Helper method waiting until a thread is blocked on a lock or a full queue
+	 */
+	private void awaitBlocked(Thread thread) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+			if (System.currentTimeMillis() > deadline) {
+				fail(thread.getName() + " is not blocked");
+			}
+			Thread.sleep(1L);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.nat.transfer.service;
+
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_10;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_100;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_1000;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Hold;
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IHoldRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.HoldMockRepository;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.testutils.MockTransferService;
+
+/**
+ * Unit Test class for HoldService
+ *
+ * @author jyotirmani
+ */
+public class HoldServiceTest {
+	private IAccountRepository accountRepository;
+	private ITransferRepository transferRepository;
+	private IHoldRepository holdRepository;
+	private TransferService transferService;
+	private HoldService holdService;
+
+	@Before
+	public void setup() {
+		this.accountRepository = new AccountMockRepository();
+		this.transferRepository = new TransferMockRepository();
+		this.holdRepository = new HoldMockRepository();
+		this.accountRepository.save(new Account("Account One", AMOUNT_100));
+		this.accountRepository.save(new Account("Account Two", AMOUNT_1000));
+
+		MockTransferService transferService = new MockTransferService(this.accountRepository, this.transferRepository);
+		this.transferService = transferService;
+
+		this.holdService = new HoldService();
+		this.holdService.setTransferService(transferService);
+		this.holdService.setAccountStore(transferService.getAccountStore());
+		this.holdService.setHoldRepository(this.holdRepository);
+		this.holdService.setHoldExpiry(new HoldExpiry(100L));
+	}
+
+	@Test
+	public void testHeldFundsAreCaptured() throws Exception {
+		Hold hold = this.holdService.reserve(1L, Money.toCents(new BigDecimal("60")), null);
+		assertEquals(Hold.Status.ACTIVE, hold.getStatus());
+		assertEquals(4000L, this.accountRepository.findOne(1L).getAvailableCents());
+
+		try {
+			this.transferService.transfer(1L, 2L, new BigDecimal("50"));
+			fail("Expected the held funds not to be available");
+		} catch (TransferServiceException e) {
+			assertEquals(AMOUNT_100, this.accountRepository.findOne(1L).getBalance());
+		}
+
+		// the part that is not captured is released
+		Transfer transfer = this.holdService.captureHold(hold.getId(), 2L, Money.toCents(new BigDecimal("45")));
+		assertEquals(5500L, this.accountRepository.findOne(1L).getBalanceCents());
+		assertEquals(0L, this.accountRepository.findOne(1L).getHeldCents());
+		assertEquals(104500L, this.accountRepository.findOne(2L).getBalanceCents());
+		assertEquals(Hold.Status.CAPTURED, this.holdRepository.findOne(hold.getId()).getStatus());
+		assertEquals(transfer.getId(), this.holdRepository.findOne(hold.getId()).getTransferId());
+
+		try {
+			this.holdService.captureHold(hold.getId(), 2L, null);
+			fail("Expected a captured hold not to be captured again");
+		} catch (TransferServiceException e) {
+			assertEquals(1L, this.transferRepository.count());
+		}
+	}
+
+	@Test
+	public void testHeldFundsAreReleased() throws Exception {
+		Hold hold = this.holdService.reserve(1L, Money.toCents(AMOUNT_100), 60L);
+		try {
+			this.holdService.reserve(1L, Money.toCents(AMOUNT_10), 60L);
+			fail("Expected the held funds not to be available");
+		} catch (TransferServiceException e) {
+			assertEquals(1L, this.holdRepository.count());
+		}
+
+		assertEquals(Hold.Status.RELEASED, this.holdService.releaseHold(hold.getId()).getStatus());
+		assertEquals(0L, this.accountRepository.findOne(1L).getHeldCents());
+		this.transferService.transfer(1L, 2L, AMOUNT_10);
+
+		try {
+			this.holdService.releaseHold(hold.getId());
+			fail("Expected a released hold not to be released again");
+		} catch (TransferServiceException e) {
+			assertEquals(0L, this.accountRepository.findOne(1L).getHeldCents());
+		}
+	}
+
+	@Test
+	public void testExpiredHoldsAreReleased() throws Exception {
+		// reserved before a restart, loaded from the repository
+		Account account = this.accountRepository.findOne(1L);
+		account.hold(Money.toCents(AMOUNT_10));
+		Hold expired = this.holdRepository.save(new Hold(1L, Money.toCents(AMOUNT_10), System.currentTimeMillis() - 60000L));
+		this.holdService.loadActiveHolds();
+		Hold active = this.holdService.reserve(1L, Money.toCents(AMOUNT_10), 60L);
+
+		try {
+			this.holdService.captureHold(expired.getId(), 2L, null);
+			fail("Expected an expired hold not to be captured");
+		} catch (TransferServiceException e) {
+			assertEquals(Hold.Status.ACTIVE, this.holdRepository.findOne(expired.getId()).getStatus());
+		}
+
+		this.holdService.expireHolds();
+
+		assertEquals(Hold.Status.EXPIRED, this.holdRepository.findOne(expired.getId()).getStatus());
+		assertEquals(Hold.Status.ACTIVE, this.holdRepository.findOne(active.getId()).getStatus());
+		assertEquals(AMOUNT_10, this.accountRepository.findOne(1L).getHeldBalance());
+	}
+
+	@Test(expected = TransferServiceException.class)
+	public void testHoldsAreRefusedInTheLedgerMode() {
+		this.transferService.setMode(TransferMode.LEDGER);
+		this.holdService.reserve(1L, Money.toCents(AMOUNT_10), 60L);
+	}
+}
@@ -0,0 +1,81 @@
+package com.nat.transfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit Test class for TimingWheel
+ *
+ * @author jyotirmani
+ */
+public class TimingWheelTest {
+
+	@Test
+	public void testItemsAreDueAtTheirDeadline() {
+		TimingWheel<String> wheel = new TimingWheel<>(10L, 4, 1000L);
+		List<String> due = new ArrayList<>();
+
+		assertFalse(wheel.add("past", 990L));
+		assertFalse(wheel.add("now", 1000L));
+		assertTrue(wheel.add("rounded up", 1001L));
+		assertTrue(wheel.add("second tick", 1020L));
+		assertEquals(2, wheel.size());
+
+		wheel.advance(1009L, due::add);
+		assertEquals(0, due.size());
+
+		wheel.advance(1010L, due::add);
+		assertEquals(Arrays.asList("rounded up"), due);
+
+		wheel.advance(1020L, due::add);
+		assertEquals(Arrays.asList("rounded up", "second tick"), due);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testFarDeadlinesCascadeThroughTheLevels() {
+		// 4 buckets of 1ms: levels of 4, 16, 64 and 256 ticks
+		TimingWheel<Long> wheel = new TimingWheel<>(1L, 4, 0L);
+		List<Long> deadlines = Arrays.asList(300L, 3L, 17L, 64L, 5L, 255L, 16L, 63L, 4L, 65L);
+		deadlines.forEach(deadline -> wheel.add(deadline, deadline));
+
+		List<Long> due = new ArrayList<>();
+		for (long now = 1L; now <= 300L; now++) {
+			int before = due.size();
+			wheel.advance(now, due::add);
+			for (int i = before; i < due.size(); i++) {
+				// never early, never late
+				assertEquals(now, due.get(i).longValue());
+			}
+		}
+
+		assertEquals(Arrays.asList(3L, 4L, 5L, 16L, 17L, 63L, 64L, 65L, 255L, 300L), due);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testAdvanceOverManyTicksAtOnce() {
+		TimingWheel<Long> wheel = new TimingWheel<>(1L, 8, 0L);
+		for (long deadline = 1L; deadline <= 1000L; deadline++) {
+			wheel.add(deadline, deadline);
+		}
+
+		List<Long> due = new ArrayList<>();
+		wheel.advance(500L, due::add);
+		assertEquals(500, due.size());
+		assertEquals(500, wheel.size());
+
+		wheel.advance(10000L, due::add);
+		assertEquals(1000, due.size());
+		for (int i = 0; i < due.size(); i++) {
+			assertEquals(i + 1L, due.get(i).longValue());
+		}
+	}
+}
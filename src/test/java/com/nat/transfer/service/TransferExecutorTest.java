@@ -0,0 +1,86 @@
+package com.nat.transfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.nat.transfer.dto.ExecutorStatistics;
+import com.nat.transfer.exception.OverloadedException;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.metrics.TransferMetrics;
+
+/**
+ * Unit Test class for TransferExecutor
+ *
+ * @author jyotirmani
+ */
+public class TransferExecutorTest {
+
+	@Test
+	public void testFullQueueRefusesCalls() throws Exception {
+		TransferMetrics metrics = new TransferMetrics();
+		TransferExecutor executor = new TransferExecutor(metrics, 1, 1);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		try {
+			CompletableFuture<String> first = executor.submit(() -> {
+				running.countDown();
+				try {
+					release.await(5L, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "first";
+			});
+			running.await(5L, TimeUnit.SECONDS);
+
+			CompletableFuture<String> queued = executor.submit(() -> "queued");
+			CompletableFuture<String> refused = executor.submit(() -> "refused");
+
+			assertTrue(refused.isCompletedExceptionally());
+			try {
+				refused.get();
+				fail("Expected the call to be refused");
+			} catch (ExecutionException e) {
+				assertEquals(OverloadedException.class, e.getCause().getClass());
+			}
+
+			ExecutorStatistics statistics = executor.getStatistics();
+			assertEquals(1, statistics.getQueued());
+			assertEquals(1L, statistics.getRejected());
+
+			release.countDown();
+			assertEquals("first", first.get(5L, TimeUnit.SECONDS));
+			assertEquals("queued", queued.get(5L, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+
+		assertEquals(2L, metrics.snapshot().getLatencies().get("QUEUE_WAIT").getCount());
+	}
+
+	@Test
+	public void testFailingCallFailsItsFuture() throws Exception {
+		TransferExecutor executor = new TransferExecutor(new TransferMetrics(), 1, 1);
+
+		try {
+			executor.submit(() -> {
+				throw new TransferServiceException("Source account hasn't enough balance for transfer.");
+			}).get(5L, TimeUnit.SECONDS);
+			fail("Expected the call to fail");
+		} catch (ExecutionException e) {
+			assertEquals("Source account hasn't enough balance for transfer.", e.getCause().getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
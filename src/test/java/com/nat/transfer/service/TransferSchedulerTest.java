@@ -0,0 +1,298 @@
+package com.nat.transfer.service;
+
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_10;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_100;
+import static com.nat.transfer.testutils.AmountConstants.AMOUNT_1000;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.QueryTimeoutException;
+
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.domain.Account;
+import com.nat.transfer.domain.Money;
+import com.nat.transfer.domain.ScheduledTransfer;
+import com.nat.transfer.domain.ScheduledTransfer.Status;
+import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.ledger.LedgerEngine;
+import com.nat.transfer.ledger.LedgerPersister;
+import com.nat.transfer.ledger.TransferJournal;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.IScheduledTransferRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountMockRepository;
+import com.nat.transfer.repositories.impl.LedgerCheckpointMockRepository;
+import com.nat.transfer.repositories.impl.ScheduledTransferMockRepository;
+import com.nat.transfer.repositories.impl.TransferMockRepository;
+import com.nat.transfer.testutils.MockTransactionManager;
+import com.nat.transfer.testutils.MockTransferService;
+
+/**
+ * Unit Test class for TransferScheduler, ticked by hand with made up times
+ *
+ * @author jyotirmani
+ */
+public class TransferSchedulerTest {
+	private static final long START = 1_000_000L;
+
+	private IAccountRepository accountRepository;
+	private ITransferRepository transferRepository;
+	private IScheduledTransferRepository scheduledRepository;
+	private TransferService transferService;
+	private TransferExecutor executor;
+	private TransferScheduler scheduler;
+
+	@Rule
+	public TemporaryFolder journalFolder = new TemporaryFolder();
+
+	@Before
+	public void setup() {
+		this.accountRepository = new AccountMockRepository();
+		this.transferRepository = new TransferMockRepository();
+		this.scheduledRepository = new ScheduledTransferMockRepository();
+
+		this.transferService = new MockTransferService(this.accountRepository, this.transferRepository);
+		this.accountRepository.save(new Account("Account One", AMOUNT_100));
+		this.accountRepository.save(new Account("Account Two", AMOUNT_1000));
+		this.accountRepository.save(new Account("Account Three", AMOUNT_100));
+
+		this.scheduler = new TransferScheduler();
+		this.scheduler.setRepository(this.scheduledRepository);
+		this.scheduler.setTransferService(this.transferService);
+		this.executor = new TransferExecutor(new TransferMetrics(), 2, 16);
+		this.scheduler.setExecutor(this.executor);
+		this.scheduler.setTickMillis(10L);
+		this.scheduler.setWheelSize(8);
+		this.scheduler.setLoadHorizonSeconds(1L);
+		this.scheduler.setLoadBatchSize(2);
+	}
+
+	@Test
+	public void testTransfersAreExecutedAtTheirExecutionTime() {
+		long cents = Money.toCents(AMOUNT_10);
+		ScheduledTransfer past = this.scheduler.schedule(1L, 2L, cents, START - 5000L);
+		ScheduledTransfer soon = this.scheduler.schedule(2L, 3L, cents, START + 25L);
+		// beyond the first load horizon
+		ScheduledTransfer later = this.scheduler.schedule(3L, 1L, cents, START + 1500L);
+		ScheduledTransfer sameTime = this.scheduler.schedule(1L, 3L, cents, START + 25L);
+
+		this.scheduler.tick(START);
+		assertEquals(Status.EXECUTED, this.status(past));
+		assertEquals(Status.PENDING, this.status(soon));
+
+		this.scheduler.tick(START + 20L);
+		assertEquals(Status.PENDING, this.status(soon));
+
+		this.scheduler.tick(START + 30L);
+		assertEquals(Status.EXECUTED, this.status(soon));
+		assertEquals(Status.EXECUTED, this.status(sameTime));
+		assertEquals(Status.PENDING, this.status(later));
+
+		// the next load is half a horizon later
+		this.scheduler.tick(START + 500L);
+		this.scheduler.tick(START + 1490L);
+		assertEquals(Status.PENDING, this.status(later));
+		this.scheduler.tick(START + 1500L);
+		assertEquals(Status.EXECUTED, this.status(later));
+
+		assertEquals(4L, this.scheduler.getExecuted());
+		assertEquals(4L, this.transferRepository.count());
+		assertNotNull(this.scheduledRepository.findOne(later.getId()).getTransferId());
+		assertEquals(new BigDecimal("90.00"), this.accountRepository.findOne(1L).getBalance().setScale(2));
+	}
+
+	@Test
+	public void testTransferScheduledWithinTheLoadedHorizon() {
+		this.scheduler.tick(START);
+
+		ScheduledTransfer transfer = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_10), START + 100L);
+		this.scheduler.tick(START + 90L);
+		assertEquals(Status.PENDING, this.status(transfer));
+		this.scheduler.tick(START + 100L);
+		assertEquals(Status.EXECUTED, this.status(transfer));
+	}
+
+	@Test
+	public void testRefusedTransferFails() {
+		ScheduledTransfer transfer = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_1000), START);
+
+		this.scheduler.tick(START + 10L);
+
+		ScheduledTransfer failed = this.scheduledRepository.findOne(transfer.getId());
+		assertEquals(Status.FAILED, failed.getStatus());
+		assertNotNull(failed.getError());
+		assertEquals(1L, this.scheduler.getFailed());
+		assertEquals(0L, this.transferRepository.count());
+	}
+
+	@Test
+	public void testTransferExecutedTwiceIsExecutedOnce() {
+		ScheduledTransfer transfer = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_10), START + 50L);
+		this.scheduler.tick(START);
+		this.scheduler.tick(START + 50L);
+		assertEquals(Status.EXECUTED, this.status(transfer));
+
+		// status lost, e.g. by a crash before it was written: the next scheduler executes it again
+		ScheduledTransfer lost = new ScheduledTransfer(1L, 2L, transfer.getAmountCents(), START + 50L);
+		lost.setId(transfer.getId());
+		this.scheduledRepository.save(lost);
+
+		TransferScheduler restarted = new TransferScheduler();
+		restarted.setRepository(this.scheduledRepository);
+		restarted.setTransferService(this.transferService);
+		restarted.setExecutor(this.executor);
+		restarted.tick(START + 100L);
+
+		assertEquals(Status.EXECUTED, this.status(transfer));
+		assertEquals(1L, this.transferRepository.count());
+		assertEquals(new BigDecimal("90.00"), this.accountRepository.findOne(1L).getBalance().setScale(2));
+	}
+
+	@Test
+	public void testTransferReplayedFromTheLedgerJournalIsExecutedOnce() throws Exception {
+		ScheduledTransfer transfer = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_10), START);
+
+		// executed by the LEDGER engine and journaled, then a crash lost both its Transfer row and its status
+		try (TransferJournal journal = new TransferJournal(this.journalFolder.getRoot().toPath(), 16)) {
+			journal.open(0L);
+			journal.append(1L, 2L, transfer.getAmountCents(), START,
+					TransferScheduler.IDEMPOTENCY_KEY_PREFIX + transfer.getId());
+			journal.force();
+		}
+
+		LedgerEngine ledgerEngine = this.ledgerEngine();
+		try {
+			TransferScheduler restarted = new TransferScheduler();
+			restarted.setRepository(this.scheduledRepository);
+			restarted.setTransferService(this.ledgerTransferService(ledgerEngine));
+			restarted.setExecutor(this.executor);
+			restarted.tick(START + 10L);
+		} finally {
+			ledgerEngine.stop();
+		}
+
+		assertEquals(Status.EXECUTED, this.status(transfer));
+		assertEquals(1L, this.transferRepository.count());
+		assertEquals(new BigDecimal("90.00"), this.accountRepository.findOne(1L).getBalance().setScale(2));
+	}
+
+	@Test
+	public void testTransferExecutedInTheLedgerMode() throws Exception {
+		ScheduledTransfer transfer = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_10), START);
+
+		LedgerEngine ledgerEngine = this.ledgerEngine();
+		try {
+			this.scheduler.setTransferService(this.ledgerTransferService(ledgerEngine));
+			this.scheduler.tick(START + 10L);
+		} finally {
+			ledgerEngine.stop();
+		}
+
+		// answered before it was persisted, the Transfer has no id yet
+		assertEquals(Status.EXECUTED, this.status(transfer));
+		assertNull(this.scheduledRepository.findOne(transfer.getId()).getTransferId());
+		assertEquals(1L, this.transferRepository.count());
+		assertEquals(new BigDecimal("90.00"), this.accountRepository.findOne(1L).getBalance().setScale(2));
+	}
+
+	@Test
+	public void testTransientFailureIsRetried() {
+		AtomicBoolean unreachable = new AtomicBoolean(true);
+		IAccountRepository accountRepository = new AccountMockRepository() {
+			@Override
+			public Account findOne(Long id) {
+				if (unreachable.getAndSet(false)) {
+					throw new QueryTimeoutException("Database not reachable");
+				}
+				return super.findOne(id);
+			}
+		};
+		accountRepository.save(this.accountRepository.findOne(1L));
+		accountRepository.save(this.accountRepository.findOne(2L));
+		this.transferService.setAccountRepository(accountRepository);
+		this.transferService.setAccountCache(new AccountCache(accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		ScheduledTransfer transfer = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_10), START);
+
+		this.scheduler.tick(START + 10L);
+		assertEquals(Status.PENDING, this.status(transfer));
+		assertEquals(0L, this.scheduler.getFailed());
+
+		this.scheduler.tick(START + 20L);
+		assertEquals(Status.EXECUTED, this.status(transfer));
+		assertEquals(new BigDecimal("90.00"), accountRepository.findOne(1L).getBalance().setScale(2));
+	}
+
+	@Test
+	public void testRefusedTransferIsNotRetriedWithItsBatch() {
+		AtomicBoolean unreachable = new AtomicBoolean(true);
+		IAccountRepository accountRepository = new AccountMockRepository() {
+			@Override
+			public Account findOne(Long id) {
+				if (id == 3L && unreachable.getAndSet(false)) {
+					throw new QueryTimeoutException("Database not reachable");
+				}
+				return super.findOne(id);
+			}
+		};
+		accountRepository.save(this.accountRepository.findOne(1L));
+		accountRepository.save(this.accountRepository.findOne(2L));
+		accountRepository.save(this.accountRepository.findOne(3L));
+		this.transferService.setAccountRepository(accountRepository);
+		this.transferService.setAccountCache(new AccountCache(accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		// same source account, so same batch: the first is refused, the second fails to read its destination
+		ScheduledTransfer refused = this.scheduler.schedule(1L, 2L, Money.toCents(AMOUNT_1000), START);
+		ScheduledTransfer retried = this.scheduler.schedule(1L, 3L, Money.toCents(AMOUNT_10), START + 1L);
+
+		this.scheduler.tick(START + 10L);
+		assertEquals(Status.FAILED, this.status(refused));
+		assertEquals(Status.PENDING, this.status(retried));
+
+		this.scheduler.tick(START + 20L);
+		assertEquals(Status.EXECUTED, this.status(retried));
+		assertEquals(1L, this.scheduler.getFailed());
+		assertEquals(1L, this.scheduler.getExecuted());
+		assertEquals(new BigDecimal("110.00"), accountRepository.findOne(3L).getBalance().setScale(2));
+	}
+
+	@Test(expected = TransferServiceException.class)
+	public void testScheduleSameAccounts() {
+		this.scheduler.schedule(1L, 1L, 100L, START);
+	}
+
+	@Test(expected = TransferServiceException.class)
+	public void testScheduleZeroAmount() {
+		this.scheduler.schedule(1L, 2L, 0L, START);
+	}
+
+	/*
+	 * Helper method starting a LedgerEngine over the mock repositories and the journal folder
+	 */
+	private LedgerEngine ledgerEngine() {
+		LedgerEngine ledgerEngine = new LedgerEngine(this.accountRepository, new LedgerPersister(this.accountRepository,
+				this.transferRepository, new LedgerCheckpointMockRepository(), new MockTransactionManager()), 8, 100);
+		ledgerEngine.setAccountCache(new AccountCache(this.accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		ledgerEngine.setJournalDirectory(this.journalFolder.getRoot().getPath());
+		ledgerEngine.start();
+		return ledgerEngine;
+	}
+
+	private TransferService ledgerTransferService(LedgerEngine ledgerEngine) {
+		TransferService transferService = new MockTransferService(this.accountRepository, this.transferRepository);
+		transferService.setLedgerEngine(ledgerEngine);
+		transferService.setMode(TransferMode.LEDGER);
+		return transferService;
+	}
+
+	private Status status(ScheduledTransfer transfer) {
+		return this.scheduledRepository.findOne(transfer.getId()).getStatus();
+	}
+}
@@ -1,24 +1,42 @@
 package com.nat.transfer.service;
 
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.cache.IdempotencyStore;
 import com.nat.transfer.domain.Account;
 import com.nat.transfer.domain.Transfer;
+import com.nat.transfer.dto.TransferLeg;
+import com.nat.transfer.dto.TransferRequest;
+import com.nat.transfer.dto.TransferResult;
 import com.nat.transfer.repositories.IAccountRepository;
 import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountBalanceSlotMockRepository;
 import com.nat.transfer.repositories.impl.AccountMockRepository;
 import com.nat.transfer.repositories.impl.TransferMockRepository;
 import com.nat.transfer.exception.TransferServiceException;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.metrics.TransferMetrics.Rejection;
+import com.nat.transfer.testutils.MockTransferService;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_10;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_100;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_1000;
 import static com.nat.transfer.testutils.AmountConstants.AMOUNT_NEGATIVE_ONE;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 /**
  * Integration Tests (IT) for TransferService
@@ -27,7 +45,7 @@ import org.junit.Test;
  */
 public class TransferServiceTest {
 
-    private TransferService transferService;
+    private MockTransferService transferService;
 
     private IAccountRepository accountRepository;
 
@@ -38,9 +56,7 @@ public class TransferServiceTest {
         this.accountRepository = new AccountMockRepository();
         this.transferRepository = new TransferMockRepository();
 
-        this.transferService = new TransferService();
-        this.transferService.setAccountRepository(this.accountRepository);
-        this.transferService.setTransferRepository(this.transferRepository);
+        this.transferService = new MockTransferService(this.accountRepository, this.transferRepository);
         this.setupMockPersistenceLayer();
     }
 
@@ -93,6 +109,208 @@ public class TransferServiceTest {
         this.transferService.transfer(1L, 2L, BigDecimal.ZERO);
     }
 
+    @Test
+    public void testInvalidTransferSubCentAmount() throws Exception {
+        try {
+            this.transferService.transfer(1L, 2L, new BigDecimal("0.001"));
+            fail("Expected TransferServiceException");
+        } catch (TransferServiceException e) {
+            assertEquals(AMOUNT_100, this.accountRepository.findOne(1L).getBalance());
+        }
+    }
+
+    @Test
+    public void testCachedTransferRereadsStaleAccounts() throws Exception {
+        AccountCache accountCache = new AccountCache(this.accountRepository, 100L);
+        this.transferService.setAccountCache(accountCache);
+
+        this.transferService.transfer(1L, 2L, AMOUNT_10);
+        // another writer changes the source behind the cache
+        this.accountRepository.credit(1L, 5000L);
+
+        this.transferService.transfer(1L, 2L, AMOUNT_10);
+
+        assertEquals(new BigDecimal("130"), accountCache.findOne(1L).getBalance());
+        assertEquals(new BigDecimal("130"), this.accountRepository.findOne(1L).getBalance());
+        assertEquals(new BigDecimal("1020"), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(this.accountRepository.findOne(2L).getVersion(), accountCache.findOne(2L).getVersion());
+    }
+
+    @Test
+    public void testHotAccountCreditsGoToSlots() throws Exception {
+        AccountBalanceSlotMockRepository slotRepository = new AccountBalanceSlotMockRepository();
+        HotAccountManager hotAccounts = new HotAccountManager();
+        hotAccounts.setSlotRepository(slotRepository);
+        hotAccounts.setAccountRepository(this.accountRepository);
+        this.transferService.setHotAccountManager(hotAccounts);
+        this.transferService.setAccountCache(new AccountCache(this.accountRepository, 100L));
+
+        this.transferService.makeHotAccount(2L, 4);
+        this.transferService.transfer(1L, 2L, AMOUNT_10);
+        this.transferService.transfer(1L, 2L, AMOUNT_10);
+
+        // the credits are in the slots, reads add them to the account balance
+        assertEquals(new BigDecimal("1000"), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(2000L, slotRepository.sumBalanceCents(2L));
+        assertEquals(new BigDecimal("1020"), this.transferService.findAccount(2L).getBalance());
+        assertEquals(new BigDecimal("1020"), this.transferService.findAccounts(0L, null).get(1).getBalance());
+
+        // a debit consolidates the slots first, so it can spend them
+        this.transferService.transfer(2L, 1L, new BigDecimal("1015"));
+        assertEquals(new BigDecimal("5"), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(0L, slotRepository.sumBalanceCents(2L));
+        assertEquals(new BigDecimal("1095"), this.transferService.findAccount(1L).getBalance());
+
+        this.transferService.transfer(1L, 2L, AMOUNT_10);
+        HotAccountConsolidator consolidator = new HotAccountConsolidator();
+        consolidator.setTransferService(this.transferService);
+        consolidator.setAccountStore(this.transferService.getAccountStore());
+        consolidator.setHotAccountManager(hotAccounts);
+        consolidator.consolidateHotAccounts();
+        assertEquals(new BigDecimal("15"), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(new BigDecimal("15"), this.transferService.findAccount(2L).getBalance());
+        assertEquals(0L, slotRepository.sumBalanceCents(2L));
+    }
+
+    @Test
+    public void testHotAccountSlotOverflowIsRefused() throws Exception {
+        AccountBalanceSlotMockRepository slotRepository = new AccountBalanceSlotMockRepository();
+        HotAccountManager hotAccounts = new HotAccountManager();
+        hotAccounts.setSlotRepository(slotRepository);
+        hotAccounts.setAccountRepository(this.accountRepository);
+        this.transferService.setHotAccountManager(hotAccounts);
+
+        this.transferService.makeHotAccount(2L, 1);
+        slotRepository.findByAccountIdOrderBySlotAsc(2L).get(0).setBalanceCents(Long.MAX_VALUE - 500L);
+
+        this.assertTransferRejected(1L, 2L, AMOUNT_10);
+        assertEquals(Long.MAX_VALUE - 500L, slotRepository.sumBalanceCents(2L));
+        assertEquals(AMOUNT_100, this.accountRepository.findOne(1L).getBalance());
+
+        // another instance finds the hot account from the slot counts
+        HotAccountManager restarted = new HotAccountManager();
+        restarted.setSlotRepository(slotRepository);
+        restarted.setAccountRepository(this.accountRepository);
+        restarted.refresh();
+        Assert.assertTrue(restarted.isHot(2L));
+        Assert.assertFalse(restarted.isHot(1L));
+    }
+
+    @Test
+    public void testGroupCommitFailsOnlyTheFailingTransfer() throws Exception {
+        this.transferService.setMode(TransferMode.GROUP_COMMIT);
+        // one group: the first transfer waits for the other two
+        this.transferService.setGroupCommitMaxItems(3);
+        this.transferService.setGroupCommitMaxDelayMicros(TimeUnit.SECONDS.toMicros(10L));
+
+        List<CompletableFuture<Transfer>> transfers = new ArrayList<>();
+        for (BigDecimal amount : Arrays.asList(AMOUNT_10, AMOUNT_1000, AMOUNT_10)) {
+            transfers.add(CompletableFuture.supplyAsync(() -> this.transferService.transfer(1L, 2L, amount)));
+        }
+
+        try {
+            assertEquals(AMOUNT_10, transfers.get(0).get(5L, TimeUnit.SECONDS).getAmount());
+            assertEquals(AMOUNT_10, transfers.get(2).get(5L, TimeUnit.SECONDS).getAmount());
+            try {
+                transfers.get(1).get(5L, TimeUnit.SECONDS);
+                fail("Expected the transfer of 1000 to fail");
+            } catch (ExecutionException e) {
+                assertEquals(TransferServiceException.class, e.getCause().getClass());
+            }
+        } finally {
+            this.transferService.stopGroupCommitter();
+        }
+
+        assertEquals(new BigDecimal("80"), this.accountRepository.findOne(1L).getBalance());
+        assertEquals(new BigDecimal("1020"), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(2L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testRetriedTransferIsExecutedOnce() throws Exception {
+        this.transferService.setIdempotencyStore(new IdempotencyStore(this.transferRepository, 100L, 60L));
+
+        Transfer transfer = this.transferService.transfer(1L, 2L, 1000L, "retried");
+        Transfer retry = this.transferService.transfer(1L, 2L, 1000L, "retried");
+
+        assertEquals(transfer.getId(), retry.getId());
+        assertEquals("retried", this.transferRepository.findOne(transfer.getId()).getIdempotencyKey());
+        assertEquals(new BigDecimal("90"), this.accountRepository.findOne(1L).getBalance());
+        assertEquals(1L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testAsyncCallsRunOnTheExecutor() throws Exception {
+        TransferExecutor executor = new TransferExecutor(new TransferMetrics(), 2, 4);
+        this.transferService.setTransferExecutor(executor);
+
+        try {
+            assertEquals(AMOUNT_10, this.transferService.transferAsync(1L, 2L, 1000L, null).get(5L, TimeUnit.SECONDS).getAmount());
+
+            Account account = this.transferService.createNewAccountAsync("Async", 500L).get(5L, TimeUnit.SECONDS);
+            assertEquals(account, this.accountRepository.findOne(account.getId()));
+
+            try {
+                this.transferService.transferAsync(1L, 2L, 100000L, null).get(5L, TimeUnit.SECONDS);
+                fail("Expected the transfer of 1000 to fail");
+            } catch (ExecutionException e) {
+                assertEquals(TransferServiceException.class, e.getCause().getClass());
+            }
+
+            // refused before being queued
+            Assert.assertTrue(this.transferService.transferAsync(1L, 1L, 1000L, null).isCompletedExceptionally());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(new BigDecimal("90"), this.accountRepository.findOne(1L).getBalance());
+        assertEquals(1L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testRejectionsAreCountedByReason() throws Exception {
+        TransferMetrics metrics = new TransferMetrics();
+        this.transferService.setMetrics(metrics);
+
+        this.assertTransferRejected(1L, 1L, AMOUNT_10);
+        this.assertTransferRejected(1L, 2L, BigDecimal.ZERO);
+        this.assertTransferRejected(1L, 2L, new BigDecimal("0.001"));
+        this.assertTransferRejected(1L, 2L, AMOUNT_1000);
+        this.assertTransferRejected(1L, 99L, AMOUNT_10);
+
+        assertEquals(1L, metrics.getRejections(Rejection.SAME_ACCOUNT));
+        assertEquals(2L, metrics.getRejections(Rejection.INVALID_AMOUNT));
+        assertEquals(1L, metrics.getRejections(Rejection.INSUFFICIENT_FUNDS));
+        assertEquals(1L, metrics.getRejections(Rejection.ACCOUNT_NOT_FOUND));
+    }
+
+    @Test
+    public void testOptimisticTransferRetriesConflicts() throws Exception {
+        this.setupConflictingAccountRepository(2);
+
+        Transfer transfer = this.transferService.transfer(1L, 2L, AMOUNT_10);
+
+        assertEquals(AMOUNT_10, transfer.getAmount());
+        assertEquals(2L, this.transferService.getOptimisticRetries());
+        assertEquals(0L, this.transferService.getOptimisticAborts());
+    }
+
+    @Test
+    public void testOptimisticTransferAbortsAfterMaxAttempts() throws Exception {
+        this.setupConflictingAccountRepository(3);
+
+        try {
+            this.transferService.transfer(1L, 2L, AMOUNT_10);
+            fail("Expected TransferServiceException");
+        } catch (TransferServiceException e) {
+            // empty block
+        }
+
+        assertEquals(2L, this.transferService.getOptimisticRetries());
+        assertEquals(1L, this.transferService.getOptimisticAborts());
+        assertEquals(0L, this.transferRepository.count());
+    }
+
     /*
 	 * Helper method to assert TransferServiceException while calling createNewAccount with invalid arguments
 	 * @param name
@@ -107,6 +325,255 @@ public class TransferServiceTest {
         }
     }
 
+    /**
+	 * Helper method to assert TransferServiceException while calling transfer with invalid arguments
+     */
+    private void assertTransferRejected(long sourceAccountId, long destinationAccountId, BigDecimal amount) {
+        try {
+            this.transferService.transfer(sourceAccountId, destinationAccountId, amount);
+            fail("Expected TransferServiceException");
+        } catch (TransferServiceException e) {
+            // empty block
+        }
+    }
+
+    @Test
+    public void testConditionalUpdateTransfer() throws Exception {
+        this.transferService.setMode(TransferMode.CONDITIONAL_UPDATE);
+
+        BigDecimal balanceOne = this.accountRepository.findOne(1L).getBalance().subtract(AMOUNT_10);
+        BigDecimal balanceTwo = this.accountRepository.findOne(2L).getBalance().add(AMOUNT_10);
+
+        Transfer transfer = this.transferService.transfer(1L, 2L, AMOUNT_10);
+
+        Assert.assertEquals(balanceOne, this.accountRepository.findOne(1L).getBalance());
+        Assert.assertEquals(balanceTwo, this.accountRepository.findOne(2L).getBalance());
+        assertEquals(AMOUNT_10, transfer.getAmount());
+    }
+
+    @Test
+    public void testConditionalUpdateTransferNotEnoughBalance() throws Exception {
+        this.transferService.setMode(TransferMode.CONDITIONAL_UPDATE);
+
+        BigDecimal balanceOne = this.accountRepository.findOne(1L).getBalance();
+
+        try {
+            this.transferService.transfer(1L, 2L, AMOUNT_1000);
+            fail("Expected TransferServiceException");
+        } catch (TransferServiceException e) {
+            // empty block
+        }
+
+        Assert.assertEquals(balanceOne, this.accountRepository.findOne(1L).getBalance());
+        assertEquals(0L, this.transferRepository.count());
+    }
+
+    @Test(expected = TransferServiceException.class)
+    public void testConditionalUpdateTransferUnknownAccount() throws Exception {
+        this.transferService.setMode(TransferMode.CONDITIONAL_UPDATE);
+
+        this.transferService.transfer(1L, 99L, AMOUNT_10);
+    }
+
+    @Test
+    public void testBestEffortBatchTransfer() throws Exception {
+        this.transferService.setBatchChunkSize(2);
+
+        List<TransferResult> results = this.transferService.batchTransfer(Arrays.asList(
+                new TransferRequest(1L, 2L, AMOUNT_10),
+                new TransferRequest(1L, 2L, AMOUNT_1000),
+                new TransferRequest(2L, 1L, AMOUNT_100),
+                new TransferRequest(2L, 99L, AMOUNT_10)), BatchMode.BEST_EFFORT);
+
+        assertEquals(4, results.size());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(2).getStatus());
+        assertEquals(TransferResult.Status.FAILED, results.get(3).getStatus());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+        }
+
+        Assert.assertEquals(AMOUNT_100.subtract(AMOUNT_10).add(AMOUNT_100), this.accountRepository.findOne(1L).getBalance());
+        Assert.assertEquals(AMOUNT_1000.add(AMOUNT_10).subtract(AMOUNT_100), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(2L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testMultiTransfer() throws Exception {
+        this.accountRepository.save(new Account("Account Three", AMOUNT_10));
+
+        List<Transfer> transfers = this.transferService.multiTransfer(1L, Arrays.asList(
+                new TransferLeg(2L, new BigDecimal("60")),
+                new TransferLeg(3L, new BigDecimal("0.5")),
+                new TransferLeg(2L, new BigDecimal("20"))));
+
+        assertEquals(3, transfers.size());
+        assertEquals(3L, transfers.get(1).getDestinationAccountId());
+        assertEquals(new BigDecimal("0.5"), transfers.get(1).getAmount());
+        assertEquals(new BigDecimal("19.5"), this.accountRepository.findOne(1L).getBalance());
+        assertEquals(new BigDecimal("1080"), this.accountRepository.findOne(2L).getBalance());
+        assertEquals(new BigDecimal("10.5"), this.accountRepository.findOne(3L).getBalance());
+        assertEquals(3L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testMultiTransferNotEnoughBalanceTransfersNothing() throws Exception {
+        try {
+            // each leg is covered, not their sum
+            this.transferService.multiTransfer(1L, Arrays.asList(new TransferLeg(2L, new BigDecimal("60")),
+                    new TransferLeg(2L, new BigDecimal("60"))));
+            fail("Expected the multi-leg transfer to fail");
+        } catch (TransferServiceException e) {
+            Assert.assertEquals(AMOUNT_100, this.accountRepository.findOne(1L).getBalance());
+        }
+
+        try {
+            this.transferService.multiTransfer(1L, Arrays.asList(new TransferLeg(2L, AMOUNT_10), new TransferLeg(99L, AMOUNT_10)));
+            fail("Expected the multi-leg transfer to fail");
+        } catch (TransferServiceException e) {
+            Assert.assertEquals(AMOUNT_1000, this.accountRepository.findOne(2L).getBalance());
+        }
+
+        assertEquals(0L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testAllOrNothingBatchTransferRollsBack() throws Exception {
+        List<TransferResult> results = this.transferService.batchTransfer(Arrays.asList(
+                new TransferRequest(1L, 2L, AMOUNT_10),
+                new TransferRequest(2L, 1L, AMOUNT_100),
+                new TransferRequest(1L, 2L, AMOUNT_1000)), BatchMode.ALL_OR_NOTHING);
+
+        assertEquals(TransferResult.Status.ROLLED_BACK, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.ROLLED_BACK, results.get(1).getStatus());
+        assertEquals(TransferResult.Status.FAILED, results.get(2).getStatus());
+
+        Assert.assertEquals(AMOUNT_100, this.accountRepository.findOne(1L).getBalance());
+        Assert.assertEquals(AMOUNT_1000, this.accountRepository.findOne(2L).getBalance());
+        assertEquals(0L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testAllOrNothingBatchTransfer() throws Exception {
+        List<TransferResult> results = this.transferService.batchTransfer(Arrays.asList(
+                new TransferRequest(1L, 2L, AMOUNT_10),
+                new TransferRequest(2L, 1L, AMOUNT_100)), BatchMode.ALL_OR_NOTHING);
+
+        assertEquals(TransferResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(1).getStatus());
+        assertEquals(2L, this.transferRepository.count());
+    }
+
+    @Test
+    public void testFindTransfersKeysetPages() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            this.transferService.transfer(2L, 1L, AMOUNT_10);
+        }
+        this.transferService.setPageMaxSize(2);
+
+        List<Transfer> firstPage = this.transferService.findTransfers(0L, 10);
+        assertEquals(2, firstPage.size());
+        assertEquals(Long.valueOf(1L), firstPage.get(0).getId());
+
+        List<Transfer> lastPage = this.transferService.findTransfers(4L, null);
+        assertEquals(1, lastPage.size());
+        assertEquals(Long.valueOf(5L), lastPage.get(0).getId());
+
+        assertEquals(0, this.transferService.findTransfers(5L, 2).size());
+    }
+
+    @Test
+    public void testFindAccountTransfersKeysetPages() throws Exception {
+        this.setupAccountHistory();
+        this.transferService.setPageMaxSize(2);
+
+        List<Transfer> firstPage = this.transferService.findAccountTransfers(1L, Long.MIN_VALUE, Long.MAX_VALUE, 0L, 10);
+        assertEquals(Arrays.asList(1L, 2L), ids(firstPage));
+
+        // same execution time as transfer 2, ordered by id
+        List<Transfer> secondPage = this.transferService.findAccountTransfers(1L, Long.MIN_VALUE, Long.MAX_VALUE, 2L, null);
+        assertEquals(Arrays.asList(4L, 5L), ids(secondPage));
+
+        assertEquals(0, this.transferService.findAccountTransfers(1L, Long.MIN_VALUE, Long.MAX_VALUE, 5L, null).size());
+    }
+
+    @Test
+    public void testFindAccountTransfersInTimeRange() throws Exception {
+        this.setupAccountHistory();
+
+        assertEquals(Arrays.asList(2L, 4L), ids(this.transferService.findAccountTransfers(1L, 1500L, 3000L, 0L, null)));
+        // a cursor before the range starts at the range
+        assertEquals(Arrays.asList(2L, 4L), ids(this.transferService.findAccountTransfers(1L, 1500L, 3000L, 1L, null)));
+        assertEquals(Arrays.asList(1L, 3L, 2L, 5L), ids(this.transferService.findAccountTransfers(2L, 0L, 5000L, 0L, null)));
+    }
+
+    @Test(expected = TransferServiceException.class)
+    public void testFindAccountTransfersUnknownCursor() throws Exception {
+        this.transferService.findAccountTransfers(1L, Long.MIN_VALUE, Long.MAX_VALUE, 42L, null);
+    }
+
+    @Test
+    public void testFindAccountsKeysetPages() throws Exception {
+        List<Account> accounts = this.transferService.findAccounts(1L, 1);
+
+        assertEquals(1, accounts.size());
+        assertEquals("Account Two", accounts.get(0).getName());
+    }
+
+    @Test
+    public void testExportTransfers() throws Exception {
+        this.transferService.transfer(1L, 2L, AMOUNT_10);
+        this.transferService.transfer(2L, 1L, AMOUNT_100);
+
+        List<Long> exportedIds = new ArrayList<>();
+        long count = this.transferService.exportTransfers(t -> exportedIds.add(t.getId()));
+
+        assertEquals(2L, count);
+        assertEquals(Arrays.asList(1L, 2L), exportedIds);
+    }
+
+    /*
+     * Helper method to switch the service to OPTIMISTIC mode over a repository whose first reads report a version conflict
+     */
+    private void setupConflictingAccountRepository(int conflicts) {
+        AtomicInteger remainingConflicts = new AtomicInteger(conflicts);
+        this.accountRepository = new AccountMockRepository() {
+            @Override
+            public Account findOne(Long key) {
+                if (remainingConflicts.getAndDecrement() > 0) {
+                    throw new ObjectOptimisticLockingFailureException(Account.class, key);
+                }
+                return super.findOne(key);
+            }
+        };
+        this.setupMockPersistenceLayer();
+
+        this.transferService = new MockTransferService(this.accountRepository, this.transferRepository);
+        this.transferService.setMode(TransferMode.OPTIMISTIC);
+        this.transferService.setOptimisticMaxAttempts(3);
+        this.transferService.setOptimisticBackoffMillis(0L);
+    }
+
+    private void setupAccountHistory() {
+        this.accountRepository.save(new Account("Account Three", AMOUNT_100));
+        this.saveTransfer(1L, 2L, 1000L);
+        this.saveTransfer(2L, 1L, 2000L);
+        this.saveTransfer(3L, 2L, 1500L);
+        this.saveTransfer(1L, 3L, 2000L);
+        this.saveTransfer(2L, 1L, 3000L);
+    }
+
+    private void saveTransfer(long sourceAccountId, long destinationAccountId, long executedAtMillis) {
+        Transfer transfer = new Transfer(sourceAccountId, destinationAccountId, AMOUNT_10);
+        transfer.setExecutedAtMillis(executedAtMillis);
+        this.transferRepository.save(transfer);
+    }
+
+    private static List<Long> ids(List<Transfer> transfers) {
+        return transfers.stream().map(Transfer::getId).collect(Collectors.toList());
+    }
+
     private void setupMockPersistenceLayer() {
         this.accountRepository.save(new Account("Account One", AMOUNT_100));
         this.accountRepository.save(new Account("Account Two", AMOUNT_1000));
@@ -0,0 +1,35 @@
+package com.nat.transfer.testutils;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Transaction manager of the mock repositories: commit and rollback do nothing, but the transaction synchronizations
+ * run as they would against a database, e.g. the after commit updates of the AccountCache.
+ *
+ * @author jyotirmani
+ */
+public class MockTransactionManager extends AbstractPlatformTransactionManager {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected Object doGetTransaction() {
+		return new Object();
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+		// nothing to begin
+	}
+
+	@Override
+	protected void doCommit(DefaultTransactionStatus status) {
+		// nothing to commit
+	}
+
+	@Override
+	protected void doRollback(DefaultTransactionStatus status) {
+		// nothing to roll back
+	}
+}
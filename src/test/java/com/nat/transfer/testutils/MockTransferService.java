@@ -0,0 +1,79 @@
+package com.nat.transfer.testutils;
+
+import com.nat.transfer.cache.AccountCache;
+import com.nat.transfer.cache.IdempotencyStore;
+import com.nat.transfer.metrics.TransferMetrics;
+import com.nat.transfer.repositories.IAccountRepository;
+import com.nat.transfer.repositories.ITransferRepository;
+import com.nat.transfer.repositories.impl.AccountBalanceSlotMockRepository;
+import com.nat.transfer.repositories.impl.BalanceSnapshotMockRepository;
+import com.nat.transfer.service.AccountStore;
+import com.nat.transfer.service.HotAccountManager;
+import com.nat.transfer.service.TransferExecutor;
+import com.nat.transfer.service.TransferService;
+
+/**
+ * TransferService over mock repositories, with every collaborator it needs: an AccountStore over a
+ * MockTransactionManager, an AccountCache, an IdempotencyStore, a HotAccountManager and a TransferExecutor. Tests
+ * replace the ones they look into through the setters, which replace them in the AccountStore too.
+ *
+ * @author jyotirmani
+ */
+public class MockTransferService extends TransferService {
+	private final AccountStore accountStore = new AccountStore();
+
+	public MockTransferService(IAccountRepository accountRepository, ITransferRepository transferRepository) {
+		super();
+		this.accountStore.setTransactionManager(new MockTransactionManager());
+		this.setAccountStore(this.accountStore);
+		this.setAccountRepository(accountRepository);
+		this.setTransferRepository(transferRepository);
+		this.setAccountCache(new AccountCache(accountRepository, AccountCache.DEFAULT_MAX_SIZE));
+		this.setIdempotencyStore(new IdempotencyStore(transferRepository, IdempotencyStore.DEFAULT_MAX_KEYS,
+				IdempotencyStore.DEFAULT_TTL_SECONDS));
+		this.setSnapshotRepository(new BalanceSnapshotMockRepository());
+		this.setTransferExecutor(new TransferExecutor(new TransferMetrics(), 4, TransferExecutor.DEFAULT_QUEUE_SIZE));
+
+		HotAccountManager hotAccounts = new HotAccountManager();
+		hotAccounts.setSlotRepository(new AccountBalanceSlotMockRepository());
+		hotAccounts.setAccountRepository(accountRepository);
+		this.setHotAccountManager(hotAccounts);
+	}
+
+	/**
+	 * @return the AccountStore of the service, for the HoldService and the HotAccountConsolidator under test
+	 */
+	public AccountStore getAccountStore() {
+		return this.accountStore;
+	}
+
+	@Override
+	public void setAccountRepository(IAccountRepository accountRepository) {
+		super.setAccountRepository(accountRepository);
+		this.accountStore.setAccountRepository(accountRepository);
+	}
+
+	@Override
+	public void setTransferRepository(ITransferRepository transferRepository) {
+		super.setTransferRepository(transferRepository);
+		this.accountStore.setTransferRepository(transferRepository);
+	}
+
+	@Override
+	public void setAccountCache(AccountCache accountCache) {
+		super.setAccountCache(accountCache);
+		this.accountStore.setAccountCache(accountCache);
+	}
+
+	@Override
+	public void setHotAccountManager(HotAccountManager hotAccounts) {
+		super.setHotAccountManager(hotAccounts);
+		this.accountStore.setHotAccountManager(hotAccounts);
+	}
+
+	@Override
+	public void setMetrics(TransferMetrics metrics) {
+		super.setMetrics(metrics);
+		this.accountStore.setMetrics(metrics);
+	}
+}